@@ -1,7 +1,5 @@
 package domain;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import javax.swing.*;
@@ -21,36 +19,29 @@ public class ActivityController extends ActivitySubject{
 	{
 		for (String element : dependencies)
 		{
-			ArrayList<Activities> activities = DataResource.selectedProject.getActivityList();
+            Activities activity = DataResource.selectedProject.getActivityByLabel(element);
 
-            for (Activities activity : activities) 
-            {
-
-                if (activity.getLabel().equals(element))
-                    DataResource.selectedProject.addArrow(activity, a);
-            }
+            if (activity != null)
+                DataResource.selectedProject.addArrow(activity, a);
 		}
 	}
 	
 	private static ArrayList<Users> addMembers(ArrayList<String> members, Activities a)
 	{
-		ArrayList<Users> users = DataResource.projectMembers;
         ArrayList<Users> tmp = new ArrayList<Users>();
 
         for (String element : members) {
-            for (Users user : users) {
-                if (user.getName().equals(element))
-                    tmp.add(user);
-            }
+            Users user = DataResource.projectMembers.getByUsername(element);
+            if (user != null)
+                tmp.add(user);
         }
         return tmp;
 	}
 	
 	public static boolean addActivity(String description, String startDate, String endDate, String label, ArrayList<String> dependencies, ArrayList<String> members, String progress, int budget, int mTime, int oTime, int pTime, int targetDate) {
 		try {
-			DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-			Date start = dateFormatter.parse(startDate);
-			Date end = dateFormatter.parse(endDate);
+			Date start = DataResource.dateFormatter.parse(startDate);
+			Date end = DataResource.dateFormatter.parse(endDate);
 
             if (start.before(end) && budget >= 0 && mTime >= 0 && oTime >= 0 && pTime >= 0 && targetDate >= 0 && oTime <= mTime && pTime >= mTime && (progress.equals("pending") || progress.equals("started") || progress.equals("complete")))
             {
@@ -69,7 +60,7 @@ public class ActivityController extends ActivitySubject{
                 }
 
                 //***************************** SAVE NEW ACTIVITY TO DATABASE **********************
-                DataResource.saveActivity(newActivity);
+                DataResource.activityRepository.saveActivity(DataResource.selectedProject, newActivity);
 
                 notifyObservers();
                 return true;
@@ -105,9 +96,8 @@ public class ActivityController extends ActivitySubject{
 	
 	public static boolean editActivity(String description, String startDate, String endDate, String label, ArrayList<String> dependencies, ArrayList<String> members, String progress, int budget, int mTime, int oTime, int pTime, int targetDate) {		
 		try {
-			DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-			Date start = dateFormatter.parse(startDate);
-			Date end = dateFormatter.parse(endDate);
+			Date start = DataResource.dateFormatter.parse(startDate);
+			Date end = DataResource.dateFormatter.parse(endDate);
 			
 			Activities myActivity = DataResource.selectedActivity;
 
@@ -116,7 +106,7 @@ public class ActivityController extends ActivitySubject{
                 myActivity.setDescription(description);
                 myActivity.setStartDate(start);
                 myActivity.setEndDate(end);
-                myActivity.setLabel(label);
+                DataResource.selectedProject.relabelActivity(myActivity, label);
                 myActivity.setProgress(TaskProgress.valueOf(progress));
                 myActivity.setBudget(budget);
                 myActivity.setOptimisticTime(oTime);
@@ -157,7 +147,7 @@ public class ActivityController extends ActivitySubject{
                 }
 
                 if (!members.isEmpty()) {
-                    DataResource.resetActivityMembers(DataResource.selectedActivity.getId());
+                    DataResource.activityRepository.resetActivityMembers(DataResource.selectedActivity.getId());
                     ArrayList<Users> tmp = addMembers(members, myActivity);
                     myActivity.setMemberList(tmp);
                     DataResource.selectedActivity.setMemberList(tmp);
@@ -165,7 +155,7 @@ public class ActivityController extends ActivitySubject{
 
 
                 //******************************SAVE TO DATABASE METHOD*********************************8
-                DataResource.saveActivity(DataResource.selectedActivity);
+                DataResource.activityRepository.saveActivity(DataResource.selectedProject, DataResource.selectedActivity);
 
                 notifyObservers();
                 return true;
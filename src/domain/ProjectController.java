@@ -9,8 +9,12 @@ import javax.swing.*;
 import resources.Projects;
 import resources.Users;
 import saver_loader.DataResource;
+import saver_loader.ProjectRefresh;
 
 public class ProjectController extends ProjectSubject{
+	//true while a refresh is being read in the background
+	private static boolean refreshing = false;
+
 	ProjectController() {
 		
 	}
@@ -33,7 +37,7 @@ public class ProjectController extends ProjectSubject{
                 Projects newProject = new Projects(projectName, userList, date, DataResource.currentUser.getID(), projectIDDescription, budget);
                 DataResource.projectList.add(newProject);
 
-                DataResource.saveProject(newProject);
+                DataResource.projectRepository.saveProject(newProject);
 
                 notifyObservers();
                 return true;
@@ -76,11 +80,11 @@ public class ProjectController extends ProjectSubject{
         {
             if (!projectName.isEmpty() && !projectIDDescription.isEmpty() && budget >= 0)
             {
-                myProject.setProjectName(projectName);
+                DataResource.projectList.rename(myProject, projectName);
                 myProject.setDescription(projectIDDescription);
                 myProject.setBudget(budget);
 
-                DataResource.saveProject(myProject); //Save the new project to the database.
+                DataResource.projectRepository.saveProject(myProject); //Save the new project to the database.
 
                 notifyObservers();
                 return true;
@@ -120,9 +124,41 @@ public class ProjectController extends ProjectSubject{
 	public static void deleteProject() {
 		Projects toDelete = DataResource.selectedProject;
 		
-		DataResource.removeProject(toDelete);
+		DataResource.projectList.remove(toDelete);
+		DataResource.projectRepository.removeProject(toDelete);
 		DataResource.selectedProject = null;
 				
 		notifyObservers();
 	}
+	
+	/**
+	 * Reloads the projects other users changed in the database, and updates the views if any did.
+	 * Must be called on the event thread: the database is read by a SwingWorker and the changes are
+	 * applied back on the event thread. A call made while the previous refresh is still reading does nothing.
+	 */
+	public static void refreshChangedProjects() {
+		if (refreshing)
+			return;
+		final ProjectRefresh refresh = DataResource.startRefresh();
+		if (refresh == null)
+			return;
+
+		refreshing = true;
+		new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() {
+				refresh.read();
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				refreshing = false;
+				if (DataResource.finishRefresh(refresh) > 0) {
+					notifyObservers();
+					ActivityController.notifyObservers();
+				}
+			}
+		}.execute();
+	}
 }
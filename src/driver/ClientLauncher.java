@@ -8,15 +8,27 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
 
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import domain.ActivityController;
 import domain.ProjectController;
 import graphview_components.*;
 import listview_components.ActivityListPane;
 import listview_components.ProjectListPane;
+import saver_loader.ChangeJournal;
+import saver_loader.ConnectionManager;
+import saver_loader.DataResource;
+import saver_loader.JournalRepository;
+import saver_loader.PersistenceListener;
+import saver_loader.PersistenceQueue;
+import saver_loader.WorkspaceSnapshot;
 
 public class ClientLauncher {
 	
@@ -37,8 +49,49 @@ public class ClientLauncher {
 	static final int screenY = Toolkit.getDefaultToolkit().getScreenSize().height;
 	static final int screenX = Toolkit.getDefaultToolkit().getScreenSize().width;
 	
+	static ChangeJournal journal;
+	
+	//milliseconds between two polls for the changes made by other clients
+	static final int refreshInterval = 5000;
+	
 	
 	public static void main(String[] args) {	
+	//Report the changes the background writer could not save
+	PersistenceQueue.setListener(new PersistenceListener(){@Override
+		public void persistenceFailed(final String description, final Exception exception){
+		SwingUtilities.invokeLater(new Runnable(){@Override
+			public void run(){
+			JOptionPane.showMessageDialog(clientFrame,
+					"Could not " + description + ": " + exception.getMessage(),
+					"Changes not saved",
+					JOptionPane.ERROR_MESSAGE);
+			}
+		});
+		}
+	});
+	PersistenceQueue.start();
+
+	//With -journal, changes are appended to the database's journal and applied to it in the background
+	if (Arrays.asList(args).contains("-journal")) {
+		try {
+			journal = ChangeJournal.open(DataResource.dataBase);
+			DataResource.useRepository(new JournalRepository(journal));
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
+
+	//Save the queued or journaled changes and a snapshot of the workspace, then close the database connections kept open by the ConnectionManager on exit
+	Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){@Override
+		public void run(){
+		PersistenceQueue.shutdown();
+		if (journal != null)
+			journal.close();
+		WorkspaceSnapshot.save();
+		ConnectionManager.closeAll();
+		}
+	}));
+		
 	//Launch the Client Window and set basic frame variables
 	SwingUtilities.invokeLater(new Runnable(){@Override
 		public void run(){
@@ -98,6 +151,13 @@ public class ClientLauncher {
 		c.insets = new Insets(0,10,0,0);
 
 		clientFrame.add(activityListPane, c);
+		
+		//Reload the projects other clients change in the database; each poll reads the database in the background
+		new Timer(refreshInterval, new ActionListener(){@Override
+			public void actionPerformed(ActionEvent e){
+			ProjectController.refreshChangedProjects();
+			}
+		}).start();
 	}
 	
 }
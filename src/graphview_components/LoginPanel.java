@@ -20,7 +20,6 @@ import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
 import driver.ClientLauncher;
-import resources.UserType;
 import resources.Users;
 import saver_loader.DataResource;
 
@@ -176,12 +175,10 @@ public class LoginPanel extends JPanel{
 	    			// Create Current User 
 	    			DataResource.currentUser = new Users(result.getString(4),result.getString(2),result.getString(3),
 	    					result.getString(5),result.getInt(1),result.getString(6));
+	    			ps.close();
 	    			
-	    			if(DataResource.currentUser.getType() == UserType.MANAGER) {
-	    				DataResource.loadManagerDataFromDB();
-	    			} else {
-	    				DataResource.loadMemberDataFromDB();
-	    			}
+	    			// Load the project list from the last snapshot or the database, each project is completed when selected
+	    			DataResource.loadWorkspace();
 	    			
 	    			try {
 	    			    Thread.sleep(1000);                 //1000 milliseconds is one second.
@@ -204,18 +201,14 @@ public class LoginPanel extends JPanel{
 	            {
 	            	authorizationStatus.setText("login failed: invalid username or password");
 	            	authorizationStatus.paintImmediately(authorizationStatus.getVisibleRect());	
+	            	ps.close();
 	            }
 
 	        }catch(Exception exception) {
 	        	System.out.println(exception.getMessage());
 	        }
 	        
-	        try{
-	        	connection.close();
-	        }catch(Exception closingException)
-	        {
-	        	System.out.println(closingException.getMessage());
-	        }
+	        DataResource.closeConnection(connection);
 		}	
 	}
 
@@ -243,12 +236,10 @@ public class LoginPanel extends JPanel{
                     // Create Current User
                     DataResource.currentUser = new Users(result.getString(4),result.getString(2),result.getString(3),
                             result.getString(5),result.getInt(1),result.getString(6));
+                    ps.close();
 
-                    if(DataResource.currentUser.getType() == UserType.MANAGER) {
-                        DataResource.loadManagerDataFromDB();
-                    } else {
-                        DataResource.loadMemberDataFromDB();
-                    }
+                    // Load the project list from the last snapshot or the database, each project is completed when selected
+                    DataResource.loadWorkspace();
 
                     try {
                         Thread.sleep(1000);                 //1000 milliseconds is one second.
@@ -271,18 +262,14 @@ public class LoginPanel extends JPanel{
                 {
                     authorizationStatus.setText("login failed: invalid username or password");
                     authorizationStatus.paintImmediately(authorizationStatus.getVisibleRect());
+                    ps.close();
                 }
 
             }catch(Exception exception) {
                 System.out.println(exception.getMessage());
             }
 
-            try{
-                connection.close();
-            }catch(Exception closingException)
-            {
-                System.out.println(closingException.getMessage());
-            }
+            DataResource.closeConnection(connection);
         }
     }
 
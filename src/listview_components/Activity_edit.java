@@ -19,8 +19,6 @@ import javax.swing.JOptionPane;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -307,9 +305,8 @@ public class Activity_edit extends JFrame {
 			public void actionPerformed(ActionEvent e) {
 				try
 				{
-					DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-					Date start = dateFormatter.parse(startField.getText());
-					Date end = dateFormatter.parse(endField.getText());
+					Date start = DataResource.dateFormatter.parse(startField.getText());
+					Date end = DataResource.dateFormatter.parse(endField.getText());
 					
 					if (start.before(end) && !descriptionField.getText().isEmpty() && !startField.getText().isEmpty() && !endField.getText().isEmpty() && !activityLabelField.getText().isEmpty())
 					{
@@ -352,4 +349,4 @@ public class Activity_edit extends JFrame {
 		this.dispose();
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
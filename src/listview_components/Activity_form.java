@@ -8,8 +8,6 @@ import saver_loader.DataResource;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -214,9 +212,8 @@ public class Activity_form extends JFrame {
 			public void actionPerformed(ActionEvent e) {
 				try
 				{
-					DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-					Date start = dateFormatter.parse(startField.getText());
-					Date end = dateFormatter.parse(endField.getText());
+					Date start = DataResource.dateFormatter.parse(startField.getText());
+					Date end = DataResource.dateFormatter.parse(endField.getText());
 					
 					if (start.before(end) && !descriptionField.getText().isEmpty() && !startField.getText().isEmpty() && !endField.getText().isEmpty() && !activityLabelField.getText().isEmpty())
 					{
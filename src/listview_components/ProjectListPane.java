@@ -67,7 +67,7 @@ public class ProjectListPane extends JPanel implements IObserver{
 			public void valueChanged(ListSelectionEvent e) {
 	         	      
 	    		if (e.getValueIsAdjusting()) {//This line prevents double events
-	    			DataResource.selectedProject = DataResource.getProjectbyProjectName(list.getSelectedValue());
+	    			DataResource.selectProject(DataResource.getProjectbyProjectName(list.getSelectedValue()));
 		        	ActivityListPane.updateTable(DataResource.selectedProject);
 	    	    }
 	        		
@@ -166,7 +166,7 @@ public class Project_view extends JFrame {
 	}
 	
 	private void criticalPathAction() {
-		DataResource.selectedProject.calculateTimes();
+		DataResource.selectedProject.updateTimes();
 		DataResource.selectedProject.setGraphStyle(true);
 		final CriticalPathChart chart = new CriticalPathChart(DataResource.selectedProject.getActivityGraph(), DataResource.selectedProject.getProjectName());
 		chart.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
@@ -176,7 +176,7 @@ public class Project_view extends JFrame {
 	}
 	
 	private void EarnedValueAction() {
-		DataResource.selectedProject.calculateTimes();
+		DataResource.selectedProject.updateTimes();
 		final EarnedValueAnalysis view = new EarnedValueAnalysis(DataResource.selectedProject.getProjectName());
 		view.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
 		view.pack();
@@ -185,7 +185,7 @@ public class Project_view extends JFrame {
 	}
 	
 	private void PertAction() {
-		DataResource.selectedProject.calculateTimes();
+		DataResource.selectedProject.updateTimes();
 		DataResource.selectedProject.setGraphStyle(false);
 		final PERTAnalysis chart = new PERTAnalysis(DataResource.selectedProject.getActivityGraph(), DataResource.selectedProject.getProjectName());
 		chart.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
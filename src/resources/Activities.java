@@ -15,10 +15,9 @@ import org.apache.commons.math3.distribution.NormalDistribution;
  * being, only id, label, description and duration are used for current
  * functionalities. xpos and ypos are values to represent the position of the
  * objects when displayed graphically. The other attributes will be used for
- * PERT analysis in future iterations. Activities hold a static activityCount
- * variable which is automatically incremented and used to set id when new
- * objects are created. This static variable is set based on the highest
- * activity id stored in the database, and ensures that id is always unique.
+ * PERT analysis in future iterations. New Activities get their id from the
+ * IdSource set with setIdSource, the one of the repository in use, which
+ * ensures that id is always unique.
  * 
  * @author daveT
  *
@@ -26,7 +25,9 @@ import org.apache.commons.math3.distribution.NormalDistribution;
 
 public class Activities {
 
-	private static int activityCount = 0;
+	// source of the ids of new Activities
+	private static volatile IdSource idSource = new IdCounter();
+
 	private int id;
 	private String label;
 	private String description;
@@ -41,6 +42,9 @@ public class Activities {
 	private ArrayList<Users> memberList;
 	private TaskProgress progress;
 	private boolean criticalPathGraph;
+	private boolean dirty, membersDirty;
+	// version of the activities row this Activity was loaded from or last saved as
+	private int version;
 
 	/**
 	 * Default Constructor. Sets all values to null or junk values.
@@ -72,8 +76,7 @@ public class Activities {
 
 	/**
 	 * Parameterized constructor for creating new Activities. Value for id is
-	 * set to the automatically incremented activityCount static variable (value
-	 * initialized on load from database) This ensures that id is always unique.
+	 * allocated by the IdSource of Activities. This ensures that id is always unique.
 	 * The currently unused variables are all set to 0.
 	 * 
 	 * @param description
@@ -86,7 +89,7 @@ public class Activities {
 	 *            value for label
 	 */
 	public Activities(String description, Date startDate, Date endDate, String label, TaskProgress p, int budget, int mTime, int oTime, int pTime, int tDate) {
-		this.id = ++activityCount;
+		this.id = idSource.nextId();
 		this.description = description;
 		this.startDate = startDate;
 		this.endDate = endDate;
@@ -108,13 +111,25 @@ public class Activities {
 		this.mostLikely = mTime;
 		this.setTargetDate(tDate);
 		this.setCriticalPathGraph(true);
+		this.dirty = true;
+		this.membersDirty = true;
+	}
+
+	/**
+	 * Setter for idSource
+	 * 
+	 * @param source
+	 *            source of the ids of the Activities created from now on
+	 */
+	public static void setIdSource(IdSource source) {
+		idSource = source;
 	}
 
 	/**
 	 * Parameterized constructor for creating Activities from values in
 	 * database. Not be used when creating NEW Activities, but rather for
 	 * creating Activities existing in the database. Does not automatically set
-	 * id attribute.
+	 * id attribute. The Activity starts with no unsaved changes.
 	 * 
 	 * @param description
 	 *            value for description
@@ -151,6 +166,7 @@ public class Activities {
 		this.mostLikely = mTime;
 		this.setTargetDate(tDate);
 		this.setCriticalPathGraph(true);
+		this.markClean();
 	}
 
 	/**
@@ -170,25 +186,7 @@ public class Activities {
 	 */
 	public void setLabel(String label) {
 		this.label = label;
-	}
-
-	/**
-	 * Getter for activitCount
-	 * 
-	 * @return int activityCount
-	 */
-	public static int getActivityCount() {
-		return activityCount;
-	}
-
-	/**
-	 * Setter for activityCount
-	 * 
-	 * @param activityCount
-	 *            value for activityCount
-	 */
-	public static void setActivityCount(int activityCount) {
-		Activities.activityCount = activityCount;
+		this.dirty = true;
 	}
 
 	/**
@@ -208,6 +206,7 @@ public class Activities {
 	 */
 	public void setId(int id) {
 		this.id = id;
+		this.dirty = true;
 	}
 
 	/**
@@ -227,6 +226,7 @@ public class Activities {
 	 */
 	public void setDescription(String description) {
 		this.description = description;
+		this.dirty = true;
 	}
 
 	/**
@@ -258,6 +258,7 @@ public class Activities {
 	 */
 	public void setStartDate(Date startDate) {
 		this.startDate = startDate;
+		this.dirty = true;
 	}
 
 	/**
@@ -277,6 +278,7 @@ public class Activities {
 	 */
 	public void setEndDate(Date endDate) {
 		this.endDate = endDate;
+		this.dirty = true;
 	}
 
 	/**
@@ -441,13 +443,15 @@ public class Activities {
 	}
 
 	/**
-	 * Setter for activityList
+	 * Setter for memberList. The new members are saved the next time changes
+	 * are flushed to the database.
 	 * 
-	 * @param activityList
-	 *            the activityList to set
+	 * @param memberList
+	 *            the memberList to set
 	 */
 	public void setMemberList(ArrayList<Users> memberList) {
 		this.memberList = memberList;
+		this.membersDirty = true;
 	}
 
 	public void setDepth(int d) {
@@ -476,6 +480,7 @@ public class Activities {
 
 	public void setProgress(TaskProgress progress) {
 		this.progress = progress;
+		this.dirty = true;
 	}
 
 	public int getBudget() {
@@ -484,6 +489,7 @@ public class Activities {
 
 	public void setBudget(int budget) {
 		this.pv = budget;
+		this.dirty = true;
 	}
 	
 	public void calculateEarnedValue() {
@@ -507,6 +513,7 @@ public class Activities {
 	
 	public void setMostLikelyTime(int time) {
 		this.mostLikely = time;
+		this.dirty = true;
 	}
 	
 	public int getMostLikelyTime() {
@@ -515,6 +522,7 @@ public class Activities {
 	
 	public void setPessimisticTime(int time) {
 		this.pessimistic = time;
+		this.dirty = true;
 	}
 	
 	public int getPessimisticTime() {
@@ -523,6 +531,7 @@ public class Activities {
 	
 	public void setOptimisticTime(int time) {
 		this.optimistic = time;
+		this.dirty = true;
 	}
 	
 	public int getOptimisticTime() {
@@ -541,13 +550,25 @@ public class Activities {
 		this.expectedDate = highestExpectedDuration;
 	}
 	
+	public double getExpectedDate() {
+		return this.expectedDate;
+	}
+	
 	public void setExpectedStartDate(double lowestExpectedDuration) {
 		this.expectedStart = lowestExpectedDuration;
 	}
 	
+	public double getExpectedStartDate() {
+		return this.expectedStart;
+	}
+	
 	public void setExpectedFinishDate(double duration) {
 		this.expectedFinish = duration;
 	}
+	
+	public double getExpectedFinishDate() {
+		return this.expectedFinish;
+	}
 
 	public double getStandardDeviationEvent() {
 		return standardDeviationEvent;
@@ -563,6 +584,7 @@ public class Activities {
 
 	public void setTargetDate(int targetDate) {
 		this.targetDate = targetDate;
+		this.dirty = true;
 	}
 	
 	public String targetDateReachable() {
@@ -595,4 +617,48 @@ public class Activities {
 	public void setCriticalPathGraph(boolean criticalPathGraph) {
 		this.criticalPathGraph = criticalPathGraph;
 	}
+
+	/**
+	 * Returns the version of the activities row the Activity was loaded from,
+	 * or will have once its last save is written. A save only replaces a row
+	 * that still has the version before it, so changes made by another client
+	 * in the meantime are not overwritten.
+	 * 
+	 * @return the row version, 0 for an Activity never saved
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	/**
+	 * Checks whether a field saved in the activities table has changed since
+	 * the Activity was loaded or last saved. New Activities are always dirty.
+	 * 
+	 * @return true if the activities row must be written
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Checks whether memberList has been replaced since the Activity was
+	 * loaded or last saved.
+	 * 
+	 * @return true if the member assignments must be written
+	 */
+	public boolean isMembersDirty() {
+		return membersDirty;
+	}
+
+	/**
+	 * Marks the Activity and its members as saved.
+	 */
+	public void markClean() {
+		this.dirty = false;
+		this.membersDirty = false;
+	}
 }
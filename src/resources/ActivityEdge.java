@@ -0,0 +1,66 @@
+package resources;
+
+/**
+ * ActivityEdge class:
+ *
+ * This class identifies a dependency between two Activities by their ids, the
+ * same way a tuple of the activity_edge_relationship table does. An
+ * ActivityEdge (X, Y) means Activity X preceeds Activity Y. Unlike the edges
+ * of the activityGraph, an ActivityEdge stays meaningful after the edge or its
+ * Activities have been removed from the graph, which makes it usable to track
+ * changes that still have to be saved.
+ */
+public final class ActivityEdge {
+
+	private final int fromId;
+	private final int toId;
+
+	/**
+	 * Parameterized constructor.
+	 *
+	 * @param fromId
+	 *            id of the origin Activity
+	 * @param toId
+	 *            id of the dependent Activity
+	 */
+	public ActivityEdge(int fromId, int toId) {
+		this.fromId = fromId;
+		this.toId = toId;
+	}
+
+	/**
+	 * Getter for fromId
+	 *
+	 * @return int id of the origin Activity
+	 */
+	public int getFromId() {
+		return fromId;
+	}
+
+	/**
+	 * Getter for toId
+	 *
+	 * @return int id of the dependent Activity
+	 */
+	public int getToId() {
+		return toId;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof ActivityEdge))
+			return false;
+		ActivityEdge other = (ActivityEdge) o;
+		return fromId == other.fromId && toId == other.toId;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * fromId + toId;
+	}
+
+	@Override
+	public String toString() {
+		return fromId + " -> " + toId;
+	}
+}
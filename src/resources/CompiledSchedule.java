@@ -0,0 +1,328 @@
+package resources;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.jgraph.graph.DefaultEdge;
+import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
+
+/**
+ * The CompiledSchedule class holds the activity graph of a project in flat
+ * arrays so it can be scheduled over and over without touching the graph or
+ * the Activities. Each Activity gets an index in topological order, its
+ * predecessors and successors are stored as index ranges of shared arrays
+ * (compressed sparse rows), and its durations and computed times are
+ * columns of doubles.
+ *
+ * run applies the rules of the ScheduleEngine with one loop forward and one
+ * loop backward over the indices, allocating nothing, so durations
+ * can be changed with setDuration and the schedule run again for what-if
+ * analysis. writeBack copies the results to the Activities. The structure is
+ * fixed when the schedule is compiled; after Activities or dependencies are
+ * added or removed it must be compiled again.
+ */
+public final class CompiledSchedule {
+
+	private final Activities[] activities;
+	// by identity, as the Activities of a graph are distinct objects
+	private final IdentityHashMap<Activities, Integer> indexOf;
+
+	// the predecessors of i are predecessors[predecessorStart[i]] to predecessors[predecessorStart[i + 1] - 1]
+	private final int[] predecessorStart;
+	private final int[] predecessors;
+	private final int[] successorStart;
+	private final int[] successors;
+
+	private final double[] duration;
+	private final double[] expectedDuration;
+	private final double[] standardDeviation;
+
+	private final int[] depth;
+	private final double[] earliestStart;
+	private final double[] earliestFinish;
+	private final double[] latestStart;
+	private final double[] latestFinish;
+	private final double[] activityFloat;
+	private final double[] expectedDate;
+	private final double[] expectedStartDate;
+	private final double[] expectedFinishDate;
+	private final double[] standardDeviationEvent;
+	private double finish;
+
+	private CompiledSchedule(DirectedAcyclicGraph<Activities, DefaultEdge> graph, List<Activities> order) {
+		int count = order.size();
+		activities = order.toArray(new Activities[count]);
+		indexOf = new IdentityHashMap<Activities, Integer>(count);
+		for (int i = 0; i < count; i++)
+			indexOf.put(activities[i], i);
+
+		predecessorStart = new int[count + 1];
+		successorStart = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			predecessorStart[i + 1] = predecessorStart[i] + graph.inDegreeOf(activities[i]);
+			successorStart[i + 1] = successorStart[i] + graph.outDegreeOf(activities[i]);
+		}
+
+		predecessors = new int[predecessorStart[count]];
+		successors = new int[successorStart[count]];
+		for (int i = 0; i < count; i++) {
+			int next = predecessorStart[i];
+			for (DefaultEdge e : graph.incomingEdgesOf(activities[i]))
+				predecessors[next++] = indexOf.get(graph.getEdgeSource(e));
+			next = successorStart[i];
+			for (DefaultEdge e : graph.outgoingEdgesOf(activities[i]))
+				successors[next++] = indexOf.get(graph.getEdgeTarget(e));
+		}
+
+		duration = new double[count];
+		expectedDuration = new double[count];
+		standardDeviation = new double[count];
+		depth = new int[count];
+		earliestStart = new double[count];
+		earliestFinish = new double[count];
+		latestStart = new double[count];
+		latestFinish = new double[count];
+		activityFloat = new double[count];
+		expectedDate = new double[count];
+		expectedStartDate = new double[count];
+		expectedFinishDate = new double[count];
+		standardDeviationEvent = new double[count];
+		readDurations();
+	}
+
+	/**
+	 * Method used to compile the activity graph of a project.
+	 *
+	 * @param graph
+	 *            the activity graph of a project
+	 * @return the compiled schedule, with the current durations of the
+	 *         Activities
+	 */
+	public static CompiledSchedule compile(DirectedAcyclicGraph<Activities, DefaultEdge> graph) {
+		return new CompiledSchedule(graph, ScheduleEngine.topologicalOrder(graph));
+	}
+
+	/**
+	 * Method used to read the durations and PERT times of the Activities
+	 * again, after they were edited.
+	 */
+	public void readDurations() {
+		for (int i = 0; i < activities.length; i++) {
+			duration[i] = activities[i].getDuration();
+			expectedDuration[i] = activities[i].getExpectedDuration();
+			standardDeviation[i] = activities[i].getStandardDerivation();
+		}
+	}
+
+	/**
+	 * Method used to compute the depth, the earliest and latest times, the
+	 * float and the PERT values of every Activity. The results stay in the
+	 * schedule until writeBack.
+	 *
+	 * @return the project finish, 0 if there are no Activities
+	 */
+	public double run() {
+		int count = activities.length;
+		finish = 0;
+
+		for (int i = 0; i < count; i++) {
+			int first = predecessorStart[i];
+			int last = predecessorStart[i + 1];
+
+			// an activity without predecessors follows the project start
+			if (first == last) {
+				depth[i] = 0;
+				earliestStart[i] = 0;
+				earliestFinish[i] = duration[i];
+				expectedDate[i] = 0;
+				expectedFinishDate[i] = expectedDuration[i];
+				standardDeviationEvent[i] = 0;
+			} else {
+				int deepest = 0;
+				double highestEF = 0;
+				double highestExpectedDuration = 0;
+				double lowestExpectedDuration = ScheduleEngine.MAX_EXPECTED_DURATION;
+				double highestStandardDeviation = 0;
+				for (int p = first; p < last; p++) {
+					int predecessor = predecessors[p];
+					deepest = Math.max(deepest, depth[predecessor] + 1);
+					highestEF = Math.max(highestEF, earliestFinish[predecessor]);
+					highestExpectedDuration = Math.max(highestExpectedDuration, expectedDuration[predecessor]);
+					lowestExpectedDuration = Math.min(lowestExpectedDuration, expectedDuration[predecessor]);
+
+					highestStandardDeviation = Math.max(highestStandardDeviation,
+							ScheduleEngine.deviation(standardDeviation[predecessor], standardDeviationEvent[predecessor]));
+				}
+
+				depth[i] = deepest;
+				earliestStart[i] = highestEF;
+				earliestFinish[i] = highestEF + duration[i];
+				expectedDate[i] = highestExpectedDuration;
+				expectedStartDate[i] = lowestExpectedDuration;
+				expectedFinishDate[i] = lowestExpectedDuration + expectedDuration[i];
+				standardDeviationEvent[i] = highestStandardDeviation;
+			}
+			finish = Math.max(finish, earliestFinish[i]);
+		}
+
+		for (int i = count - 1; i >= 0; i--) {
+			int first = successorStart[i];
+			int last = successorStart[i + 1];
+
+			// an activity without successors precedes the project finish
+			double minLatestStart = finish;
+			if (first < last) {
+				minLatestStart = ScheduleEngine.MAX_LATEST_START;
+				for (int s = first; s < last; s++)
+					minLatestStart = Math.min(minLatestStart, latestStart[successors[s]]);
+			}
+
+			latestFinish[i] = minLatestStart;
+			latestStart[i] = minLatestStart - duration[i];
+			activityFloat[i] = minLatestStart - duration[i] - earliestStart[i];
+		}
+		return finish;
+	}
+
+	/**
+	 * Method used to copy the results of the last run to the Activities.
+	 */
+	public void writeBack() {
+		for (int i = 0; i < activities.length; i++) {
+			Activities activity = activities[i];
+			activity.setDepth(depth[i]);
+			activity.setEarliestStart(earliestStart[i]);
+			activity.setEarliestFinish(earliestFinish[i]);
+			activity.setLatestStart(latestStart[i]);
+			activity.setLatestFinish(latestFinish[i]);
+			activity.setActivityFloat(activityFloat[i]);
+			activity.setExpectedDate(expectedDate[i]);
+			activity.setExpectedFinishDate(expectedFinishDate[i]);
+			activity.setStandardDeviationEvent(standardDeviationEvent[i]);
+			// the expected start of an activity without predecessors is not computed
+			if (predecessorStart[i] < predecessorStart[i + 1])
+				activity.setExpectedStartDate(expectedStartDate[i]);
+		}
+	}
+
+	/**
+	 * Method used to change the duration of an Activity for the next run,
+	 * without changing the Activity.
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @param days
+	 *            the duration
+	 */
+	public void setDuration(int index, double days) {
+		duration[index] = days;
+	}
+
+	/**
+	 * Returns the index of an Activity in the schedule.
+	 *
+	 * @param activity
+	 *            the Activity
+	 * @return its index, or -1 if it was not in the graph when compiled
+	 */
+	public int indexOf(Activities activity) {
+		Integer index = indexOf.get(activity);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Getter for the number of Activities
+	 *
+	 * @return number of Activities in the schedule
+	 */
+	public int size() {
+		return activities.length;
+	}
+
+	/**
+	 * Returns the Activity at an index, the indices being in topological
+	 * order.
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return the Activity
+	 */
+	public Activities getActivity(int index) {
+		return activities[index];
+	}
+
+	/**
+	 * Getter for finish
+	 *
+	 * @return the project finish computed by the last run
+	 */
+	public double getFinish() {
+		return finish;
+	}
+
+	/**
+	 * Getter for the depth of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its depth as of the last run
+	 */
+	public int getDepth(int index) {
+		return depth[index];
+	}
+
+	/**
+	 * Getter for the earliest start of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its earliest start as of the last run
+	 */
+	public double getEarliestStart(int index) {
+		return earliestStart[index];
+	}
+
+	/**
+	 * Getter for the earliest finish of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its earliest finish as of the last run
+	 */
+	public double getEarliestFinish(int index) {
+		return earliestFinish[index];
+	}
+
+	/**
+	 * Getter for the latest start of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its latest start as of the last run
+	 */
+	public double getLatestStart(int index) {
+		return latestStart[index];
+	}
+
+	/**
+	 * Getter for the latest finish of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its latest finish as of the last run
+	 */
+	public double getLatestFinish(int index) {
+		return latestFinish[index];
+	}
+
+	/**
+	 * Getter for the float of an Activity
+	 *
+	 * @param index
+	 *            index of the Activity
+	 * @return its float as of the last run
+	 */
+	public double getActivityFloat(int index) {
+		return activityFloat[index];
+	}
+}
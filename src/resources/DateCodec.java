@@ -0,0 +1,178 @@
+package resources;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * DateCodec class:
+ *
+ * This class converts Activity dates between Date objects, the dd-MM-yyyy
+ * text typed in the forms, and epoch days, the number of days since
+ * 01-01-1970 under which dates are stored in the database.
+ *
+ * Unlike SimpleDateFormat, a DateCodec is immutable and can be shared by any
+ * number of threads. Parsing is lenient in the same way as the
+ * SimpleDateFormat it replaces: a day or month out of range rolls over into
+ * the next month or year, so "07-22-2016" is the 7th of October 2017.
+ *
+ * Dates are midnights in the default time zone, like the ones SimpleDateFormat
+ * produced.
+ */
+public final class DateCodec {
+
+	// the format of the forms and of the dates stored before epoch days
+	public static final DateCodec DAY_MONTH_YEAR = new DateCodec('-');
+
+	// calendars are not thread safe, each thread uses its own
+	private static final ThreadLocal<GregorianCalendar> calendars = new ThreadLocal<GregorianCalendar>() {
+		@Override
+		protected GregorianCalendar initialValue() {
+			GregorianCalendar calendar = new GregorianCalendar();
+			calendar.setLenient(true);
+			// Gregorian rules for every year, so epoch days match the calendar fields
+			calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+			return calendar;
+		}
+	};
+
+	private final char separator;
+
+	/**
+	 * Parameterized constructor.
+	 *
+	 * @param separator
+	 *            character between the day, month and year
+	 */
+	public DateCodec(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * Parses a date written day, month then year.
+	 *
+	 * @param text
+	 *            the date, e.g. "22-07-2016"
+	 * @return the date at midnight
+	 * @throws ParseException
+	 *             if the text is not three numbers separated by the separator
+	 */
+	public Date parse(String text) throws ParseException {
+		int[] fields = new int[3];
+		int position = 0;
+		for (int i = 0; i < fields.length; i++) {
+			int start = position;
+			int value = 0;
+			while (position < text.length() && Character.isDigit(text.charAt(position))) {
+				value = value * 10 + (text.charAt(position) - '0');
+				position++;
+			}
+			if (position == start)
+				throw new ParseException("Unparseable date: \"" + text + "\"", position);
+			fields[i] = value;
+
+			if (i < fields.length - 1) {
+				if (position >= text.length() || text.charAt(position) != separator)
+					throw new ParseException("Unparseable date: \"" + text + "\"", position);
+				position++;
+			}
+		}
+		return toDate(fields[2], fields[1], fields[0]);
+	}
+
+	/**
+	 * Formats a date as day, month then year, e.g. "22-07-2016".
+	 *
+	 * @param date
+	 *            the date to format
+	 * @return the formatted date
+	 */
+	public String format(Date date) {
+		Calendar calendar = calendars.get();
+		calendar.setTime(date);
+
+		StringBuilder text = new StringBuilder(10);
+		pad(text, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		text.append(separator);
+		pad(text, calendar.get(Calendar.MONTH) + 1, 2);
+		text.append(separator);
+		pad(text, calendar.get(Calendar.YEAR), 4);
+		return text.toString();
+	}
+
+	/**
+	 * Parses a date straight to its epoch day.
+	 *
+	 * @param text
+	 *            the date, e.g. "22-07-2016"
+	 * @return the number of days between 01-01-1970 and the date
+	 * @throws ParseException
+	 *             if the text is not a date
+	 */
+	public int parseEpochDay(String text) throws ParseException {
+		return toEpochDay(parse(text));
+	}
+
+	/**
+	 * Returns the epoch day of a date, in the default time zone.
+	 *
+	 * @param date
+	 *            the date
+	 * @return the number of days between 01-01-1970 and the date
+	 */
+	public static int toEpochDay(Date date) {
+		Calendar calendar = calendars.get();
+		calendar.setTime(date);
+		return (int) daysFromCivil(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				calendar.get(Calendar.DAY_OF_MONTH));
+	}
+
+	/**
+	 * Returns the midnight, in the default time zone, of an epoch day.
+	 *
+	 * @param epochDay
+	 *            the number of days since 01-01-1970
+	 * @return the date
+	 */
+	public static Date fromEpochDay(long epochDay) {
+		// civil date of the day, see daysFromCivil
+		long z = epochDay + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+		return toDate(year, month, day);
+	}
+
+	private static Date toDate(int year, int month, int day) {
+		Calendar calendar = calendars.get();
+		calendar.clear();
+		calendar.set(year, month - 1, day);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Number of days between 01-01-1970 and a date of the proleptic Gregorian
+	 * calendar.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static void pad(StringBuilder text, int value, int width) {
+		String digits = Integer.toString(value);
+		for (int i = digits.length(); i < width; i++)
+			text.append('0');
+		text.append(digits);
+	}
+}
@@ -0,0 +1,31 @@
+package resources;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The IdCounter class hands out ids from a counter in memory, starting at 1.
+ * It is the id source of stores that are not shared with other clients, and
+ * the one new Projects and Activities use until another is set.
+ */
+public class IdCounter implements IdSource {
+
+	private final AtomicInteger last = new AtomicInteger();
+
+	@Override
+	public int nextId() {
+		return last.incrementAndGet();
+	}
+
+	/**
+	 * Method used to move the counter past an id already in use, so it is
+	 * never handed out.
+	 *
+	 * @param id
+	 *            the id in use
+	 */
+	public void skip(int id) {
+		int current = last.get();
+		while (current < id && !last.compareAndSet(current, id))
+			current = last.get();
+	}
+}
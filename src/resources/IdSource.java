@@ -0,0 +1,19 @@
+package resources;
+
+/**
+ * The IdSource interface is implemented by the sources that new Projects and
+ * Activities get their id from. Each repository provides the sources matching
+ * its store, which DataResource installs with Projects.setIdSource and
+ * Activities.setIdSource when the repository is used.
+ *
+ * Implementations must be safe to call from any thread.
+ */
+public interface IdSource {
+
+	/**
+	 * Returns a new id.
+	 *
+	 * @return an id no other entity of the same kind has or will get
+	 */
+	int nextId();
+}
@@ -0,0 +1,362 @@
+package resources;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.jgraph.graph.DefaultEdge;
+import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
+
+/**
+ * The IncrementalScheduler class keeps the times of the Activities of a
+ * project graph up to date after edits without scheduling the whole graph
+ * again. The project reports the dependencies it changes, and update finds
+ * the Activities whose duration or PERT times changed by comparing them with
+ * the values they were last scheduled with, so an edit is picked up whichever
+ * setter made it. update then recomputes the earliest times forward from the
+ * changed Activities, in order of depth, and
+ * the latest times backward, in reverse order of depth, going on to the
+ * successors or predecessors of an Activity only if its times changed.
+ *
+ * When the predecessors of an Activity change, the depths of it and its
+ * descendants are repaired first so depth remains a topological order. The
+ * project finish is the largest earliest finish, kept in a count of the
+ * earliest finishes of all Activities; when it moves, every Activity without
+ * successors is recomputed in the backward pass.
+ */
+class IncrementalScheduler {
+
+	private static final Comparator<Activities> BY_DEPTH = new Comparator<Activities>() {
+		@Override
+		public int compare(Activities a, Activities b) {
+			return Integer.compare(a.getDepth(), b.getDepth());
+		}
+	};
+
+	private final DirectedAcyclicGraph<Activities, DefaultEdge> graph;
+	private boolean scheduled;
+	private double finish;
+	// number of Activities recomputed by the last schedule or update
+	private int recomputed;
+
+	// Activities whose duration, PERT times or dependencies changed since the last update
+	private final HashSet<Activities> changed = new HashSet<Activities>();
+	// duration, expected duration and standard deviation each Activity was last scheduled with
+	private final HashMap<Activities, double[]> inputs = new HashMap<Activities, double[]>();
+	// Activities whose predecessors changed, or that are new; their depth may be stale
+	private final HashSet<Activities> predecessorsChanged = new HashSet<Activities>();
+	private final HashSet<Activities> sinks = new HashSet<Activities>();
+	// earliest finish of each Activity, and how many Activities finish at each time
+	private final HashMap<Activities, Double> finishOf = new HashMap<Activities, Double>();
+	private final TreeMap<Double, Integer> finishes = new TreeMap<Double, Integer>();
+
+	/**
+	 * Creates a scheduler for the given graph. Nothing is scheduled until
+	 * schedule is called.
+	 *
+	 * @param graph
+	 *            the activity graph of a project
+	 */
+	IncrementalScheduler(DirectedAcyclicGraph<Activities, DefaultEdge> graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Method used to schedule the whole graph with a CompiledSchedule, setting
+	 * the times and depth of every Activity.
+	 *
+	 * @return the Activities of each depth, from depth 0
+	 */
+	List<List<Activities>> schedule() {
+		CompiledSchedule compiled = CompiledSchedule.compile(graph);
+		finish = compiled.run();
+		compiled.writeBack();
+
+		changed.clear();
+		predecessorsChanged.clear();
+		sinks.clear();
+		finishOf.clear();
+		finishes.clear();
+		inputs.clear();
+		List<List<Activities>> levels = new ArrayList<List<Activities>>();
+		for (int i = 0; i < compiled.size(); i++) {
+			Activities activity = compiled.getActivity(i);
+			if (compiled.getDepth(i) == levels.size())
+				levels.add(new ArrayList<Activities>());
+			levels.get(compiled.getDepth(i)).add(activity);
+
+			count(activity);
+			record(activity);
+			if (graph.outDegreeOf(activity) == 0)
+				sinks.add(activity);
+		}
+		recomputed = compiled.size() * 2;
+		scheduled = true;
+		return levels;
+	}
+
+	/**
+	 * Method used to recompute the times of the Activities affected by the
+	 * changes since the last schedule or update: the dependencies reported,
+	 * and the durations and PERT times that differ from those last scheduled.
+	 * The graph must have been scheduled.
+	 *
+	 * @return true if the depth of any Activity changed
+	 */
+	boolean update() {
+		recomputed = 0;
+		changed.retainAll(graph.vertexSet());
+		predecessorsChanged.retainAll(graph.vertexSet());
+		for (Activities activity : graph.vertexSet()) {
+			if (!changed.contains(activity) && !Arrays.equals(inputs.get(activity), inputsOf(activity)))
+				changed.add(activity);
+		}
+
+		boolean depthsChanged = !predecessorsChanged.isEmpty() && repairDepths();
+		for (Activities activity : changed) {
+			if (graph.outDegreeOf(activity) == 0)
+				sinks.add(activity);
+			else
+				sinks.remove(activity);
+		}
+
+		HashSet<Activities> backwardSeeds = forward();
+		double last = finishes.isEmpty() ? 0 : finishes.lastKey();
+		if (last != finish) {
+			finish = last;
+			backwardSeeds.addAll(sinks);
+		}
+		backward(backwardSeeds);
+
+		changed.clear();
+		predecessorsChanged.clear();
+		return depthsChanged;
+	}
+
+	/**
+	 * Method used to report an Activity whose successors changed.
+	 *
+	 * @param activity
+	 *            the changed Activity
+	 */
+	void markChanged(Activities activity) {
+		if (scheduled)
+			changed.add(activity);
+	}
+
+	/**
+	 * Method used to report an Activity whose predecessors changed, or that
+	 * was just added to the graph.
+	 *
+	 * @param activity
+	 *            the changed Activity
+	 */
+	void markPredecessorsChanged(Activities activity) {
+		if (scheduled) {
+			changed.add(activity);
+			predecessorsChanged.add(activity);
+		}
+	}
+
+	/**
+	 * Method used to report an Activity about to be removed from the graph,
+	 * along with its dependencies.
+	 *
+	 * @param activity
+	 *            the Activity, still in the graph
+	 */
+	void markRemoved(Activities activity) {
+		if (!scheduled)
+			return;
+
+		for (DefaultEdge e : graph.incomingEdgesOf(activity))
+			markChanged(graph.getEdgeSource(e));
+		for (DefaultEdge e : graph.outgoingEdgesOf(activity))
+			markPredecessorsChanged(graph.getEdgeTarget(e));
+
+		changed.remove(activity);
+		predecessorsChanged.remove(activity);
+		sinks.remove(activity);
+		inputs.remove(activity);
+		Double old = finishOf.remove(activity);
+		if (old != null)
+			uncount(old);
+	}
+
+	/**
+	 * Getter for scheduled
+	 *
+	 * @return true once the whole graph has been scheduled
+	 */
+	boolean isScheduled() {
+		return scheduled;
+	}
+
+	/**
+	 * Getter for finish
+	 *
+	 * @return the project finish as of the last schedule or update
+	 */
+	double getFinish() {
+		return finish;
+	}
+
+	/**
+	 * Getter for recomputed
+	 *
+	 * @return number of Activities whose times the last schedule or update
+	 *         recomputed, counting each pass
+	 */
+	int getRecomputed() {
+		return recomputed;
+	}
+
+	// sets the depth of the activities whose predecessors changed and of their descendants, the
+	// depth of any other activity cannot change
+	private boolean repairDepths() {
+		HashSet<Activities> region = new HashSet<Activities>();
+		ArrayDeque<Activities> stack = new ArrayDeque<Activities>();
+		for (Activities activity : predecessorsChanged) {
+			region.add(activity);
+			stack.push(activity);
+		}
+		while (!stack.isEmpty()) {
+			for (DefaultEdge e : graph.outgoingEdgesOf(stack.pop())) {
+				Activities successor = graph.getEdgeTarget(e);
+				if (region.add(successor))
+					stack.push(successor);
+			}
+		}
+
+		// in topological order within the region, the depths outside it are already right
+		HashMap<Activities, Integer> waiting = new HashMap<Activities, Integer>();
+		ArrayDeque<Activities> ready = new ArrayDeque<Activities>();
+		for (Activities activity : region) {
+			int predecessors = 0;
+			for (DefaultEdge e : graph.incomingEdgesOf(activity)) {
+				if (region.contains(graph.getEdgeSource(e)))
+					predecessors++;
+			}
+			if (predecessors == 0)
+				ready.add(activity);
+			else
+				waiting.put(activity, predecessors);
+		}
+
+		boolean depthsChanged = false;
+		while (!ready.isEmpty()) {
+			Activities activity = ready.poll();
+			int depth = 0;
+			for (DefaultEdge e : graph.incomingEdgesOf(activity))
+				depth = Math.max(depth, graph.getEdgeSource(e).getDepth() + 1);
+			if (depth != activity.getDepth()) {
+				activity.setDepth(depth);
+				depthsChanged = true;
+			}
+
+			for (DefaultEdge e : graph.outgoingEdgesOf(activity)) {
+				Activities successor = graph.getEdgeTarget(e);
+				int predecessors = waiting.get(successor) - 1;
+				if (predecessors == 0) {
+					waiting.remove(successor);
+					ready.add(successor);
+				} else {
+					waiting.put(successor, predecessors);
+				}
+			}
+		}
+		return depthsChanged;
+	}
+
+	// recomputes the earliest times from the changed activities, returns those whose float may have changed
+	private HashSet<Activities> forward() {
+		PriorityQueue<Activities> queue = new PriorityQueue<Activities>(Math.max(1, changed.size()), BY_DEPTH);
+		HashSet<Activities> queued = new HashSet<Activities>(changed);
+		HashSet<Activities> floatChanged = new HashSet<Activities>(changed);
+		queue.addAll(changed);
+
+		while (!queue.isEmpty()) {
+			Activities activity = queue.poll();
+			double earliestStart = activity.getEarliestStart();
+			double earliestFinish = activity.getEarliestFinish();
+			double deviation = activity.getStandardDeviationEvent();
+			ScheduleEngine.forward(graph, activity);
+			count(activity);
+			record(activity);
+			recomputed++;
+
+			if (earliestStart != activity.getEarliestStart())
+				floatChanged.add(activity);
+			// successors read the earliest finish, the deviation and the PERT times of their predecessors
+			if (changed.contains(activity) || earliestFinish != activity.getEarliestFinish()
+					|| deviation != activity.getStandardDeviationEvent()) {
+				for (DefaultEdge e : graph.outgoingEdgesOf(activity)) {
+					Activities successor = graph.getEdgeTarget(e);
+					if (queued.add(successor))
+						queue.add(successor);
+				}
+			}
+		}
+		return floatChanged;
+	}
+
+	// recomputes the latest times from the given activities towards the roots
+	private void backward(HashSet<Activities> seeds) {
+		PriorityQueue<Activities> queue = new PriorityQueue<Activities>(Math.max(1, seeds.size()),
+				Collections.reverseOrder(BY_DEPTH));
+		HashSet<Activities> queued = new HashSet<Activities>(seeds);
+		queue.addAll(seeds);
+
+		while (!queue.isEmpty()) {
+			Activities activity = queue.poll();
+			double latestStart = activity.getLatestStart();
+			ScheduleEngine.backward(graph, activity, finish);
+			recomputed++;
+
+			if (latestStart != activity.getLatestStart()) {
+				for (DefaultEdge e : graph.incomingEdgesOf(activity)) {
+					Activities predecessor = graph.getEdgeSource(e);
+					if (queued.add(predecessor))
+						queue.add(predecessor);
+				}
+			}
+		}
+	}
+
+	// records the current earliest finish of an activity in the finish counts
+	private void count(Activities activity) {
+		double earliestFinish = activity.getEarliestFinish();
+		Double old = finishOf.put(activity, earliestFinish);
+		if (old != null)
+			uncount(old);
+		Integer activities = finishes.get(earliestFinish);
+		finishes.put(earliestFinish, activities == null ? 1 : activities + 1);
+	}
+
+	private void record(Activities activity) {
+		inputs.put(activity, inputsOf(activity));
+	}
+
+	// the values of an activity the passes read, besides the times of its neighbours
+	private static double[] inputsOf(Activities activity) {
+		return new double[] { activity.getDuration(), activity.getExpectedDuration(),
+				activity.getStandardDerivation() };
+	}
+
+	private void uncount(double earliestFinish) {
+		Integer activities = finishes.get(earliestFinish);
+		if (activities == null)
+			return;
+		if (activities == 1)
+			finishes.remove(earliestFinish);
+		else
+			finishes.put(earliestFinish, activities - 1);
+	}
+}
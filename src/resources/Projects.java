@@ -9,7 +9,9 @@ import org.jgrapht.graph.DefaultDirectedGraph;
 import saver_loader.DataResource;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 
 /**
@@ -22,8 +24,9 @@ import java.util.HashSet;
  * Activities are held in a DefaultDirectedGraph from the JGraphT library. Activities are vertices and DefaultEdges are edges.
  * The graph structure allows for dependencies among acitivities to be set by the edges.
  * The ArrayList of Activities works in parallel and allows for values of Activities to be changed (this may be refactored later on).
- * Projects hold a static projectCount variable which is automatically incremented and used to set id when new objects are created.
- * This static variable is set based on the highest project id stored in the database, and ensures that id is always unique.
+ * The Activities of the list are also indexed by id and by label, so they are found without scanning the list.
+ * Listed Activities must therefore be relabeled with relabelActivity.
+ * New Projects get their id from the IdSource set with setIdSource, the one of the repository in use, which ensures that id is always unique.
  * Many of the methods in this class are used for iterating the graph, which is useful for future functionalities.
  * 
  * JGraphT Documentation: http://jgrapht.org/javadoc/
@@ -34,7 +37,9 @@ import java.util.HashSet;
 
 public class Projects {
 
-	private static int projectCount = 0;
+	// source of the ids of new Projects
+	private static volatile IdSource idSource = new IdCounter();
+
 	private int id;
 	private String projectName;
 	private ArrayList<Users> userList;
@@ -45,10 +50,28 @@ public class Projects {
 	private double budget, earnedValue;
 	private String description;
 	private int maxDepth;
+	private double projectFinish;
+	private List<List<Activities>> levels = new ArrayList<List<Activities>>();
+	// keeps the times up to date between calls to updateTimes, null until the first calculateTimes
+	private IncrementalScheduler scheduler;
 	
 	private int budegetAtCompletion;
 	private double percentScheduledForCompletion;
 	private int actualCosts;
+	
+	// changes not yet saved to the database
+	private boolean dirty;
+	private HashSet<ActivityEdge> addedEdges = new HashSet<ActivityEdge>();
+	private HashSet<ActivityEdge> removedEdges = new HashSet<ActivityEdge>();
+	// version of the projects row this Project was loaded from or last saved as
+	private int version;
+
+	// false while only the project's own fields have been loaded from the database
+	private boolean loaded = true;
+
+	// indexes of the activityList, the first Activity of the list wins when keys are shared
+	private HashMap<Integer, Activities> activitiesById = new HashMap<Integer, Activities>();
+	private HashMap<String, Activities> activitiesByLabel = new HashMap<String, Activities>();
 
 	
 	/**
@@ -73,7 +96,7 @@ public class Projects {
 	
 	/**
 	 * Parameterized constructor used for creating new Projects.
-	 * The value for id is set to an automatically incrementing projectCount, which is initialized upon load from database.
+	 * The value for id is allocated by the IdSource of Projects, which ensures that id is always unique.
 	 * The Activity graph and list is initalized to an empty list, as no activities are associated yet.
 	 * 
 	 * @param projectName value for projectName
@@ -85,7 +108,7 @@ public class Projects {
 	 */
 	public Projects(String projectName, ArrayList<Users> userList, String date, int managerID,
 			String description, double budget) {
-		this.id = ++projectCount;
+		this.id = idSource.nextId();
 		this.projectName = projectName;
 		this.userList = userList;
 		this.date = date;
@@ -94,6 +117,16 @@ public class Projects {
 		this.managerID = managerID;
 		this.budget = budget;
 		this.description = description;
+		this.dirty = true;
+	}
+
+	/**
+	 * Setter for idSource
+	 * 
+	 * @param source source of the ids of the Projects created from now on
+	 */
+	public static void setIdSource(IdSource source) {
+		idSource = source;
 	}
 
 	/**
@@ -101,6 +134,7 @@ public class Projects {
 	 * Not be used when creating NEW Projects, but rather for creating Projects existing in the database.
 	 * Does not automatically set id attribute.
 	 * Does not set the Activities graph or list. As such, all Activities must be added and all dependencies set.
+	 * Once they are, markClean should be called so the loaded dependencies are not considered unsaved changes.
 	 * 
 	 * @param projectName value for projectName
 	 * @param userList value for userList
@@ -137,6 +171,7 @@ public class Projects {
 	 */
 	public void setUserList(ArrayList<Users> userList) {
 		this.userList = userList;
+		this.dirty = true;
 	}
 
 	/**
@@ -153,6 +188,7 @@ public class Projects {
 	 */
 	public void setManagerID(int managerID) {
 		this.managerID = managerID;
+		this.dirty = true;
 	}
 
 	/**
@@ -169,6 +205,7 @@ public class Projects {
 	 */
 	public void setBudget(double budget) {
 		this.budget = budget;
+		this.dirty = true;
 	}
 
 	/**
@@ -185,22 +222,7 @@ public class Projects {
 	 */
 	public void setDescription(String description) {
 		this.description = description;
-	}
-	
-	/**
-	 * Getter for projectCount
-	 * @return int projectCount
-	 */
-	public static int getProjectCount() {
-		return projectCount;
-	}
-
-	/**
-	 * Setter for projectcount
-	 * @param projectCount value for projectCount
-	 */
-	public static void setProjectCount(int projectCount) {
-		Projects.projectCount = projectCount;
+		this.dirty = true;
 	}
 	
 	/**
@@ -217,6 +239,7 @@ public class Projects {
 	 */
 	public void setId(int id) {
 		this.id = id;
+		this.dirty = true;
 	}
 
 	/**
@@ -233,6 +256,7 @@ public class Projects {
 	 */
 	public void setProjectName(String projectName) {
 		this.projectName = projectName;
+		this.dirty = true;
 	}
 
 	/**
@@ -249,6 +273,7 @@ public class Projects {
 	 */
 	public void setDate(String date) {
 		this.date = date;
+		this.dirty = true;
 	}
 
 	/**
@@ -265,6 +290,7 @@ public class Projects {
 	 */
 	public void setActivityGraph(DirectedAcyclicGraph<Activities, DefaultEdge> activityGraph) {
 		this.activityGraph = activityGraph;
+		this.scheduler = null;
 	}
 	
 	/**
@@ -281,6 +307,12 @@ public class Projects {
 	 */
 	public void setActivityList(ArrayList<Activities> activityList) {
 		this.activityList = activityList;
+		this.activitiesById.clear();
+		this.activitiesByLabel.clear();
+		if (activityList != null) {
+			for (Activities a : activityList)
+				indexActivity(a);
+		}
 	}
 
 	/**
@@ -290,6 +322,9 @@ public class Projects {
 	public void addActivity(Activities A) {
 		this.activityGraph.addVertex(A);
 		this.activityList.add(A);
+		indexActivity(A);
+		if (this.scheduler != null)
+			this.scheduler.markPredecessorsChanged(A);
 	}
 	
 	/**
@@ -300,6 +335,27 @@ public class Projects {
 	 */
 	public void addArrow(Activities A, Activities B) {
 		this.activityGraph.addEdge(A, B);
+		arrowChanged(A, B);
+		
+		ActivityEdge edge = new ActivityEdge(A.getId(), B.getId());
+		if (!this.removedEdges.remove(edge))
+			this.addedEdges.add(edge);
+	}
+	
+	/**
+	 * Removes the edge (dependency) between Activities in parameters, if any.
+	 * The removal is saved to the database the next time changes are flushed.
+	 * @param A Origin Activity
+	 * @param B Dependent Activity
+	 */
+	public void removeArrow(Activities A, Activities B) {
+		if (this.activityGraph.removeEdge(A, B) == null)
+			return;
+		arrowChanged(A, B);
+		
+		ActivityEdge edge = new ActivityEdge(A.getId(), B.getId());
+		if (!this.addedEdges.remove(edge))
+			this.removedEdges.add(edge);
 	}
 	
 	/**
@@ -590,35 +646,104 @@ public class Projects {
 	
 	/**
 	 * Gets an Activity from the activityList that has label equal to the String passed in parameters.
-	 * The value is fetched from the activityList.
-	 * The method will look for the Activity in activityList corresponding to Activity A passed in parameters, and return the value.
+	 * The Activity is fetched from the label index of the activityList.
 	 * @param l String label we wish to find in Activities
-	 * @return Activity with label l
+	 * @return first Activity of the activityList with label l, null if there is none
 	 */
 	public Activities getActivityByLabel(String l){
-		for(Activities a : this.activityList)
-		{
-			if (a.getLabel().equals(l))
-				return a;
-		}
+		Activities a = this.activitiesByLabel.get(l);
+		if (a != null && a.getLabel().equals(l))
+			return a;
+		return null;
+	}
+
+	/**
+	 * Gets an Activity from the activityList that has the id passed in parameters.
+	 * The Activity is fetched from the id index of the activityList.
+	 * @param activityId id we wish to find in Activities
+	 * @return Activity with the given id, null if there is none
+	 */
+	public Activities getActivityById(int activityId){
+		Activities a = this.activitiesById.get(activityId);
+		if (a != null && a.getId() == activityId)
+			return a;
 		return null;
 	}
+
+	/**
+	 * Changes the label of an Activity of the Project, keeping the label index of the activityList up to date.
+	 * @param A Activity to relabel
+	 * @param label new label of the Activity
+	 */
+	public void relabelActivity(Activities A, String label) {
+		unindexLabel(A);
+		A.setLabel(label);
+
+		// the first listed Activity with the label stays the indexed one
+		Activities current = this.activitiesByLabel.get(label);
+		int position = this.activityList.indexOf(A);
+		if (label != null && position >= 0 && (current == null || position < this.activityList.indexOf(current)))
+			this.activitiesByLabel.put(label, A);
+	}
 	
 	/**
 	 * Deletes an Activity from the Project.
-	 * Activity A is deleted from the activityGraph and activityList, as well as the database.
-	 * All incoming and outgoing edges from A are also removed from the graph and database.
+	 * Activity A is deleted from the activityGraph and activityList, as well as the activityRepository.
+	 * All incoming and outgoing edges from A are also removed from the graph and repository.
 	 * @param A Activity we wish to delete from project
 	 */
 	public void deleteActivity(Activities A) {
+		for (DefaultEdge e : this.getIncomingArrowsOfActivity(A))
+			this.addedEdges.remove(new ActivityEdge(this.getActivityBefore(e).getId(), A.getId()));
+		for (DefaultEdge e : this.getOutgoingArrowsOfActivity(A))
+			this.addedEdges.remove(new ActivityEdge(A.getId(), this.getActivityAfter(e).getId()));
+		if (this.scheduler != null)
+			this.scheduler.markRemoved(A);
+		
 		this.activityGraph.removeVertex(A);
 		this.activityList.remove(A);
-		DataResource.deleteActivity(A);
+		unindexActivity(A);
+		DataResource.activityRepository.deleteActivity(A);
+	}
+
+	private void indexActivity(Activities A) {
+		if (!this.activitiesById.containsKey(A.getId()))
+			this.activitiesById.put(A.getId(), A);
+		if (A.getLabel() != null && !this.activitiesByLabel.containsKey(A.getLabel()))
+			this.activitiesByLabel.put(A.getLabel(), A);
+	}
+
+	private void unindexActivity(Activities A) {
+		if (this.activitiesById.get(A.getId()) == A) {
+			this.activitiesById.remove(A.getId());
+			for (Activities a : this.activityList) {
+				if (a.getId() == A.getId()) {
+					this.activitiesById.put(a.getId(), a);
+					break;
+				}
+			}
+		}
+		unindexLabel(A);
+	}
+
+	// removes A from the label index, indexing the next listed Activity with the same label
+	private void unindexLabel(Activities A) {
+		String label = A.getLabel();
+		if (label == null || this.activitiesByLabel.get(label) != A)
+			return;
+
+		this.activitiesByLabel.remove(label);
+		for (Activities a : this.activityList) {
+			if (a != A && label.equals(a.getLabel())) {
+				this.activitiesByLabel.put(label, a);
+				break;
+			}
+		}
 	}
 	
 	/**
 	 * Removes all incoming edges from Activity passed in parameters.
-	 * All incoming edges from Activity A are removed from the activityGraph, as well as the database.
+	 * All incoming edges from Activity A are removed from the activityGraph, as well as the activityRepository.
 	 * @param A Activity who's incoming edges we wish to remove
 	 */
 	public void resetIncomingEdges(Activities A) {
@@ -629,7 +754,9 @@ public class Projects {
 									
 			Activities beforeEdge = this.getActivityBefore(e);
 			Activities afterEdge = this.getActivityAfter(e);
-			DataResource.deleteEdgeFromDB(beforeEdge.getId(), afterEdge.getId());
+			DataResource.activityRepository.deleteEdge(beforeEdge.getId(), afterEdge.getId());
+			this.addedEdges.remove(new ActivityEdge(beforeEdge.getId(), afterEdge.getId()));
+			arrowChanged(beforeEdge, afterEdge);
 		}
 		for(DefaultEdge e : tempSet)
 		{
@@ -643,20 +770,13 @@ public class Projects {
 	 * Currently calculates earliestStart and earliestFinish for all Activities in the project by doing a forward pass.
 	 */
 	public void calculateTimes() {
-		Activities rootNode = null;
-		
-		for(Activities node : getActivitySet()) {
-			if(this.activityGraph.inDegreeOf(node) == 0) {
-				rootNode = node;
-				break;
-			}
-		}
-		
-		findMaxDepth(rootNode, 0);
+		if (this.scheduler == null)
+			this.scheduler = new IncrementalScheduler(this.activityGraph);
 		
-		performForwardPass();
-
-		performBackwardPass();
+		// depth of each node: its longest path from any root
+		this.levels = this.scheduler.schedule();
+		this.maxDepth = this.levels.size() - 1;
+		this.projectFinish = this.scheduler.getFinish();
 		
 		performEarnedValueAnalysis();
 		
@@ -666,7 +786,56 @@ public class Projects {
 		
 	}
 	
+	/**
+	 * Brings the times of the Activities up to date after edits, recomputing only the Activities
+	 * whose times the edits can change. Adding, deleting or relinking Activities is tracked by
+	 * the Project, and Activities whose dates or PERT times changed are found by the scheduler.
+	 * The whole graph is scheduled if calculateTimes has not been called yet.
+	 */
+	public void updateTimes() {
+		if (this.scheduler == null || !this.scheduler.isScheduled()) {
+			calculateTimes();
+			return;
+		}
+		
+		// the levels are gathered again when next asked for
+		if (this.scheduler.update())
+			this.levels = null;
+		this.projectFinish = this.scheduler.getFinish();
+		
+		performEarnedValueAnalysis();
+	}
+	
+	/**
+	 * Compiles the activity graph into flat arrays that can be scheduled repeatedly, for what-if
+	 * analysis on large projects. The compiled schedule does not follow later edits to the graph.
+	 * @return the compiled schedule of the current activity graph
+	 */
+	public CompiledSchedule compileSchedule() {
+		return CompiledSchedule.compile(this.activityGraph);
+	}
+	
+	/**
+	 * Getter for the number of Activities the last calculateTimes or updateTimes recomputed,
+	 * counting the forward and backward passes separately
+	 * @return number of Activities recomputed
+	 */
+	public int getRescheduledCount() {
+		return this.scheduler == null ? 0 : this.scheduler.getRecomputed();
+	}
+	
+	// A gained or lost B as a successor
+	private void arrowChanged(Activities A, Activities B) {
+		if (this.scheduler != null) {
+			this.scheduler.markChanged(A);
+			this.scheduler.markPredecessorsChanged(B);
+		}
+	}
+	
 	private void performEarnedValueAnalysis() {
+		this.budegetAtCompletion = 0;
+		this.earnedValue = 0;
+		this.actualCosts = 0;
 		for (Activities activity : getActivitySet()) {
 			activity.calculateEarnedValue();
 			this.budegetAtCompletion += activity.getBudget();
@@ -678,164 +847,39 @@ public class Projects {
 		this.percentScheduledForCompletion = (this.budget / this.budegetAtCompletion);
 	}
 	
-	// performs backward pass calculations on the current activity graph
-	private void performForwardPass() {
-		Set<Activities> temp = getActivitySet();
-		Activities[] nodes = temp.toArray(new Activities[temp.size()]);
-			
-		//check if the current node can be processed
-		for (int currentDepth = 0; currentDepth <= maxDepth; currentDepth++) {
-			
-			// for each depth, find the relevant nodes
-			for (int i = 0; i < nodes.length; i++) {
-				// checks if the node resides on the current level
-				if (nodes[i].getDepth() == currentDepth) {
-
-					// check if the node is the first activity
-					if (this.activityGraph.inDegreeOf(nodes[i]) == 0) {
-						setES(nodes[i], 0);
-						setEF(nodes[i], nodes[i].getDuration());
-						setExpectedDate(nodes[i], 0);
-						setExpectedFinishDate(nodes[i], nodes[i].getExpectedDuration());
-						setStandardDeviation(nodes[i], 0);
-					}
-					// otherwise process it
-					else {
-						Set<DefaultEdge> inEdges = getIncomingArrowsOfActivity(nodes[i]);
-						double highestEF = 0;
-						double highestExpectedDuration = 0;
-						double lowestExpectedDuration = 99999;
-						double highestStandardDeviation = 0;
-						for (DefaultEdge e : inEdges)
-						{
-							Activities currentParentNode = getActivityBefore(e);  
-							if (currentParentNode.getEarliestFinish() >= highestEF)
-								highestEF = currentParentNode.getEarliestFinish();
-							if (currentParentNode.getExpectedDuration() >= highestExpectedDuration)
-								highestExpectedDuration = currentParentNode.getExpectedDuration();
-							if (currentParentNode.getExpectedDuration() <= lowestExpectedDuration)
-								lowestExpectedDuration = currentParentNode.getExpectedDuration();
-							
-							double currentStd = Math.sqrt(Math.pow(currentParentNode.getStandardDerivation(), 2) + Math.pow(currentParentNode.getStandardDeviationEvent(),2));
-							if(currentStd > highestStandardDeviation)
-								highestStandardDeviation = currentStd;
-						}
-						setES(nodes[i], highestEF);
-						setEF(nodes[i], nodes[i].getEarliestStart() + nodes[i].getDuration());
-						setExpectedDate(nodes[i], highestExpectedDuration);
-						setExpectedStartDate(nodes[i], lowestExpectedDuration);
-						setExpectedFinishDate(nodes[i], lowestExpectedDuration + nodes[i].getExpectedDuration());
-						setStandardDeviation(nodes[i], highestStandardDeviation);
-					}
-				} 
-			}
-		} 
-	}
-	
-	private void setExpectedDate(Activities A, double highestExpectedDuration) {
-		for(Activities a : this.activityList)
-		{
-			if (a.getId() == A.getId())
-				a.setExpectedDate(highestExpectedDuration);
-		}
-	}
-	
-	private void setExpectedStartDate(Activities A, double duration) {
-		for(Activities a : this.activityList)
-		{
-			if (a.getId() == A.getId())
-				a.setExpectedStartDate(duration);
-		}
+	/**
+	 * Getter for projectFinish
+	 * @return the earliest time every Activity can be finished by, as of the last calculateTimes or updateTimes
+	 */
+	public double getProjectFinish() {
+		return projectFinish;
 	}
 	
-	private void setExpectedFinishDate(Activities A, double duration) {
-		for(Activities a : this.activityList)
-		{
-			if (a.getId() == A.getId())
-				a.setExpectedFinishDate(duration);
-		}
+	/**
+	 * Getter for maxDepth
+	 * @return depth of the deepest Activity as of the last calculateTimes or updateTimes, -1 if there is none
+	 */
+	public int getMaxDepth() {
+		getLevels();
+		return maxDepth;
 	}
 	
-	private void setStandardDeviation(Activities A, double duration) {
-		for(Activities a : this.activityList)
-		{
-			if (a.getId() == A.getId())
-				a.setStandardDeviationEvent(duration);
-		}
-	}
-
-	// performs backward pass calculations on the current activity graph
-	private void performBackwardPass() {
-		Set<Activities> temp = getActivitySet();
-		Activities[] nodes = temp.toArray(new Activities[temp.size()]);
-			
-		//check if the current node can be processed
-		for (int currentDepth = maxDepth; currentDepth >= 0; currentDepth--) {
-			
-			// for each depth, find the relevant nodes
-			for (int i = 0; i < nodes.length; i++) {
-				// checks if the node resides on the current level
-				if (nodes[i].getDepth() == currentDepth) {
-
-					// check if the node is the last activity
-					if (this.activityGraph.outDegreeOf(nodes[i]) == 0) {
-						setLS(nodes[i], nodes[i].getEarliestStart());
-						setLF(nodes[i], nodes[i].getEarliestFinish());
-						setFloat(nodes[i], 0);
-					}
-					// otherwise process it
-					else {
-						Set<DefaultEdge> outEdges = getOutgoingArrowsOfActivity(nodes[i]);
-						double minLatestStart = 999999999;
-						for (DefaultEdge e : outEdges) {
-							Activities currentChildNode = getActivityAfter(e);
-							if (currentChildNode.getLatestStart() < minLatestStart)
-								minLatestStart = currentChildNode.getLatestStart();
-						}
-						setLF(nodes[i], minLatestStart);
-						setLS(nodes[i], minLatestStart - nodes[i].getDuration());
-						setFloat(nodes[i], minLatestStart - nodes[i].getDuration() - nodes[i].getEarliestStart());
-					}
-
-					//check if the node is the first activity
-					if (this.activityGraph.inDegreeOf(nodes[i]) == 0) {
-						setFloat(nodes[i], 0);
-					}
-				} 
-			}
-		} 
-	}
-	
-	// some evil recursion muhaha (too lazy to do it non recursive)
-	// this method iterates through the graph as if it was a tree
-	// it sets the depth of each node 
-	// this will help us traverse the graph properly in forward and backwards passes
-	private void findMaxDepth(Activities currentNode, int currentDepth) {
-		if (this.activityGraph.outDegreeOf(currentNode) == 0) {
-			if(currentDepth > maxDepth) {
-				maxDepth = currentDepth;
-				setActivityDepth(currentNode, maxDepth);
+	/**
+	 * Getter for levels. Level n holds the Activities of depth n, whose longest chain of
+	 * dependencies from a root is n long, so every predecessor of an Activity is on an earlier level.
+	 * @return the Activities of each depth as of the last calculateTimes or updateTimes
+	 */
+	public List<List<Activities>> getLevels() {
+		if (this.levels == null) {
+			this.levels = new ArrayList<List<Activities>>();
+			for (Activities a : this.activityList) {
+				while (this.levels.size() <= a.getDepth())
+					this.levels.add(new ArrayList<Activities>());
+				this.levels.get(a.getDepth()).add(a);
 			}
-			return;
-		}
-		
-		setActivityDepth(currentNode, currentDepth);
-		currentDepth++;
-		
-		Set<DefaultEdge> outEdges = getOutgoingArrowsOfActivity(currentNode);
-		for (DefaultEdge e : outEdges)
-		{
-			findMaxDepth(getActivityAfter(e), currentDepth); 		
-		}
-	}
-	
-	// sets a nodes depth in relation to the graph tree
-	private void setActivityDepth(Activities node, int depth) {
-		for(Activities a : this.activityList)
-		{
-			if (a.getId() == node.getId())
-				a.setDepth(depth);
+			this.maxDepth = this.levels.size() - 1;
 		}
+		return levels;
 	}
 	
 	public double getPercentComplete() {
@@ -929,6 +973,14 @@ public class Projects {
 		return this.getEstimateAtCompletion() - this.actualCosts;
 	}
 	
+	/**
+	 * Returns the budget at completion computed by calculateTimes, the sum of the budgets of the Activities.
+	 * @return budget at completion
+	 */
+	public int getBudgetAtCompletion() {
+		return this.budegetAtCompletion;
+	}
+	
 	public double getEarnedValue() {
 		if(this.earnedValue < 0)
 		{
@@ -1004,5 +1056,87 @@ public class Projects {
 			a.setCriticalPathGraph(criticalPath);
 		}
 	}
+	
+	/**
+	 * Returns the version of the projects row the Project was loaded from, or will have once its
+	 * last save is written. A save only replaces a row that still has the version before it.
+	 * @return the row version, 0 for a Project never saved
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Setter for version
+	 * @param version the row version
+	 */
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	
+	/**
+	 * Checks whether a field saved in the projects table, or the userList, has changed since
+	 * the Project was loaded or last saved. New Projects are always dirty.
+	 * @return true if the projects row must be written
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Returns the dependencies added since the Project was loaded or last saved.
+	 * @return Set of added edges
+	 */
+	public Set<ActivityEdge> getAddedEdges() {
+		return addedEdges;
+	}
+	
+	/**
+	 * Returns the dependencies removed with removeArrow since the Project was loaded or last saved.
+	 * @return Set of removed edges
+	 */
+	public Set<ActivityEdge> getRemovedEdges() {
+		return removedEdges;
+	}
+	
+	/**
+	 * Checks whether the Project, its dependencies or any of its Activities have unsaved changes.
+	 * @return true if the Project has changes to save
+	 */
+	public boolean hasChanges() {
+		if (this.dirty || !this.addedEdges.isEmpty() || !this.removedEdges.isEmpty())
+			return true;
+		for (Activities a : this.activityList) {
+			if (a.isDirty() || a.isMembersDirty())
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Marks the Project fields and dependencies as saved. Activities are marked separately.
+	 */
+	public void markClean() {
+		this.dirty = false;
+		this.addedEdges.clear();
+		this.removedEdges.clear();
+	}
+	
+	/**
+	 * Checks whether the users, Activities and dependencies of the Project have been loaded.
+	 * Projects loaded as headers only are completed by DataResource.loadProjectDetails.
+	 * @return true if the Project is fully loaded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+	
+	/**
+	 * Setter for loaded
+	 * @param loaded false for a Project whose details are still in the database
+	 */
+	public void setLoaded(boolean loaded) {
+		this.loaded = loaded;
+	}
 }
 
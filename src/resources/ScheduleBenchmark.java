@@ -0,0 +1,271 @@
+package resources;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgraph.graph.DefaultEdge;
+
+/**
+ * The ScheduleBenchmark class compares the CompiledSchedule with the
+ * depth-by-depth passes it replaced. It generates a project whose Activities
+ * are laid out in layers, each Activity depending on one to three Activities
+ * of the layer before, then times both ways of scheduling it and checks that
+ * they give every Activity the same values. The first and last layers hold a
+ * single Activity, every Activity without successors leading to the last, as
+ * the replaced passes only scheduled projects with one start and one finish
+ * correctly.
+ *
+ * The depth of each Activity is its layer, set before timing, so only the
+ * passes themselves are measured. Last, it times edits of the duration of
+ * single Activities, scheduling the project from scratch after each one and
+ * then incrementally with updateTimes, and what-if runs of the
+ * CompiledSchedule of the project, checked against the incremental times.
+ *
+ * Usage: ScheduleBenchmark [activities] [layers, at least 3] [runs]
+ */
+public class ScheduleBenchmark {
+
+	private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+	public static void main(String[] args) {
+		int activities = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int layers = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		Projects project = generate(activities, layers, new Random(42));
+		System.out.println("Generated " + activities + " activities in " + layers + " layers with "
+				+ project.getActivityGraph().edgeSet().size() + " dependencies");
+
+		double legacy = Double.MAX_VALUE;
+		double[][] expected = null;
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			legacyForwardPass(project, layers - 1);
+			legacyBackwardPass(project, layers - 1);
+			legacy = Math.min(legacy, millis(start));
+			expected = snapshot(project);
+		}
+
+		double engine = Double.MAX_VALUE;
+		for (int i = 0; i < runs; i++) {
+			reset(project);
+			long start = System.nanoTime();
+			CompiledSchedule schedule = project.compileSchedule();
+			schedule.run();
+			schedule.writeBack();
+			engine = Math.min(engine, millis(start));
+		}
+
+		double[][] actual = snapshot(project);
+		int mismatches = 0;
+		for (int i = 0; i < actual.length; i++) {
+			for (int j = 0; j < actual[i].length; j++) {
+				if (Double.compare(actual[i][j], expected[i][j]) != 0)
+					mismatches++;
+			}
+		}
+
+		System.out.println(String.format("%-10s %10s", "passes", "best ms"));
+		System.out.println(String.format("%-10s %10.2f", "legacy", legacy));
+		System.out.println(String.format("%-10s %10.2f", "compiled", engine));
+		System.out.println(String.format("Speedup %.1fx, %d mismatched values", legacy / engine, mismatches));
+
+		// single activity edits, scheduled from scratch and incrementally
+		Random random = new Random(7);
+		ArrayList<Activities> list = project.getActivityList();
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			lengthen(list.get(random.nextInt(list.size())), random);
+			project.calculateTimes();
+		}
+		double full = millis(start) / runs;
+
+		int edits = runs * 100;
+		long rescheduled = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < edits; i++) {
+			Activities activity = list.get(random.nextInt(list.size()));
+			lengthen(activity, random);
+			project.updateTimes();
+			rescheduled += project.getRescheduledCount();
+		}
+		double incremental = millis(start) / edits;
+		System.out.println(String.format("%-12s %10s %14s", "edit", "ms / edit", "recomputed"));
+		System.out.println(String.format("%-12s %10.3f %14d", "full", full, list.size() * 2));
+		System.out.println(String.format("%-12s %10.3f %14d", "incremental", incremental, rescheduled / edits));
+
+		// what-if runs on the compiled schedule, checked against the times kept by updateTimes first
+		start = System.nanoTime();
+		CompiledSchedule compiled = project.compileSchedule();
+		double compile = millis(start);
+		compiled.run();
+		mismatches = 0;
+		for (int i = 0; i < compiled.size(); i++) {
+			Activities activity = compiled.getActivity(i);
+			if (compiled.getEarliestStart(i) != activity.getEarliestStart()
+					|| compiled.getLatestFinish(i) != activity.getLatestFinish()
+					|| compiled.getActivityFloat(i) != activity.getActivityFloat())
+				mismatches++;
+		}
+
+		int whatIfs = runs * 20;
+		start = System.nanoTime();
+		for (int i = 0; i < whatIfs; i++) {
+			compiled.setDuration(random.nextInt(compiled.size()), 1 + random.nextInt(10));
+			compiled.run();
+		}
+		double kernel = millis(start) / whatIfs;
+		System.out.println(String.format("Compiled in %.2f ms, %.3f ms per what-if run (%.1fx a full schedule), %d mismatched activities",
+				compile, kernel, engine / kernel, mismatches));
+	}
+
+	// changes the duration of an activity by up to a day either way, keeping it at least a day long
+	private static void lengthen(Activities activity, Random random) {
+		long end = activity.getEndDate().getTime() + (random.nextInt(3) - 1) * DAY_IN_MILLIS;
+		activity.setEndDate(new Date(Math.max(end, activity.getStartDate().getTime() + DAY_IN_MILLIS)));
+	}
+
+	private static Projects generate(int count, int layers, Random random) {
+		Projects project = new Projects("Benchmark", new ArrayList<Users>(), "2016-01-01", 1, 1, "", 0);
+		ArrayList<ArrayList<Activities>> layerList = new ArrayList<ArrayList<Activities>>();
+		for (int i = 0; i < layers; i++)
+			layerList.add(new ArrayList<Activities>());
+
+		Date start = new Date(0);
+		for (int id = 1; id <= count; id++) {
+			int layer = id <= layers ? id - 1 : 1 + random.nextInt(layers - 2);
+			int optimistic = 1 + random.nextInt(5);
+			int likely = optimistic + random.nextInt(5);
+			Date end = new Date(start.getTime() + (1 + random.nextInt(10)) * DAY_IN_MILLIS);
+			Activities activity = new Activities("", start, end, "A" + id, id, TaskProgress.pending, 10,
+					likely, optimistic, likely + random.nextInt(5), 0);
+			activity.setDepth(layer);
+			project.addActivity(activity);
+			layerList.get(layer).add(activity);
+		}
+
+		for (int layer = 1; layer < layers; layer++) {
+			ArrayList<Activities> before = layerList.get(layer - 1);
+			for (Activities activity : layerList.get(layer)) {
+				int predecessors = 1 + random.nextInt(3);
+				for (int i = 0; i < predecessors; i++)
+					project.addArrow(before.get(random.nextInt(before.size())), activity);
+			}
+		}
+
+		Activities last = layerList.get(layers - 1).get(0);
+		for (int layer = 1; layer < layers - 1; layer++) {
+			for (Activities activity : layerList.get(layer)) {
+				if (project.getActivityGraph().outDegreeOf(activity) == 0)
+					project.addArrow(activity, last);
+			}
+		}
+		return project;
+	}
+
+	// the forward pass Projects.calculateTimes ran before the CompiledSchedule
+	private static void legacyForwardPass(Projects project, int maxDepth) {
+		Set<Activities> temp = project.getActivitySet();
+		Activities[] nodes = temp.toArray(new Activities[temp.size()]);
+
+		for (int currentDepth = 0; currentDepth <= maxDepth; currentDepth++) {
+			for (int i = 0; i < nodes.length; i++) {
+				if (nodes[i].getDepth() != currentDepth)
+					continue;
+
+				if (project.getActivityGraph().inDegreeOf(nodes[i]) == 0) {
+					project.setES(nodes[i], 0);
+					project.setEF(nodes[i], nodes[i].getDuration());
+					nodes[i].setExpectedDate(0);
+					nodes[i].setExpectedFinishDate(nodes[i].getExpectedDuration());
+					nodes[i].setStandardDeviationEvent(0);
+				} else {
+					double highestEF = 0;
+					double highestExpectedDuration = 0;
+					double lowestExpectedDuration = ScheduleEngine.MAX_EXPECTED_DURATION;
+					double highestStandardDeviation = 0;
+					for (DefaultEdge e : project.getIncomingArrowsOfActivity(nodes[i])) {
+						Activities currentParentNode = project.getActivityBefore(e);
+						if (currentParentNode.getEarliestFinish() >= highestEF)
+							highestEF = currentParentNode.getEarliestFinish();
+						if (currentParentNode.getExpectedDuration() >= highestExpectedDuration)
+							highestExpectedDuration = currentParentNode.getExpectedDuration();
+						if (currentParentNode.getExpectedDuration() <= lowestExpectedDuration)
+							lowestExpectedDuration = currentParentNode.getExpectedDuration();
+
+						double currentStd = Math.sqrt(Math.pow(currentParentNode.getStandardDerivation(), 2)
+								+ Math.pow(currentParentNode.getStandardDeviationEvent(), 2));
+						if (currentStd > highestStandardDeviation)
+							highestStandardDeviation = currentStd;
+					}
+					project.setES(nodes[i], highestEF);
+					project.setEF(nodes[i], nodes[i].getEarliestStart() + nodes[i].getDuration());
+					nodes[i].setExpectedDate(highestExpectedDuration);
+					nodes[i].setExpectedStartDate(lowestExpectedDuration);
+					nodes[i].setExpectedFinishDate(lowestExpectedDuration + nodes[i].getExpectedDuration());
+					nodes[i].setStandardDeviationEvent(highestStandardDeviation);
+				}
+			}
+		}
+	}
+
+	// the backward pass Projects.calculateTimes ran before the CompiledSchedule
+	private static void legacyBackwardPass(Projects project, int maxDepth) {
+		Set<Activities> temp = project.getActivitySet();
+		Activities[] nodes = temp.toArray(new Activities[temp.size()]);
+
+		for (int currentDepth = maxDepth; currentDepth >= 0; currentDepth--) {
+			for (int i = 0; i < nodes.length; i++) {
+				if (nodes[i].getDepth() != currentDepth)
+					continue;
+
+				if (project.getActivityGraph().outDegreeOf(nodes[i]) == 0) {
+					project.setLS(nodes[i], nodes[i].getEarliestStart());
+					project.setLF(nodes[i], nodes[i].getEarliestFinish());
+					project.setFloat(nodes[i], 0);
+				} else {
+					double minLatestStart = ScheduleEngine.MAX_LATEST_START;
+					for (DefaultEdge e : project.getOutgoingArrowsOfActivity(nodes[i])) {
+						Activities currentChildNode = project.getActivityAfter(e);
+						if (currentChildNode.getLatestStart() < minLatestStart)
+							minLatestStart = currentChildNode.getLatestStart();
+					}
+					project.setLF(nodes[i], minLatestStart);
+					project.setLS(nodes[i], minLatestStart - nodes[i].getDuration());
+					project.setFloat(nodes[i], minLatestStart - nodes[i].getDuration() - nodes[i].getEarliestStart());
+				}
+
+				if (project.getActivityGraph().inDegreeOf(nodes[i]) == 0)
+					project.setFloat(nodes[i], 0);
+			}
+		}
+	}
+
+	private static void reset(Projects project) {
+		for (Activities activity : project.getActivityList()) {
+			activity.setEarliestStart(0);
+			activity.setEarliestFinish(0);
+			activity.setLatestStart(0);
+			activity.setLatestFinish(0);
+			activity.setActivityFloat(0);
+		}
+	}
+
+	private static double[][] snapshot(Projects project) {
+		ArrayList<Activities> activities = project.getActivityList();
+		double[][] values = new double[activities.size()][];
+		for (int i = 0; i < values.length; i++) {
+			Activities a = activities.get(i);
+			values[i] = new double[] { a.getEarliestStart(), a.getEarliestFinish(), a.getLatestStart(),
+					a.getLatestFinish(), a.getActivityFloat(), a.getExpectedDate(), a.getExpectedStartDate(),
+					a.getExpectedFinishDate(), a.getStandardDeviationEvent() };
+		}
+		return values;
+	}
+
+	private static double millis(long start) {
+		return (System.nanoTime() - start) / 1000000.0;
+	}
+}
@@ -0,0 +1,160 @@
+package resources;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.jgraph.graph.DefaultEdge;
+import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
+
+/**
+ * The ScheduleEngine class holds the critical path and PERT rules for the
+ * Activities of a project graph. The whole graph is scheduled by a
+ * CompiledSchedule, which puts the Activities in topological order once and
+ * applies the rules to them in that order, so every Activity is computed
+ * after all its predecessors, and in reverse order on the way back. forward
+ * and backward apply the same rules to a single Activity of the graph, for
+ * the IncrementalScheduler.
+ *
+ * A project may have any number of Activities without predecessors or
+ * without successors. The passes treat them as if they followed an implicit
+ * project start milestone at time 0 and preceded an implicit project finish
+ * milestone at the latest earliest finish of the project. The milestones are
+ * never added to the graph: an Activity without predecessors starts at 0 and
+ * an Activity without successors must finish by the project finish, so only
+ * the Activities on the longest chain have no float.
+ */
+public final class ScheduleEngine {
+
+	// the lowest expected duration of the predecessors starts from this bound, so longer PERT times are capped
+	static final double MAX_EXPECTED_DURATION = 99999;
+	// the lowest latest start of the successors starts from this bound
+	static final double MAX_LATEST_START = 999999999;
+
+	private ScheduleEngine() {
+	}
+
+	/**
+	 * Method used to combine the standard deviation of a predecessor with
+	 * that of the event it follows.
+	 *
+	 * @param standardDeviation
+	 *            standard deviation of the predecessor
+	 * @param standardDeviationEvent
+	 *            standard deviation of the event the predecessor follows
+	 * @return the standard deviation of the event after the predecessor
+	 */
+	static double deviation(double standardDeviation, double standardDeviationEvent) {
+		return Math.sqrt(Math.pow(standardDeviation, 2) + Math.pow(standardDeviationEvent, 2));
+	}
+
+	/**
+	 * Method used to order the Activities of a graph so each Activity comes
+	 * after all its predecessors. Activities without predecessors are
+	 * released first, then each Activity is released once the last of its
+	 * predecessors has been placed.
+	 *
+	 * @param graph
+	 *            the activity graph of a project
+	 * @return every Activity of the graph, in topological order
+	 */
+	public static List<Activities> topologicalOrder(DirectedAcyclicGraph<Activities, DefaultEdge> graph) {
+		Set<Activities> activities = graph.vertexSet();
+		List<Activities> order = new ArrayList<Activities>(activities.size());
+		HashMap<Activities, Integer> waiting = new HashMap<Activities, Integer>();
+		ArrayDeque<Activities> ready = new ArrayDeque<Activities>();
+
+		for (Activities activity : activities) {
+			int predecessors = graph.inDegreeOf(activity);
+			if (predecessors == 0)
+				ready.add(activity);
+			else
+				waiting.put(activity, predecessors);
+		}
+
+		while (!ready.isEmpty()) {
+			Activities activity = ready.poll();
+			order.add(activity);
+			for (DefaultEdge e : graph.outgoingEdgesOf(activity)) {
+				Activities successor = graph.getEdgeTarget(e);
+				int predecessors = waiting.get(successor) - 1;
+				if (predecessors == 0) {
+					waiting.remove(successor);
+					ready.add(successor);
+				} else {
+					waiting.put(successor, predecessors);
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Method used to compute the earliest start and finish and the PERT
+	 * values of one Activity from those of its predecessors.
+	 *
+	 * @param graph
+	 *            the activity graph of a project
+	 * @param activity
+	 *            the Activity, whose predecessors are up to date
+	 */
+	static void forward(DirectedAcyclicGraph<Activities, DefaultEdge> graph, Activities activity) {
+		// an activity without predecessors follows the project start
+		if (graph.inDegreeOf(activity) == 0) {
+			activity.setEarliestStart(0);
+			activity.setEarliestFinish(activity.getDuration());
+			activity.setExpectedDate(0);
+			activity.setExpectedFinishDate(activity.getExpectedDuration());
+			activity.setStandardDeviationEvent(0);
+			return;
+		}
+
+		double highestEF = 0;
+		double highestExpectedDuration = 0;
+		double lowestExpectedDuration = MAX_EXPECTED_DURATION;
+		double highestStandardDeviation = 0;
+		for (DefaultEdge e : graph.incomingEdgesOf(activity)) {
+			Activities predecessor = graph.getEdgeSource(e);
+			highestEF = Math.max(highestEF, predecessor.getEarliestFinish());
+			highestExpectedDuration = Math.max(highestExpectedDuration, predecessor.getExpectedDuration());
+			lowestExpectedDuration = Math.min(lowestExpectedDuration, predecessor.getExpectedDuration());
+
+			highestStandardDeviation = Math.max(highestStandardDeviation,
+					deviation(predecessor.getStandardDerivation(), predecessor.getStandardDeviationEvent()));
+		}
+
+		activity.setEarliestStart(highestEF);
+		activity.setEarliestFinish(highestEF + activity.getDuration());
+		activity.setExpectedDate(highestExpectedDuration);
+		activity.setExpectedStartDate(lowestExpectedDuration);
+		activity.setExpectedFinishDate(lowestExpectedDuration + activity.getExpectedDuration());
+		activity.setStandardDeviationEvent(highestStandardDeviation);
+	}
+
+	/**
+	 * Method used to compute the latest start and finish and the float of
+	 * one Activity from the latest starts of its successors.
+	 *
+	 * @param graph
+	 *            the activity graph of a project
+	 * @param activity
+	 *            the Activity, whose successors are up to date
+	 * @param finish
+	 *            the project finish
+	 */
+	static void backward(DirectedAcyclicGraph<Activities, DefaultEdge> graph, Activities activity, double finish) {
+		// an activity without successors precedes the project finish
+		double minLatestStart = finish;
+		if (graph.outDegreeOf(activity) > 0) {
+			minLatestStart = MAX_LATEST_START;
+			for (DefaultEdge e : graph.outgoingEdgesOf(activity))
+				minLatestStart = Math.min(minLatestStart, graph.getEdgeTarget(e).getLatestStart());
+		}
+
+		activity.setLatestFinish(minLatestStart);
+		activity.setLatestStart(minLatestStart - activity.getDuration());
+		activity.setActivityFloat(minLatestStart - activity.getDuration() - activity.getEarliestStart());
+	}
+}
@@ -0,0 +1,224 @@
+package resources;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScheduleTest {
+
+	private static final long DAY_IN_MILLIS = 86400000L;
+
+	@Test
+	public void testScheduleEngine() {
+		//a diamond A -> B, C -> D, with the branch through B critical
+		Projects p = project("Diamond", 701);
+		Activities d = activity(p, "D", 1103, 2);
+		Activities c = activity(p, "C", 1102, 1);
+		Activities b = activity(p, "B", 1101, 3);
+		Activities a = activity(p, "A", 1100, 2);
+		p.addArrow(a, b);
+		p.addArrow(a, c);
+		p.addArrow(b, d);
+		p.addArrow(c, d);
+
+		List<Activities> order = ScheduleEngine.topologicalOrder(p.getActivityGraph());
+		assertTrue("should order predecessors first", order.indexOf(a) < order.indexOf(b) && order.indexOf(a) < order.indexOf(c)
+				&& order.indexOf(b) < order.indexOf(d) && order.indexOf(c) < order.indexOf(d));
+
+		p.calculateTimes();
+		assertTrue("should compute earliest times", b.getEarliestStart() == 2 && c.getEarliestFinish() == 3
+				&& d.getEarliestStart() == 5 && d.getEarliestFinish() == 7);
+		assertTrue("should compute latest times", c.getLatestStart() == 4 && c.getLatestFinish() == 5
+				&& a.getLatestFinish() == 2 && d.getLatestStart() == 5);
+		assertTrue("should compute float", a.getActivityFloat() == 0 && b.getActivityFloat() == 0
+				&& c.getActivityFloat() == 2 && d.getActivityFloat() == 0);
+		System.out.println("tested schedule engine");
+	}
+
+	@Test
+	public void testAssignLevels() {
+		//a ladder of 50 diamonds, which has 2^50 paths, then a chain of 20000
+		Projects p = project("Ladder", 702);
+		Activities previous = activity(p, "S", 2000, 1);
+		//a second root that joins the ladder halfway
+		Activities late = activity(p, "Late", 2001, 1);
+		int id = 2002;
+		for (int i = 0; i < 50; i++) {
+			Activities left = activity(p, "L" + i, id++, 1);
+			Activities right = activity(p, "R" + i, id++, 1);
+			Activities join = activity(p, "J" + i, id++, 1);
+			p.addArrow(previous, left);
+			p.addArrow(previous, right);
+			p.addArrow(left, join);
+			p.addArrow(right, join);
+			if (i == 25)
+				p.addArrow(late, join);
+			previous = join;
+		}
+		for (int i = 0; i < 20000; i++) {
+			Activities link = activity(p, "C" + i, id++, 1);
+			p.addArrow(previous, link);
+			previous = link;
+		}
+
+		p.calculateTimes();
+		assertTrue("should use the longest path", p.getActivityByLabel("J0").getDepth() == 2
+				&& p.getActivityByLabel("J49").getDepth() == 100 && previous.getDepth() == 20100);
+		assertTrue("should level every root", late.getDepth() == 0 && p.getLevels().get(0).size() == 2);
+		assertTrue("should bucket each level", p.getMaxDepth() == 20100 && p.getLevels().size() == 20101
+				&& p.getLevels().get(1).size() == 2 && p.getLevels().get(2).size() == 1);
+		System.out.println("tested level assignment");
+	}
+
+	@Test
+	public void testParallelWorkstreams() {
+		//W -> Y and X -> Y, with Z on its own
+		Projects p = project("Parallel", 703);
+		Activities z = activity(p, "Z", 1113, 1);
+		Activities x = activity(p, "X", 1111, 2);
+		Activities w = activity(p, "W", 1110, 4);
+		Activities y = activity(p, "Y", 1112, 3);
+		p.addArrow(w, y);
+		p.addArrow(x, y);
+
+		p.calculateTimes();
+		assertTrue("should finish with the longest chain", p.getProjectFinish() == 7 && y.getEarliestFinish() == 7);
+		assertTrue("should schedule every root", w.getActivityFloat() == 0 && x.getLatestStart() == 2 && x.getActivityFloat() == 2);
+		assertTrue("should schedule every sink", z.getLatestFinish() == 7 && z.getLatestStart() == 6 && z.getActivityFloat() == 6
+				&& y.getActivityFloat() == 0);
+		assertTrue("should not add milestones", p.getActivityGraph().vertexSet().size() == 4 && p.getArrowSet().size() == 2);
+		System.out.println("tested parallel workstreams");
+	}
+
+	@Test
+	public void testIncrementalSchedule() {
+		//a chain of 1000 with a short branch joining it halfway
+		Projects p = project("Incremental", 704);
+		Activities previous = null;
+		for (int i = 0; i < 1000; i++) {
+			Activities a = activity(p, "C" + i, 3000 + i, 1);
+			if (previous != null)
+				p.addArrow(previous, a);
+			previous = a;
+		}
+		Activities branch = activity(p, "B", 4000, 1, 1, 2, 3);
+		p.addArrow(branch, p.getActivityByLabel("C500"));
+		p.calculateTimes();
+
+		//a longer branch still has float, so only the branch is recomputed, the edit is found without being reported
+		branch.setEndDate(new Date(3 * DAY_IN_MILLIS));
+		p.updateTimes();
+		assertTrue("should stop where times do not change", p.getRescheduledCount() <= 4);
+		assertTrue("should update the branch", branch.getEarliestFinish() == 3 && branch.getActivityFloat() == 497);
+		assertSameTimes(p);
+
+		//a branch longer than the chain moves the rest of the chain and the project finish
+		branch.setEndDate(new Date(600 * DAY_IN_MILLIS));
+		p.updateTimes();
+		assertTrue("should move the descendants", p.getProjectFinish() == 1100
+				&& p.getActivityByLabel("C999").getEarliestFinish() == 1100);
+		assertSameTimes(p);
+
+		//PERT times changed through the setters, and saved so the activity is no longer dirty
+		Activities c200 = p.getActivityByLabel("C200");
+		c200.setPessimisticTime(7);
+		c200.markClean();
+		p.updateTimes();
+		assertTrue("should pick up the PERT times", p.getRescheduledCount() > 0
+				&& p.getActivityByLabel("C201").getStandardDeviationEvent() == 1);
+		assertSameTimes(p);
+		p.updateTimes();
+		assertTrue("should recompute nothing without edits", p.getRescheduledCount() == 0);
+
+		//relinking, adding and deleting activities
+		p.removeArrow(p.getActivityByLabel("C700"), p.getActivityByLabel("C701"));
+		p.updateTimes();
+		assertSameTimes(p);
+		Activities extra = activity(p, "E", 4001, 5);
+		p.addArrow(p.getActivityByLabel("C10"), extra);
+		p.addArrow(extra, p.getActivityByLabel("C900"));
+		p.updateTimes();
+		assertSameTimes(p);
+		p.deleteActivity(p.getActivityByLabel("C800"));
+		p.updateTimes();
+		assertSameTimes(p);
+		p.resetIncomingEdges(extra);
+		p.updateTimes();
+		assertSameTimes(p);
+		System.out.println("tested incremental schedule");
+	}
+
+	@Test
+	public void testCompiledSchedule() {
+		//a diamond A -> B, C -> D, with the branch through B critical
+		Projects p = project("Compiled", 705);
+		Activities d = activity(p, "D", 1123, 2, 3, 2, 5);
+		Activities c = activity(p, "C", 1122, 1);
+		Activities b = activity(p, "B", 1121, 3, 2, 1, 4);
+		Activities a = activity(p, "A", 1120, 2, 1, 1, 2);
+		p.addArrow(a, b);
+		p.addArrow(a, c);
+		p.addArrow(b, d);
+		p.addArrow(c, d);
+
+		CompiledSchedule schedule = p.compileSchedule();
+		assertTrue("should index in topological order", schedule.size() == 4 && schedule.indexOf(a) == 0 && schedule.indexOf(d) == 3);
+		assertTrue("should compute the finish", schedule.run() == 7 && schedule.getLatestStart(schedule.indexOf(c)) == 4
+				&& schedule.getActivityFloat(schedule.indexOf(c)) == 2);
+
+		//a what-if run leaves the activities alone
+		schedule.setDuration(schedule.indexOf(c), 5);
+		assertTrue("should reschedule the what-if", schedule.run() == 9 && schedule.getActivityFloat(schedule.indexOf(b)) == 2);
+		assertTrue("should not touch the activities", c.getEarliestFinish() == 0);
+
+		//written back, with the PERT values, the expected start of a root is left alone
+		schedule.readDurations();
+		schedule.run();
+		schedule.writeBack();
+		assertArrayEquals("should write back A", new double[] { 0, 0, 2, 0, 2, 0, 0, 0, 1, 0 }, times(a), 0);
+		assertArrayEquals("should write back B", new double[] { 1, 2, 5, 2, 5, 0, 1, 1, 3, 0 }, times(b), 0);
+		assertArrayEquals("should write back C", new double[] { 1, 2, 3, 4, 5, 2, 1, 1, 2, 0 }, times(c), 0);
+		assertArrayEquals("should write back D", new double[] { 2, 5, 7, 5, 7, 0, 2, 1, 4, 0 }, times(d), 0);
+		System.out.println("tested compiled schedule");
+	}
+
+	private static Projects project(String name, int id) {
+		return new Projects(name, new ArrayList<Users>(), "07-22-2016", id, 1, name, 10.0);
+	}
+
+	// adds a pending activity of the given length in days, starting at day 0
+	private static Activities activity(Projects p, String label, int id, int days) {
+		return activity(p, label, id, days, 1, 1, 1);
+	}
+
+	private static Activities activity(Projects p, String label, int id, int days, int mostLikely, int optimistic, int pessimistic) {
+		Activities activity = new Activities(label, new Date(0), new Date(days * DAY_IN_MILLIS), label, id, TaskProgress.pending,
+				0, mostLikely, optimistic, pessimistic, 0);
+		p.addActivity(activity);
+		return activity;
+	}
+
+	// checks the times kept by updateTimes against a full calculateTimes
+	private void assertSameTimes(Projects p) {
+		ArrayList<double[]> updated = new ArrayList<double[]>();
+		for (Activities a : p.getActivityList())
+			updated.add(times(a));
+		int maxDepth = p.getMaxDepth();
+		double finish = p.getProjectFinish();
+
+		p.calculateTimes();
+		for (int i = 0; i < updated.size(); i++)
+			assertArrayEquals("should match a full schedule", times(p.getActivityList().get(i)), updated.get(i), 0);
+		assertTrue("should match the full depth", p.getMaxDepth() == maxDepth && p.getProjectFinish() == finish);
+	}
+
+	private double[] times(Activities a) {
+		return new double[] { a.getDepth(), a.getEarliestStart(), a.getEarliestFinish(), a.getLatestStart(), a.getLatestFinish(),
+				a.getActivityFloat(), a.getExpectedDate(), a.getExpectedStartDate(), a.getExpectedFinishDate(),
+				a.getStandardDeviationEvent() };
+	}
+}
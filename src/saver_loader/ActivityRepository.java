@@ -0,0 +1,60 @@
+package saver_loader;
+
+import resources.Activities;
+import resources.IdSource;
+import resources.Projects;
+
+/**
+ * The ActivityRepository interface is implemented by the stores that the
+ * activities of projects and their dependencies are saved to. The
+ * application uses the repository set on DataResource, which is the SQLite
+ * database by default.
+ *
+ * Implementations must be safe to call from any thread.
+ */
+public interface ActivityRepository {
+
+	/**
+	 * Saves an Activity, its project link, members and incoming dependencies.
+	 *
+	 * @param project
+	 *            the project the activity belongs to
+	 * @param activity
+	 *            the activity to save
+	 */
+	void saveActivity(Projects project, Activities activity);
+
+	/**
+	 * Deletes an Activity with its dependencies and member assignments.
+	 *
+	 * @param activity
+	 *            the activity to delete
+	 */
+	void deleteActivity(Activities activity);
+
+	/**
+	 * Deletes the dependency between 2 Activities.
+	 *
+	 * @param activityBefore
+	 *            Activity ID for the origin Activity
+	 * @param activityAfter
+	 *            Activity ID for the destination Activity
+	 */
+	void deleteEdge(int activityBefore, int activityAfter);
+
+	/**
+	 * Removes all the members assigned to an Activity.
+	 *
+	 * @param activityId
+	 *            id of the Activity
+	 */
+	void resetActivityMembers(int activityId);
+
+	/**
+	 * Returns the source of the ids of new Activities, which are unique
+	 * within the store.
+	 *
+	 * @return the id source for Activities
+	 */
+	IdSource getActivityIds();
+}
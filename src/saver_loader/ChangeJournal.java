@@ -0,0 +1,1025 @@
+package saver_loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jgraph.graph.DefaultEdge;
+
+import resources.Activities;
+import resources.DateCodec;
+import resources.Projects;
+import resources.TaskProgress;
+import resources.Users;
+
+/**
+ * The ChangeJournal class records the changes made to a database in an
+ * append-only file next to it, and applies them to the tables in the
+ * background.
+ *
+ * Every change is appended to the journal as a record holding a sequence
+ * number, the saved values and a checksum. A syncer thread writes the records
+ * appended since its last pass and forces them to disk with a single call, so
+ * the changes of every thread waiting for the disk share one synchronisation.
+ * A compactor thread applies the records forced to disk to the tables, in one
+ * transaction per pass, once enough records are waiting or at a fixed
+ * interval. The sequence of the last record applied is saved in the
+ * journal_state table in the same transaction, and the journal file is
+ * emptied once every record in it has been applied.
+ *
+ * A save record holds the version the object had when it was appended. It is
+ * written with the version after the last version written for the object,
+ * and the version of the object is only raised once the record is committed,
+ * so a save that fails leaves the object at the version of its row. Records
+ * that cannot be applied are reported to the PersistenceListener of the
+ * PersistenceQueue.
+ *
+ * If a group cannot be written or forced to disk, the file is cut back to the
+ * end of the last group that was, so the records written after it are not
+ * lost behind a torn record. The records of the failed group are not applied
+ * and are reported like the records that fail to apply.
+ *
+ * When a journal is opened, the records of the file that were not applied
+ * before the application stopped are applied. Reading stops at the first
+ * record that is incomplete or fails its checksum, which is a record whose
+ * write was interrupted; it is removed from the file.
+ */
+public class ChangeJournal {
+
+	// kinds of records
+	static final byte SAVE_ACTIVITY = 1;
+	static final byte SAVE_PROJECT = 2;
+	static final byte DELETE_ACTIVITY = 3;
+	static final byte REMOVE_PROJECT = 4;
+	static final byte DELETE_EDGE = 5;
+	static final byte RESET_MEMBERS = 6;
+
+	// number of waiting records that starts a compaction before the interval is over
+	private static final int COMPACTION_RECORDS = 1000;
+	// longest time in milliseconds between two compactions
+	private static final long COMPACTION_INTERVAL = 2000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final TaskProgress[] PROGRESS = TaskProgress.values();
+
+	private final String database;
+	private final FileChannel channel;
+	private final long compactionInterval;
+
+	// guards the fields below; fileLock is always taken before lock
+	private final Object lock = new Object();
+	private final Object fileLock = new Object();
+	private final Object compactLock = new Object();
+
+	// records appended and not yet written to the file
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	// records appended and not yet applied to the tables, in sequence order
+	private final List<Record> unapplied = new ArrayList<Record>();
+	// version each object was last committed with by the journal, by record key
+	private final HashMap<String, Integer> versions = new HashMap<String, Integer>();
+	private long appendedSequence;
+	// last sequence handed to the syncer
+	private long takenSequence;
+	private long durableSequence;
+	private long appliedSequence;
+	private int replayed;
+	private int failures;
+	private boolean open;
+	// sequences of the groups that could not be written, as {first, last}
+	private final List<long[]> lost = new ArrayList<long[]>();
+
+	// end of the last group forced to disk, guarded by fileLock
+	private long durableOffset;
+
+	private Thread syncer;
+	private Thread compactor;
+
+	/**
+	 * A change recorded in the journal. Only the fields used by its kind are
+	 * set.
+	 */
+	private static class Record {
+		long sequence;
+		final byte type;
+		int projectID;
+		Activities activity;
+		Projects project;
+		int[] ids;
+		// version of the saved object when the record was appended, and version it is written with
+		int base;
+		int written;
+		// the object saved, for records appended by this process
+		Activities savedActivity;
+		Projects savedProject;
+
+		Record(byte type, int... ids) {
+			this.type = type;
+			this.ids = ids;
+		}
+
+		boolean isSave() {
+			return type == SAVE_ACTIVITY || type == SAVE_PROJECT;
+		}
+
+		String key() {
+			return type == SAVE_ACTIVITY ? "activity:" + activity.getId() : "project:" + project.getId();
+		}
+
+		/**
+		 * Raises the version of the saved object to the version the record
+		 * was committed with.
+		 */
+		void committed() {
+			if (savedActivity != null && savedActivity.getVersion() < written)
+				savedActivity.setVersion(written);
+			if (savedProject != null && savedProject.getVersion() < written)
+				savedProject.setVersion(written);
+		}
+
+		String describe() {
+			switch (type) {
+			case SAVE_ACTIVITY:
+				return "save activity " + activity.getLabel();
+			case SAVE_PROJECT:
+				return "save project " + project.getProjectName();
+			case DELETE_ACTIVITY:
+				return "delete activity " + ids[0];
+			case REMOVE_PROJECT:
+				return "delete project " + ids[0];
+			case DELETE_EDGE:
+				return "delete dependency " + ids[0] + " -> " + ids[1];
+			default:
+				return "reset members of activity " + ids[0];
+			}
+		}
+
+		void apply(Connection connection) throws SQLException {
+			switch (type) {
+			case SAVE_ACTIVITY:
+				List<Integer> predecessorIDs = new ArrayList<Integer>();
+				for (int id : ids)
+					predecessorIDs.add(id);
+				activity.setVersion(written);
+				DataResource.writeActivity(connection, projectID, activity, predecessorIDs);
+				break;
+			case SAVE_PROJECT:
+				project.setVersion(written);
+				DataResource.writeProject(connection, project, ids[0]);
+				break;
+			case DELETE_ACTIVITY:
+				DataResource.writeActivityDeletion(connection, ids[0]);
+				break;
+			case REMOVE_PROJECT:
+				DataResource.writeProjectRemoval(connection, ids[0]);
+				break;
+			case DELETE_EDGE:
+				DataResource.writeEdgeDeletion(connection, ids[0], ids[1]);
+				break;
+			case RESET_MEMBERS:
+				DataResource.writeMemberReset(connection, ids[0]);
+				break;
+			default:
+				throw new SQLException("Unknown journal record " + type);
+			}
+		}
+	}
+
+	private ChangeJournal(String database, FileChannel channel, long compactionInterval) {
+		this.database = database;
+		this.channel = channel;
+		this.compactionInterval = compactionInterval;
+	}
+
+	/**
+	 * Returns the journal file of a database: the database file name followed
+	 * by .journal.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @return the journal file, or null if the database is not a file
+	 */
+	public static File getFile(String database) {
+		String prefix = "jdbc:sqlite:";
+		if (!database.startsWith(prefix) || database.contains(":memory:") || database.length() == prefix.length())
+			return null;
+		return new File(database.substring(prefix.length()) + ".journal");
+	}
+
+	/**
+	 * Opens the journal of a database, applies the records it holds that were
+	 * not applied yet and starts the syncer and compactor threads.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @return the open journal
+	 * @throws IOException
+	 *             if the journal file cannot be read or written
+	 * @throws SQLException
+	 *             if the journal state cannot be read from the database
+	 */
+	public static ChangeJournal open(String database) throws IOException, SQLException {
+		return open(database, COMPACTION_INTERVAL);
+	}
+
+	/**
+	 * Opens the journal of a database, compacting at the given interval.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @param compactionInterval
+	 *            longest time in milliseconds between two compactions
+	 * @return the open journal
+	 * @throws IOException
+	 *             if the journal file cannot be read or written
+	 * @throws SQLException
+	 *             if the journal state cannot be read from the database
+	 */
+	static ChangeJournal open(String database, long compactionInterval) throws IOException, SQLException {
+		File file = getFile(database);
+		if (file == null)
+			throw new IOException("No journal file for " + database);
+
+		return open(database, compactionInterval, new RandomAccessFile(file, "rw").getChannel());
+	}
+
+	/**
+	 * Opens a journal of a database kept in the given channel.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @param compactionInterval
+	 *            longest time in milliseconds between two compactions
+	 * @param channel
+	 *            the open journal file
+	 * @return the open journal
+	 * @throws IOException
+	 *             if the journal file cannot be read or written
+	 * @throws SQLException
+	 *             if the journal state cannot be read from the database
+	 */
+	static ChangeJournal open(String database, long compactionInterval, FileChannel channel) throws IOException,
+			SQLException {
+		ChangeJournal journal = new ChangeJournal(database, channel, compactionInterval);
+		try {
+			journal.recover();
+		} catch (IOException | SQLException exception) {
+			journal.channel.close();
+			throw exception;
+		}
+		journal.start();
+		return journal;
+	}
+
+	/**
+	 * Getter for database
+	 *
+	 * @return JDBC URL of the database the journal applies its records to
+	 */
+	public String getDatabase() {
+		return database;
+	}
+
+	/**
+	 * Returns the number of records applied when the journal was opened.
+	 *
+	 * @return number of records replayed from the file
+	 */
+	public int getReplayedCount() {
+		synchronized (lock) {
+			return replayed;
+		}
+	}
+
+	/**
+	 * Returns the number of records appended and not yet applied to the
+	 * tables.
+	 *
+	 * @return number of waiting records
+	 */
+	public int getPendingCount() {
+		synchronized (lock) {
+			return unapplied.size();
+		}
+	}
+
+	/**
+	 * Getter for failures
+	 *
+	 * @return number of records that could not be applied since the journal
+	 *         was opened
+	 */
+	public int getFailureCount() {
+		synchronized (lock) {
+			return failures;
+		}
+	}
+
+	/**
+	 * Appends the save of an Activity, its project link, members and incoming
+	 * dependencies.
+	 *
+	 * @param project
+	 *            the project the activity belongs to
+	 * @param activity
+	 *            the activity to save
+	 * @return sequence number of the record
+	 */
+	public long saveActivity(Projects project, Activities activity) {
+		List<DefaultEdge> incoming = new ArrayList<DefaultEdge>(project.getIncomingArrowsOfActivity(activity));
+		int[] predecessorIDs = new int[incoming.size()];
+		for (int i = 0; i < predecessorIDs.length; i++)
+			predecessorIDs[i] = project.getActivityBefore(incoming.get(i)).getId();
+
+		Record record = new Record(SAVE_ACTIVITY, predecessorIDs);
+		record.projectID = project.getId();
+		record.activity = DataResource.copyActivity(activity);
+		record.base = record.activity.getVersion();
+		record.savedActivity = activity;
+		return append(record);
+	}
+
+	/**
+	 * Appends the save of a project's fields and its link to the current user.
+	 *
+	 * @param project
+	 *            the project to save
+	 * @return sequence number of the record
+	 */
+	public long saveProject(Projects project) {
+		Record record = new Record(SAVE_PROJECT, DataResource.currentUser.getID());
+		record.project = DataResource.copyProject(project);
+		record.base = record.project.getVersion();
+		record.savedProject = project;
+		return append(record);
+	}
+
+	/**
+	 * Appends the deletion of an Activity and its associated tuples.
+	 *
+	 * @param activity
+	 *            the activity to delete
+	 * @return sequence number of the record
+	 */
+	public long deleteActivity(Activities activity) {
+		return append(new Record(DELETE_ACTIVITY, activity.getId()));
+	}
+
+	/**
+	 * Appends the removal of a project, its activities and associations.
+	 *
+	 * @param project
+	 *            the project to delete
+	 * @return sequence number of the record
+	 */
+	public long removeProject(Projects project) {
+		return append(new Record(REMOVE_PROJECT, project.getId()));
+	}
+
+	/**
+	 * Appends the deletion of the dependency between 2 Activities.
+	 *
+	 * @param activityBefore
+	 *            Activity ID for the origin Activity
+	 * @param activityAfter
+	 *            Activity ID for the destination Activity
+	 * @return sequence number of the record
+	 */
+	public long deleteEdge(int activityBefore, int activityAfter) {
+		return append(new Record(DELETE_EDGE, activityBefore, activityAfter));
+	}
+
+	/**
+	 * Appends the deletion of every association between an Activity and its
+	 * members.
+	 *
+	 * @param activityId
+	 *            Activity ID for the Activity who's members are to be removed
+	 * @return sequence number of the record
+	 */
+	public long resetActivityMembers(int activityId) {
+		return append(new Record(RESET_MEMBERS, activityId));
+	}
+
+	/**
+	 * Blocks until the record with the given sequence number, and every record
+	 * before it, has been forced to disk, or its write has failed.
+	 *
+	 * @param sequence
+	 *            sequence number returned when the record was appended
+	 * @return true if the record is on disk, false if its write failed, which
+	 *         has been reported, or the wait was cut short
+	 */
+	public boolean sync(long sequence) {
+		synchronized (lock) {
+			while (open && durableSequence < sequence && !isLost(sequence)) {
+				try {
+					lock.wait();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return durableSequence >= sequence && !isLost(sequence);
+		}
+	}
+
+	/**
+	 * Applies every record forced to disk and not yet applied to the tables,
+	 * in one transaction, and empties the file once every record in it has
+	 * been applied. If the transaction fails, each record is retried in its own
+	 * transaction and the failing ones are reported and skipped.
+	 *
+	 * @return number of records applied
+	 */
+	public int compact() {
+		synchronized (compactLock) {
+			List<Record> batch = new ArrayList<Record>();
+			synchronized (lock) {
+				for (Record record : unapplied) {
+					if (record.sequence > durableSequence)
+						break;
+					batch.add(record);
+				}
+			}
+			if (batch.isEmpty())
+				return 0;
+
+			apply(batch);
+
+			synchronized (lock) {
+				unapplied.subList(0, batch.size()).clear();
+				appliedSequence = batch.get(batch.size() - 1).sequence;
+				lock.notifyAll();
+			}
+
+			truncateIfApplied();
+			return batch.size();
+		}
+	}
+
+	/**
+	 * Writes and applies every record appended so far, stops the syncer and
+	 * compactor threads and closes the file. Records can no longer be appended
+	 * once the journal is closed.
+	 */
+	public void close() {
+		Thread stoppingSyncer;
+		Thread stoppingCompactor;
+		synchronized (lock) {
+			if (!open)
+				return;
+
+			open = false;
+			stoppingSyncer = syncer;
+			stoppingCompactor = compactor;
+			lock.notifyAll();
+		}
+
+		try {
+			stoppingSyncer.join();
+			stoppingCompactor.join();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+
+		compact();
+
+		try {
+			channel.close();
+		} catch (IOException exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
+
+	/*****************************helper functions of the journal file and its threads***************/
+
+	/**
+	 * Numbers a record and adds it to the records waiting for the syncer.
+	 */
+	private long append(Record record) {
+		byte[] payload = encode(record);
+
+		synchronized (lock) {
+			if (!open)
+				throw new IllegalStateException("The journal of " + database + " is closed");
+
+			record.sequence = ++appendedSequence;
+
+			CRC32 checksum = new CRC32();
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(8 + payload.length);
+			header.putLong(record.sequence);
+			checksum.update(header.array(), 4, 8);
+			checksum.update(payload);
+
+			ByteBuffer trailer = ByteBuffer.allocate(4);
+			trailer.putInt((int) checksum.getValue());
+
+			buffer.write(header.array(), 0, header.capacity());
+			buffer.write(payload, 0, payload.length);
+			buffer.write(trailer.array(), 0, trailer.capacity());
+			unapplied.add(record);
+			lock.notifyAll();
+			return record.sequence;
+		}
+	}
+
+	/**
+	 * Reads the applied sequence from the database and the records of the
+	 * file, and applies the records that follow the applied sequence.
+	 */
+	private void recover() throws IOException, SQLException {
+		long applied = readAppliedSequence();
+
+		ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+		while (in.hasRemaining() && channel.read(in, in.position()) >= 0) {
+			// read the whole file
+		}
+		in.flip();
+
+		List<Record> records = new ArrayList<Record>();
+		long last = applied;
+		int end = 0;
+		while (true) {
+			Record record = decode(in);
+			if (record == null)
+				break;
+			end = in.position();
+			last = Math.max(last, record.sequence);
+			if (record.sequence > applied)
+				records.add(record);
+		}
+
+		// drop the record whose write was interrupted, if any
+		if (end < channel.size())
+			channel.truncate(end);
+		channel.position(end);
+		durableOffset = end;
+
+		synchronized (lock) {
+			appendedSequence = last;
+			takenSequence = last;
+			durableSequence = last;
+			appliedSequence = applied;
+			unapplied.addAll(records);
+			replayed = records.size();
+			open = true;
+		}
+
+		compact();
+		truncateIfApplied();
+	}
+
+	private long readAppliedSequence() throws SQLException {
+		Connection connection = DataResource.createConnectionToDB(database);
+		if (connection == null)
+			throw new SQLException("No connection to " + database);
+
+		try {
+			return readAppliedSequence(connection);
+		} finally {
+			DataResource.closeConnection(connection);
+		}
+	}
+
+	private static long readAppliedSequence(Connection connection) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection,
+				"SELECT applied_seq FROM journal_state WHERE id = 0");
+		ResultSet result = ps.executeQuery();
+		try {
+			return result.next() ? result.getLong(1) : 0;
+		} finally {
+			result.close();
+		}
+	}
+
+	private void start() {
+		syncer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				syncRecords();
+			}
+		}, "journal-syncer");
+		syncer.start();
+
+		compactor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				compactRecords();
+			}
+		}, "journal-compactor");
+		compactor.setDaemon(true);
+		compactor.start();
+	}
+
+	/**
+	 * Body of the syncer thread: writes the records appended since its last
+	 * pass and forces them to disk, until close is called and every record
+	 * has been written.
+	 */
+	private void syncRecords() {
+		while (true) {
+			byte[] group;
+			long firstSequence;
+			long groupSequence;
+			synchronized (lock) {
+				while (open && buffer.size() == 0) {
+					try {
+						lock.wait();
+					} catch (InterruptedException exception) {
+						// only close stops the syncer
+					}
+				}
+				if (buffer.size() == 0)
+					return;
+
+				group = buffer.toByteArray();
+				firstSequence = takenSequence + 1;
+				groupSequence = appendedSequence;
+				takenSequence = groupSequence;
+				buffer.reset();
+			}
+
+			List<Record> failed = new ArrayList<Record>();
+			IOException failure = null;
+			synchronized (fileLock) {
+				try {
+					channel.position(durableOffset);
+					ByteBuffer out = ByteBuffer.wrap(group);
+					while (out.hasRemaining())
+						channel.write(out);
+					channel.force(false);
+					durableOffset = channel.position();
+				} catch (IOException exception) {
+					failure = exception;
+					cutBack();
+				}
+
+				synchronized (lock) {
+					if (failure == null) {
+						durableSequence = groupSequence;
+					} else {
+						// the group is not on disk, so it is not applied either
+						lost.add(new long[] { firstSequence, groupSequence });
+						for (Record record : unapplied) {
+							if (record.sequence >= firstSequence && record.sequence <= groupSequence)
+								failed.add(record);
+						}
+						unapplied.removeAll(failed);
+						failures += failed.size();
+					}
+					lock.notifyAll();
+				}
+			}
+
+			for (Record record : failed)
+				tell(record, failure);
+		}
+	}
+
+	/**
+	 * Removes the part of a group whose write failed from the end of the
+	 * file, so the next group follows the last record forced to disk.
+	 */
+	private void cutBack() {
+		try {
+			if (channel.size() > durableOffset)
+				channel.truncate(durableOffset);
+			channel.position(durableOffset);
+		} catch (IOException exception) {
+			// the next group is still written at the end of the last one
+			System.out.println(exception.getMessage());
+		}
+	}
+
+	private boolean isLost(long sequence) {
+		for (long[] range : lost) {
+			if (sequence >= range[0] && sequence <= range[1])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Body of the compactor thread: compacts once enough records are waiting
+	 * or the compaction interval is over, until close is called.
+	 */
+	private void compactRecords() {
+		while (true) {
+			synchronized (lock) {
+				long started = System.currentTimeMillis();
+				long waited = 0;
+				while (open && durableSequence - appliedSequence < COMPACTION_RECORDS && waited < compactionInterval) {
+					try {
+						lock.wait(compactionInterval - waited);
+					} catch (InterruptedException exception) {
+						// only close stops the compactor
+					}
+					waited = System.currentTimeMillis() - started;
+				}
+				if (!open)
+					return;
+			}
+
+			compact();
+		}
+	}
+
+	/**
+	 * Applies a batch of records and records the sequence of the last one, in
+	 * one transaction. If it fails, each record is retried in its own
+	 * transaction and the failing ones are reported.
+	 */
+	private void apply(List<Record> batch) {
+		Connection connection = DataResource.createConnectionToDB(database);
+
+		try {
+			execute(connection, batch);
+		} catch (Exception batchException) {
+			for (Record record : batch) {
+				List<Record> single = new ArrayList<Record>();
+				single.add(record);
+				try {
+					execute(connection, single);
+				} catch (Exception exception) {
+					report(connection, record, exception);
+				}
+			}
+		}
+
+		DataResource.closeConnection(connection);
+	}
+
+	private void execute(Connection connection, List<Record> records) throws Exception {
+		if (connection == null)
+			throw new SQLException("No connection to " + database);
+
+		try {
+			DataResource.beginTransaction(connection);
+			// records already applied by another journal of the database are not applied again
+			long applied = readAppliedSequence(connection);
+			HashMap<String, Integer> written = new HashMap<String, Integer>();
+			for (Record record : records) {
+				if (record.sequence <= applied)
+					continue;
+				if (record.isSave())
+					number(record, written);
+				record.apply(connection);
+			}
+			long last = records.get(records.size() - 1).sequence;
+			if (last > applied)
+				writeAppliedSequence(connection, last);
+			DataResource.commitTransaction(connection);
+
+			synchronized (lock) {
+				for (Record record : records) {
+					if (record.sequence <= applied || !record.isSave())
+						continue;
+					versions.put(record.key(), Math.max(record.written, lastVersion(record.key())));
+					record.committed();
+				}
+			}
+		} catch (Exception exception) {
+			DataResource.rollbackTransaction(connection);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Sets the version a save record is written with: the version after the
+	 * last one written for its object, in this transaction or committed
+	 * before it, or after the version it was appended with if that is higher.
+	 */
+	private void number(Record record, HashMap<String, Integer> written) {
+		Integer last = written.get(record.key());
+		if (last == null) {
+			synchronized (lock) {
+				last = lastVersion(record.key());
+			}
+		}
+		record.written = Math.max(record.base, last) + 1;
+		written.put(record.key(), record.written);
+	}
+
+	private int lastVersion(String key) {
+		Integer version = versions.get(key);
+		return version == null ? 0 : version;
+	}
+
+	private void writeAppliedSequence(Connection connection, long sequence) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection,
+				"INSERT OR REPLACE INTO journal_state(id, applied_seq) VALUES (0, ?)");
+		ps.setLong(1, sequence);
+		ps.executeUpdate();
+	}
+
+	// a record that cannot be applied is skipped, so the records after it are not held back
+	private void report(Connection connection, Record record, Exception exception) {
+		synchronized (lock) {
+			failures++;
+		}
+		tell(record, exception);
+
+		if (connection == null)
+			return;
+		try {
+			writeAppliedSequence(connection, record.sequence);
+		} catch (SQLException stateException) {
+			System.out.println(stateException.getMessage());
+		}
+	}
+
+	// tells the listener of the PersistenceQueue about a record that was not saved
+	private void tell(Record record, Exception exception) {
+		PersistenceListener listener = PersistenceQueue.getListener();
+		if (listener != null)
+			listener.persistenceFailed(record.describe(), exception);
+		else
+			System.out.println("Could not " + record.describe() + ": " + exception.getMessage());
+	}
+
+	/**
+	 * Empties the file if every record appended has been written and applied,
+	 * or has failed.
+	 */
+	private void truncateIfApplied() {
+		synchronized (fileLock) {
+			synchronized (lock) {
+				// records being written by the syncer are still unapplied
+				if (buffer.size() > 0 || !unapplied.isEmpty())
+					return;
+				try {
+					if (channel.isOpen() && channel.size() > 0)
+						channel.truncate(0);
+					durableOffset = 0;
+				} catch (IOException exception) {
+					System.out.println(exception.getMessage());
+				}
+			}
+		}
+	}
+
+	/*****************************helper functions to encode and decode records***************/
+
+	private static byte[] encode(Record record) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(record.type);
+			out.writeInt(record.projectID);
+			if (record.type == SAVE_ACTIVITY)
+				writeActivity(out, record.activity);
+			else if (record.type == SAVE_PROJECT)
+				writeProject(out, record.project);
+			out.writeInt(record.ids.length);
+			for (int id : record.ids)
+				out.writeInt(id);
+			out.flush();
+		} catch (IOException exception) {
+			// not thrown when writing to memory
+			throw new IllegalStateException(exception);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the next record of the file, or returns null at the end of the
+	 * file or at a record that is incomplete or fails its checksum.
+	 */
+	private static Record decode(ByteBuffer in) {
+		try {
+			int length = in.getInt();
+			if (length < 9 || length > in.remaining() - 4)
+				return null;
+
+			byte[] body = new byte[length];
+			in.get(body);
+			CRC32 checksum = new CRC32();
+			checksum.update(body);
+			if (in.getInt() != (int) checksum.getValue())
+				return null;
+
+			ByteBuffer record = ByteBuffer.wrap(body);
+			long sequence = record.getLong();
+			byte type = record.get();
+			int projectID = record.getInt();
+			Activities activity = type == SAVE_ACTIVITY ? readActivity(record) : null;
+			Projects project = type == SAVE_PROJECT ? readProject(record) : null;
+			int[] ids = new int[record.getInt()];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = record.getInt();
+
+			Record decoded = new Record(type, ids);
+			decoded.sequence = sequence;
+			decoded.projectID = projectID;
+			decoded.activity = activity;
+			decoded.project = project;
+			decoded.base = activity != null ? activity.getVersion() : project != null ? project.getVersion() : 0;
+			return decoded;
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException exception) {
+			return null;
+		}
+	}
+
+	private static void writeActivity(DataOutputStream out, Activities activity) throws IOException {
+		out.writeInt(activity.getId());
+		writeString(out, activity.getLabel());
+		writeString(out, activity.getDescription());
+		out.writeInt(DateCodec.toEpochDay(activity.getStartDate()));
+		out.writeInt(DateCodec.toEpochDay(activity.getEndDate()));
+		out.writeByte(activity.getProgress().ordinal());
+		out.writeInt(activity.getBudget());
+		out.writeInt(activity.getMostLikelyTime());
+		out.writeInt(activity.getOptimisticTime());
+		out.writeInt(activity.getPessimisticTime());
+		out.writeInt(activity.getTargetDate());
+		out.writeInt(activity.getVersion());
+
+		out.writeInt(activity.getMemberList().size());
+		for (Users member : activity.getMemberList())
+			out.writeInt(member.getID());
+	}
+
+	private static Activities readActivity(ByteBuffer in) {
+		int id = in.getInt();
+		String label = readString(in);
+		String description = readString(in);
+		int start = in.getInt();
+		int end = in.getInt();
+		TaskProgress progress = PROGRESS[in.get()];
+		int budget = in.getInt();
+		int mostLikely = in.getInt();
+		int optimistic = in.getInt();
+		int pessimistic = in.getInt();
+		int targetDate = in.getInt();
+		Activities activity = new Activities(description, DateCodec.fromEpochDay(start), DateCodec.fromEpochDay(end),
+				label, id, progress, budget, mostLikely, optimistic, pessimistic, targetDate);
+		activity.setVersion(in.getInt());
+
+		// only the ids of the members are saved
+		ArrayList<Users> memberList = new ArrayList<Users>();
+		int memberCount = in.getInt();
+		for (int i = 0; i < memberCount; i++) {
+			Users member = new Users();
+			member.setID(in.getInt());
+			memberList.add(member);
+		}
+		activity.setMemberList(memberList);
+		return activity;
+	}
+
+	private static void writeProject(DataOutputStream out, Projects project) throws IOException {
+		out.writeInt(project.getId());
+		writeString(out, project.getProjectName());
+		writeString(out, project.getDate());
+		writeString(out, project.getDescription());
+		out.writeDouble(project.getBudget());
+		out.writeInt(project.getManagerID());
+		out.writeInt(project.getVersion());
+	}
+
+	private static Projects readProject(ByteBuffer in) {
+		int id = in.getInt();
+		String name = readString(in);
+		String date = readString(in);
+		String description = readString(in);
+		double budget = in.getDouble();
+		int managerID = in.getInt();
+		Projects project = new Projects(name, new ArrayList<Users>(), date, id, managerID, description, budget);
+		project.setVersion(in.getInt());
+		return project;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,344 @@
+package saver_loader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * The ConnectionManager class keeps the database connections used by the
+ * saver_loader classes open for the lifetime of the application, instead of
+ * opening a new connection for every load or save.
+ *
+ * Each thread that accesses a database gets one long-lived connection per
+ * database URL. In practice this is a small pool: the Swing event thread and
+ * the few background threads of the application. Keeping connections confined
+ * to a thread means a connection, its transactions and its statements are
+ * never shared between threads.
+ *
+ * Prepared statements are cached per connection by their SQL text, so each
+ * distinct statement is only parsed by SQLite once. Callers must therefore use
+ * parameters instead of concatenating values into the SQL string.
+ *
+ * Every getConnection must be paired with a release, through
+ * DataResource.closeConnection. Borrows nest: when the last borrower of a
+ * connection releases it, the statements created directly on it, rather than
+ * through prepareStatement, are closed and a transaction left open is rolled
+ * back. An unclosed query would otherwise keep an old snapshot of the database
+ * open and make the connection's next write fail once another connection has
+ * committed, and an open transaction would hold the write lock.
+ *
+ * Every connection is configured with the current StorageProfile when it is
+ * opened. The first time a database is opened, its schema is brought up to
+ * date by the SchemaMigrator.
+ */
+public class ConnectionManager {
+
+	// connections of the current thread, by database URL
+	private static final ThreadLocal<HashMap<String, ManagedConnection>> connections = new ThreadLocal<HashMap<String, ManagedConnection>>() {
+		@Override
+		protected HashMap<String, ManagedConnection> initialValue() {
+			return new HashMap<String, ManagedConnection>();
+		}
+	};
+
+	// every connection opened by the manager, on any thread
+	private static final ArrayList<ManagedConnection> openConnections = new ArrayList<ManagedConnection>();
+
+	// settings applied to the connections opened from now on
+	private static StorageProfile profile = StorageProfile.BALANCED;
+
+	// databases already migrated by this process
+	private static final HashSet<String> migratedDatabases = new HashSet<String>();
+
+	/**
+	 * A connection together with the statements prepared on it. Borrowers get
+	 * the proxy, which records the statements they create themselves. The
+	 * borrow count and the closed flag are guarded by the ManagedConnection,
+	 * since closeAll reads them from another thread.
+	 */
+	private static class ManagedConnection implements InvocationHandler {
+		final Connection connection;
+		final Connection proxy;
+		final Thread owner = Thread.currentThread();
+		final HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+		final ArrayList<Statement> borrowed = new ArrayList<Statement>();
+		int borrowers;
+		boolean closed;
+
+		ManagedConnection(Connection connection) {
+			this.connection = connection;
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result;
+			try {
+				result = method.invoke(connection, args);
+			} catch (InvocationTargetException exception) {
+				throw exception.getCause();
+			}
+			if (result instanceof Statement)
+				borrowed.add((Statement) result);
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the connection of the current thread to the given database,
+	 * opening it on first use or if it has been closed since. The caller
+	 * releases it with DataResource.closeConnection.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @return an open connection to the database
+	 * @throws SQLException
+	 *             if the connection cannot be opened or the schema cannot be
+	 *             migrated
+	 */
+	public static Connection getConnection(String database) throws SQLException {
+		return getManagedConnection(database).proxy;
+	}
+
+	/**
+	 * Opens a connection to the given database that the manager does not keep,
+	 * configured with the current StorageProfile, for work that must not join
+	 * a transaction of the current thread's connection. The caller closes it
+	 * with DataResource.closeConnection.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @return a new open connection to the database
+	 * @throws SQLException
+	 *             if the connection cannot be opened or the schema cannot be
+	 *             migrated
+	 */
+	public static Connection openConnection(String database) throws SQLException {
+		Connection connection = DriverManager.getConnection(database);
+		configure(connection);
+		try {
+			migrate(database, connection);
+		} catch (SQLException exception) {
+			connection.close();
+			throw exception;
+		}
+		return connection;
+	}
+
+	/**
+	 * Returns a prepared statement for the given SQL on the given connection.
+	 * The statement is prepared the first time the SQL text is seen on that
+	 * connection and reused afterwards, with its parameters and batch cleared. Connections
+	 * not opened by the manager are prepared on directly and not cached.
+	 *
+	 * @param connection
+	 *            connection returned by getConnection
+	 * @param sql
+	 *            SQL text of the statement
+	 * @return the prepared statement
+	 * @throws SQLException
+	 *             if the statement cannot be prepared
+	 */
+	public static PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+		ManagedConnection managed = find(connection);
+		if (managed == null)
+			return connection.prepareStatement(sql);
+
+		PreparedStatement ps = managed.statements.get(sql);
+		if (ps == null) {
+			ps = managed.connection.prepareStatement(sql);
+			managed.statements.put(sql, ps);
+		} else {
+			ps.clearParameters();
+			ps.clearBatch();
+		}
+		return ps;
+	}
+
+	/**
+	 * Checks whether the given connection is kept open by the manager. Such
+	 * connections must not be closed by the code that borrowed them.
+	 *
+	 * @param connection
+	 *            the connection to check
+	 * @return true if the connection is managed
+	 */
+	public static boolean isManaged(Connection connection) {
+		return find(connection) != null;
+	}
+
+	/**
+	 * Releases a managed connection after use. The connection stays open. Once
+	 * its last borrower has released it, a transaction still open on it is
+	 * rolled back and the statements the borrowers created on it directly are
+	 * closed.
+	 *
+	 * @param connection
+	 *            connection returned by getConnection
+	 */
+	public static void release(Connection connection) {
+		ManagedConnection managed = find(connection);
+		if (managed == null)
+			return;
+
+		synchronized (managed) {
+			if (managed.borrowers > 0)
+				managed.borrowers--;
+			if (managed.borrowers > 0 || managed.closed)
+				return;
+
+			try {
+				// a borrower that failed between begin and commit must not leave the write lock held
+				if (!managed.connection.getAutoCommit()) {
+					managed.connection.rollback();
+					managed.connection.setAutoCommit(true);
+				}
+			} catch (SQLException exception) {
+				System.out.println(exception.getMessage());
+			}
+			closeStatements(managed.borrowed);
+		}
+	}
+
+	/**
+	 * Sets the storage profile applied to connections opened from now on.
+	 * Connections already open keep their settings until closeAll is called.
+	 *
+	 * @param storageProfile
+	 *            the profile to apply
+	 */
+	public static synchronized void setStorageProfile(StorageProfile storageProfile) {
+		profile = storageProfile;
+	}
+
+	/**
+	 * Getter for profile
+	 *
+	 * @return the storage profile applied to new connections
+	 */
+	public static synchronized StorageProfile getStorageProfile() {
+		return profile;
+	}
+
+	/**
+	 * Closes the connections opened by the manager along with their cached
+	 * statements: those of the current thread, and those of other threads that
+	 * are not borrowed at the moment. A connection another thread is still
+	 * using is left open, since its statements are not safe to close under it.
+	 * Used when the application exits, once the background writers have been
+	 * stopped, and when switching databases or storage profiles.
+	 */
+	public static void closeAll() {
+		synchronized (openConnections) {
+			Iterator<ManagedConnection> iterator = openConnections.iterator();
+			while (iterator.hasNext()) {
+				ManagedConnection managed = iterator.next();
+				synchronized (managed) {
+					if (managed.owner != Thread.currentThread() && managed.borrowers > 0)
+						continue;
+					managed.closed = true;
+					close(managed);
+				}
+				iterator.remove();
+			}
+		}
+	}
+
+	private static ManagedConnection getManagedConnection(String database) throws SQLException {
+		HashMap<String, ManagedConnection> threadConnections = connections.get();
+		ManagedConnection managed = threadConnections.get(database);
+
+		if (managed != null) {
+			synchronized (managed) {
+				if (!managed.closed && !managed.connection.isClosed()) {
+					managed.borrowers++;
+					return managed;
+				}
+			}
+		}
+
+		synchronized (openConnections) {
+			openConnections.remove(managed);
+			managed = new ManagedConnection(DriverManager.getConnection(database));
+			openConnections.add(managed);
+		}
+		configure(managed.connection);
+		try {
+			migrate(database, managed.connection);
+		} catch (SQLException exception) {
+			synchronized (openConnections) {
+				openConnections.remove(managed);
+			}
+			threadConnections.remove(database);
+			close(managed);
+			throw exception;
+		}
+		threadConnections.put(database, managed);
+		synchronized (managed) {
+			managed.borrowers++;
+		}
+		return managed;
+	}
+
+	private static void configure(Connection connection) {
+		try {
+			getStorageProfile().apply(connection);
+		} catch (SQLException exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
+
+	// a database that fails to migrate is not recorded, so the migration is
+	// retried by the next connection instead of running on a partial schema
+	private static void migrate(String database, Connection connection) throws SQLException {
+		synchronized (migratedDatabases) {
+			if (migratedDatabases.contains(database))
+				return;
+
+			SchemaMigrator.migrate(connection);
+			migratedDatabases.add(database);
+		}
+	}
+
+	private static ManagedConnection find(Connection connection) {
+		for (ManagedConnection managed : connections.get().values()) {
+			if (managed.proxy == connection || managed.connection == connection)
+				return managed;
+		}
+		return null;
+	}
+
+	// each statement is closed on its own, so one failure does not leave the others and the connection open
+	private static void closeStatements(Collection<? extends Statement> statements) {
+		for (Statement statement : statements) {
+			try {
+				statement.close();
+			} catch (SQLException exception) {
+				System.out.println(exception.getMessage());
+			}
+		}
+		statements.clear();
+	}
+
+	private static void close(ManagedConnection managed) {
+		closeStatements(managed.statements.values());
+		closeStatements(managed.borrowed);
+		try {
+			managed.connection.close();
+		} catch (SQLException exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
+}
@@ -0,0 +1,740 @@
+package saver_loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import resources.DateCodec;
+import resources.TaskProgress;
+
+/**
+ * The CsvImporter class imports projects, activities, dependencies and
+ * assignments from CSV files into the current database. Each file is read
+ * once and staged a chunk of rows at a time in a staging database, a
+ * temporary file attached to the import connection for the length of the
+ * import. The staging database has a bounded page cache and the connection
+ * keeps its temporary sort files on disk while importing, so memory stays
+ * bounded whatever the size of the files. Ids are reserved from the
+ * IdAllocator a chunk at a time, before the chunk's transaction.
+ *
+ * The staged rows are then validated. A project is rejected, with all its
+ * activities, if its manager is unknown, if one of its rows cannot be read,
+ * if a dependency of its activities names a missing predecessor or an
+ * activity of another project, if an assignment names an unknown user, or if
+ * its dependencies form a cycle. Cycles are looked for one project at a time,
+ * so only the dependencies of the largest project are held in memory. The
+ * remaining projects are copied to the application tables with set-based
+ * statements, a range of projects per transaction.
+ *
+ * The first line of each file is a header and is skipped. The columns are:
+ *
+ * projects: key, name, date, description, budget, manager username
+ *
+ * activities: key, project key, label, description, start date, end date,
+ * and optionally progress, budget, most likely, optimistic and pessimistic
+ * times and target date. Dates are written as in "22-07-2016".
+ *
+ * dependencies: key of the activity before, key of the activity after
+ *
+ * assignments: activity key, username
+ *
+ * Usage: CsvImporter [-db url] projects.csv activities.csv [dependencies.csv]
+ * [assignments.csv]
+ */
+public class CsvImporter {
+
+	// rows staged per transaction and ids reserved per block
+	static int chunkRows = 10000;
+	// projects copied to the application tables per transaction
+	static int projectsPerTransaction = 100;
+	// error messages kept in a report; further errors are only counted
+	private static final int MAX_REPORTED_ERRORS = 100;
+	// page cache of the staging database, in KiB
+	private static final int STAGING_CACHE_KIB = 8000;
+
+	private static final String[] CREATE_STAGING_SQL = {
+			"CREATE TABLE staging.import_projects (key TEXT PRIMARY KEY, id INTEGER NOT NULL, name TEXT, date TEXT, "
+					+ "description TEXT, budget REAL, manager TEXT, line INTEGER)",
+			"CREATE TABLE staging.import_activities (key TEXT PRIMARY KEY, id INTEGER NOT NULL, project_key TEXT NOT NULL, "
+					+ "label TEXT, description TEXT, startdate INTEGER, endate INTEGER, progress TEXT, budget INTEGER, "
+					+ "most_likely INTEGER, optimistic INTEGER, pessimistic INTEGER, target_date INTEGER, line INTEGER)",
+			"CREATE INDEX staging.import_activities_project ON import_activities(project_key)",
+			"CREATE TABLE staging.import_edges (from_key TEXT, to_key TEXT, line INTEGER)",
+			"CREATE INDEX staging.import_edges_to ON import_edges(to_key)",
+			"CREATE TABLE staging.import_members (activity_key TEXT, username TEXT, line INTEGER)",
+			"CREATE INDEX staging.import_members_activity ON import_members(activity_key)",
+			"CREATE TABLE staging.import_rejected (project_key TEXT PRIMARY KEY)" };
+
+	private static final String REJECT_SQL = "INSERT OR IGNORE INTO import_rejected(project_key) VALUES (?)";
+
+	private static final String UNKNOWN_MANAGERS_SQL = "SELECT p.line, p.key, p.manager FROM import_projects p "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM users u WHERE u.username = p.manager)";
+
+	private static final String ORPHAN_ACTIVITIES_SQL = "SELECT a.line, a.key, a.project_key FROM import_activities a "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM import_projects p WHERE p.key = a.project_key)";
+
+	private static final String INVALID_EDGES_SQL = "SELECT e.line, e.from_key, e.to_key, f.project_key, t.project_key "
+			+ "FROM import_edges e LEFT JOIN import_activities f ON f.key = e.from_key "
+			+ "LEFT JOIN import_activities t ON t.key = e.to_key "
+			+ "WHERE f.key IS NULL OR t.key IS NULL OR f.project_key <> t.project_key";
+
+	private static final String INVALID_MEMBERS_SQL = "SELECT m.line, m.activity_key, m.username, a.project_key "
+			+ "FROM import_members m LEFT JOIN import_activities a ON a.key = m.activity_key "
+			+ "WHERE a.key IS NULL OR NOT EXISTS (SELECT 1 FROM users u WHERE u.username = m.username)";
+
+	// the edges of each project, grouped by project, for the cycle check
+	private static final String PROJECT_EDGES_SQL = "SELECT t.project_key, f.id, t.id FROM import_edges e "
+			+ "JOIN import_activities t ON t.key = e.to_key JOIN import_activities f ON f.key = e.from_key "
+			+ "WHERE f.project_key = t.project_key ORDER BY t.project_key";
+
+	// a range of staged projects, by rowid, that were not rejected
+	private static final String PROJECT_RANGE = " p.rowid >= ? AND p.rowid < ? "
+			+ "AND NOT EXISTS (SELECT 1 FROM import_rejected r WHERE r.project_key = p.key)";
+
+	private static final String COPY_PROJECTS_SQL = "INSERT INTO projects(id, name, date, description, budget, manager_id, revision) "
+			+ "SELECT p.id, p.name, p.date, p.description, p.budget, (SELECT u.id FROM users u WHERE u.username = p.manager), "
+			+ "(SELECT value FROM change_counter WHERE id = 0) + 1 FROM import_projects p WHERE" + PROJECT_RANGE;
+
+	private static final String COPY_ACTIVITIES_SQL = "INSERT INTO activities(id, label, description, startdate, endate, "
+			+ "progress, budget, most_likely, optimistic, pessimistic, target_date) SELECT a.id, a.label, a.description, "
+			+ "a.startdate, a.endate, a.progress, a.budget, a.most_likely, a.optimistic, a.pessimistic, a.target_date "
+			+ "FROM import_projects p JOIN import_activities a ON a.project_key = p.key WHERE" + PROJECT_RANGE;
+
+	private static final String COPY_PROJECT_ACTIVITIES_SQL = "INSERT INTO activity_project_relationships(project_id, activity_id) "
+			+ "SELECT p.id, a.id FROM import_projects p JOIN import_activities a ON a.project_key = p.key WHERE" + PROJECT_RANGE;
+
+	private static final String COPY_EDGES_SQL = "INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) "
+			+ "SELECT DISTINCT f.id, a.id FROM import_projects p JOIN import_activities a ON a.project_key = p.key "
+			+ "JOIN import_edges e ON e.to_key = a.key JOIN import_activities f ON f.key = e.from_key WHERE" + PROJECT_RANGE;
+
+	private static final String COPY_MEMBERS_SQL = "INSERT OR REPLACE INTO activity_user_project_relationships(activity_id, user_id, project_id) "
+			+ "SELECT DISTINCT a.id, u.id, p.id FROM import_projects p JOIN import_activities a ON a.project_key = p.key "
+			+ "JOIN import_members m ON m.activity_key = a.key JOIN users u ON u.username = m.username WHERE" + PROJECT_RANGE;
+
+	private static final String COPY_PROJECT_USERS_SQL = "INSERT OR REPLACE INTO user_project_relationships(project_id, user_id) "
+			+ "SELECT DISTINCT p.id, u.id FROM import_projects p JOIN import_activities a ON a.project_key = p.key "
+			+ "JOIN import_members m ON m.activity_key = a.key JOIN users u ON u.username = m.username WHERE" + PROJECT_RANGE;
+
+	/**
+	 * The Staging class reads the rows of one file into its staging table.
+	 */
+	private static abstract class Staging {
+
+		final String name;
+		final String sql;
+		final int columns;
+		final IdAllocator ids;
+
+		Staging(String name, String sql, int columns, IdAllocator ids) {
+			this.name = name;
+			this.sql = sql;
+			this.columns = columns;
+			this.ids = ids;
+		}
+
+		/**
+		 * Binds a row on the staging statement.
+		 *
+		 * @param ps
+		 *            statement prepared with sql
+		 * @param row
+		 *            fields of the row, at least columns of them
+		 * @param id
+		 *            id reserved for the row, if the file has ids
+		 * @param line
+		 *            line of the file the row starts on
+		 */
+		abstract void bind(PreparedStatement ps, List<String> row, int id, long line)
+				throws SQLException, ParseException;
+
+		/**
+		 * Returns the key of the project a row belongs to, which is rejected
+		 * if the row cannot be read.
+		 */
+		String projectKey(List<String> row) {
+			return null;
+		}
+	}
+
+	private static final Staging PROJECTS = new Staging("projects", "INSERT OR IGNORE INTO import_projects"
+			+ "(key, id, name, date, description, budget, manager, line) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", 6,
+			IdAllocator.PROJECTS) {
+		@Override
+		void bind(PreparedStatement ps, List<String> row, int id, long line) throws SQLException {
+			ps.setString(1, row.get(0));
+			ps.setInt(2, id);
+			ps.setString(3, row.get(1));
+			ps.setString(4, row.get(2));
+			ps.setString(5, row.get(3));
+			ps.setDouble(6, Double.parseDouble(row.get(4).trim()));
+			ps.setString(7, row.get(5));
+			ps.setLong(8, line);
+		}
+
+		@Override
+		String projectKey(List<String> row) {
+			return row.get(0);
+		}
+	};
+
+	private static final Staging ACTIVITIES = new Staging("activities", "INSERT OR IGNORE INTO import_activities"
+			+ "(key, id, project_key, label, description, startdate, endate, progress, budget, most_likely, "
+			+ "optimistic, pessimistic, target_date, line) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", 6,
+			IdAllocator.ACTIVITIES) {
+		@Override
+		void bind(PreparedStatement ps, List<String> row, int id, long line) throws SQLException, ParseException {
+			ps.setString(1, row.get(0));
+			ps.setInt(2, id);
+			ps.setString(3, row.get(1));
+			ps.setString(4, row.get(2));
+			ps.setString(5, row.get(3));
+			ps.setInt(6, DateCodec.DAY_MONTH_YEAR.parseEpochDay(row.get(4).trim()));
+			ps.setInt(7, DateCodec.DAY_MONTH_YEAR.parseEpochDay(row.get(5).trim()));
+			String progress = field(row, 6);
+			ps.setString(8, progress.isEmpty() ? TaskProgress.pending.name() : TaskProgress.valueOf(progress).name());
+			for (int column = 7; column < 12; column++)
+				ps.setInt(column + 2, field(row, column).isEmpty() ? 0 : Integer.parseInt(field(row, column)));
+			ps.setLong(14, line);
+		}
+
+		@Override
+		String projectKey(List<String> row) {
+			return row.size() > 1 ? row.get(1) : null;
+		}
+	};
+
+	private static final Staging DEPENDENCIES = new Staging("dependencies",
+			"INSERT INTO import_edges(from_key, to_key, line) VALUES (?, ?, ?)", 2, null) {
+		@Override
+		void bind(PreparedStatement ps, List<String> row, int id, long line) throws SQLException {
+			ps.setString(1, row.get(0));
+			ps.setString(2, row.get(1));
+			ps.setLong(3, line);
+		}
+	};
+
+	private static final Staging ASSIGNMENTS = new Staging("assignments",
+			"INSERT INTO import_members(activity_key, username, line) VALUES (?, ?, ?)", 2, null) {
+		@Override
+		void bind(PreparedStatement ps, List<String> row, int id, long line) throws SQLException {
+			ps.setString(1, row.get(0));
+			ps.setString(2, row.get(1));
+			ps.setLong(3, line);
+		}
+	};
+
+	/**
+	 * The Report class describes the outcome of an import.
+	 */
+	public static class Report {
+
+		private long rows;
+		private int projects;
+		private int activities;
+		private int dependencies;
+		private int assignments;
+		private int rejectedProjects;
+		private int errorCount;
+		private final List<String> errors = new ArrayList<String>();
+		private long elapsedNanos;
+
+		/**
+		 * Getter for rows
+		 *
+		 * @return number of rows read from the files, headers excluded
+		 */
+		public long getRowCount() {
+			return rows;
+		}
+
+		/**
+		 * Getter for projects
+		 *
+		 * @return number of projects imported
+		 */
+		public int getProjectCount() {
+			return projects;
+		}
+
+		/**
+		 * Getter for activities
+		 *
+		 * @return number of activities imported
+		 */
+		public int getActivityCount() {
+			return activities;
+		}
+
+		/**
+		 * Getter for dependencies
+		 *
+		 * @return number of dependencies imported
+		 */
+		public int getDependencyCount() {
+			return dependencies;
+		}
+
+		/**
+		 * Getter for assignments
+		 *
+		 * @return number of assignments of users to activities imported
+		 */
+		public int getAssignmentCount() {
+			return assignments;
+		}
+
+		/**
+		 * Getter for rejectedProjects
+		 *
+		 * @return number of projects not imported because of an error
+		 */
+		public int getRejectedProjectCount() {
+			return rejectedProjects;
+		}
+
+		/**
+		 * Getter for errorCount
+		 *
+		 * @return number of errors found in the files
+		 */
+		public int getErrorCount() {
+			return errorCount;
+		}
+
+		/**
+		 * Getter for errors
+		 *
+		 * @return the messages of the first errors found in the files
+		 */
+		public List<String> getErrors() {
+			return Collections.unmodifiableList(errors);
+		}
+
+		/**
+		 * Getter for elapsedNanos
+		 *
+		 * @return duration of the import in milliseconds
+		 */
+		public double getElapsedMillis() {
+			return elapsedNanos / 1000000.0;
+		}
+
+		/**
+		 * Returns the number of rows read per second of import.
+		 *
+		 * @return rows read per second
+		 */
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0 : rows * 1000000000.0 / elapsedNanos;
+		}
+
+		private void error(String message) {
+			errorCount++;
+			if (errors.size() < MAX_REPORTED_ERRORS)
+				errors.add(message);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Imported %d projects, %d activities, %d dependencies and %d assignments; "
+					+ "%d projects rejected, %d errors; %d rows in %.1f ms (%.0f rows/s)", projects, activities,
+					dependencies, assignments, rejectedProjects, errorCount, rows, getElapsedMillis(),
+					getRowsPerSecond());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int first = 0;
+		if (args.length > 1 && args[0].equals("-db")) {
+			DataResource.setDatabase(args[1]);
+			first = 2;
+		}
+		if (args.length - first < 2) {
+			System.out.println("Usage: CsvImporter [-db url] projects.csv activities.csv [dependencies.csv] [assignments.csv]");
+			return;
+		}
+
+		ConnectionManager.setStorageProfile(StorageProfile.BULK_IMPORT);
+		Report report = importFiles(new File(args[first]), new File(args[first + 1]),
+				args.length > first + 2 ? new File(args[first + 2]) : null,
+				args.length > first + 3 ? new File(args[first + 3]) : null);
+
+		for (String error : report.getErrors())
+			System.out.println(error);
+		if (report.getErrorCount() > report.getErrors().size())
+			System.out.println("... " + (report.getErrorCount() - report.getErrors().size()) + " more errors");
+		System.out.println(report);
+		ConnectionManager.closeAll();
+	}
+
+	/**
+	 * Method used to import CSV files into the current database. Projects
+	 * with errors are reported and not imported; the others are imported
+	 * with their activities, dependencies and assignments.
+	 *
+	 * @param projects
+	 *            file of projects
+	 * @param activities
+	 *            file of activities
+	 * @param dependencies
+	 *            file of dependencies, or null
+	 * @param assignments
+	 *            file of assignments, or null
+	 * @return the report of the import
+	 * @throws IOException
+	 *             if a file cannot be read
+	 * @throws SQLException
+	 *             if the database cannot be written
+	 */
+	public static Report importFiles(File projects, File activities, File dependencies, File assignments)
+			throws IOException, SQLException {
+		Report report = new Report();
+		long start = System.nanoTime();
+
+		File stagingFile = File.createTempFile("import", ".staging");
+		Connection connection = ConnectionManager.getConnection(DataResource.dataBase);
+		int tempStore = -1;
+		try {
+			PreparedStatement attach = ConnectionManager.prepareStatement(connection, "ATTACH DATABASE ? AS staging");
+			attach.setString(1, stagingFile.getPath());
+			attach.execute();
+
+			Statement stmt = connection.createStatement();
+			try {
+				ResultSet result = stmt.executeQuery("PRAGMA temp_store");
+				tempStore = result.getInt(1);
+				result.close();
+				// sorts and index builds of the import spill to disk instead of memory
+				stmt.execute("PRAGMA temp_store = FILE");
+				// the staging rows can be rebuilt from the files, so they are never synced
+				stmt.execute("PRAGMA staging.journal_mode = OFF");
+				stmt.execute("PRAGMA staging.synchronous = OFF");
+				stmt.execute("PRAGMA staging.cache_size = -" + STAGING_CACHE_KIB);
+				// an attached database would otherwise be mapped like the main one
+				stmt.execute("PRAGMA staging.mmap_size = 0");
+			} finally {
+				stmt.close();
+			}
+			execute(connection, CREATE_STAGING_SQL);
+
+			stage(connection, projects, PROJECTS, report);
+			stage(connection, activities, ACTIVITIES, report);
+			if (dependencies != null)
+				stage(connection, dependencies, DEPENDENCIES, report);
+			if (assignments != null)
+				stage(connection, assignments, ASSIGNMENTS, report);
+
+			validate(connection, report);
+			copy(connection, report);
+		} finally {
+			try {
+				ConnectionManager.prepareStatement(connection, "DETACH DATABASE staging").execute();
+			} catch (SQLException exception) {
+				System.out.println(exception.getMessage());
+			}
+			try {
+				if (tempStore >= 0)
+					execute(connection, new String[] { "PRAGMA temp_store = " + tempStore });
+			} catch (SQLException exception) {
+				System.out.println(exception.getMessage());
+			}
+			DataResource.closeConnection(connection);
+			stagingFile.delete();
+		}
+
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	 * Reads a file into its staging table, a chunk of rows per transaction.
+	 */
+	private static void stage(Connection connection, File file, Staging staging, Report report)
+			throws IOException, SQLException {
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			// the header
+			if (reader.readRecord() == null)
+				return;
+
+			List<List<String>> chunk = new ArrayList<List<String>>(chunkRows);
+			long[] lines = new long[chunkRows];
+			List<String> row;
+			do {
+				row = reader.readRecord();
+				if (row != null) {
+					lines[chunk.size()] = reader.getRecordLine();
+					chunk.add(row);
+					report.rows++;
+				}
+				if (chunk.size() == chunkRows || (row == null && !chunk.isEmpty())) {
+					stageChunk(connection, chunk, lines, staging, report);
+					chunk.clear();
+				}
+			} while (row != null);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void stageChunk(Connection connection, List<List<String>> chunk, long[] lines, Staging staging,
+			Report report) throws SQLException {
+		// reserved before the transaction, so the reservation commits on its own
+		int firstId = staging.ids == null ? 0 : staging.ids.reserve(chunk.size());
+
+		try {
+			DataResource.beginTransaction(connection);
+			StatementBatch rows = new StatementBatch(ConnectionManager.prepareStatement(connection, staging.sql),
+					DataResource.batchSize);
+			StatementBatch rejected = new StatementBatch(ConnectionManager.prepareStatement(connection, REJECT_SQL),
+					DataResource.batchSize);
+
+			for (int i = 0; i < chunk.size(); i++) {
+				List<String> row = chunk.get(i);
+				try {
+					if (row.size() < staging.columns)
+						throw new IllegalArgumentException(staging.columns + " columns expected, " + row.size() + " found");
+					staging.bind(rows.getStatement(), row, firstId + i, lines[i]);
+					rows.add();
+				} catch (ParseException | IllegalArgumentException exception) {
+					rows.getStatement().clearParameters();
+					report.error(staging.name + " line " + lines[i] + ": " + exception.getMessage());
+					String project = staging.projectKey(row);
+					if (project != null) {
+						rejected.getStatement().setString(1, project);
+						rejected.add();
+					}
+				}
+			}
+			rows.flush();
+			rejected.flush();
+			if (rows.getUnchangedCount() > 0)
+				report.error(staging.name + ": " + rows.getUnchangedCount() + " rows with a key already used were ignored");
+
+			DataResource.commitTransaction(connection);
+		} catch (SQLException exception) {
+			DataResource.rollbackTransaction(connection);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Reports the staged rows that refer to missing rows, and rejects their
+	 * projects, then rejects the projects whose dependencies form a cycle.
+	 */
+	private static void validate(Connection connection, Report report) throws SQLException {
+		try {
+			DataResource.beginTransaction(connection);
+			PreparedStatement reject = ConnectionManager.prepareStatement(connection, REJECT_SQL);
+
+			ResultSet result = ConnectionManager.prepareStatement(connection, UNKNOWN_MANAGERS_SQL).executeQuery();
+			while (result.next()) {
+				report.error("projects line " + result.getLong(1) + ": unknown manager " + result.getString(3));
+				reject(reject, result.getString(2));
+			}
+			result.close();
+
+			// not imported, but no project to reject
+			result = ConnectionManager.prepareStatement(connection, ORPHAN_ACTIVITIES_SQL).executeQuery();
+			while (result.next())
+				report.error("activities line " + result.getLong(1) + ": unknown project " + result.getString(3));
+			result.close();
+
+			result = ConnectionManager.prepareStatement(connection, INVALID_EDGES_SQL).executeQuery();
+			while (result.next()) {
+				String before = result.getString(2), after = result.getString(3);
+				String beforeProject = result.getString(4), afterProject = result.getString(5);
+				if (beforeProject == null)
+					report.error("dependencies line " + result.getLong(1) + ": missing predecessor " + before + " of " + after);
+				else if (afterProject == null)
+					report.error("dependencies line " + result.getLong(1) + ": unknown activity " + after);
+				else
+					report.error("dependencies line " + result.getLong(1) + ": " + before + " and " + after
+							+ " belong to different projects");
+				reject(reject, beforeProject);
+				reject(reject, afterProject);
+			}
+			result.close();
+
+			result = ConnectionManager.prepareStatement(connection, INVALID_MEMBERS_SQL).executeQuery();
+			while (result.next()) {
+				String project = result.getString(4);
+				report.error("assignments line " + result.getLong(1) + ": unknown "
+						+ (project == null ? "activity " + result.getString(2) : "user " + result.getString(3)));
+				reject(reject, project);
+			}
+			result.close();
+
+			rejectCycles(connection, reject, report);
+
+			result = ConnectionManager.prepareStatement(connection, "SELECT count(*) FROM import_projects p "
+					+ "WHERE EXISTS (SELECT 1 FROM import_rejected r WHERE r.project_key = p.key)").executeQuery();
+			report.rejectedProjects = result.next() ? result.getInt(1) : 0;
+			result.close();
+
+			DataResource.commitTransaction(connection);
+		} catch (SQLException exception) {
+			DataResource.rollbackTransaction(connection);
+			throw exception;
+		}
+	}
+
+	private static void reject(PreparedStatement reject, String project) throws SQLException {
+		if (project == null)
+			return;
+		reject.setString(1, project);
+		reject.executeUpdate();
+	}
+
+	/**
+	 * Rejects the projects whose dependencies form a cycle. The edges are read
+	 * grouped by project and each project is checked on its own.
+	 */
+	private static void rejectCycles(Connection connection, PreparedStatement reject, Report report)
+			throws SQLException {
+		ResultSet result = ConnectionManager.prepareStatement(connection, PROJECT_EDGES_SQL).executeQuery();
+		String project = null;
+		int[] before = new int[64], after = new int[64];
+		int count = 0;
+
+		boolean more = result.next();
+		while (true) {
+			String key = more ? result.getString(1) : null;
+			if (project != null && !project.equals(key)) {
+				if (hasCycle(before, after, count)) {
+					report.error("dependencies of project " + project + " form a cycle");
+					reject(reject, project);
+				}
+				count = 0;
+			}
+			if (!more)
+				break;
+
+			project = key;
+			if (count == before.length) {
+				before = Arrays.copyOf(before, count * 2);
+				after = Arrays.copyOf(after, count * 2);
+			}
+			before[count] = result.getInt(2);
+			after[count] = result.getInt(3);
+			count++;
+			more = result.next();
+		}
+		result.close();
+	}
+
+	/**
+	 * Method used to tell whether a set of dependencies forms a cycle, by
+	 * removing the activities without predecessors until none is left.
+	 *
+	 * @param before
+	 *            ids of the activities before
+	 * @param after
+	 *            ids of the activities after, at the same index
+	 * @param count
+	 *            number of dependencies
+	 * @return true if some activities could not be removed
+	 */
+	static boolean hasCycle(int[] before, int[] after, int count) {
+		HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+		int[] from = new int[count], to = new int[count];
+		for (int i = 0; i < count; i++) {
+			from[i] = indexOf(index, before[i]);
+			to[i] = indexOf(index, after[i]);
+		}
+
+		int nodes = index.size();
+		int[] offsets = new int[nodes + 1];
+		int[] predecessors = new int[nodes];
+		for (int i = 0; i < count; i++) {
+			offsets[from[i] + 1]++;
+			predecessors[to[i]]++;
+		}
+		for (int i = 0; i < nodes; i++)
+			offsets[i + 1] += offsets[i];
+		int[] successors = new int[count];
+		int[] fill = Arrays.copyOf(offsets, nodes);
+		for (int i = 0; i < count; i++)
+			successors[fill[from[i]]++] = to[i];
+
+		int[] queue = new int[nodes];
+		int head = 0, tail = 0;
+		for (int i = 0; i < nodes; i++) {
+			if (predecessors[i] == 0)
+				queue[tail++] = i;
+		}
+		while (head < tail) {
+			int node = queue[head++];
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				if (--predecessors[successors[i]] == 0)
+					queue[tail++] = successors[i];
+			}
+		}
+		return tail < nodes;
+	}
+
+	private static int indexOf(HashMap<Integer, Integer> index, int id) {
+		Integer position = index.get(id);
+		if (position == null) {
+			position = index.size();
+			index.put(id, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Copies the staged projects that were not rejected to the application
+	 * tables, a range of projects per transaction.
+	 */
+	private static void copy(Connection connection, Report report) throws SQLException {
+		ResultSet result = ConnectionManager.prepareStatement(connection, "SELECT coalesce(max(rowid), 0) FROM import_projects")
+				.executeQuery();
+		long last = result.next() ? result.getLong(1) : 0;
+		result.close();
+
+		for (long low = 1; low <= last; low += projectsPerTransaction) {
+			long high = low + projectsPerTransaction;
+			try {
+				DataResource.beginTransaction(connection);
+				report.projects += copyRange(connection, COPY_PROJECTS_SQL, low, high);
+				report.activities += copyRange(connection, COPY_ACTIVITIES_SQL, low, high);
+				copyRange(connection, COPY_PROJECT_ACTIVITIES_SQL, low, high);
+				report.dependencies += copyRange(connection, COPY_EDGES_SQL, low, high);
+				report.assignments += copyRange(connection, COPY_MEMBERS_SQL, low, high);
+				copyRange(connection, COPY_PROJECT_USERS_SQL, low, high);
+				DataResource.commitTransaction(connection);
+			} catch (SQLException exception) {
+				DataResource.rollbackTransaction(connection);
+				throw exception;
+			}
+		}
+	}
+
+	private static int copyRange(Connection connection, String sql, long low, long high) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, sql);
+		ps.setLong(1, low);
+		ps.setLong(2, high);
+		return ps.executeUpdate();
+	}
+
+	private static void execute(Connection connection, String[] statements) throws SQLException {
+		for (String sql : statements)
+			ConnectionManager.prepareStatement(connection, sql).execute();
+	}
+
+	private static String field(List<String> row, int column) {
+		return column < row.size() ? row.get(column).trim() : "";
+	}
+}
@@ -0,0 +1,115 @@
+package saver_loader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CsvReader class reads the records of a CSV file one at a time, so files
+ * of any size are read with constant memory.
+ *
+ * Fields are separated by commas. A field in double quotes may contain
+ * commas, line breaks and double quotes written twice. Records end with LF or
+ * CRLF; empty lines are skipped.
+ */
+class CsvReader implements Closeable {
+
+	private final BufferedReader reader;
+	private long line;
+	private long recordLine;
+
+	/**
+	 * Creates a reader over the given characters.
+	 *
+	 * @param reader
+	 *            the CSV text
+	 */
+	CsvReader(Reader reader) {
+		this.reader = new BufferedReader(reader, 1 << 16);
+		this.line = 1;
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return the fields of the record, or null at the end of the file
+	 * @throws IOException
+	 *             if the file cannot be read or ends inside a quoted field
+	 */
+	List<String> readRecord() throws IOException {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean empty = true;
+		recordLine = line;
+
+		while (true) {
+			int c = reader.read();
+			if (c < 0) {
+				if (quoted)
+					throw new IOException("Unterminated quoted field at line " + recordLine);
+				if (empty)
+					return null;
+				fields.add(field.toString());
+				return fields;
+			}
+
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						field.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					if (c == '\n')
+						line++;
+					field.append((char) c);
+				}
+				continue;
+			}
+
+			if (c == '\r')
+				continue;
+			if (c == '\n') {
+				line++;
+				if (empty) {
+					// an empty line is not a record
+					recordLine = line;
+					continue;
+				}
+				fields.add(field.toString());
+				return fields;
+			}
+
+			empty = false;
+			if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '"' && field.length() == 0) {
+				quoted = true;
+			} else {
+				field.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Getter for recordLine
+	 *
+	 * @return line of the file the last record read starts on, from 1
+	 */
+	long getRecordLine() {
+		return recordLine;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -1,21 +1,32 @@
 package saver_loader;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.jgraph.graph.DefaultEdge;
 
+import resources.ActivityEdge;
 import resources.Activities;
+import resources.DateCodec;
 import resources.Projects;
 import resources.TaskProgress;
+import resources.UserType;
 import resources.Users;
 
 /**
@@ -45,10 +56,11 @@ import resources.Users;
 
 public class DataResource {
 
-	// current active projects loaded
-	public static ArrayList<Projects> projectList = new ArrayList<Projects>();
+	// current active projects loaded, indexed by id and name
+	public static ProjectList projectList = new ProjectList();
 
-	public static ArrayList<Users> projectMembers = new ArrayList<Users>();
+	// users that can be assigned to activities, indexed by username
+	public static MemberList projectMembers = new MemberList();
 
 	// this is the currently logged in user for which the projetList will be
 	// populated
@@ -62,11 +74,77 @@ public class DataResource {
 
 	public static String dataBase = "jdbc:sqlite:ultimate_sandwich.db";
 
-	public static DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
+	// stores the projects and activities are loaded from and saved to
+	public static ProjectRepository projectRepository;
+	public static ActivityRepository activityRepository;
+	static {
+		useRepository(new SqliteRepository());
+	}
+
+	// format of the dates shown and typed in the forms, safe to use from any thread
+	public static DateCodec dateFormatter = DateCodec.DAY_MONTH_YEAR;
+
+	// loads the details of the projects next to the selected one in the background
+	private static ExecutorService prefetcher;
+
+	// projects and activities visible to each type of user, scoped by user id
+	static final String MANAGER_PROJECT_SCOPE = "SELECT id FROM projects WHERE manager_id = ?";
+	static final String MANAGER_ACTIVITY_SCOPE = "SELECT project_id, activity_id FROM activity_project_relationships WHERE project_id IN ("
+			+ MANAGER_PROJECT_SCOPE + ")";
+	static final String MEMBER_PROJECT_SCOPE = "SELECT project_id FROM activity_user_project_relationships WHERE user_id = ?";
+	static final String MEMBER_ACTIVITY_SCOPE = "SELECT project_id, activity_id FROM activity_user_project_relationships WHERE user_id = ?";
+
+	// number of rows sent to the database in each JDBC batch by saveToDB
+	public static int batchSize = 500;
+
+	// rows are only replaced while they still have the version before the save, see bindProject and bindActivity
+	private static final String SAVE_PROJECT_SQL = "INSERT OR REPLACE INTO projects(id, name, date, description, budget, manager_id, "
+			+ "version, revision) SELECT ?, ?, ?, ?, ?, ?, ?, (SELECT value FROM change_counter WHERE id = 0) + 1 "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM projects WHERE id = ? AND version <> ?)";
+
+	private static final String SAVE_PROJECT_USER_SQL = "INSERT OR REPLACE INTO user_project_relationships(project_id, user_id) "
+			+ "VALUES (?, ?)";
+
+	private static final String SAVE_ACTIVITY_SQL = "INSERT OR REPLACE INTO activities(id, label, description, startdate, endate, "
+			+ "progress, budget, most_likely, optimistic, pessimistic, target_date, version) SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? "
+			+ "WHERE NOT EXISTS (SELECT 1 FROM activities WHERE id = ? AND version <> ?)";
+
+	private static final String SAVE_PROJECT_ACTIVITY_SQL = "INSERT OR REPLACE INTO activity_project_relationships(project_id, activity_id) "
+			+ "VALUES (?, ?)";
+
+	private static final String SAVE_ACTIVITY_MEMBER_SQL = "INSERT OR REPLACE INTO activity_user_project_relationships(activity_id, user_id, project_id) "
+			+ "VALUES (?, ?, ?)";
+
+	private static final String SAVE_EDGE_SQL = "INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) "
+			+ "VALUES (?, ?)";
+
+	private static final String DELETE_EDGE_SQL = "DELETE FROM activity_edge_relationship WHERE from_activity_id = ? AND to_activity_id = ?";
+
+	static final String RESET_ACTIVITY_MEMBERS_SQL = "DELETE FROM activity_user_project_relationships WHERE activity_id = ?";
+
+	// set-based deletes of a project's activities and of the rows that refer to them
+	static final String PROJECT_ACTIVITY_IDS = "SELECT activity_id FROM activity_project_relationships WHERE project_id = ?";
+
+	static final String DELETE_PROJECT_EDGES_SQL = "DELETE FROM activity_edge_relationship WHERE from_activity_id IN ("
+			+ PROJECT_ACTIVITY_IDS + ") OR to_activity_id IN (" + PROJECT_ACTIVITY_IDS + ")";
+
+	static final String DELETE_PROJECT_MEMBERS_SQL = "DELETE FROM activity_user_project_relationships WHERE project_id = ? "
+			+ "OR activity_id IN (" + PROJECT_ACTIVITY_IDS + ")";
+
+	static final String DELETE_PROJECT_ACTIVITIES_SQL = "DELETE FROM activities WHERE id IN (" + PROJECT_ACTIVITY_IDS + ")";
+
+	static final String DELETE_ACTIVITY_EDGES_SQL = "DELETE FROM activity_edge_relationship WHERE from_activity_id = ? OR to_activity_id = ?";
+
+	// projects changed since a value of the change counter
+	static final String CHANGED_PROJECTS_SQL = "SELECT id FROM projects WHERE revision > ?";
+
+	// change counter when the projectList was last loaded or refreshed
+	private static long lastRevision = -1;
 
 	/**
 	 * Method used to retrieve a project given a projectID passed in parameters.
-	 * Project must be contained in the projectList.
+	 * Project must be contained in the projectList, whose id index makes the
+	 * lookup constant time.
 	 * 
 	 * @param projectId
 	 *            the id we wish to find the project for
@@ -74,18 +152,13 @@ public class DataResource {
 	 *         otherwise.
 	 */
 	public static Projects getProjectbyProjectId(int projectId) {
-
-		for (Projects project : projectList) {
-
-			if (project.getId() == projectId)
-				return project;
-		}
-		return null;
+		return projectList.getById(projectId);
 	}
 
 	/**
 	 * Method used to retrieve a project by projectName given a string passed in
-	 * parameters. Project must be contained in the projectList.
+	 * parameters. Project must be contained in the projectList, whose name
+	 * index makes the lookup constant time.
 	 * 
 	 * @param name
 	 *            the name we wish to find the project for
@@ -93,13 +166,7 @@ public class DataResource {
 	 *         otherwise.
 	 */
 	public static Projects getProjectbyProjectName(String name) {
-
-		for (Projects project : projectList) {
-
-			if (project.getProjectName().equals(name))
-				return project;
-		}
-		return null;
+		return projectList.getByName(name);
 	}
 
 	/**
@@ -115,43 +182,74 @@ public class DataResource {
 
 		// query database and remove project
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		String sql;
-		PreparedStatement ps;
 
 		try {
-			
-			// delete the project
-			// cascade takes care of associated tuples in other tables
-			sql = ("DELETE FROM projects WHERE id=" + project.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
-
-			ArrayList<Activities> actList = project.getActivityList();
-
-			// delete the activities associated with this project
-			// cascade takes care of associated tuples in other tables
-			for (Activities acts : actList) {
-				sql = ("DELETE FROM activities WHERE id=" + acts.getId());
-				ps = connection.prepareStatement(sql);
-				ps.executeUpdate();
-			}
-
-			sql = ("DELETE FROM activity_user_project_relationships WHERE project_id=" + project.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
-			
-			sql = ("DELETE FROM user_project_relationships WHERE project_id=" + project.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
+			beginCascadingTransaction(connection);
+			writeProjectRemoval(connection, project.getId());
+			commitTransaction(connection);
 
 		} catch (Exception exception) {
+			rollbackTransaction(connection);
 			System.out.println(exception.getMessage());
+		} finally {
+			endCascadingTransaction(connection);
 		}
 
 		closeConnection(connection);
 
 	}
 
+	/**
+	 * Writes the removal of a project on the given connection, as part of the
+	 * caller's transaction. The project's tuple, its activities, the
+	 * dependencies from and into those activities and the project's member and
+	 * user associations are deleted.
+	 * 
+	 * The activities are found in the database rather than in memory, so a
+	 * project whose details were never loaded is removed entirely. Each table
+	 * is cleared with a single set-based statement, whatever the number of
+	 * activities.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param projectID
+	 *            id of the project to delete
+	 * @throws SQLException
+	 *             if a delete fails
+	 */
+	static void writeProjectRemoval(Connection connection, int projectID) throws SQLException {
+		PreparedStatement ps;
+
+		// dependencies from or into the project's activities
+		ps = ConnectionManager.prepareStatement(connection, DELETE_PROJECT_EDGES_SQL);
+		ps.setInt(1, projectID);
+		ps.setInt(2, projectID);
+		ps.executeUpdate();
+
+		// members assigned to the project or to its activities
+		ps = ConnectionManager.prepareStatement(connection, DELETE_PROJECT_MEMBERS_SQL);
+		ps.setInt(1, projectID);
+		ps.setInt(2, projectID);
+		ps.executeUpdate();
+
+		// the activities, before the relationships that identify them
+		ps = ConnectionManager.prepareStatement(connection, DELETE_PROJECT_ACTIVITIES_SQL);
+		ps.setInt(1, projectID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, "DELETE FROM activity_project_relationships WHERE project_id = ?");
+		ps.setInt(1, projectID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, "DELETE FROM user_project_relationships WHERE project_id = ?");
+		ps.setInt(1, projectID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, "DELETE FROM projects WHERE id = ?");
+		ps.setInt(1, projectID);
+		ps.executeUpdate();
+	}
+
 	/**
 	 * This method deletes the Activity passed as parameters from the database
 	 * All associated tuples in other tables are also removed.
@@ -161,37 +259,56 @@ public class DataResource {
 	 */
 	public static void deleteActivity(Activities A) {
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		String sql;
-		PreparedStatement ps;
 
 		try {
-			
-			// delete activity from activities table in database
-			sql = ("DELETE FROM activities WHERE id=" + A.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
-
-			// delete activity from activity_project_relationships in database
-			sql = ("DELETE FROM activity_project_relationships WHERE activity_id=" + A.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
-
-			// delete activity from activity_edge_relationship in database
-			sql = ("DELETE FROM activity_edge_relationship WHERE from_activity_id=" + A.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
-
-			sql = ("DELETE FROM activity_user_project_relationships WHERE activity_id=" + A.getId());
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
+			beginCascadingTransaction(connection);
+			writeActivityDeletion(connection, A.getId());
+			commitTransaction(connection);
 
 		} catch (Exception exception) {
+			rollbackTransaction(connection);
 			System.out.println(exception.getMessage());
+		} finally {
+			endCascadingTransaction(connection);
 		}
 
 		closeConnection(connection);
 	}
 
+	/**
+	 * Writes the deletion of an Activity on the given connection, as part of
+	 * the caller's transaction. All associated tuples in other tables are also
+	 * removed, including the dependencies of other Activities on this one.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param activityID
+	 *            id of the Activity to delete
+	 * @throws SQLException
+	 *             if a delete fails
+	 */
+	static void writeActivityDeletion(Connection connection, int activityID) throws SQLException {
+		PreparedStatement ps;
+
+		// dependencies from and into the activity
+		ps = ConnectionManager.prepareStatement(connection, DELETE_ACTIVITY_EDGES_SQL);
+		ps.setInt(1, activityID);
+		ps.setInt(2, activityID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, RESET_ACTIVITY_MEMBERS_SQL);
+		ps.setInt(1, activityID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, "DELETE FROM activity_project_relationships WHERE activity_id = ?");
+		ps.setInt(1, activityID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, "DELETE FROM activities WHERE id = ?");
+		ps.setInt(1, activityID);
+		ps.executeUpdate();
+	}
+
 	/**
 	 * This method is used to delete an association between 2 Activities from
 	 * the database. Given 2 integers representing Activity ID's, the method
@@ -207,17 +324,9 @@ public class DataResource {
 	 */
 	public static void deleteEdgeFromDB(int activityBefore, int activityAfter) {
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		String sql;
-		PreparedStatement ps;
 
 		try {
-
-			// Delete edge in database between the activityBefore and
-			// activityAfter
-			sql = ("DELETE FROM activity_edge_relationship WHERE from_activity_id=" + activityBefore
-					+ " AND to_activity_id=" + activityAfter);
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
+			writeEdgeDeletion(connection, activityBefore, activityAfter);
 
 		} catch (Exception exception) {
 			System.out.println(exception.getMessage());
@@ -235,15 +344,9 @@ public class DataResource {
 	 */
 	public static void resetActivityMembers(int activityId) {
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		String sql;
-		PreparedStatement ps;
 
 		try {
-
-			// Delete members in database associated with the activity
-			sql = ("DELETE FROM activity_user_project_relationships WHERE activity_id=" + activityId);
-			ps = connection.prepareStatement(sql);
-			ps.executeUpdate();
+			writeMemberReset(connection, activityId);
 
 		} catch (Exception exception) {
 			System.out.println(exception.getMessage());
@@ -252,154 +355,304 @@ public class DataResource {
 		closeConnection(connection);
 	}
 
-	public static void load(Connection connection, String projectName, String date, int projectID, int managerID,
-			String description, double budget, ResultSet resultn, ArrayList<Activities> activityList) {
-		try {
-			// getting all users associated with project
-			PreparedStatement ps1 = connection
-					.prepareStatement("SELECT user_id FROM user_project_relationships WHERE " + "project_id = ?");
-			ps1.setInt(1, projectID);
-			ResultSet result1 = ps1.executeQuery();
-
-			ArrayList<Users> userList = new ArrayList<Users>();
-
-			while (result1.next()) {
-				// memeberIds.add(result1.getInt(1));//got all userids
-				// associated with project
-				int userID = result1.getInt(1);
-
-				PreparedStatement ps2 = connection.prepareStatement("SELECT * FROM users WHERE " + "id = ?");
-				ps2.setInt(1, userID);
-				ResultSet result2 = ps2.executeQuery();
-
-				while (result2.next()) {
-					String username = result2.getString(4);
-					String first_name = result2.getString(2);
-					String last_name = result2.getString(3);
-					String password = result2.getString(5);
-					int id = result2.getInt(1);
-					String userType = result2.getString(6);
-
-					userList.add(new Users(username, first_name, last_name, password, id, userType));
-				}
-
-			}
+	/**
+	 * Writes the deletion of an association between 2 Activities on the given
+	 * connection.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param activityBefore
+	 *            Activity ID for the origin Activity
+	 * @param activityAfter
+	 *            Activity ID for the destination Activity
+	 * @throws SQLException
+	 *             if the delete fails
+	 */
+	static void writeEdgeDeletion(Connection connection, int activityBefore, int activityAfter) throws SQLException {
+		// Delete edge in database between the activityBefore and
+		// activityAfter
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, DELETE_EDGE_SQL);
+		ps.setInt(1, activityBefore);
+		ps.setInt(2, activityAfter);
+		ps.executeUpdate();
+	}
 
-			while (resultn.next()) {
-				// have all activities associated with project
-
-				PreparedStatement ps5 = connection.prepareStatement("SELECT * FROM activities WHERE " + "id = ?");
-				ps5.setInt(1, resultn.getInt(1));
-				ResultSet result5 = ps5.executeQuery();
-
-				while (result5.next()) {
-					// now create activities and add to activityList
-					int id = result5.getInt(1);
-					String name = result5.getString(2);
-					String desc = result5.getString(3);
-					Date start = dateFormatter.parse(result5.getString(4));
-					Date end = dateFormatter.parse(result5.getString(5));
-					TaskProgress progress = TaskProgress.valueOf(result5.getString(6));
-					int activityBudget = result5.getInt(7);
-					int mTime = result5.getInt(8);
-					int oTime = result5.getInt(9);
-					int pTime = result5.getInt(10);
-					int targetDate = result5.getInt(11);
-
-					activityList.add(new Activities(desc, start, end, name, id, progress, activityBudget, mTime, oTime, pTime, targetDate));
-				}
+	/**
+	 * Writes the deletion of every association between an activity and a user
+	 * on the given connection.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param activityId
+	 *            Activity ID for the Activity who's members are to be removed
+	 * @throws SQLException
+	 *             if the delete fails
+	 */
+	static void writeMemberReset(Connection connection, int activityId) throws SQLException {
+		// Delete members in database associated with the activity
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, RESET_ACTIVITY_MEMBERS_SQL);
+		ps.setInt(1, activityId);
+		ps.executeUpdate();
+	}
 
-			}
+	/**
+	 * Method used to load every project visible to the current user in a fixed
+	 * number of queries. The projects, their users, activities, dependencies
+	 * and member assignments are each fetched with a single set-based query
+	 * scoped by the SQL passed in parameters, and the Projects graphs are then
+	 * built in memory from the result sets. Built projects are added to the
+	 * projectList.
+	 * 
+	 * Both scopes must contain exactly one parameter, which is bound to the id
+	 * of the current user.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param projectScope
+	 *            query selecting the ids of the projects to load
+	 * @param activityScope
+	 *            query selecting (project_id, activity_id) pairs of the
+	 *            activities to load
+	 * @throws Exception
+	 *             if a query fails or a stored date cannot be parsed
+	 */
+	private static void loadProjects(Connection connection, String projectScope, String activityScope)
+			throws Exception {
+		int[] userScope = { currentUser.getID() };
 
-			Projects project = new Projects(projectName, userList, date, projectID, managerID, description, budget);
+		LinkedHashMap<Integer, Projects> projects = loadProjectHeaders(connection, projectScope, userScope);
+		loadProjectContents(connection, projects, projectScope, userScope, activityScope, userScope);
 
-			for (Activities acts : activityList) {
-				project.addActivity(acts);// adding each activity to the
-											// project
+		// creates projects with activities
+		projectList.addAll(projects.values());
+	}
 
-			}
+	/**
+	 * Method used to load the fields of the projects selected by a scope,
+	 * without their users, activities or dependencies.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param projectScope
+	 *            query selecting the ids of the projects to load
+	 * @param scopeParameters
+	 *            values bound to the parameters of the scope, in order
+	 * @return the projects by id, in the order they were created
+	 * @throws SQLException
+	 *             if the query fails
+	 */
+	private static LinkedHashMap<Integer, Projects> loadProjectHeaders(Connection connection, String projectScope,
+			int[] scopeParameters) throws SQLException {
+		LinkedHashMap<Integer, Projects> projects = new LinkedHashMap<Integer, Projects>();
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, "SELECT * FROM projects WHERE id IN (" + projectScope + ") ORDER BY rowid");
+		bindScope(ps, scopeParameters);
+		ResultSet result = ps.executeQuery();
+		while (result.next()) {
+			Projects project = readProjectHeader(result);
+			projects.put(project.getId(), project);
+		}
+		result.close();
+		return projects;
+	}
 
-			// for each activity query activity table relation to get
-			// dependent activities
-			for (Activities activity : activityList) {
-				// make database call
-				PreparedStatement psE = connection.prepareStatement(
-						"SELECT to_activity_id FROM activity_edge_relationship WHERE " + "from_activity_id = ?");
-				psE.setInt(1, activity.getId());
-				ResultSet resultE = psE.executeQuery();
-				while (resultE.next()) {
-					for (Activities dependent_activity : activityList) {
-						if (dependent_activity.getId() == resultE.getInt(1)) {
-							project.addArrow(activity, dependent_activity);
-						}
-					}
-				}
+	/**
+	 * Helper method that builds a project from the current row of a result
+	 * set containing the columns of the projects table.
+	 */
+	private static Projects readProjectHeader(ResultSet result) throws SQLException {
+		Projects project = new Projects(result.getString("name"), new ArrayList<Users>(), result.getString("date"),
+				result.getInt("id"), result.getInt("manager_id"), result.getString("description"), result.getDouble("budget"));
+		project.setVersion(result.getInt("version"));
+		return project;
+	}
 
-				PreparedStatement ps6 = connection.prepareStatement(
-						"SELECT user_id from activity_user_project_relationships where activity_id = ?");
-				ps6.setInt(1, activity.getId());
-				ResultSet result6 = ps6.executeQuery();
-				ArrayList<Users> tmp = new ArrayList<Users>();
-				while (result6.next()) {
-					for (Users member : projectMembers) {
-						if (member.getID() == result6.getInt(1)) {
-							tmp.add(member);
-						}
-					}
-				}
-				activity.setMemberList(tmp);
+	/**
+	 * Method used to fill projects built by loadProjectHeaders with their
+	 * users, activities, dependencies and member assignments, each fetched
+	 * with a single set-based query. The projects are marked as loaded and
+	 * clean.
+	 * 
+	 * @param connection
+	 *            an active connection to the database
+	 * @param projects
+	 *            the projects to fill, by id
+	 * @param projectScope
+	 *            query selecting the ids of the projects whose users are
+	 *            loaded
+	 * @param projectParameters
+	 *            values bound to the parameters of the project scope
+	 * @param activityScope
+	 *            query selecting (project_id, activity_id) pairs of the
+	 *            activities to load
+	 * @param activityParameters
+	 *            values bound to the parameters of the activity scope
+	 * @throws Exception
+	 *             if a query fails or a stored date cannot be parsed
+	 */
+	private static void loadProjectContents(Connection connection, Map<Integer, Projects> projects,
+			String projectScope, int[] projectParameters, String activityScope, int[] activityParameters)
+			throws Exception {
+		// users and members are the shared objects of the UserCache
+		UserCache.refresh(connection);
+
+		// users associated with each project
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, "SELECT project_id, user_id FROM user_project_relationships "
+				+ "WHERE project_id IN (" + projectScope + ") ORDER BY project_id, user_id");
+		bindScope(ps, projectParameters);
+		ResultSet result = ps.executeQuery();
+		while (result.next()) {
+			Projects project = projects.get(result.getInt(1));
+			Users user = UserCache.get(result.getInt(2));
+			if (project != null && user != null)
+				project.getUserList().add(user);
+		}
+		result.close();
+
+		// activities of every project, keyed by project then activity id
+		HashMap<Integer, HashMap<Integer, Activities>> activities = new HashMap<Integer, HashMap<Integer, Activities>>();
+		ps = ConnectionManager.prepareStatement(connection, "SELECT s.project_id AS project_id, a.* FROM (" + activityScope + ") s "
+				+ "JOIN activities a ON a.id = s.activity_id ORDER BY s.project_id, s.activity_id");
+		bindScope(ps, activityParameters);
+		result = ps.executeQuery();
+		while (result.next()) {
+			Projects project = projects.get(result.getInt("project_id"));
+			if (project == null)
+				continue;
+
+			Activities activity = readActivity(result);
+			project.addActivity(activity);
+
+			HashMap<Integer, Activities> byId = activities.get(project.getId());
+			if (byId == null) {
+				byId = new HashMap<Integer, Activities>();
+				activities.put(project.getId(), byId);
 			}
+			byId.put(activity.getId(), activity);
+		}
+		result.close();
+
+		// dependencies between activities of the same project
+		ps = ConnectionManager.prepareStatement(connection, "SELECT s.project_id, e.from_activity_id, e.to_activity_id FROM (" + activityScope
+				+ ") s JOIN activity_edge_relationship e ON e.from_activity_id = s.activity_id "
+				+ "ORDER BY s.project_id, e.from_activity_id, e.to_activity_id");
+		bindScope(ps, activityParameters);
+		result = ps.executeQuery();
+		while (result.next()) {
+			HashMap<Integer, Activities> byId = activities.get(result.getInt(1));
+			if (byId == null)
+				continue;
+
+			Activities from = byId.get(result.getInt(2));
+			Activities to = byId.get(result.getInt(3));
+			if (from != null && to != null)
+				projects.get(result.getInt(1)).addArrow(from, to);
+		}
+		result.close();
+
+		// members assigned to each activity
+		ps = ConnectionManager.prepareStatement(connection, "SELECT s.project_id, m.activity_id, m.user_id FROM (" + activityScope
+				+ ") s JOIN activity_user_project_relationships m ON m.activity_id = s.activity_id "
+				+ "ORDER BY s.project_id, m.activity_id, m.user_id");
+		bindScope(ps, activityParameters);
+		result = ps.executeQuery();
+		while (result.next()) {
+			HashMap<Integer, Activities> byId = activities.get(result.getInt(1));
+			if (byId == null)
+				continue;
+
+			Activities activity = byId.get(result.getInt(2));
+			Users member = UserCache.get(result.getInt(3));
+			if (activity != null && member != null)
+				activity.getMemberList().add(member);
+		}
+		result.close();
 
-			// creates projects with activities
-			projectList.add(project);
-		} catch (Exception exception) {
-			System.out.println(exception.getMessage());
+		// the loaded dependencies are already saved
+		for (Projects project : projects.values()) {
+			project.markClean();
+			project.setLoaded(true);
 		}
 	}
 
+	/**
+	 * Helper method that binds the values of a scope to the parameters of a
+	 * statement, in order.
+	 */
+	private static void bindScope(PreparedStatement ps, int[] parameters) throws SQLException {
+		for (int i = 0; i < parameters.length; i++)
+			ps.setInt(i + 1, parameters[i]);
+	}
+
+	/**
+	 * Helper method that builds an Activity from the current row of a result
+	 * set containing the columns of the activities table.
+	 * 
+	 * @param result
+	 *            result set positioned on an activities row
+	 * @return the Activity described by the row
+	 * @throws Exception
+	 *             if a column cannot be read or a date cannot be parsed
+	 */
+	private static Activities readActivity(ResultSet result) throws Exception {
+		Date start = readDate(result, "startdate");
+		Date end = readDate(result, "endate");
+		TaskProgress progress = TaskProgress.valueOf(result.getString("progress"));
+
+		Activities activity = new Activities(result.getString("description"), start, end, result.getString("label"),
+				result.getInt("id"), progress, result.getInt("budget"), result.getInt("most_likely"),
+				result.getInt("optimistic"), result.getInt("pessimistic"), result.getInt("target_date"));
+		activity.setVersion(result.getInt("version"));
+		return activity;
+	}
+
+	/**
+	 * Helper method that reads a date column. Dates are stored as epoch days;
+	 * dates still stored as dd-MM-yyyy text are parsed.
+	 * 
+	 * @param result
+	 *            result set positioned on a row
+	 * @param column
+	 *            name of the date column
+	 * @return the date in the column
+	 * @throws Exception
+	 *             if the column cannot be read or does not hold a date
+	 */
+	private static Date readDate(ResultSet result, String column) throws Exception {
+		Object value = result.getObject(column);
+		if (value instanceof Number)
+			return DateCodec.fromEpochDay(((Number) value).longValue());
+		if (value == null)
+			throw new ParseException("No " + column + " stored", 0);
+		return dateFormatter.parse(value.toString());
+	}
+
+	/**
+	 * Helper method that builds a User from the current row of a result set
+	 * containing the columns of the users table.
+	 * 
+	 * @param result
+	 *            result set positioned on a users row
+	 * @return the User described by the row
+	 * @throws SQLException
+	 *             if a column cannot be read
+	 */
+	static Users readUser(ResultSet result) throws SQLException {
+		return new Users(result.getString("username"), result.getString("first_name"), result.getString("last_name"),
+				result.getString("password"), result.getInt("id"), result.getString("user_type"));
+	}
+
+	/**
+	 * Method is used to load from database for a user of type MEMBER. Only the
+	 * projects and activities the current user is assigned to are loaded, and
+	 * the result is populated in the projectList static variable.
+	 */
 	public static void loadMemberDataFromDB() {
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		PreparedStatement ps;
 
 		try {
-			
 			loadStart(connection);
 
-			PreparedStatement ps4 = connection.prepareStatement(
-					"SELECT distinct project_id from activity_user_project_relationships where user_id = ?");
-			ps4.setInt(1, currentUser.getID());
-			ResultSet result4 = ps4.executeQuery();
-
-			while (result4.next()) {
-				ps = connection.prepareStatement("SELECT * FROM projects WHERE id = ?");
-				ps.setInt(1, result4.getInt(1));
-				ResultSet rs = ps.executeQuery();
-
-				while (rs.next()) {
-					// we have project ids
-					// projIds.add(result.getInt(1));
-					int projectID = rs.getInt(1);
-					int managerID = rs.getInt(6);
-					String projectName = rs.getString(2);
-					String description = rs.getString(4);
-					double budget = rs.getDouble(5);
-					String date = rs.getString(3);
-
-					ArrayList<Activities> activityList = new ArrayList<Activities>();
-
-					// query activity relation table to get activities
-					// associated
-					// with project
-					PreparedStatement psn = connection.prepareStatement(
-							"SELECT activity_id FROM activity_user_project_relationships WHERE project_id = ? and user_id = ?");
-					psn.setInt(1, projectID);
-					psn.setInt(2, currentUser.getID());
-					ResultSet resultn = psn.executeQuery();
-
-					load(connection, projectName, date, projectID, managerID, description, budget, resultn,
-							activityList);
-				}
-			}
+			loadProjects(connection, MEMBER_PROJECT_SCOPE, MEMBER_ACTIVITY_SCOPE);
 
 		} catch (Exception exception) {
 			System.out.println(exception.getMessage());
@@ -416,40 +669,12 @@ public class DataResource {
 	 * 
 	 */
 	public static void loadManagerDataFromDB() {
-		// query user_project_relationship
-		// get all projID where userID = currentUserID
-
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		PreparedStatement ps;
 
 		try {
 			loadStart(connection);
 
-			ps = connection.prepareStatement("SELECT * FROM projects " + "WHERE manager_id =?;");
-			ps.setInt(1, currentUser.getID());
-			ResultSet result = ps.executeQuery();
-
-			while (result.next()) {
-				// we have project ids
-				// projIds.add(result.getInt(1));
-				int projectID = result.getInt(1);
-				int managerID = result.getInt(6);
-				String projectName = result.getString(2);
-				String description = result.getString(4);
-				double budget = result.getDouble(5);
-				String date = result.getString(3);
-
-				ArrayList<Activities> activityList = new ArrayList<Activities>();
-
-				// query activity relation table to get activities associated
-				// with project
-				PreparedStatement ps4 = connection.prepareStatement(
-						"SELECT activity_id FROM activity_project_relationships WHERE " + "project_id = ?");
-				ps4.setInt(1, projectID);
-				ResultSet result4 = ps4.executeQuery();
-
-				load(connection, projectName, date, projectID, managerID, description, budget, result4, activityList);
-			}
+			loadProjects(connection, MANAGER_PROJECT_SCOPE, MANAGER_ACTIVITY_SCOPE);
 
 		} catch (Exception exception) {
 			System.out.println(exception.getMessage());
@@ -459,174 +684,877 @@ public class DataResource {
 	}
 
 	/**
-	 * Method loadStart is used by both loadManagerDataFromDB and loadMemberDataFromDB. This method
-	 * loads the common elements of both user types.
-	 * @param connection
+	 * Method is used to load from the projectRepository on login, for any type
+	 * of user. The members and the fields of the projects visible to the
+	 * current user are loaded into projectMembers and the projectList. The
+	 * users, Activities and dependencies of a project are loaded by
+	 * loadProjectDetails when it is first selected.
 	 */
-	private static void loadStart(Connection connection) {
-		// get project members
+	public static void loadProjectHeadersFromDB() {
+		if (projectRepository instanceof SqliteRepository)
+			markRefreshed();
+		setMembers(projectRepository.loadMembers());
+		projectList.addAll(projectRepository.loadProjectHeaders(currentUser));
+	}
+
+	/**
+	 * Method is used to load the workspace of the current user on login. The
+	 * workspace is restored from its WorkspaceSnapshot when the database has
+	 * not changed since the snapshot was written, and loaded with
+	 * loadProjectHeadersFromDB otherwise.
+	 */
+	public static void loadWorkspace() {
+		if (projectRepository instanceof SqliteRepository) {
+			markRefreshed();
+			if (WorkspaceSnapshot.load())
+				return;
+		}
+
+		loadProjectHeadersFromDB();
+	}
+
+	/**
+	 * Method used to load the users, Activities, dependencies and member
+	 * assignments of a project loaded by loadProjectHeadersFromDB from the
+	 * projectRepository. A MEMBER only gets the Activities assigned to the
+	 * current user. Nothing is done if the project is already loaded. Safe to
+	 * call from any thread: concurrent calls for the same project wait for the
+	 * first one to finish.
+	 * 
+	 * @param project
+	 *            the project to complete
+	 */
+	public static void loadProjectDetails(Projects project) {
+		synchronized (project) {
+			if (!project.isLoaded())
+				projectRepository.loadProjectDetails(project, currentUser);
+		}
+	}
+
+	/**
+	 * Method used to make the application load from and save to the given
+	 * repository, for instance an InMemoryRepository in tests and benchmarks.
+	 * New Projects and Activities get their ids from the repository from then
+	 * on.
+	 * 
+	 * @param repository
+	 *            the store for both projects and activities
+	 */
+	public static <R extends ProjectRepository & ActivityRepository> void useRepository(R repository) {
+		projectRepository = repository;
+		activityRepository = repository;
+		Projects.setIdSource(repository.getProjectIds());
+		Activities.setIdSource(repository.getActivityIds());
+	}
+
+	/**
+	 * Method used to bring the projectList up to date with the changes other
+	 * clients saved to the database since it was loaded or last refreshed, and
+	 * meant to be called periodically. The refresh is started, read and
+	 * finished on the calling thread; the client reads it on a background
+	 * thread instead, see startRefresh.
+	 * 
+	 * @return number of projects added, removed or reloaded
+	 */
+	public static int refreshChangedProjects() {
+		ProjectRefresh refresh = startRefresh();
+		if (refresh == null)
+			return 0;
+
+		refresh.read();
+		return finishRefresh(refresh);
+	}
+
+	/**
+	 * Method used to start a refresh of the projectList on the Swing event
+	 * thread. The state of every project in memory is recorded, so the
+	 * refresh can then be read on a background thread with
+	 * ProjectRefresh.read and applied with finishRefresh on the event thread.
+	 * 
+	 * The poll is cheap when nothing changed: only the change counter is read.
+	 * Otherwise only the projects whose revision moved past the change counter
+	 * seen at the last refresh are read and compared with the ones in memory.
+	 * A project is reloaded only if its row version, the ids and versions of
+	 * its Activities, its dependencies or its member assignments differ, so
+	 * the changes saved by this client do not cause a reload. Projects that
+	 * became visible to the current user are added as headers. Projects that
+	 * were removed are found by counting the projects visible to the user, and
+	 * their ids are only read when the count differs.
+	 * 
+	 * Only the SqliteRepository is polled, and not while writes made through
+	 * it are waiting: they would be mistaken for changes made by another
+	 * client, so the poll is skipped rather than waiting for them.
+	 * 
+	 * @return the refresh to read, or null if there is nothing to poll
+	 */
+	public static ProjectRefresh startRefresh() {
+		if (!(projectRepository instanceof SqliteRepository) || currentUser == null)
+			return null;
+		if (((SqliteRepository) projectRepository).hasPendingWrites())
+			return null;
+
+		HashMap<Integer, long[][]> fingerprints = new HashMap<Integer, long[][]>();
+		for (Projects project : projectList)
+			fingerprints.put(project.getId(), fingerprint(project));
+		return new ProjectRefresh(currentUser, lastRevision, fingerprints);
+	}
+
+	/**
+	 * Method used to apply a refresh read by ProjectRefresh.read to the
+	 * projectList, on the Swing event thread. A reloaded project replaces the
+	 * one in the projectList, and a removed project is dropped, unless that
+	 * one changed since the refresh was started or has unsaved changes; it is
+	 * then looked at again by the next refresh. Nothing is applied while
+	 * writes are waiting, since the refresh may predate them. The
+	 * selectedProject and selectedActivity are moved to the reloaded objects.
+	 * 
+	 * @param refresh
+	 *            a refresh started by startRefresh and read since
+	 * @return number of projects added, removed or reloaded
+	 */
+	public static int finishRefresh(ProjectRefresh refresh) {
+		if (refresh.revision < 0 || refresh.revision == refresh.since)
+			return 0;
+		if (projectRepository instanceof SqliteRepository && ((SqliteRepository) projectRepository).hasPendingWrites())
+			return 0;
+
+		int refreshed = 0;
+		boolean skipped = false;
+
+		// projects removed, or no longer visible to the current user
+		for (int projectID : refresh.removed) {
+			Projects project = projectList.getById(projectID);
+			if (project == null)
+				continue;
+			if (!isUnchanged(project, refresh)) {
+				skipped = true;
+				continue;
+			}
+			projectList.remove(project);
+			if (selectedProject == project) {
+				selectedProject = null;
+				selectedActivity = null;
+			}
+			refreshed++;
+		}
+
+		for (Projects header : refresh.added) {
+			if (projectList.getById(header.getId()) == null) {
+				projectList.add(header);
+				refreshed++;
+			}
+		}
+
+		for (Projects header : refresh.reloaded) {
+			Projects current = projectList.getById(header.getId());
+			if (current == null)
+				continue;
+			if (!isUnchanged(current, refresh)) {
+				skipped = true;
+				continue;
+			}
+
+			projectList.set(projectList.indexOf(current), header);
+			if (selectedProject == current) {
+				selectedProject = header;
+				selectedActivity = selectedActivity == null ? null : header.getActivityById(selectedActivity.getId());
+			}
+			refreshed++;
+		}
+
+		setMembers(UserCache.getMembers());
+		if (!skipped)
+			lastRevision = refresh.revision;
+		return refreshed;
+	}
+
+	/**
+	 * Method used by ProjectRefresh.read to read the changes of a refresh from
+	 * the database, on the calling thread's connection. Nothing is read but
+	 * the change counter if no table changed since the last refresh. The
+	 * projectList is not read.
+	 * 
+	 * @param refresh
+	 *            a refresh started by startRefresh
+	 */
+	static void readRefresh(ProjectRefresh refresh) {
+		Connection connection = DataResource.createConnectionToDB(dataBase);
 		try {
-			PreparedStatement psTotMembers = connection.prepareStatement("SELECT * FROM users where user_type = 'MEMBER';");
-			ResultSet resultTotMembers = psTotMembers.executeQuery();
-
-			while (resultTotMembers.next()) {
-				String username = resultTotMembers.getString(4);
-				String first_name = resultTotMembers.getString(2);
-				String last_name = resultTotMembers.getString(3);
-				String password = resultTotMembers.getString(5);
-				int id = resultTotMembers.getInt(1);
-				String userType = resultTotMembers.getString(6);
-
-				projectMembers.add(new Users(username, first_name, last_name, password, id, userType));
+			// the counter and the changed rows are read from the same snapshot
+			beginTransaction(connection);
+			long revision = readLong(connection, "SELECT value FROM change_counter WHERE id = 0");
+			if (revision != refresh.since) {
+				readChangedProjects(connection, refresh);
+				UserCache.refresh(connection);
 			}
-			// set projectCount to max project id from database
+			commitTransaction(connection);
+			refresh.revision = revision;
 
-			PreparedStatement ps3 = connection.prepareStatement("SELECT max(id) FROM projects;");
-			ResultSet result3 = ps3.executeQuery();
+		} catch (Exception exception) {
+			rollbackTransaction(connection);
+			System.out.println(exception.getMessage());
+		}
+
+		closeConnection(connection);
+	}
+
+	/**
+	 * Helper method that records the change counter the projectList is loaded
+	 * at, so the next refresh only looks at later changes.
+	 */
+	private static void markRefreshed(Connection connection) throws SQLException {
+		lastRevision = readLong(connection, "SELECT value FROM change_counter WHERE id = 0");
+	}
 
-			if (result3.next()) {
-				Projects.setProjectCount(result3.getInt(1));
+	private static void markRefreshed() {
+		Connection connection = DataResource.createConnectionToDB(dataBase);
+		try {
+			markRefreshed(connection);
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+		closeConnection(connection);
+	}
+
+	/**
+	 * Helper method of readRefresh that reads the projects changed since the
+	 * refresh's revision and finds the projects removed.
+	 */
+	private static void readChangedProjects(Connection connection, ProjectRefresh refresh) throws Exception {
+		Users user = refresh.user;
+		String projectScope = user.getType() == UserType.MANAGER ? MANAGER_PROJECT_SCOPE : MEMBER_PROJECT_SCOPE;
+
+		HashSet<Integer> changed = new HashSet<Integer>();
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, CHANGED_PROJECTS_SQL);
+		ps.setLong(1, refresh.since);
+		ResultSet result = ps.executeQuery();
+		while (result.next())
+			changed.add(result.getInt(1));
+		result.close();
+
+		// the changed projects the user can see
+		LinkedHashMap<Integer, Projects> headers = new LinkedHashMap<Integer, Projects>();
+		ps = ConnectionManager.prepareStatement(connection, "SELECT * FROM projects WHERE revision > ? AND id IN ("
+				+ projectScope + ") ORDER BY rowid");
+		ps.setLong(1, refresh.since);
+		ps.setInt(2, user.getID());
+		result = ps.executeQuery();
+		while (result.next()) {
+			Projects header = readProjectHeader(result);
+			headers.put(header.getId(), header);
+		}
+		result.close();
+
+		for (Projects header : headers.values()) {
+			header.setLoaded(false);
+			long[][] loaded = refresh.fingerprints.get(header.getId());
+
+			if (loaded == null) {
+				refresh.added.add(header);
+			} else if (!isCurrent(connection, header, loaded, user)) {
+				if (loaded[0][1] != 0)
+					readProjectDetails(connection, header, user);
+				refresh.reloaded.add(header);
 			}
+		}
+
+		for (int projectID : changed) {
+			if (!headers.containsKey(projectID) && refresh.fingerprints.containsKey(projectID))
+				refresh.removed.add(projectID);
+		}
+
+		// deleted projects leave no changed row, so the visible projects are counted
+		int expected = refresh.added.size();
+		for (int projectID : refresh.fingerprints.keySet()) {
+			if (!refresh.removed.contains(projectID))
+				expected++;
+		}
+		ps = ConnectionManager.prepareStatement(connection, "SELECT count(*) FROM projects WHERE id IN (" + projectScope + ")");
+		ps.setInt(1, user.getID());
+		result = ps.executeQuery();
+		int visible = result.next() ? result.getInt(1) : 0;
+		result.close();
+		if (visible == expected)
+			return;
+
+		HashSet<Integer> ids = new HashSet<Integer>();
+		ps = ConnectionManager.prepareStatement(connection, "SELECT id FROM projects WHERE id IN (" + projectScope + ")");
+		ps.setInt(1, user.getID());
+		result = ps.executeQuery();
+		while (result.next())
+			ids.add(result.getInt(1));
+		result.close();
+		for (int projectID : refresh.fingerprints.keySet()) {
+			if (!ids.contains(projectID))
+				refresh.removed.add(projectID);
+		}
+	}
+
+	/**
+	 * Helper method that records what isCurrent compares of a project in
+	 * memory: the version of its row and whether it is loaded, then for a
+	 * loaded project the (id, version) pairs of its Activities, the (from, to)
+	 * pairs of its dependencies and the (activity, user) pairs of its member
+	 * assignments, each packed into a long and sorted.
+	 */
+	private static long[][] fingerprint(Projects project) {
+		long[][] fingerprint = { { project.getVersion(), project.isLoaded() ? 1 : 0 }, {}, {}, {} };
+		if (!project.isLoaded())
+			return fingerprint;
+
+		ArrayList<Long> activities = new ArrayList<Long>();
+		ArrayList<Long> members = new ArrayList<Long>();
+		for (Activities activity : project.getActivityList()) {
+			activities.add(pair(activity.getId(), activity.getVersion()));
+			for (Users member : activity.getMemberList())
+				members.add(pair(activity.getId(), member.getID()));
+		}
+		ArrayList<Long> edges = new ArrayList<Long>();
+		for (DefaultEdge edge : project.getArrowSet())
+			edges.add(pair(project.getActivityBefore(edge).getId(), project.getActivityAfter(edge).getId()));
+
+		fingerprint[1] = sorted(activities);
+		fingerprint[2] = sorted(edges);
+		fingerprint[3] = sorted(members);
+		return fingerprint;
+	}
 
-			// set activityCount to max activity id from database
-			ps3 = connection.prepareStatement("SELECT max(id) FROM activities;");
-			result3 = ps3.executeQuery();
+	private static long pair(int first, int second) {
+		return ((long) first << 32) | (second & 0xffffffffL);
+	}
+
+	private static long[] sorted(List<Long> pairs) {
+		long[] sorted = new long[pairs.size()];
+		for (int i = 0; i < sorted.length; i++)
+			sorted[i] = pairs.get(i);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Helper method of finishRefresh that checks whether a project of the
+	 * projectList may be replaced or dropped: it has no unsaved changes and
+	 * is in the state recorded when the refresh was started.
+	 */
+	private static boolean isUnchanged(Projects project, ProjectRefresh refresh) {
+		return !project.hasChanges()
+				&& Arrays.deepEquals(fingerprint(project), refresh.fingerprints.get(project.getId()));
+	}
 
-			if (result3.next()) {
-				Activities.setActivityCount(result3.getInt(1));
+	/**
+	 * Helper method that checks whether a project in memory, recorded by
+	 * fingerprint, still matches the database: the version of its row, read
+	 * in header, and for a loaded project its Activities, dependencies and
+	 * member assignments.
+	 */
+	private static boolean isCurrent(Connection connection, Projects header, long[][] loaded, Users user)
+			throws SQLException {
+		if (loaded[0][0] != header.getVersion())
+			return false;
+		if (loaded[0][1] == 0)
+			return true;
+
+		String activityScope;
+		int[] scope;
+		if (user.getType() == UserType.MANAGER) {
+			activityScope = "SELECT activity_id FROM activity_project_relationships WHERE project_id = ?";
+			scope = new int[] { header.getId() };
+		} else {
+			activityScope = "SELECT activity_id FROM activity_user_project_relationships WHERE project_id = ? AND user_id = ?";
+			scope = new int[] { header.getId(), user.getID() };
+		}
+
+		return Arrays.equals(loaded[1], readPairs(connection, "SELECT id, version FROM activities WHERE id IN ("
+				+ activityScope + ")", scope, 1))
+				&& Arrays.equals(loaded[2], readPairs(connection, "SELECT from_activity_id, to_activity_id "
+						+ "FROM activity_edge_relationship WHERE from_activity_id IN (" + activityScope
+						+ ") AND to_activity_id IN (" + activityScope + ")", scope, 2))
+				&& Arrays.equals(loaded[3], readPairs(connection, "SELECT m.activity_id, m.user_id "
+						+ "FROM activity_user_project_relationships m JOIN users u ON u.id = m.user_id "
+						+ "WHERE m.activity_id IN (" + activityScope + ")", scope, 1));
+	}
+
+	/**
+	 * Helper method of isCurrent that reads the two int columns of a query as
+	 * sorted pairs, packed like fingerprint packs them. The scope parameters
+	 * are bound once for each copy of the scope in the query.
+	 */
+	private static long[] readPairs(Connection connection, String sql, int[] scope, int copies) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, sql);
+		int parameter = 1;
+		for (int copy = 0; copy < copies; copy++) {
+			for (int value : scope)
+				ps.setInt(parameter++, value);
+		}
+		ArrayList<Long> pairs = new ArrayList<Long>();
+		ResultSet result = ps.executeQuery();
+		try {
+			while (result.next())
+				pairs.add(pair(result.getInt(1), result.getInt(2)));
+		} finally {
+			result.close();
+		}
+		return sorted(pairs);
+	}
+
+	private static long readLong(Connection connection, String sql) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, sql);
+		ResultSet result = ps.executeQuery();
+		try {
+			return result.next() ? result.getLong(1) : 0;
+		} finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * Method used by the SqliteRepository to read the users of type MEMBER
+	 * from the database. The UserCache is refreshed and its members are
+	 * returned.
+	 * 
+	 * @return the members
+	 */
+	static List<Users> readMembers() {
+		UserCache.refresh();
+		return UserCache.getMembers();
+	}
+
+	/**
+	 * Method used by the SqliteRepository to read the fields of the projects
+	 * visible to a user from the database.
+	 * 
+	 * @param user
+	 *            the user the projects are loaded for
+	 * @return the unloaded projects, empty if the query fails
+	 */
+	static List<Projects> readProjectHeaders(Users user) {
+		List<Projects> headers = new ArrayList<Projects>();
+		Connection connection = DataResource.createConnectionToDB(dataBase);
+
+		try {
+			String projectScope = user.getType() == UserType.MANAGER ? MANAGER_PROJECT_SCOPE
+					: MEMBER_PROJECT_SCOPE;
+			int[] userScope = { user.getID() };
+			LinkedHashMap<Integer, Projects> projects = loadProjectHeaders(connection, projectScope, userScope);
+			for (Projects project : projects.values())
+				project.setLoaded(false);
+
+			headers.addAll(projects.values());
+
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+
+		closeConnection(connection);
+		return headers;
+	}
+
+	/**
+	 * Method used by the SqliteRepository to read the details of a project
+	 * from the database.
+	 * 
+	 * @param project
+	 *            the project to complete
+	 * @param user
+	 *            the user the project is loaded for
+	 */
+	static void readProjectDetails(Projects project, Users user) {
+		Connection connection = DataResource.createConnectionToDB(dataBase);
+
+		try {
+			readProjectDetails(connection, project, user);
+
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+
+		closeConnection(connection);
+	}
+
+	/**
+	 * Helper method that reads the details of a project on the given
+	 * connection.
+	 */
+	private static void readProjectDetails(Connection connection, Projects project, Users user) throws Exception {
+		HashMap<Integer, Projects> projects = new HashMap<Integer, Projects>();
+		projects.put(project.getId(), project);
+		int[] projectScope = { project.getId() };
+
+		if (user.getType() == UserType.MANAGER) {
+			loadProjectContents(connection, projects, "SELECT id FROM projects WHERE id = ?", projectScope,
+					"SELECT project_id, activity_id FROM activity_project_relationships WHERE project_id = ?",
+					projectScope);
+		} else {
+			int[] memberScope = { project.getId(), user.getID() };
+			loadProjectContents(connection, projects, "SELECT id FROM projects WHERE id = ?", projectScope,
+					"SELECT project_id, activity_id FROM activity_user_project_relationships WHERE project_id = ? AND user_id = ?",
+					memberScope);
+		}
+	}
+
+	/**
+	 * Method used to read the projects of the database a page at a time, in
+	 * id order, with their details. Only the page is held in memory, so the
+	 * whole portfolio can be walked by passing the id of the last project of
+	 * each page to the next call.
+	 * 
+	 * @param afterId
+	 *            only projects with a greater id are read
+	 * @param count
+	 *            maximum number of projects read
+	 * @return the loaded projects, empty once all projects have been read
+	 * @throws Exception
+	 *             if a query fails or a stored date cannot be parsed
+	 */
+	static List<Projects> readProjectPage(int afterId, int count) throws Exception {
+		Connection connection = DataResource.createConnectionToDB(dataBase);
+
+		try {
+			String pageScope = "SELECT id FROM projects WHERE id > ? ORDER BY id LIMIT ?";
+			int[] pageParameters = { afterId, count };
+			LinkedHashMap<Integer, Projects> projects = loadProjectHeaders(connection, pageScope, pageParameters);
+			loadProjectContents(connection, projects, pageScope, pageParameters,
+					"SELECT project_id, activity_id FROM activity_project_relationships WHERE project_id IN (" + pageScope + ")",
+					pageParameters);
+
+			List<Projects> page = new ArrayList<Projects>(projects.values());
+			// loadProjectHeaders returns the projects in rowid order
+			Collections.sort(page, new Comparator<Projects>() {
+				@Override
+				public int compare(Projects first, Projects second) {
+					return Integer.compare(first.getId(), second.getId());
+				}
+			});
+			return page;
+		} finally {
+			closeConnection(connection);
+		}
+	}
+
+	/**
+	 * Method used to make a project the selectedProject. The project's
+	 * details are loaded if needed, then the projects next to it in the
+	 * projectList are loaded in the background so selecting them is
+	 * immediate.
+	 * 
+	 * @param project
+	 *            the selected project, or null to clear the selection
+	 */
+	public static void selectProject(Projects project) {
+		if (project != null)
+			loadProjectDetails(project);
+		selectedProject = project;
+
+		if (project == null)
+			return;
+
+		int index = projectList.indexOf(project);
+		int[] neighbours = { index + 1, index - 1 };
+		for (int neighbour : neighbours) {
+			if (index >= 0 && neighbour >= 0 && neighbour < projectList.size() && !projectList.get(neighbour).isLoaded())
+				prefetch(projectList.get(neighbour));
+		}
+	}
+
+	/**
+	 * Helper method that loads the details of a project on the prefetch
+	 * thread, which has its own connection to the database.
+	 */
+	private static synchronized void prefetch(final Projects project) {
+		if (prefetcher == null) {
+			prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "project-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		prefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				loadProjectDetails(project);
 			}
+		});
+	}
+
+	/**
+	 * Method loadStart is used by both loadManagerDataFromDB and loadMemberDataFromDB. This method
+	 * loads the common elements of both user types.
+	 * @param connection
+	 */
+	private static void loadStart(Connection connection) {
+		// get project members
+		try {
+			markRefreshed(connection);
+			UserCache.refresh(connection);
+			setMembers(UserCache.getMembers());
 		} catch (Exception exception) {
 			System.out.println(exception.getMessage());
 		}
 	}
 
+	/**
+	 * Method used to replace the content of projectMembers, which is kept
+	 * free of duplicates however many times the data is loaded.
+	 * 
+	 * @param members
+	 *            the users that can be assigned to activities
+	 */
+	static void setMembers(List<Users> members) {
+		projectMembers.clear();
+		projectMembers.addAll(members);
+	}
+
 	/**
 	 * This method is used to save changes to the database. The current instance
 	 * of projectList, which contains all changes the user has made, is
 	 * iterated. All new values are inserted, and any changed values replace
 	 * their associated tuples. Loops through projectList and inserts projects,
 	 * users, activities, dependencies to database.
+	 * 
+	 * The whole save runs in a single transaction, and the rows of each table
+	 * are sent to the database in JDBC batches of batchSize rows. If any row
+	 * fails, or was saved by another client since it was loaded, the
+	 * transaction is rolled back and the database is left as it was before the
+	 * save.
 	 */
 	public static void saveToDB() {
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-		PreparedStatement ps;
+		ArrayList<Projects> versionedProjects = new ArrayList<Projects>();
+		ArrayList<Activities> versionedActivities = new ArrayList<Activities>();
 
 		try {
-			
-
-			String projectName, description, date;
-			int projectID, managerID;
-			double budget;
+			beginTransaction(connection);
+
+			StatementBatch projectRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_SQL), batchSize);
+			StatementBatch userRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_USER_SQL), batchSize);
+			StatementBatch activityRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_SQL), batchSize);
+			StatementBatch projectActivityRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_ACTIVITY_SQL), batchSize);
+			StatementBatch memberRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_MEMBER_SQL), batchSize);
+			StatementBatch edgeRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_EDGE_SQL), batchSize);
+
+			int projectID, activityID;
 
 			// load projects in projects table in database
 			for (Projects projects : projectList) {
 				projectID = projects.getId();
-				description = projects.getDescription();
-				date = projects.getDate();
-				projectName = projects.getProjectName();
-				managerID = projects.getManagerID();
-				budget = projects.getBudget();
-
-				String sql = ("INSERT OR REPLACE INTO projects(id, name, date, description, budget, manager_id) "
-						+ "VALUES (?, ?, ?, ?, ?, ?)");
-				ps = connection.prepareStatement(sql);
-				ps.setInt(1, projectID);
-				ps.setString(2, projectName);
-				ps.setString(3, date);
-				ps.setString(4, description);
-				ps.setDouble(5, budget);
-				ps.setInt(6, managerID);
-				ps.executeUpdate();
-
-				int userID;
+
+				projects.setVersion(projects.getVersion() + 1);
+				versionedProjects.add(projects);
+				bindProject(projectRows.getStatement(), projects);
+				projectRows.add();
+
 				// for each project, insert the list of users associated with
 				// that project into the database
 				for (Users user : projects.getUserList()) {
-					userID = user.getID();
-					sql = ("INSERT OR REPLACE INTO user_project_relationships(project_id, user_id) VALUES " + "(?, ?)");
-					ps = connection.prepareStatement(sql);
-					ps.setInt(1, projectID);
-					ps.setInt(2, userID);
-					ps.executeUpdate();
+					userRows.getStatement().setInt(1, projectID);
+					userRows.getStatement().setInt(2, user.getID());
+					userRows.add();
 				}
 
 				// for each project, insert the list of activities associated
 				// with that project into the database
-				int activityID, dependentActivityID, activityBudget;
-				String actLabel, actDescription, start, end, progress;
-
 				for (Activities activity : projects.getActivityList()) {
 					activityID = activity.getId();
-					actLabel = activity.getLabel();
-					actDescription = activity.getDescription();
-					progress = activity.getProgress().name();
-					start = dateFormatter.format(activity.getStartDate());
-					end =  dateFormatter.format(activity.getEndDate());
-					activityBudget = activity.getBudget();
-					int mTime = activity.getMostLikelyTime(); 
-					int oTime = activity.getOptimisticTime();
-					int pTime = activity.getPessimisticTime();
-					int targetDate = activity.getTargetDate();
-
-					sql = ("INSERT OR REPLACE INTO activities(id, label, description, startdate, endate, progress, budget, most_likely, optimistic, pessimistic, target_date) VALUES "
-							+ "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-					ps = connection.prepareStatement(sql);
-					ps.setInt(1, activityID);
-					ps.setString(2, actLabel);
-					ps.setString(3, actDescription);
-					ps.setString(4, start);
-					ps.setString(5, end);
-					ps.setString(6, progress);
-					ps.setInt(7, activityBudget);
-					ps.setInt(8, mTime);
-					ps.setInt(9, oTime);
-					ps.setInt(10, pTime);
-					ps.setInt(11, targetDate);
-					ps.executeUpdate();
-
-					sql = ("INSERT OR REPLACE INTO activity_project_relationships(project_id, activity_id) VALUES "
-							+ "(?, ?)");
-					ps = connection.prepareStatement(sql);
-					ps.setInt(1, projectID);
-					ps.setInt(2, activityID);
-					ps.executeUpdate();
-
-					int memberID;
+
+					activity.setVersion(activity.getVersion() + 1);
+					versionedActivities.add(activity);
+					bindActivity(activityRows.getStatement(), activity);
+					activityRows.add();
+
+					projectActivityRows.getStatement().setInt(1, projectID);
+					projectActivityRows.getStatement().setInt(2, activityID);
+					projectActivityRows.add();
 
 					for (Users member : activity.getMemberList()) {
-						memberID = member.getID();
-
-						sql = ("INSERT OR REPLACE INTO activity_user_project_relationships(activity_id, user_id, project_id) VALUES "
-								+ "(?, ?, ?)");
-						ps = connection.prepareStatement(sql);
-						ps.setInt(1, activityID);
-						ps.setInt(2, memberID);
-						ps.setInt(3, projectID);
-						ps.executeUpdate();
+						memberRows.getStatement().setInt(1, activityID);
+						memberRows.getStatement().setInt(2, member.getID());
+						memberRows.getStatement().setInt(3, projectID);
+						memberRows.add();
 					}
 
-					Set<DefaultEdge> edges = projects.getArrowSet();
-					// for currently selected activity, add all the edges to
-					// activity_edge_relationship
-					for (DefaultEdge e : edges) {
-						if (activityID == projects.getActivityBefore(e).getId()) {
-							dependentActivityID = projects.getActivityAfter(e).getId();
-							// if the activityID is a before edge, put the
-							// before and after edge into table under
-							// from_activity_id and to_activity_id
-							sql = ("INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) VALUES "
-									+ "(?, ?)");
-							ps = connection.prepareStatement(sql);
-							ps.setInt(1, activityID);
-							ps.setInt(2, dependentActivityID);
-							ps.executeUpdate();
-						}
+					// the edges leaving the activity are put into
+					// activity_edge_relationship under from_activity_id
+					// and to_activity_id; only the activity's own edges are
+					// visited, so the save stays linear in the size of the
+					// graph
+					for (DefaultEdge e : projects.getOutgoingArrowsOfActivity(activity)) {
+						edgeRows.getStatement().setInt(1, activityID);
+						edgeRows.getStatement().setInt(2, projects.getActivityAfter(e).getId());
+						edgeRows.add();
 					}
 				}
 
 			}
 
+			projectRows.flush();
+			userRows.flush();
+			activityRows.flush();
+			projectActivityRows.flush();
+			memberRows.flush();
+			edgeRows.flush();
+			checkVersions(projectRows, activityRows);
+
+			commitTransaction(connection);
+
+			for (Projects projects : projectList) {
+				projects.markClean();
+				for (Activities activity : projects.getActivityList())
+					activity.markClean();
+			}
+
 		} catch (Exception exception) {
+			rollbackTransaction(connection);
+			revertVersions(versionedProjects, versionedActivities);
+			System.out.println(exception.getMessage());
+		}
+
+		closeConnection(connection);
+	}
+
+	/**
+	 * This method is used to save only the changes made since the projects in
+	 * projectList were loaded or last saved. Projects and Activities whose
+	 * fields changed are written, the members of Activities whose memberList
+	 * was replaced are rewritten, and added and removed dependencies are
+	 * inserted and deleted. Unchanged rows are not touched, so the cost of a
+	 * flush depends on the size of the edit rather than on the number of
+	 * projects loaded.
+	 * 
+	 * The changes are written in a single transaction. Once it commits, the
+	 * written Projects and Activities are marked as saved. If it fails, or a
+	 * written row was saved by another client since it was loaded, it is
+	 * rolled back and the changes stay pending for the next flush.
+	 */
+	public static void flushChanges() {
+		Connection connection = DataResource.createConnectionToDB(dataBase);
+		ArrayList<Projects> versionedProjects = new ArrayList<Projects>();
+		ArrayList<Activities> versionedActivities = new ArrayList<Activities>();
+
+		try {
+			beginTransaction(connection);
+
+			StatementBatch projectRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_SQL), batchSize);
+			StatementBatch userRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_USER_SQL), batchSize);
+			StatementBatch activityRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_SQL), batchSize);
+			StatementBatch projectActivityRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_PROJECT_ACTIVITY_SQL), batchSize);
+			StatementBatch memberResets = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, RESET_ACTIVITY_MEMBERS_SQL), batchSize);
+			StatementBatch memberRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_MEMBER_SQL), batchSize);
+			StatementBatch removedEdgeRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, DELETE_EDGE_SQL), batchSize);
+			StatementBatch addedEdgeRows = new StatementBatch(
+					ConnectionManager.prepareStatement(connection, SAVE_EDGE_SQL), batchSize);
+
+			ArrayList<Projects> savedProjects = new ArrayList<Projects>();
+			ArrayList<Activities> savedActivities = new ArrayList<Activities>();
+			// activities whose members are rewritten, with the ids of their projects
+			ArrayList<Activities> memberActivities = new ArrayList<Activities>();
+			ArrayList<Integer> memberProjectIDs = new ArrayList<Integer>();
+
+			for (Projects project : projectList) {
+				int projectID = project.getId();
+
+				if (project.isDirty()) {
+					project.setVersion(project.getVersion() + 1);
+					versionedProjects.add(project);
+					bindProject(projectRows.getStatement(), project);
+					projectRows.add();
+
+					for (Users user : project.getUserList()) {
+						userRows.getStatement().setInt(1, projectID);
+						userRows.getStatement().setInt(2, user.getID());
+						userRows.add();
+					}
+				}
+
+				for (Activities activity : project.getActivityList()) {
+					if (activity.isDirty()) {
+						activity.setVersion(activity.getVersion() + 1);
+						versionedActivities.add(activity);
+						bindActivity(activityRows.getStatement(), activity);
+						activityRows.add();
+
+						projectActivityRows.getStatement().setInt(1, projectID);
+						projectActivityRows.getStatement().setInt(2, activity.getId());
+						projectActivityRows.add();
+					}
+
+					if (activity.isMembersDirty()) {
+						memberResets.getStatement().setInt(1, activity.getId());
+						memberResets.add();
+						memberActivities.add(activity);
+						memberProjectIDs.add(projectID);
+					}
+
+					if (activity.isDirty() || activity.isMembersDirty())
+						savedActivities.add(activity);
+				}
+
+				for (ActivityEdge edge : project.getRemovedEdges()) {
+					removedEdgeRows.getStatement().setInt(1, edge.getFromId());
+					removedEdgeRows.getStatement().setInt(2, edge.getToId());
+					removedEdgeRows.add();
+				}
+
+				savedProjects.add(project);
+			}
+
+			// a batch sends its rows whenever it is full, so every delete is sent before
+			// the inserts it makes room for are queued
+			memberResets.flush();
+			removedEdgeRows.flush();
+
+			for (int i = 0; i < memberActivities.size(); i++) {
+				Activities activity = memberActivities.get(i);
+				for (Users member : activity.getMemberList()) {
+					memberRows.getStatement().setInt(1, activity.getId());
+					memberRows.getStatement().setInt(2, member.getID());
+					memberRows.getStatement().setInt(3, memberProjectIDs.get(i));
+					memberRows.add();
+				}
+			}
+
+			for (Projects project : savedProjects) {
+				for (ActivityEdge edge : project.getAddedEdges()) {
+					addedEdgeRows.getStatement().setInt(1, edge.getFromId());
+					addedEdgeRows.getStatement().setInt(2, edge.getToId());
+					addedEdgeRows.add();
+				}
+			}
+
+			projectRows.flush();
+			userRows.flush();
+			activityRows.flush();
+			projectActivityRows.flush();
+			memberRows.flush();
+			addedEdgeRows.flush();
+			checkVersions(projectRows, activityRows);
+
+			commitTransaction(connection);
+
+			for (Projects project : savedProjects)
+				project.markClean();
+			for (Activities activity : savedActivities)
+				activity.markClean();
+
+		} catch (Exception exception) {
+			rollbackTransaction(connection);
+			revertVersions(versionedProjects, versionedActivities);
 			System.out.println(exception.getMessage());
 		}
 
@@ -643,9 +1571,22 @@ public class DataResource {
 		dataBase = db;
 	}
 
+	/**
+	 * Method used to set the number of rows sent to the database in each JDBC
+	 * batch by saveToDB.
+	 * 
+	 * @param size
+	 *            number of rows per batch, at least 1
+	 */
+	public static void setBatchSize(int size) {
+		batchSize = Math.max(1, size);
+	}
+
 	/**
 	 * Method used to save an Activity to the database. This method is called after a new
 	 * activity is created and after an activity has been edited in the Activity_edit form.
+	 * The activity, its project link, members and dependencies are written in a single transaction.
+	 * Nothing is written if another client saved the activity since it was loaded.
 	 * @param selectedActivity
 	 */
 	public static void saveActivity(Activities selectedActivity)
@@ -653,82 +1594,29 @@ public class DataResource {
 		//save the tuple in Activities table in the database where that id is equal to the selected activity id
 		Connection connection = createConnectionToDB(dataBase);
 		
-		int activityID, dependentActivityID, activityBudget;
-		
-		String actLabel, actDescription, start, end, progress;
-		
-		activityID = selectedActivity.getId();
-		actLabel = selectedActivity.getLabel();
-		actDescription = selectedActivity.getDescription();
-		start = dateFormatter.format(selectedActivity.getStartDate());
-		end =  dateFormatter.format(selectedActivity.getEndDate());
-		progress = selectedActivity.getProgress().name();
-		activityBudget = selectedActivity.getBudget();
-		int mTime = selectedActivity.getMostLikelyTime();
-		int oTime = selectedActivity.getOptimisticTime();
-		int pTime = selectedActivity.getPessimisticTime();
-		int targetDate = selectedActivity.getTargetDate();
-		
-		
-		String sql = ("INSERT OR REPLACE INTO activities(id, label, description, startdate, endate, progress, budget, most_likely, optimistic, pessimistic, target_date) VALUES "
-				+ "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		int activityID = selectedActivity.getId();
+		int version = selectedActivity.getVersion();
 		
 		try {
-			PreparedStatement ps = connection.prepareStatement(sql);
-			ps.setInt(1, activityID);
-			ps.setString(2, actLabel);
-			ps.setString(3, actDescription);
-			ps.setString(4, start);
-			ps.setString(5, end);
-			ps.setString(6, progress);
-			ps.setInt(7, activityBudget);
-			ps.setInt(8, mTime);
-			ps.setInt(9, oTime);
-			ps.setInt(10, pTime);
-			ps.setInt(11, targetDate);
-			ps.executeUpdate();
-			
-			sql = ("INSERT OR REPLACE INTO activity_project_relationships(project_id, activity_id) VALUES "
-					+ "(?, ?)");
-			ps = connection.prepareStatement(sql);
-			ps.setInt(1, selectedProject.getId());
-			ps.setInt(2, activityID);
-			ps.executeUpdate();
-			
-			int memberID;
-
-			for (Users member : selectedActivity.getMemberList()) {
-				memberID = member.getID();
-
-				sql = ("INSERT OR REPLACE INTO activity_user_project_relationships(activity_id, user_id, project_id) VALUES "
-						+ "(?, ?, ?)");
-				ps = connection.prepareStatement(sql);
-				ps.setInt(1, activityID);
-				ps.setInt(2, memberID);
-				ps.setInt(3, selectedProject.getId());
-				ps.executeUpdate();
-			}
-
-			Set<DefaultEdge> edges = selectedProject.getArrowSet();
-			// for currently selected activity, add all the edges to
-			// activity_edge_relationship
-			for (DefaultEdge e : edges) {
-				if (activityID == selectedProject.getActivityAfter(e).getId()) {
-					dependentActivityID = selectedProject.getActivityBefore(e).getId();
-					// if the activityID is a before edge, put the
-					// before and after edge into table under
-					// from_activity_id and to_activity_id
-					sql = ("INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) VALUES "
-							+ "(?, ?)");
-					ps = connection.prepareStatement(sql);
-					ps.setInt(1, dependentActivityID);
-					ps.setInt(2, activityID);
-					ps.executeUpdate();
-				}
-			}
+			// for currently selected activity, find all the edges ending
+			// on it
+			List<Integer> predecessorIDs = new ArrayList<Integer>();
+			for (DefaultEdge e : selectedProject.getIncomingArrowsOfActivity(selectedActivity))
+				predecessorIDs.add(selectedProject.getActivityBefore(e).getId());
+
+			selectedActivity.setVersion(version + 1);
+			beginTransaction(connection);
+			writeActivity(connection, selectedProject.getId(), selectedActivity, predecessorIDs);
+			commitTransaction(connection);
+
+			for (int predecessorID : predecessorIDs)
+				selectedProject.getAddedEdges().remove(new ActivityEdge(predecessorID, activityID));
+			selectedActivity.markClean();
 	
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
+		} catch (Exception e) {
+			// any failure, not only SQL ones, must leave the thread's connection out of the transaction
+			rollbackTransaction(connection);
+			selectedActivity.setVersion(version);
 			e.printStackTrace();
 		}
 		
@@ -737,62 +1625,266 @@ public class DataResource {
 	
 	/**
 	 * Method saveProject saves the fields of the selected project to the database.
+	 * Nothing is written if another client saved the project since it was loaded.
 	 * @param selectedProject
 	 */
 	public static void saveProject(Projects selectedProject){
 		
 		Connection connection = DataResource.createConnectionToDB(dataBase);
-
-		String projectName, description, date;
-		int projectID, managerID;
-		double budget;
+		int version = selectedProject.getVersion();
 
 		try {
-			
-			PreparedStatement ps;
-
-			// load projects in projects table in database
-			projectID = selectedProject.getId();
-			description = selectedProject.getDescription();
-			date = selectedProject.getDate();
-			projectName = selectedProject.getProjectName();
-			managerID = selectedProject.getManagerID();
-			budget = selectedProject.getBudget();
-			
-			int userID = currentUser.getID();
-			// for each project, insert the list of users associated with
-			// that project into the database
-			
-			String sql = ("INSERT OR REPLACE INTO user_project_relationships(project_id, user_id) VALUES " + "(?, ?)");
-			ps = connection.prepareStatement(sql);
-			ps.setInt(1, projectID);
-			ps.setInt(2, userID);
-			ps.executeUpdate();
-				
-
-			sql = ("INSERT OR REPLACE INTO projects(id, name, date, description, budget, manager_id) "
-					+ "VALUES (?, ?, ?, ?, ?, ?)");
-			ps = connection.prepareStatement(sql);
-			ps.setInt(1, projectID);
-			ps.setString(2, projectName);
-			ps.setString(3, date);
-			ps.setString(4, description);
-			ps.setDouble(5, budget);
-			ps.setInt(6, managerID);
-			ps.executeUpdate();
-
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
+			selectedProject.setVersion(version + 1);
+			beginTransaction(connection);
+			writeProject(connection, selectedProject, currentUser.getID());
+			commitTransaction(connection);
+
+		} catch (Exception e) {
+			// any failure, not only SQL ones, must leave the thread's connection out of the transaction
+			rollbackTransaction(connection);
+			selectedProject.setVersion(version);
 			e.printStackTrace();
 		}
 		
 		closeConnection(connection);
 		
 	}
+
+	/*****************************helper functions to write rows and manage transactions***************/
+
+	/**
+	 * Copies the saved fields and members of an Activity, so the copy can be written later without seeing
+	 * the changes made to the original in the meantime.
+	 * @param activity activity to copy
+	 * @return the copy
+	 */
+	static Activities copyActivity(Activities activity) {
+		Activities copy = new Activities(activity.getDescription(), new Date(activity.getStartDate().getTime()),
+				new Date(activity.getEndDate().getTime()), activity.getLabel(), activity.getId(),
+				activity.getProgress(), activity.getBudget(), activity.getMostLikelyTime(),
+				activity.getOptimisticTime(), activity.getPessimisticTime(), activity.getTargetDate());
+		copy.setMemberList(new ArrayList<Users>(activity.getMemberList()));
+		copy.setVersion(activity.getVersion());
+		return copy;
+	}
+
+	/**
+	 * Copies the saved fields and users of a project, without its Activities.
+	 * @param project project to copy
+	 * @return the copy
+	 */
+	static Projects copyProject(Projects project) {
+		Projects copy = new Projects(project.getProjectName(), new ArrayList<Users>(project.getUserList()),
+				project.getDate(), project.getId(), project.getManagerID(), project.getDescription(),
+				project.getBudget());
+		copy.setVersion(project.getVersion());
+		return copy;
+	}
+
+	/**
+	 * Writes an Activity, its project link, members and incoming dependencies
+	 * on the given connection, as part of the caller's transaction.
+	 * @param connection an active connection to the database
+	 * @param projectID id of the project the activity belongs to
+	 * @param activity activity to save
+	 * @param predecessorIDs ids of the activities the activity depends on
+	 * @throws SQLException
+	 */
+	static void writeActivity(Connection connection, int projectID, Activities activity, List<Integer> predecessorIDs)
+			throws SQLException {
+		int activityID = activity.getId();
+
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_SQL);
+		bindActivity(ps, activity);
+		if (ps.executeUpdate() == 0)
+			throw new StaleDataException("activities", activityID);
+
+		ps = ConnectionManager.prepareStatement(connection, SAVE_PROJECT_ACTIVITY_SQL);
+		ps.setInt(1, projectID);
+		ps.setInt(2, activityID);
+		ps.executeUpdate();
+
+		ps = ConnectionManager.prepareStatement(connection, SAVE_ACTIVITY_MEMBER_SQL);
+		for (Users member : activity.getMemberList()) {
+			ps.setInt(1, activityID);
+			ps.setInt(2, member.getID());
+			ps.setInt(3, projectID);
+			ps.executeUpdate();
+		}
+
+		// put the before and after activities of each dependency into table
+		// under from_activity_id and to_activity_id
+		ps = ConnectionManager.prepareStatement(connection, SAVE_EDGE_SQL);
+		for (int predecessorID : predecessorIDs) {
+			ps.setInt(1, predecessorID);
+			ps.setInt(2, activityID);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Writes the fields of a project and its link to a user on the given
+	 * connection, as part of the caller's transaction.
+	 * @param connection an active connection to the database
+	 * @param project project to save
+	 * @param userID id of the user associated with the project
+	 * @throws SQLException
+	 */
+	static void writeProject(Connection connection, Projects project, int userID) throws SQLException {
+		// insert the user associated with the project into the database
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, SAVE_PROJECT_USER_SQL);
+		ps.setInt(1, project.getId());
+		ps.setInt(2, userID);
+		ps.executeUpdate();
+
+		// load project in projects table in database
+		ps = ConnectionManager.prepareStatement(connection, SAVE_PROJECT_SQL);
+		bindProject(ps, project);
+		if (ps.executeUpdate() == 0)
+			throw new StaleDataException("projects", project.getId());
+	}
+
+	/**
+	 * Binds the fields of the given project on a statement prepared with SAVE_PROJECT_SQL.
+	 * The project's version is the version the row is saved with, and the row is only replaced
+	 * if it is missing or still has the version before it.
+	 * @param ps statement to bind on
+	 * @param project project to save
+	 * @throws SQLException
+	 */
+	static void bindProject(PreparedStatement ps, Projects project) throws SQLException {
+		ps.setInt(1, project.getId());
+		ps.setString(2, project.getProjectName());
+		ps.setString(3, project.getDate());
+		ps.setString(4, project.getDescription());
+		ps.setDouble(5, project.getBudget());
+		ps.setInt(6, project.getManagerID());
+		ps.setInt(7, project.getVersion());
+		ps.setInt(8, project.getId());
+		ps.setInt(9, project.getVersion() - 1);
+	}
+
+	/**
+	 * Binds the fields of the given activity on a statement prepared with SAVE_ACTIVITY_SQL.
+	 * The activity's version is the version the row is saved with, and the row is only replaced
+	 * if it is missing or still has the version before it.
+	 * @param ps statement to bind on
+	 * @param activity activity to save
+	 * @throws SQLException
+	 */
+	static void bindActivity(PreparedStatement ps, Activities activity) throws SQLException {
+		ps.setInt(1, activity.getId());
+		ps.setString(2, activity.getLabel());
+		ps.setString(3, activity.getDescription());
+		ps.setInt(4, DateCodec.toEpochDay(activity.getStartDate()));
+		ps.setInt(5, DateCodec.toEpochDay(activity.getEndDate()));
+		ps.setString(6, activity.getProgress().name());
+		ps.setInt(7, activity.getBudget());
+		ps.setInt(8, activity.getMostLikelyTime());
+		ps.setInt(9, activity.getOptimisticTime());
+		ps.setInt(10, activity.getPessimisticTime());
+		ps.setInt(11, activity.getTargetDate());
+		ps.setInt(12, activity.getVersion());
+		ps.setInt(13, activity.getId());
+		ps.setInt(14, activity.getVersion() - 1);
+	}
+
+	/**
+	 * Checks that every row sent by the batches of SAVE_PROJECT_SQL and SAVE_ACTIVITY_SQL was written.
+	 * @param projectRows batch of projects rows
+	 * @param activityRows batch of activities rows
+	 * @throws StaleDataException if a row was saved by another client since it was loaded
+	 */
+	private static void checkVersions(StatementBatch projectRows, StatementBatch activityRows) throws StaleDataException {
+		if (projectRows.getUnchangedCount() > 0)
+			throw new StaleDataException("projects", projectRows.getUnchangedCount() + " projects were changed by another user");
+		if (activityRows.getUnchangedCount() > 0)
+			throw new StaleDataException("activities", activityRows.getUnchangedCount() + " activities were changed by another user");
+	}
+
+	/**
+	 * Gives back their previous version to the projects and activities of a save that was rolled back.
+	 * @param projects projects whose version was incremented
+	 * @param activities activities whose version was incremented
+	 */
+	private static void revertVersions(List<Projects> projects, List<Activities> activities) {
+		for (Projects project : projects)
+			project.setVersion(project.getVersion() - 1);
+		for (Activities activity : activities)
+			activity.setVersion(activity.getVersion() - 1);
+	}
+
+	/**
+	 * Starts a transaction on the given connection. Statements executed on the
+	 * connection are not written until commitTransaction is called.
+	 * @param connection
+	 * @throws SQLException
+	 */
+	static void beginTransaction(Connection connection) throws SQLException {
+		connection.setAutoCommit(false);
+	}
+
+	/**
+	 * Starts a transaction in which foreign keys are enforced, so deleting a tuple also deletes the tuples
+	 * declared ON DELETE CASCADE on it. Foreign keys stay off otherwise, as INSERT OR REPLACE would cascade
+	 * the delete of the replaced tuple. endCascadingTransaction must be called once the transaction is over.
+	 * @param connection
+	 * @throws SQLException
+	 */
+	static void beginCascadingTransaction(Connection connection) throws SQLException {
+		setForeignKeys(connection, true);
+		beginTransaction(connection);
+	}
+
+	/**
+	 * Turns foreign key enforcement back off after the transaction started by beginCascadingTransaction
+	 * has been committed or rolled back.
+	 * @param connection
+	 */
+	static void endCascadingTransaction(Connection connection) {
+		try {
+			setForeignKeys(connection, false);
+		} catch (SQLException exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
+
+	// the pragma has no effect inside a transaction, so it is set around it
+	private static void setForeignKeys(Connection connection, boolean enforced) throws SQLException {
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection,
+				enforced ? "PRAGMA foreign_keys = ON" : "PRAGMA foreign_keys = OFF");
+		ps.execute();
+	}
+
+	/**
+	 * Commits the transaction started on the given connection and returns it to autocommit mode.
+	 * @param connection
+	 * @throws SQLException
+	 */
+	static void commitTransaction(Connection connection) throws SQLException {
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	/**
+	 * Rolls back the transaction started on the given connection, if any, and returns it to autocommit mode.
+	 * @param connection
+	 */
+	static void rollbackTransaction(Connection connection) {
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+	}
 	/*****************************helper functions to connect to and close database connections***************/
 	
 	/**
 	 * A helper function to connect to the database. This method returns an active connection to the database.
+	 * The connection is the long-lived connection kept by the ConnectionManager for the current thread.
 	 * @param database
 	 * @return
 	 */
@@ -800,7 +1892,7 @@ public class DataResource {
 	{
 		Connection connection = null;
 		try {
-			connection = DriverManager.getConnection(dataBase);
+			connection = ConnectionManager.getConnection(database);
 		}catch (Exception exception) {
 			System.out.println(exception.getMessage());
 		}
@@ -808,11 +1900,17 @@ public class DataResource {
 	}
 	
 	/**
-	 * A helper function to close the given connection to the database.
+	 * A helper function to release the given connection to the database.
+	 * Connections kept by the ConnectionManager stay open for the next call, any other connection is closed.
 	 * @param connection
 	 */
 	public static void closeConnection(Connection connection)
 	{
+		if (ConnectionManager.isManaged(connection)) {
+			ConnectionManager.release(connection);
+			return;
+		}
+
 		// close connection at end
 		try {
 			connection.close();
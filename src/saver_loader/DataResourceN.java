@@ -4,14 +4,12 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Set;
 
 import org.jgraph.graph.DefaultEdge;
 
 import resources.Activities;
+import resources.DateCodec;
 import resources.Projects;
 import resources.Users;
 
@@ -55,31 +53,39 @@ public class DataResourceN {
 
 	public static String dataBase = "jdbc:sqlite:ultimate_sandwich.db";
 
-	public static DateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
+	public static DateCodec dateFormatter = DateCodec.DAY_MONTH_YEAR;
 	
 	
 	/*************************load functions****************************/
 	
 	//loads the ids and names of projects associated with user
+	//the projects are shared with DataResource, which loads them lazily
 	public void loadProjectList(Users user){
-		
+		currentUser = user;
+		DataResource.currentUser = user;
+		DataResource.setDatabase(dataBase);
+		DataResource.loadProjectHeadersFromDB();
+		projectList = DataResource.projectList;
+		memberEmployees = DataResource.projectMembers;
 	}
 	
 	//as soon as you click on project name in gui, load that project
 	public void loadSelectedProject(int projectID)
 	{
-		
+		DataResource.selectProject(DataResource.getProjectbyProjectId(projectID));
+		selectedProject = DataResource.selectedProject;
 	}
 	
 	//load current project's activities 
 	public void loadActivities(Projects currentProject)
 	{
-		
+		DataResource.loadProjectDetails(currentProject);
 	}
 	
 	//load all member employees
+	//members are loaded with the project list
 	public void loadMembers(){
-		
+		memberEmployees = DataResource.projectMembers;
 	}
 	
 	
@@ -97,13 +103,14 @@ public class DataResourceN {
 		Connection conn = createConnectionToDB(dataBase);
 		
 		int activityID, dependentActivityID;
-		String actLabel, actDescription, start, end;
+		String actLabel, actDescription;
+		int start, end;
 		
 		activityID = selectedActivity.getId();
 		actLabel = selectedActivity.getLabel();
 		actDescription = selectedActivity.getDescription();
-		start = dateFormatter.format(selectedActivity.getStartDate());
-		end =  dateFormatter.format(selectedActivity.getEndDate());
+		start = DateCodec.toEpochDay(selectedActivity.getStartDate());
+		end =  DateCodec.toEpochDay(selectedActivity.getEndDate());
 		
 		
 		String sql = ("INSERT OR REPLACE INTO activities(id, label, description, startdate, endate) VALUES "
@@ -114,8 +121,8 @@ public class DataResourceN {
 			ps.setInt(1, activityID);
 			ps.setString(2, actLabel);
 			ps.setString(3, actDescription);
-			ps.setString(4, start);
-			ps.setString(5, end);
+			ps.setInt(4, start);
+			ps.setInt(5, end);
 			ps.executeUpdate();
 			
 			sql = ("INSERT OR REPLACE INTO activity_project_relationships(project_id, activity_id) VALUES "
@@ -139,22 +146,18 @@ public class DataResourceN {
 				ps.executeUpdate();
 			}
 
-			Set<DefaultEdge> edges = selectedProject.getArrowSet();
-			// for currently selected activity, add all the edges to
+			// for currently selected activity, add the edges leaving it to
 			// activity_edge_relationship
-			for (DefaultEdge e : edges) {
-				if (activityID == selectedProject.getActivityBefore(e).getId()) {
-					dependentActivityID = selectedProject.getActivityAfter(e).getId();
-					// if the activityID is a before edge, put the
-					// before and after edge into table under
-					// from_activity_id and to_activity_id
-					sql = ("INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) VALUES "
-							+ "(?, ?)");
-					ps = conn.prepareStatement(sql);
-					ps.setInt(1, activityID);
-					ps.setInt(2, dependentActivityID);
-					ps.executeUpdate();
-				}
+			for (DefaultEdge e : selectedProject.getOutgoingArrowsOfActivity(selectedActivity)) {
+				dependentActivityID = selectedProject.getActivityAfter(e).getId();
+				// put the before and after edge into table under
+				// from_activity_id and to_activity_id
+				sql = ("INSERT OR REPLACE INTO activity_edge_relationship(from_activity_id, to_activity_id) VALUES "
+						+ "(?, ?)");
+				ps = conn.prepareStatement(sql);
+				ps.setInt(1, activityID);
+				ps.setInt(2, dependentActivityID);
+				ps.executeUpdate();
 			}
 			
 			
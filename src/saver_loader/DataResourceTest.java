@@ -4,11 +4,13 @@ package saver_loader;
 import static org.junit.Assert.*;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import org.jgraph.graph.DefaultEdge;
@@ -16,6 +18,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import resources.Activities;
+import resources.DateCodec;
 import resources.Projects;
 import resources.TaskProgress;
 import resources.UserType;
@@ -78,6 +81,89 @@ public class DataResourceTest {
 		assertTrue("should be 1", p.getManagerID() == 1);		
 	}
 
+	@Test
+	public void testIndexedLookup() {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+		
+		//a renamed project is only found by its new name
+		DataResource.projectList.rename(p, "RenamedProject");
+		assertTrue("should find the new name", DataResource.getProjectbyProjectName("RenamedProject") == p);
+		assertTrue("should not find the old name", DataResource.getProjectbyProjectName("TestProject") == null);
+		
+		//activities are found by label and id, and follow relabels and deletes
+		Activities a = p.getActivityByLabel("TestActivity 2");
+		assertTrue("should have id 2", a.getId() == 2 && p.getActivityById(2) == a);
+		p.relabelActivity(a, "Relabeled");
+		assertTrue("should find the new label", p.getActivityByLabel("Relabeled") == a);
+		assertTrue("should not find the old label", p.getActivityByLabel("TestActivity 2") == null);
+		p.deleteActivity(a);
+		assertTrue("should not find the deleted activity", p.getActivityByLabel("Relabeled") == null && p.getActivityById(2) == null);
+		
+		//members are found by username
+		assertTrue("should find csand", DataResource.projectMembers.getByUsername("csand").getID() == 2);
+		
+		//a removed project is no longer found
+		DataResource.projectList.remove(p);
+		assertTrue("should not find the removed project", DataResource.getProjectbyProjectId(1) == null);
+		System.out.println("tested indexed lookup");
+	}
+
+	@Test
+	public void testIndexedListViews() {
+		ProjectList list = new ProjectList();
+		Projects first = new Projects("First", new ArrayList<Users>(), "07-22-2016", 901, 1, "First", 10);
+		Projects second = new Projects("Second", new ArrayList<Users>(), "07-22-2016", 902, 1, "Second", 10);
+		final Projects third = new Projects("Third", new ArrayList<Users>(), "07-22-2016", 903, 1, "Third", 10);
+		Projects twin = new Projects("Third", new ArrayList<Users>(), "07-22-2016", 904, 1, "Twin", 10);
+		list.add(first);
+		list.add(second);
+		list.add(third);
+		list.add(twin);
+
+		//removing through an iterator drops the project from the indexes
+		java.util.Iterator<Projects> iterator = list.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == first)
+				iterator.remove();
+		}
+		assertTrue("should not find the removed project", list.getById(901) == null && list.getByName("First") == null);
+
+		//a list iterator replaces and inserts through the indexes
+		java.util.ListIterator<Projects> positions = list.listIterator();
+		positions.next();
+		positions.set(first);
+		positions.add(second);
+		assertTrue("should find the set project", list.getById(901) == first && list.getByName("First") == first);
+		assertTrue("should find the added project", list.getById(902) == second && list.indexOf(second) == 1);
+
+		//sorting moves the indexed name to the first listed project
+		list.sort(new java.util.Comparator<Projects>() {
+			@Override
+			public int compare(Projects a, Projects b) {
+				return Integer.compare(b.getId(), a.getId());
+			}
+		});
+		assertTrue("should index the first of the sorted projects", list.getByName("Third") == twin);
+
+		//clearing a sub list, and removing with a filter, unindexes the projects
+		list.subList(0, 1).clear();
+		assertTrue("should unindex the cleared project", list.getById(904) == null && list.getByName("Third") == third);
+		list.removeIf(new java.util.function.Predicate<Projects>() {
+			@Override
+			public boolean test(Projects project) {
+				return project == third;
+			}
+		});
+		assertTrue("should unindex the filtered project", list.getById(903) == null && list.getByName("Third") == null);
+		assertTrue("should keep the others", list.size() == 2 && list.getById(901) == first && list.getById(902) == second);
+		System.out.println("tested indexed list views");
+	}
+
 	@Test
 	public void testRemoveProject() {
 		// set current user
@@ -146,6 +232,42 @@ public class DataResourceTest {
 		DataResource.closeConnection(connection);
 	}
 
+	@Test
+	public void testCascadingDelete() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+		
+		//deleting activity 2 also removes the dependency of activity 2 on activity 1
+		DataResource.deleteActivity(p.getActivityById(2));
+		assertTrue("should have no dependency into 2", count("SELECT COUNT(*) FROM activity_edge_relationship WHERE to_activity_id = 2") == 0);
+		assertTrue("should keep the dependency into 3", count("SELECT COUNT(*) FROM activity_edge_relationship WHERE to_activity_id = 3") == 1);
+		
+		//removing the project removes every remaining activity and association
+		DataResource.removeProject(p);
+		assertTrue("should have no activities", count("SELECT COUNT(*) FROM activities") == 0);
+		assertTrue("should have no dependencies", count("SELECT COUNT(*) FROM activity_edge_relationship") == 0);
+		assertTrue("should have no members", count("SELECT COUNT(*) FROM activity_user_project_relationships") == 0);
+		assertTrue("should have no project users", count("SELECT COUNT(*) FROM user_project_relationships") == 0);
+		
+		//foreign keys are only enforced during the delete
+		assertTrue("should turn foreign keys back off", count("PRAGMA foreign_keys") == 0);
+		System.out.println("tested cascading delete");
+	}
+
+	private int count(String sql) throws Exception {
+		Connection connection = DataResource.createConnectionToDB(testDB);
+		Statement stmt = connection.createStatement();
+		ResultSet result = stmt.executeQuery(sql);
+		int total = result.getInt(1);
+		stmt.close();
+		DataResource.closeConnection(connection);
+		return total;
+	}
+
 	@Test
 	public void testLoadFromDB() {		
 		// set current user
@@ -476,7 +598,1162 @@ public class DataResourceTest {
 		System.out.println("tested add activity dependencies");
 		
 	}
-	
+
+	@Test
+	public void testFailedSaveEndsTransaction() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+		DataResource.selectedProject = p;
+		Activities a = p.getActivityList().get(1);
+
+		//an activity without progress fails inside the transaction
+		a.setProgress(null);
+		DataResource.saveActivity(a);
+		Connection connection = DataResource.createConnectionToDB(testDB);
+		assertTrue("should be back in autocommit", connection.getAutoCommit());
+		DataResource.closeConnection(connection);
+		assertTrue("should keep the version", a.getVersion() == 0);
+
+		//so does a project saved without a current user
+		DataResource.currentUser = null;
+		DataResource.saveProject(p);
+		connection = DataResource.createConnectionToDB(testDB);
+		assertTrue("should be back in autocommit", connection.getAutoCommit());
+		DataResource.closeConnection(connection);
+		assertTrue("should keep the version", p.getVersion() == 0);
+
+		//the next save is committed on its own
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		p.setDescription("Saved after a failure");
+		DataResource.saveProject(p);
+		Connection other = java.sql.DriverManager.getConnection(testDB);
+		ResultSet result = other.createStatement().executeQuery("SELECT count(*) FROM projects WHERE description = 'Saved after a failure'");
+		assertTrue("should have committed the save", result.getInt(1) == 1);
+		other.close();
+		System.out.println("tested failed save");
+	}
+
+	@Test
+	public void testSaveToDB(){
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+
+		Projects p = DataResource.getProjectbyProjectId(1);
+		Activities a2 = p.getActivityList().get(1);
+		Activities a3 = p.getActivityList().get(2);
+
+		//edit the project and its activities, and add a dependency between a2 and a3
+		p.setProjectName("TestProjectSaved");
+		a2.setDescription("Saved Description");
+		a3.setDescription("Saved Description");
+		p.addArrow(a2, a3);
+
+		//save everything with batches smaller than the number of rows
+		DataResource.setBatchSize(2);
+		DataResource.saveToDB();
+		DataResource.setBatchSize(500);
+
+		//load the changes into a fresh projectList
+		DataResource.projectList.clear();
+		DataResource.loadManagerDataFromDB();
+		p = DataResource.getProjectbyProjectId(1);
+
+		assertTrue("project name should equal: TestProjectSaved", p.getProjectName().equals("TestProjectSaved"));
+		assertTrue("should equal Saved Description", p.getActivityList().get(1).getDescription().equals("Saved Description"));
+		assertTrue("should equal Saved Description", p.getActivityList().get(2).getDescription().equals("Saved Description"));
+		assertTrue("should have three dependencies", p.getArrowSet().size() == 3);
+
+		System.out.println("tested save to database");
+	}
+
+	@Test
+	public void testFlushChanges(){
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+
+		Projects p = DataResource.getProjectbyProjectId(1);
+		Activities a1 = p.getActivityList().get(0);
+		Activities a2 = p.getActivityList().get(1);
+		Activities a3 = p.getActivityList().get(2);
+
+		assertFalse("a freshly loaded project should have no changes", p.hasChanges());
+
+		//edit one activity, replace a dependency and reassign members
+		a2.setDescription("Flushed Description");
+		p.removeArrow(a1, a3);
+		p.addArrow(a2, a3);
+		ArrayList<Users> members = new ArrayList<Users>();
+		members.add(DataResource.projectMembers.get(0));
+		a3.setMemberList(members);
+
+		assertTrue("the project should have changes", p.hasChanges());
+		assertFalse("a1 was not edited", a1.isDirty());
+
+		DataResource.flushChanges();
+
+		assertFalse("the project should be saved", p.hasChanges());
+
+		//load the changes into a fresh projectList
+		DataResource.projectList.clear();
+		DataResource.loadManagerDataFromDB();
+		p = DataResource.getProjectbyProjectId(1);
+		a1 = p.getActivityList().get(0);
+		a2 = p.getActivityList().get(1);
+		a3 = p.getActivityList().get(2);
+
+		assertTrue("should equal Flushed Description", a2.getDescription().equals("Flushed Description"));
+		assertTrue("should equal Just testing an activity", a1.getDescription().equals("Just testing an activity"));
+		assertTrue("a3 should only depend on a2", p.getSetofDependencyActivities(a3).size() == 1
+				&& p.getSetofDependencyActivities(a3).get(0).getId() == a2.getId());
+		assertTrue("a3 should have one member", a3.getMemberList().size() == 1);
+
+		System.out.println("tested flush changes");
+	}
+
+	@Test
+	public void testPersistenceQueue(){
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+
+		Projects p = DataResource.getProjectbyProjectId(1);
+		Activities a2 = p.getActivityList().get(1);
+		Activities a3 = p.getActivityList().get(2);
+
+		PersistenceQueue.start();
+		try {
+			//repeated saves of the same activity are merged into the last one
+			a2.setDescription("First Description");
+			PersistenceQueue.saveActivity(p, a2);
+			a2.setDescription("Queued Description");
+			PersistenceQueue.saveActivity(p, a2);
+
+			//a delete replaces a waiting save
+			PersistenceQueue.saveActivity(p, a3);
+			p.deleteActivity(a3);
+
+			PersistenceQueue.flush();
+			assertTrue("the queue should be empty", PersistenceQueue.getPendingCount() == 0);
+		} finally {
+			PersistenceQueue.shutdown();
+		}
+
+		//load the changes into a fresh projectList
+		DataResource.projectList.clear();
+		DataResource.loadManagerDataFromDB();
+		p = DataResource.getProjectbyProjectId(1);
+
+		assertTrue("should have 2 activities", p.getActivityList().size() == 2);
+		assertTrue("should equal Queued Description", p.getActivityList().get(1).getDescription().equals("Queued Description"));
+
+		System.out.println("tested persistence queue");
+	}
+
+	@Test
+	public void testLoadProjectDetails(){
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads only the projects themselves
+		DataResource.loadProjectHeadersFromDB();
+
+		Projects p = DataResource.getProjectbyProjectId(1);
+		assertTrue("should be named TestProject", p.getProjectName().equals("TestProject"));
+		assertTrue("should be 100.00", p.getBudget() == 100.00);
+		assertFalse("the activities should not be loaded yet", p.isLoaded());
+		assertTrue("should have no activities yet", p.getActivityList().isEmpty());
+
+		//selecting the project loads its activities, dependencies and members
+		DataResource.selectProject(p);
+		assertTrue("should be the selected project", DataResource.selectedProject == p);
+		assertTrue("the activities should be loaded", p.isLoaded());
+		assertTrue("should have 3 activities", p.getActivityList().size() == 3);
+		assertTrue("should have 2 dependencies", p.getArrowSet().size() == 2);
+		assertTrue("should have 3 users", p.getUserList().size() == 3);
+		assertTrue("activity 1 should have one member", p.getActivityByLabel("TestActivity 1").getMemberList().size() == 1);
+		assertFalse("a freshly loaded project should have no changes", p.hasChanges());
+
+		//loading again does nothing
+		DataResource.loadProjectDetails(p);
+		assertTrue("should still have 3 activities", p.getActivityList().size() == 3);
+
+		System.out.println("tested load project details");
+	}
+
+	@Test
+	public void testSchemaMigration() throws Exception {
+		//the test database is migrated when it is first opened
+		Connection connection = DataResource.createConnectionToDB(testDB);
+		int latest = SchemaMigrator.MIGRATIONS[SchemaMigrator.MIGRATIONS.length - 1].version;
+		assertTrue("should be at the latest version", SchemaMigrator.getVersion(connection) == latest);
+
+		//migrating again changes nothing
+		assertTrue("should still be at the latest version", SchemaMigrator.migrate(connection) == latest);
+
+		//every access path should use an index
+		assertTrue("should have no full scans: " + SchemaMigrator.findFullScans(connection),
+				SchemaMigrator.findFullScans(connection).isEmpty());
+
+		DataResource.closeConnection(connection);
+		System.out.println("tested schema migration");
+	}
+
+	@Test
+	public void testEpochDates() throws Exception {
+		//the codec parses like the lenient dd-MM-yyyy SimpleDateFormat it replaces
+		java.text.SimpleDateFormat legacy = new java.text.SimpleDateFormat("dd-MM-yyyy");
+		String[] dates = { "22-07-2016", "07-22-2016", "31-02-2016", "01-01-1970", "29-02-2000" };
+		for (String date : dates) {
+			Date parsed = DataResource.dateFormatter.parse(date);
+			assertTrue("should parse " + date + " like SimpleDateFormat", parsed.equals(legacy.parse(date)));
+			assertTrue("should format " + date + " like SimpleDateFormat",
+					DataResource.dateFormatter.format(parsed).equals(legacy.format(parsed)));
+			assertTrue("should round trip " + date + " through its epoch day",
+					DateCodec.fromEpochDay(DateCodec.toEpochDay(parsed)).equals(parsed));
+		}
+		assertTrue("01-01-1970 should be epoch day 0", DataResource.dateFormatter.parseEpochDay("01-01-1970") == 0);
+
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads all projects and activities, whose dates are still stored as text
+		DataResource.loadManagerDataFromDB();
+
+		DataResource.selectedProject = DataResource.getProjectbyProjectId(1);
+		Activities a1 = DataResource.selectedProject.getActivityList().get(0);
+		assertTrue("should read the text date", a1.getStartDate().equals(DataResource.dateFormatter.parse("07-22-2016")));
+
+		//saving stores the dates as epoch days
+		DataResource.saveActivity(a1);
+		Connection connection = DataResource.createConnectionToDB(testDB);
+		ResultSet result = connection.createStatement().executeQuery(
+				"SELECT typeof(startdate), startdate FROM activities WHERE id = " + a1.getId());
+		assertTrue("should find the activity", result.next());
+		assertTrue("should be stored as an integer", result.getString(1).equals("integer"));
+		assertTrue("should be the epoch day", result.getInt(2) == DateCodec.toEpochDay(a1.getStartDate()));
+		result.close();
+		DataResource.closeConnection(connection);
+
+		System.out.println("tested epoch dates");
+	}
+
+	@Test
+	public void testIdAllocator() throws Exception {
+		//ids are never below the ones already stored
+		int first = IdAllocator.ACTIVITIES.nextId();
+		assertTrue("should be above the stored activities", first > 3);
+
+		//a row inserted with an explicit id is skipped by the next block
+		Connection connection = DataResource.createConnectionToDB(testDB);
+		connection.createStatement().executeUpdate("INSERT INTO activities(id, label, description, startdate, endate) "
+				+ "VALUES (" + (first + 1000) + ", 'External', 'Inserted by another client', 0, 0)");
+		DataResource.closeConnection(connection);
+		assertTrue("should skip the external id", IdAllocator.ACTIVITIES.reserve(1) > first + 1000);
+
+		//ids reserved while the caller's transaction is open stay reserved when it is rolled back
+		connection = DataResource.createConnectionToDB(testDB);
+		DataResource.beginTransaction(connection);
+		int reserved = IdAllocator.ACTIVITIES.reserve(5);
+		DataResource.rollbackTransaction(connection);
+		DataResource.closeConnection(connection);
+		assertTrue("should not reserve the ids again", IdAllocator.ACTIVITIES.reserve(1) >= reserved + 5);
+
+		//threads allocating at the same time never get the same id
+		final java.util.Set<Integer> ids = java.util.Collections.synchronizedSet(new java.util.HashSet<Integer>());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 200; i++)
+						ids.add(IdAllocator.PROJECTS.nextId());
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue("should have 800 distinct ids", ids.size() == 800);
+
+		System.out.println("tested id allocator");
+	}
+
+	@Test
+	public void testInMemoryRepository() {
+		InMemoryRepository repository = new InMemoryRepository();
+		Users manager = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		Users member = new Users( "csand", "Chicken", "Sandwhich", "123", 2, "MEMBER");
+		repository.addUser(manager);
+		repository.addUser(member);
+		DataResource.currentUser = manager;
+		DataResource.useRepository(repository);
+		try {
+			//save a project with two dependent activities, the second one assigned to csand
+			Projects p = new Projects("InMemoryProject", new ArrayList<Users>(), "07-22-2016", 500, 1, "Never on disk", 10.0);
+			Activities a1 = new Activities("First", new Date(0), new Date(86400000L), "A1", 501, TaskProgress.pending, 0, 1, 1, 1, 0);
+			Activities a2 = new Activities("Second", new Date(0), new Date(86400000L), "A2", 502, TaskProgress.pending, 0, 1, 1, 1, 0);
+			p.addActivity(a1);
+			p.addActivity(a2);
+			p.addArrow(a1, a2);
+			a2.getMemberList().add(member);
+			DataResource.projectRepository.saveProject(p);
+			DataResource.activityRepository.saveActivity(p, a1);
+			DataResource.activityRepository.saveActivity(p, a2);
+
+			//new projects and activities take the next ids of the repository, past the saved ones
+			assertTrue("should take the next project id", new Projects("Next", new ArrayList<Users>(), "07-22-2016", 1, "", 0).getId() == 501);
+			assertTrue("should take the next activity id",
+					new Activities("Next", new Date(0), new Date(0), "N", TaskProgress.pending, 0, 1, 1, 1, 0).getId() == 503);
+
+			//the project is loaded back from the repository as a new object
+			DataResource.loadProjectHeadersFromDB();
+			Projects loaded = DataResource.getProjectbyProjectName("InMemoryProject");
+			assertTrue("should be a new unloaded project", loaded != p && !loaded.isLoaded());
+			DataResource.loadProjectDetails(loaded);
+			assertTrue("should have 2 activities", loaded.getActivityList().size() == 2);
+			assertTrue("should have 1 dependency", loaded.getArrowSet().size() == 1);
+			assertTrue("should have csand on A2", loaded.getActivityByLabel("A2").getMemberList().get(0).getID() == 2);
+			assertTrue("should have the manager as user", loaded.getUserList().size() == 1);
+
+			//a member only sees the activities assigned to them
+			Projects memberView = repository.loadProjectHeaders(member).get(0);
+			repository.loadProjectDetails(memberView, member);
+			assertTrue("member should only see A2", memberView.getActivityList().size() == 1 && memberView.getActivityByLabel("A2") != null);
+
+			//deleting an activity through the project also deletes it from the repository
+			loaded.deleteActivity(loaded.getActivityByLabel("A1"));
+			Projects reloaded = repository.loadProjectHeaders(manager).get(0);
+			repository.loadProjectDetails(reloaded, manager);
+			assertTrue("should have 1 activity", reloaded.getActivityList().size() == 1);
+			assertTrue("should have no dependency", reloaded.getArrowSet().size() == 0);
+
+			repository.removeProject(reloaded);
+			assertTrue("should have no projects", repository.loadProjectHeaders(manager).size() == 0);
+		} finally {
+			DataResource.useRepository(new SqliteRepository());
+		}
+		System.out.println("tested in memory repository");
+	}
+
+	@Test
+	public void testWorkspaceSnapshot() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		java.io.File file = WorkspaceSnapshot.getFile(testDB, DataResource.currentUser);
+		try {
+			//loads all projects and activities, with a computed value to cache
+			DataResource.loadManagerDataFromDB();
+			DataResource.getProjectbyProjectId(1).getActivityById(2).setEarliestStart(4.5);
+			Date start = DataResource.getProjectbyProjectId(1).getActivityById(1).getStartDate();
+			assertTrue("should write the snapshot", WorkspaceSnapshot.save());
+
+			//the workspace is restored from the snapshot while the database is unchanged
+			DataResource.projectList.clear();
+			DataResource.projectMembers.clear();
+			assertTrue("should restore the snapshot", WorkspaceSnapshot.load());
+			Projects p = DataResource.getProjectbyProjectId(1);
+			assertTrue("should be loaded", p.isLoaded() && p.getActivityList().size() == 3);
+			assertTrue("should have 2 dependencies", p.getArrowSet().size() == 2);
+			assertTrue("should keep the cached value", p.getActivityById(2).getEarliestStart() == 4.5);
+			assertTrue("should keep the members", p.getActivityById(1).getMemberList().get(0).getName().equals("csand"));
+			assertTrue("should keep the dates", p.getActivityById(1).getStartDate().equals(start));
+			assertTrue("should restore members", DataResource.projectMembers.getByUsername("bsand") != null);
+
+			//any change to the database makes the snapshot stale
+			DataResource.deleteEdgeFromDB(1, 2);
+			DataResource.projectList.clear();
+			assertTrue("should not restore a stale snapshot", !WorkspaceSnapshot.load());
+			assertTrue("should not have restored projects", DataResource.projectList.size() == 0);
+
+			//no snapshot is written after a journaled change could not be applied
+			ChangeJournal journal = ChangeJournal.open(testDB, Long.MAX_VALUE);
+			DataResource.useRepository(new JournalRepository(journal));
+			DataResource.loadManagerDataFromDB();
+			assertTrue("should write the snapshot through the journal", WorkspaceSnapshot.save());
+			Connection other = java.sql.DriverManager.getConnection(testDB);
+			Statement stmt = other.createStatement();
+			//without its table the deletion of a dependency cannot be applied
+			stmt.executeUpdate("ALTER TABLE activity_edge_relationship RENAME TO edges_away");
+			journal.deleteEdge(1, 3);
+			journal.close();
+			stmt.executeUpdate("ALTER TABLE edges_away RENAME TO activity_edge_relationship");
+			stmt.close();
+			other.close();
+			assertTrue("should have failed the record", journal.getFailureCount() == 1);
+			assertTrue("should not write the snapshot", !WorkspaceSnapshot.save());
+		} finally {
+			DataResource.useRepository(new SqliteRepository());
+			ChangeJournal.getFile(testDB).delete();
+			file.delete();
+		}
+		System.out.println("tested workspace snapshot");
+	}
+
+	@Test
+	public void testChangeJournal() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		java.io.File file = ChangeJournal.getFile(testDB);
+		//a journal that does not compact on its own, to stand for an application that stopped
+		ChangeJournal stopped = ChangeJournal.open(testDB, Long.MAX_VALUE);
+		try {
+			DataResource.useRepository(new JournalRepository(stopped));
+
+			//the writes are on disk in the journal but not in the tables yet
+			Projects p = new Projects("JournalProject", new ArrayList<Users>(), "07-22-2016", 600, 1, "Journaled", 10.0);
+			Activities a = new Activities("Journaled", new Date(0), new Date(86400000L), "J1", 601, TaskProgress.pending, 0, 1, 1, 1, 0);
+			p.addActivity(a);
+			DataResource.projectRepository.saveProject(p);
+			DataResource.activityRepository.saveActivity(p, a);
+			DataResource.activityRepository.deleteEdge(1, 2);
+			assertTrue("should have written the journal", file.length() > 0);
+			assertTrue("should not have applied the journal", count("SELECT count(*) FROM activities WHERE id = 601") == 0);
+
+			//a record whose write was interrupted is dropped when the journal is opened again
+			java.io.FileOutputStream torn = new java.io.FileOutputStream(file, true);
+			torn.write(new byte[] { 0, 0, 0, 40, 1, 2 });
+			torn.close();
+			ChangeJournal reopened = ChangeJournal.open(testDB);
+			assertTrue("should replay 3 records", reopened.getReplayedCount() == 3);
+			assertTrue("should have emptied the journal", file.length() == 0);
+			assertTrue("should have applied the activity", count("SELECT count(*) FROM activities WHERE id = 601") == 1);
+			assertTrue("should have applied the edge deletion",
+					count("SELECT count(*) FROM activity_edge_relationship WHERE from_activity_id = 1 AND to_activity_id = 2") == 0);
+
+			//reads apply the waiting records first
+			DataResource.useRepository(new JournalRepository(reopened));
+			DataResource.activityRepository.deleteActivity(a);
+			DataResource.loadProjectHeadersFromDB();
+			assertTrue("should have applied the deletion", count("SELECT count(*) FROM activities WHERE id = 601") == 0);
+			reopened.close();
+
+			//the stopped journal does not apply its records over the newer changes
+			stopped.close();
+			assertTrue("should not apply records twice", count("SELECT count(*) FROM activities WHERE id = 601") == 0);
+		} finally {
+			DataResource.useRepository(new SqliteRepository());
+			stopped.close();
+			file.delete();
+		}
+		System.out.println("tested change journal");
+	}
+
+	@Test
+	public void testOptimisticConcurrency() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		//loads all projects and activities
+		DataResource.loadManagerDataFromDB();
+		assertTrue("nothing should have changed", DataResource.refreshChangedProjects() == 0);
+		Projects p = DataResource.getProjectbyProjectId(1);
+		DataResource.selectedProject = p;
+		DataResource.selectedActivity = p.getActivityById(2);
+
+		//another client saves activity 2 on its own connection
+		Connection other = java.sql.DriverManager.getConnection(testDB);
+		Statement stmt = other.createStatement();
+		stmt.executeUpdate("UPDATE activities SET label = 'Remote', version = version + 1 WHERE id = 2");
+		stmt.close();
+		other.close();
+
+		//saving the stale activity does not overwrite the other client's change
+		Activities stale = p.getActivityById(2);
+		stale.setLabel("Local");
+		DataResource.saveActivity(stale);
+		assertTrue("should keep the remote label", count("SELECT count(*) FROM activities WHERE id = 2 AND label = 'Remote'") == 1);
+		assertTrue("should keep the loaded version", stale.getVersion() == 0);
+
+		//the poll does not replace a project with unsaved changes
+		assertTrue("should keep the unsaved change", DataResource.refreshChangedProjects() == 0);
+		assertTrue("should keep the project", DataResource.getProjectbyProjectId(1) == p);
+
+		//once the change is dropped, the poll reloads the changed project only
+		stale.markClean();
+		assertTrue("should reload 1 project", DataResource.refreshChangedProjects() == 1);
+		Projects reloaded = DataResource.getProjectbyProjectId(1);
+		assertTrue("should be a new project", reloaded != p && reloaded == DataResource.selectedProject);
+		assertTrue("should have the remote label", DataResource.selectedActivity.getLabel().equals("Remote"));
+		assertTrue("should have the remote version", DataResource.selectedActivity.getVersion() == 1);
+
+		//changes saved by this client are not reloaded
+		PersistenceQueue.start();
+		try {
+			reloaded.getActivityById(1).setDescription("Saved here");
+			PersistenceQueue.saveActivity(reloaded, reloaded.getActivityById(1));
+			//the version is taken once the write is committed
+			PersistenceQueue.flush();
+			assertTrue("should not reload own changes", DataResource.refreshChangedProjects() == 0);
+			assertTrue("should have saved version 1", count("SELECT version FROM activities WHERE id = 1") == 1);
+		} finally {
+			PersistenceQueue.shutdown();
+		}
+		System.out.println("tested optimistic concurrency");
+	}
+
+	@Test
+	public void testCsvImport() throws Exception {
+		//small chunks, so the files are staged in several transactions
+		CsvImporter.chunkRows = 2;
+		java.io.File projects = csv("key,name,date,description,budget,manager",
+				"P1,Imported,22-07-2016,\"Kitchen, new\",100,tsand",
+				"P2,Cyclic,22-07-2016,Loops,50,tsand",
+				"P3,Missing,22-07-2016,Broken,50,tsand",
+				"P4,Nobody,22-07-2016,No manager,50,nobody");
+		java.io.File activities = csv("key,project,label,description,start,end,progress,budget",
+				"a1,P1,A1,First,01-08-2016,02-08-2016,pending,5",
+				"a2,P1,A2,Second,02-08-2016,04-08-2016,started,5",
+				"a3,P1,A3,Third,04-08-2016,05-08-2016",
+				"b1,P2,B1,Loop,01-08-2016,02-08-2016",
+				"b2,P2,B2,Loop,01-08-2016,02-08-2016",
+				"c1,P3,C1,Alone,01-08-2016,02-08-2016",
+				"d1,P4,D1,Alone,01-08-2016,02-08-2016",
+				"x1,P9,X1,Orphan,01-08-2016,02-08-2016");
+		java.io.File dependencies = csv("from,to", "a1,a2", "a2,a3", "b1,b2", "b2,b1", "zz,c1");
+		java.io.File assignments = csv("activity,username", "a1,csand", "a3,bsand");
+		try {
+			CsvImporter.Report report = CsvImporter.importFiles(projects, activities, dependencies, assignments);
+			System.out.println(report);
+
+			assertTrue("should import 1 project", report.getProjectCount() == 1);
+			assertTrue("should import 3 activities", report.getActivityCount() == 3);
+			assertTrue("should import 2 dependencies", report.getDependencyCount() == 2);
+			assertTrue("should import 2 assignments", report.getAssignmentCount() == 2);
+			assertTrue("should reject 3 projects", report.getRejectedProjectCount() == 3);
+			assertTrue("should report 4 errors", report.getErrorCount() == 4);
+			assertTrue("should read 19 rows", report.getRowCount() == 19);
+
+			assertTrue("should keep the quoted description",
+					count("SELECT count(*) FROM projects WHERE name = 'Imported' AND description = 'Kitchen, new'") == 1);
+			assertTrue("should not import the cycle", count("SELECT count(*) FROM projects WHERE name = 'Cyclic'") == 0);
+			assertTrue("should not import the missing predecessor",
+					count("SELECT count(*) FROM projects WHERE name = 'Missing'") == 0);
+			assertTrue("should relate the activities", count("SELECT count(*) FROM activity_project_relationships apr "
+					+ "JOIN projects p ON p.id = apr.project_id WHERE p.name = 'Imported'") == 3);
+			assertTrue("should relate the members", count("SELECT count(*) FROM user_project_relationships upr "
+					+ "JOIN projects p ON p.id = upr.project_id WHERE p.name = 'Imported'") == 2);
+
+			//the imported project loads like any other
+			DataResource.currentUser = new Users("tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+			DataResource.loadProjectHeadersFromDB();
+			Projects imported = null;
+			for (Projects p : DataResource.projectList) {
+				if (p.getProjectName().equals("Imported"))
+					imported = p;
+			}
+			assertTrue("should load the imported project", imported != null);
+			DataResource.loadProjectDetails(imported);
+			assertTrue("should load 3 activities", imported.getActivityList().size() == 3);
+			assertTrue("should load 2 dependencies", imported.getArrowSet().size() == 2);
+		} finally {
+			CsvImporter.chunkRows = 10000;
+			projects.delete();
+			activities.delete();
+			dependencies.delete();
+			assignments.delete();
+		}
+		System.out.println("tested csv import");
+	}
+
+	@Test
+	public void testScheduleExport() throws Exception {
+		Connection connection = ConnectionManager.getConnection(testDB);
+		connection.createStatement().executeUpdate("INSERT INTO projects(id, name, date, description, budget, manager_id) "
+				+ "VALUES (5, 'Last', '07-22-2016', 'Empty', 10, 1), (3, 'Middle, \"quoted\"', '07-22-2016', 'Empty', 10, 1)");
+		connection.createStatement().executeUpdate("UPDATE activities SET budget = 10, progress = 'complete' WHERE id = 1");
+		ConnectionManager.release(connection);
+
+		//one project per page and several threads, the projects are still written in id order
+		ScheduleExporter.pageSize = 1;
+		ScheduleExporter.threads = 3;
+		try {
+			java.io.StringWriter csv = new java.io.StringWriter();
+			assertTrue("should export 3 projects", ScheduleExporter.exportDatabase(csv, ScheduleExporter.Format.CSV) == 3);
+			String[] rows = csv.toString().split("\r\n");
+			assertTrue("should write a header and 5 rows", rows.length == 6);
+			assertTrue("should start with the header", rows[0].startsWith("project_id,project_name,"));
+			assertTrue("should write project 1 first", rows[1].startsWith("1,TestProject,") && rows[3].startsWith("1,"));
+			assertTrue("should quote the name", rows[4].startsWith("3,\"Middle, \"\"quoted\"\"\","));
+			assertTrue("should write project 5 last", rows[5].startsWith("5,Last,"));
+
+			java.io.StringWriter json = new java.io.StringWriter();
+			ScheduleExporter.exportDatabase(json, ScheduleExporter.Format.JSON);
+			String text = json.toString();
+			assertTrue("should write an array", text.startsWith("[") && text.trim().endsWith("]"));
+			assertTrue("should write the projects in order", text.indexOf("\"project_id\":1,") < text.indexOf("\"project_id\":3,")
+					&& text.indexOf("\"project_id\":3,") < text.indexOf("\"project_id\":5,"));
+			assertTrue("should escape the name", text.contains("\"project_name\":\"Middle, \\\"quoted\\\"\""));
+			assertTrue("should write the float", text.contains("\"float\":0.0,\"critical\":true"));
+
+			//the loaded projects can be exported again without their earned value adding up
+			DataResource.currentUser = new Users("tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+			DataResource.loadProjectHeadersFromDB();
+			ScheduleExporter.exportProjects(DataResource.projectList, new java.io.StringWriter(), ScheduleExporter.Format.CSV);
+			java.io.StringWriter again = new java.io.StringWriter();
+			ScheduleExporter.exportProjects(DataResource.projectList, again, ScheduleExporter.Format.CSV);
+			assertTrue("should compute the earned value once", again.toString().contains("\r\n1,TestProject,100.0,10,10.0,10.0,"));
+
+			//the schedules are computed on copies, the exported projects are left as they are
+			Projects p = DataResource.getProjectbyProjectId(1);
+			assertTrue("should not schedule the project", p.getBudgetAtCompletion() == 0
+					&& p.getActivityById(1).getEarliestFinish() == 0);
+
+			//a project whose schedule cannot be computed fails the export
+			p.getActivityById(2).setProgress(null);
+			try {
+				ScheduleExporter.exportProjects(DataResource.projectList, new java.io.StringWriter(), ScheduleExporter.Format.CSV);
+				fail("should report the failed schedule");
+			} catch (java.io.IOException expected) {
+				assertTrue("should name the project", expected.getMessage().startsWith("Could not schedule project 1"));
+			}
+		} finally {
+			ScheduleExporter.pageSize = 50;
+			ScheduleExporter.threads = Runtime.getRuntime().availableProcessors();
+		}
+		System.out.println("tested schedule export");
+	}
+
+	@Test
+	public void testUserCache() throws Exception {
+		DataResource.currentUser = new Users("tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+
+		//loading twice does not duplicate the members
+		DataResource.loadManagerDataFromDB();
+		DataResource.projectList.clear();
+		DataResource.loadManagerDataFromDB();
+		assertTrue("should have 2 members", DataResource.projectMembers.size() == 2);
+
+		//every reference to a user is the cached object
+		Users chicken = UserCache.get(2);
+		assertTrue("should find csand by username", UserCache.getByUsername("csand") == chicken);
+		assertTrue("should share the member", DataResource.projectMembers.getByUsername("csand") == chicken);
+		Projects p = DataResource.getProjectbyProjectId(1);
+		boolean shared = false;
+		for (Users user : p.getUserList())
+			shared |= user == chicken;
+		assertTrue("should share the project user", shared);
+		assertTrue("should share the activity member", p.getActivityById(1).getMemberList().get(0) == chicken);
+
+		//changed users are updated in place, deleted users are dropped
+		Connection connection = ConnectionManager.getConnection(testDB);
+		connection.createStatement().executeUpdate("UPDATE users SET first_name = 'Renamed', username = 'rsand' WHERE id = 2");
+		connection.createStatement().executeUpdate("DELETE FROM users WHERE id = 3");
+		ConnectionManager.release(connection);
+		UserCache.refresh();
+		assertTrue("should update the cached user", UserCache.get(2) == chicken && chicken.getFirstName().equals("Renamed"));
+		assertTrue("should index the new username", UserCache.getByUsername("rsand") == chicken
+				&& UserCache.getByUsername("csand") == null);
+		assertTrue("should drop the deleted user", UserCache.get(3) == null);
+		System.out.println("tested user cache");
+	}
+
+	@Test
+	public void testSaveEdgesFromAdjacency() throws Exception {
+		DataResource.currentUser = new Users("tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+
+		//a chain of activities, each also depending on the first one
+		Projects p = new Projects("Chain", new ArrayList<Users>(), "07-22-2016", 700, 1, "Chained", 10.0);
+		Activities first = null, previous = null;
+		for (int i = 0; i < 300; i++) {
+			Activities a = new Activities("Link", new Date(0), new Date(86400000L), "L" + i, 1000 + i, TaskProgress.pending, 0, 1, 1, 1, 0);
+			p.addActivity(a);
+			if (previous != null)
+				p.addArrow(previous, a);
+			if (first != null && previous != first)
+				p.addArrow(first, a);
+			if (first == null)
+				first = a;
+			previous = a;
+		}
+		DataResource.projectList.add(p);
+		DataResource.saveToDB();
+		assertTrue("should save every edge", count("SELECT count(*) FROM activity_edge_relationship WHERE to_activity_id >= 1000") == 299 + 298);
+		assertTrue("should save the edges of the first activity",
+				count("SELECT count(*) FROM activity_edge_relationship WHERE from_activity_id = 1000") == 299);
+
+		//saving one activity writes its incoming edges
+		Connection connection = ConnectionManager.getConnection(testDB);
+		connection.createStatement().executeUpdate("DELETE FROM activity_edge_relationship WHERE to_activity_id = 1150");
+		ConnectionManager.release(connection);
+		DataResource.selectedProject = p;
+		DataResource.saveActivity(p.getActivityById(1150));
+		assertTrue("should save the incoming edges", count("SELECT count(*) FROM activity_edge_relationship WHERE to_activity_id = 1150 "
+				+ "AND from_activity_id IN (1000, 1149)") == 2);
+		System.out.println("tested saving edges from adjacency");
+	}
+
+	@Test
+	public void testCsvImportMemory() throws Exception {
+		//the resident size of a process is only known on Linux
+		org.junit.Assume.assumeTrue(new java.io.File("/proc/self/status").exists());
+
+		//a project whose manager is unknown is rejected, after all its activities are staged
+		java.io.File projects = csv("key,name,date,description,budget,manager", "P1,Large,22-07-2016,Big,100,nobody");
+		java.io.File small = activities(1);
+		//about 60 MB of activities
+		java.io.File large = activities(60000);
+		try {
+			long baseline = peakImportMemory(projects, small);
+			long peak = peakImportMemory(projects, large);
+			assertTrue("should not hold the staged rows in memory: " + (peak - baseline) / 1024 + " KiB more",
+					peak - baseline < 30L * 1024 * 1024);
+		} finally {
+			projects.delete();
+			small.delete();
+			large.delete();
+		}
+		System.out.println("tested csv import memory");
+	}
+
+	private java.io.File activities(int count) throws Exception {
+		java.io.File file = java.io.File.createTempFile("import", ".csv");
+		java.io.Writer writer = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
+				new java.io.FileOutputStream(file), "UTF-8"));
+		char[] padding = new char[1000];
+		java.util.Arrays.fill(padding, 'x');
+		writer.write("key,project,label,description,start,end\r\n");
+		for (int i = 0; i < count; i++)
+			writer.write("a" + i + ",P1,A" + i + "," + new String(padding) + ",01-08-2016,02-08-2016\r\n");
+		writer.close();
+		return file;
+	}
+
+	// peak anonymous resident memory of the command line importer run in its own JVM, whose fixed heap is
+	// touched up front so that only the memory allocated outside of it can grow
+	private long peakImportMemory(java.io.File projects, java.io.File activities) throws Exception {
+		String executable = System.getProperty("java.home") + java.io.File.separator + "bin" + java.io.File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder("sh", "-c", "echo $$; exec \"$0\" \"$@\"", executable, "-Xms64m", "-Xmx64m",
+				"-XX:+AlwaysPreTouch", "-cp", System.getProperty("java.class.path"), "saver_loader.CsvImporter", "-db", testDB,
+				projects.getPath(), activities.getPath());
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		java.io.BufferedReader output = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()));
+		java.io.File status = new java.io.File("/proc/" + output.readLine().trim() + "/status");
+
+		long peak = 0;
+		while (true) {
+			try {
+				process.exitValue();
+				break;
+			} catch (IllegalThreadStateException running) {
+			}
+			try {
+				java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(status));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("RssAnon:"))
+						peak = Math.max(peak, Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024);
+				}
+				reader.close();
+			} catch (java.io.IOException exited) {
+			}
+			Thread.sleep(5);
+		}
+		String line;
+		while ((line = output.readLine()) != null)
+			System.out.println(line);
+		assertTrue("should import without failing", process.waitFor() == 0);
+		return peak;
+	}
+
+	private java.io.File csv(String... lines) throws Exception {
+		java.io.File file = java.io.File.createTempFile("import", ".csv");
+		java.io.Writer writer = new java.io.OutputStreamWriter(new java.io.FileOutputStream(file), "UTF-8");
+		for (String line : lines)
+			writer.write(line + "\r\n");
+		writer.close();
+		return file;
+	}
+
+	@Test
+	public void testBackgroundRefresh() throws Exception {
+		// set current user
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+
+		//another client adds project 2 and saves activity 2
+		Connection other = java.sql.DriverManager.getConnection(testDB);
+		Statement stmt = other.createStatement();
+		stmt.executeUpdate("INSERT INTO projects(id, name, date, description, budget, manager_id, revision) "
+				+ "VALUES (2, 'Remote', '07-22-2016', 'Added', 10, 1, (SELECT value FROM change_counter WHERE id = 0) + 1)");
+		stmt.executeUpdate("UPDATE activities SET label = 'Remote', version = version + 1 WHERE id = 2");
+
+		//the refresh is read on another thread
+		final ProjectRefresh refresh = DataResource.startRefresh();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				refresh.read();
+			}
+		});
+		reader.start();
+		reader.join();
+		assertTrue("should not touch the projectList while reading", DataResource.projectList.size() == 1);
+
+		//a project edited here while the refresh was read is not replaced
+		p.setVersion(5);
+		assertTrue("should add project 2 only", DataResource.finishRefresh(refresh) == 1);
+		assertTrue("should have added project 2", DataResource.getProjectbyProjectId(2) != null);
+		assertTrue("should keep the edited project", DataResource.getProjectbyProjectId(1) == p);
+
+		//it is looked at again by the next refresh
+		p.setVersion(0);
+		assertTrue("should reload project 1", DataResource.refreshChangedProjects() == 1);
+		assertTrue("should have the remote label", DataResource.getProjectbyProjectId(1).getActivityById(2).getLabel().equals("Remote"));
+		p = DataResource.getProjectbyProjectId(1);
+
+		//versions that move by the same total are still told apart
+		stmt.executeUpdate("UPDATE activities SET version = version + 1 WHERE id = 2");
+		stmt.executeUpdate("UPDATE activities SET version = version - 1 WHERE id = 3");
+		assertTrue("should reload project 1 again", DataResource.refreshChangedProjects() == 1);
+		assertTrue("should have the new versions", DataResource.getProjectbyProjectId(1).getActivityById(2).getVersion() == 2
+				&& DataResource.getProjectbyProjectId(1).getActivityById(3).getVersion() == -1);
+
+		//an activity with unsaved changes is not replaced, nor is anything while writes are waiting
+		p = DataResource.getProjectbyProjectId(1);
+		p.getActivityById(1).setDescription("Unsaved");
+		stmt.executeUpdate("UPDATE activities SET version = version + 1 WHERE id = 3");
+		assertTrue("should keep the unsaved activity", DataResource.refreshChangedProjects() == 0);
+		p.getActivityById(1).markClean();
+		ProjectRefresh waiting = DataResource.startRefresh();
+		waiting.read();
+		PersistenceQueue.start();
+		try {
+			//the other client holds the write lock, so the save waits
+			stmt.execute("BEGIN EXCLUSIVE");
+			PersistenceQueue.saveActivity(p, p.getActivityById(1));
+			assertTrue("should not apply the refresh while writes wait", DataResource.finishRefresh(waiting) == 0);
+			assertTrue("should keep the project", DataResource.getProjectbyProjectId(1) == p);
+		} finally {
+			stmt.execute("COMMIT");
+			PersistenceQueue.shutdown();
+		}
+		assertTrue("should reload project 1 once the writes are done", DataResource.refreshChangedProjects() == 1);
+
+		//a deleted project leaves no changed row, but is counted out
+		stmt.executeUpdate("DELETE FROM projects WHERE id = 2");
+		stmt.close();
+		other.close();
+		assertTrue("should remove project 2", DataResource.refreshChangedProjects() == 1);
+		assertTrue("should have removed project 2", DataResource.getProjectbyProjectId(2) == null);
+		assertTrue("nothing should have changed", DataResource.refreshChangedProjects() == 0);
+		System.out.println("tested background refresh");
+	}
+
+	@Test
+	public void testStaleQueuedSaves() throws Exception {
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+		Activities a = p.getActivityById(2);
+
+		//another client saves project 1 and activity 2 on its own connection
+		Connection other = java.sql.DriverManager.getConnection(testDB);
+		Statement stmt = other.createStatement();
+		stmt.executeUpdate("UPDATE projects SET description = 'REMOTE', version = version + 1 WHERE id = 1");
+		stmt.executeUpdate("UPDATE activities SET description = 'REMOTE', version = version + 1 WHERE id = 2");
+		stmt.close();
+		other.close();
+
+		//every save of the stale objects is rejected, not only the first
+		int failures = PersistenceQueue.getFailureCount();
+		for (int i = 1; i <= 2; i++) {
+			p.setDescription("LOCAL" + i);
+			a.setDescription("LOCAL" + i);
+			PersistenceQueue.saveProject(p);
+			PersistenceQueue.saveActivity(p, a);
+			assertTrue("should reject the stale saves", PersistenceQueue.getFailureCount() == failures + 2 * i);
+			assertTrue("should keep the loaded versions", p.getVersion() == 0 && a.getVersion() == 0);
+		}
+		assertTrue("should keep the remote project", count("SELECT count(*) FROM projects WHERE id = 1 AND description = 'REMOTE' AND version = 1") == 1);
+		assertTrue("should keep the remote activity", count("SELECT count(*) FROM activities WHERE id = 2 AND description = 'REMOTE' AND version = 1") == 1);
+
+		//a save that is committed moves to the next version
+		a = p.getActivityById(3);
+		PersistenceQueue.saveActivity(p, a);
+		assertTrue("should take the saved version", a.getVersion() == 1 && count("SELECT version FROM activities WHERE id = 3") == 1);
+		System.out.println("tested stale queued saves");
+	}
+
+	@Test
+	public void testJournalVersions() throws Exception {
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		DataResource.loadManagerDataFromDB();
+		Projects p = DataResource.getProjectbyProjectId(1);
+		final List<String> reported = new ArrayList<String>();
+		PersistenceQueue.setListener(new PersistenceListener() {
+			@Override
+			public void persistenceFailed(String description, Exception exception) {
+				synchronized (reported) {
+					reported.add(description);
+				}
+			}
+		});
+		ChangeJournal journal = ChangeJournal.open(testDB, Long.MAX_VALUE);
+		try {
+			//another client saves activity 2 on its own connection
+			Connection other = java.sql.DriverManager.getConnection(testDB);
+			Statement stmt = other.createStatement();
+			stmt.executeUpdate("UPDATE activities SET description = 'REMOTE', version = version + 1 WHERE id = 2");
+			stmt.close();
+			other.close();
+
+			//the stale saves are reported and keep the loaded version, the others are chained
+			Activities stale = p.getActivityById(2);
+			Activities fresh = p.getActivityById(3);
+			journal.saveActivity(p, stale);
+			journal.saveActivity(p, fresh);
+			journal.saveActivity(p, stale);
+			journal.sync(journal.saveActivity(p, fresh));
+			assertTrue("should not take versions before compacting", fresh.getVersion() == 0);
+			journal.compact();
+			assertTrue("should report the stale saves", reported.size() == 2 && journal.getFailureCount() == 2);
+			assertTrue("should keep the loaded version", stale.getVersion() == 0);
+			assertTrue("should keep the remote activity", count("SELECT count(*) FROM activities WHERE id = 2 AND description = 'REMOTE' AND version = 1") == 1);
+			assertTrue("should take the committed version", fresh.getVersion() == 2 && count("SELECT version FROM activities WHERE id = 3") == 2);
+		} finally {
+			journal.close();
+			PersistenceQueue.setListener(null);
+			ChangeJournal.getFile(testDB).delete();
+		}
+		System.out.println("tested journal versions");
+	}
+
+	@Test
+	public void testJournalWriteFailure() throws Exception {
+		java.io.File file = ChangeJournal.getFile(testDB);
+		FailingChannel channel = new FailingChannel(new java.io.RandomAccessFile(file, "rw").getChannel());
+		ChangeJournal journal = ChangeJournal.open(testDB, Long.MAX_VALUE, channel);
+		try {
+			assertTrue("should write the first record", journal.sync(journal.deleteEdge(1, 2)));
+
+			//a group torn by a failed write is cut from the file and not applied
+			channel.failing = true;
+			assertTrue("should fail the second record", !journal.sync(journal.deleteEdge(1, 3)));
+			assertTrue("should count the failed record", journal.getFailureCount() == 1 && journal.getPendingCount() == 1);
+			channel.failing = false;
+			assertTrue("should write the third record", journal.sync(journal.resetActivityMembers(1)));
+
+			//the records after the failed write are still recovered
+			ChangeJournal reopened = ChangeJournal.open(testDB);
+			assertTrue("should replay 2 records", reopened.getReplayedCount() == 2);
+			reopened.close();
+			assertTrue("should have applied the first record",
+					count("SELECT count(*) FROM activity_edge_relationship WHERE from_activity_id = 1 AND to_activity_id = 2") == 0);
+			assertTrue("should not have applied the failed record",
+					count("SELECT count(*) FROM activity_edge_relationship WHERE from_activity_id = 1 AND to_activity_id = 3") == 1);
+			assertTrue("should have applied the third record",
+					count("SELECT count(*) FROM activity_user_project_relationships WHERE activity_id = 1") == 0);
+		} finally {
+			journal.close();
+			file.delete();
+		}
+		System.out.println("tested journal write failure");
+	}
+
+	@Test
+	public void testFailedMigrationIsRetried() throws Exception {
+		//copy the test database and take it back before the last migration
+		ConnectionManager.closeAll();
+		java.io.File file = java.io.File.createTempFile("unmigrated", ".db");
+		java.nio.file.Files.copy(new java.io.File("ultimate_sandwich_test.db").toPath(), file.toPath(),
+				java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		String database = "jdbc:sqlite:" + file.getPath();
+		int latest = SchemaMigrator.MIGRATIONS[SchemaMigrator.MIGRATIONS.length - 1].version;
+		Connection other = java.sql.DriverManager.getConnection(database);
+		try {
+			Statement stmt = other.createStatement();
+			stmt.executeUpdate("DELETE FROM schema_version WHERE version = " + latest);
+			stmt.executeUpdate("DROP INDEX idx_users_revision");
+			//without its table the last migration fails
+			stmt.executeUpdate("ALTER TABLE users RENAME TO users_away");
+			stmt.close();
+
+			try {
+				ConnectionManager.getConnection(database);
+				fail("should not hand out a connection to a partly migrated database");
+			} catch (java.sql.SQLException expected) {
+			}
+
+			//once the table is back, the next connection retries the migration
+			stmt = other.createStatement();
+			stmt.executeUpdate("ALTER TABLE users_away RENAME TO users");
+			stmt.close();
+			Connection connection = ConnectionManager.getConnection(database);
+			assertTrue("should be at the latest version", SchemaMigrator.getVersion(connection) == latest);
+			ResultSet result = connection.createStatement()
+					.executeQuery("SELECT count(*) FROM sqlite_master WHERE name = 'idx_users_revision'");
+			assertTrue("should have applied the last migration", result.next() && result.getInt(1) == 1);
+			DataResource.closeConnection(connection);
+		} finally {
+			other.close();
+			ConnectionManager.closeAll();
+			file.delete();
+		}
+
+		System.out.println("tested failed migration");
+	}
+
+	@Test
+	public void testStorageProfiles() throws Exception {
+		ConnectionManager.closeAll();
+		java.io.File file = java.io.File.createTempFile("profile", ".db");
+		java.nio.file.Files.copy(new java.io.File("ultimate_sandwich_test.db").toPath(), file.toPath(),
+				java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		String database = "jdbc:sqlite:" + file.getPath();
+		String[] synchronous = { "OFF", "NORMAL", "FULL" };
+		String[] tempStore = { "DEFAULT", "FILE", "MEMORY" };
+		try {
+			for (StorageProfile profile : StorageProfile.values()) {
+				//start from a rollback journal, so the profile has to switch the file to write-ahead logging
+				Connection plain = java.sql.DriverManager.getConnection(database);
+				assertEquals("should leave write-ahead logging", "delete", pragma(plain, "journal_mode = DELETE"));
+				plain.close();
+
+				ConnectionManager.setStorageProfile(profile);
+				Connection connection = ConnectionManager.getConnection(database);
+				assertEquals(profile + " should use write-ahead logging", "wal", pragma(connection, "journal_mode"));
+				assertEquals(profile + " should set synchronous", profile.getSynchronous(),
+						synchronous[Integer.parseInt(pragma(connection, "synchronous"))]);
+				assertEquals(profile + " should set the cache size", -profile.getCacheSizeKiB(),
+						Integer.parseInt(pragma(connection, "cache_size")));
+				assertEquals(profile + " should set the memory map", profile.getMmapSize(),
+						Long.parseLong(pragma(connection, "mmap_size")));
+				assertEquals(profile + " should set the busy timeout", profile.getBusyTimeout(),
+						Integer.parseInt(pragma(connection, "busy_timeout")));
+				assertEquals(profile + " should set temporary storage", profile.getTempStore(),
+						tempStore[Integer.parseInt(pragma(connection, "temp_store"))]);
+				DataResource.closeConnection(connection);
+				ConnectionManager.closeAll();
+
+				//the journal mode is kept in the file for connections the manager did not configure
+				plain = java.sql.DriverManager.getConnection(database);
+				assertEquals(profile + " should persist write-ahead logging", "wal", pragma(plain, "journal_mode"));
+				plain.close();
+			}
+		} finally {
+			ConnectionManager.setStorageProfile(StorageProfile.BALANCED);
+			ConnectionManager.closeAll();
+			file.delete();
+		}
+		System.out.println("tested storage profiles");
+	}
+
+	private String pragma(Connection connection, String pragma) throws java.sql.SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet result = stmt.executeQuery("PRAGMA " + pragma);
+			assertTrue("should return " + pragma, result.next());
+			return result.getString(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	@Test
+	public void testFlushChangesInSmallBatches(){
+		DataResource.currentUser = new Users( "tsand", "Turkey", "Sandwhich", "123", 1, "MANAGER");
+		DataResource.loadManagerDataFromDB();
+
+		Projects p = DataResource.getProjectbyProjectId(1);
+		Activities a1 = p.getActivityList().get(0);
+		Activities a2 = p.getActivityList().get(1);
+		Activities a3 = p.getActivityList().get(2);
+
+		//more member rows and dependencies than fit in a batch
+		int previous = DataResource.batchSize;
+		DataResource.batchSize = 2;
+		try {
+			for (Activities a : p.getActivityList()) {
+				ArrayList<Users> members = new ArrayList<Users>();
+				members.add(DataResource.projectMembers.get(0));
+				members.add(DataResource.projectMembers.get(1));
+				a.setMemberList(members);
+			}
+			p.removeArrow(a1, a2);
+			p.removeArrow(a1, a3);
+			p.addArrow(a2, a3);
+			DataResource.flushChanges();
+		} finally {
+			DataResource.batchSize = previous;
+		}
+		assertFalse("the project should be saved", p.hasChanges());
+
+		DataResource.projectList.clear();
+		DataResource.loadManagerDataFromDB();
+		p = DataResource.getProjectbyProjectId(1);
+		for (Activities a : p.getActivityList())
+			assertTrue("every activity should keep its new members", a.getMemberList().size() == 2);
+		assertTrue("should only have the added dependency", p.getArrowSet().size() == 1
+				&& p.getSetofDependencyActivities(p.getActivityList().get(2)).get(0).getId() == 2);
+		System.out.println("tested flush changes in small batches");
+	}
+
+	@Test
+	public void testConnectionManager() throws Exception {
+		//statements are prepared once per connection and handed out with their parameters cleared
+		Connection connection = ConnectionManager.getConnection(testDB);
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, "SELECT ?");
+		ps.setInt(1, 7);
+		ps.executeQuery().close();
+		assertTrue("should reuse the statement", ConnectionManager.prepareStatement(connection, "SELECT ?") == ps);
+		try {
+			ps.executeQuery();
+			fail("should clear the parameters");
+		} catch (java.sql.SQLException expected) {
+		}
+
+		//a nested release leaves the outer borrower's transaction and statements alone
+		DataResource.beginTransaction(connection);
+		connection.createStatement().executeUpdate("DELETE FROM activity_edge_relationship");
+		ResultSet result = connection.createStatement().executeQuery("SELECT id FROM activities");
+		Connection nested = ConnectionManager.getConnection(testDB);
+		assertTrue("should lend the same connection", nested == connection);
+		ConnectionManager.release(nested);
+		assertTrue("should still be in the transaction", !connection.getAutoCommit() && !result.isClosed());
+
+		//the last release rolls the transaction back and closes the borrowed statements
+		ConnectionManager.release(connection);
+		assertTrue("should be back in autocommit", connection.getAutoCommit());
+		assertTrue("should close the borrowed statement", result.isClosed());
+		assertTrue("should roll back the delete", count("SELECT count(*) FROM activity_edge_relationship") == 2);
+
+		//closeAll leaves a connection another thread is using open
+		final Connection[] used = new Connection[1];
+		final java.util.concurrent.CountDownLatch borrowed = new java.util.concurrent.CountDownLatch(1);
+		final java.util.concurrent.CountDownLatch closed = new java.util.concurrent.CountDownLatch(1);
+		Thread user = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					used[0] = ConnectionManager.getConnection(testDB);
+					borrowed.countDown();
+					closed.await();
+					ConnectionManager.release(used[0]);
+				} catch (Exception exception) {
+					borrowed.countDown();
+				}
+			}
+		});
+		user.start();
+		borrowed.await();
+		ConnectionManager.closeAll();
+		assertTrue("should keep the busy connection open", used[0] != null && !used[0].isClosed());
+		assertTrue("should close the thread's own connection", connection.isClosed());
+		closed.countDown();
+		user.join();
+
+		//once released, it is closed with the others
+		ConnectionManager.closeAll();
+		assertTrue("should close the idle connection", used[0].isClosed());
+		System.out.println("tested connection manager");
+	}
+
 	@Test
 	public void testLoadFromDBMember() {		
 		// set current user
@@ -592,6 +1869,113 @@ public class DataResourceTest {
 		
 	}
 	
+	/**
+	 * A journal file that, while failing is set, writes half of what it is
+	 * given and then fails, like a disk running out of space.
+	 */
+	private static class FailingChannel extends java.nio.channels.FileChannel {
+		final java.nio.channels.FileChannel file;
+		volatile boolean failing;
+
+		FailingChannel(java.nio.channels.FileChannel file) {
+			this.file = file;
+		}
+
+		@Override
+		public int write(java.nio.ByteBuffer src) throws java.io.IOException {
+			if (!failing)
+				return file.write(src);
+			java.nio.ByteBuffer half = src.duplicate();
+			half.limit(src.position() + src.remaining() / 2);
+			file.write(half);
+			throw new java.io.IOException("No space left on device");
+		}
+
+		@Override
+		public int read(java.nio.ByteBuffer dst) throws java.io.IOException {
+			return file.read(dst);
+		}
+
+		@Override
+		public long read(java.nio.ByteBuffer[] dsts, int offset, int length) throws java.io.IOException {
+			return file.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(java.nio.ByteBuffer[] srcs, int offset, int length) throws java.io.IOException {
+			return file.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws java.io.IOException {
+			return file.position();
+		}
+
+		@Override
+		public java.nio.channels.FileChannel position(long newPosition) throws java.io.IOException {
+			file.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws java.io.IOException {
+			return file.size();
+		}
+
+		@Override
+		public java.nio.channels.FileChannel truncate(long size) throws java.io.IOException {
+			file.truncate(size);
+			return this;
+		}
+
+		@Override
+		public void force(boolean metaData) throws java.io.IOException {
+			file.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, java.nio.channels.WritableByteChannel target)
+				throws java.io.IOException {
+			return file.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(java.nio.channels.ReadableByteChannel src, long position, long count)
+				throws java.io.IOException {
+			return file.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(java.nio.ByteBuffer dst, long position) throws java.io.IOException {
+			return file.read(dst, position);
+		}
+
+		@Override
+		public int write(java.nio.ByteBuffer src, long position) throws java.io.IOException {
+			return file.write(src, position);
+		}
+
+		@Override
+		public java.nio.MappedByteBuffer map(MapMode mode, long position, long size) throws java.io.IOException {
+			return file.map(mode, position, size);
+		}
+
+		@Override
+		public java.nio.channels.FileLock lock(long position, long size, boolean shared) throws java.io.IOException {
+			return file.lock(position, size, shared);
+		}
+
+		@Override
+		public java.nio.channels.FileLock tryLock(long position, long size, boolean shared) throws java.io.IOException {
+			return file.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws java.io.IOException {
+			file.close();
+		}
+	}
+
 	private void setUpTestDatabase() {
 		// set up the database with test data
 		Connection connection = DataResource.createConnectionToDB(testDB);
@@ -0,0 +1,167 @@
+package saver_loader;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import resources.IdSource;
+
+/**
+ * The IdAllocator class hands out the ids of new Projects and Activities
+ * stored in the database. It is the IdSource of the SqliteRepository.
+ *
+ * Ids are reserved from the id_sequences table of the database in blocks.
+ * Reserving a block is a single transaction that moves the sequence forward
+ * by the size of the block, so two clients of the same database, or two
+ * threads of the same client, never receive the same id. The ids of the
+ * current block are then handed out locally from an AtomicLong, without
+ * touching the database.
+ *
+ * A reservation also moves the sequence past the highest id already in the
+ * table, so rows inserted with explicit ids are never reused.
+ *
+ * Every reservation is committed in a transaction of its own, so ids already
+ * handed out are never given again when a caller's transaction is rolled
+ * back. Blocks are reserved on the calling thread's connection, or on a
+ * connection opened for the reservation when that one is inside a
+ * transaction. SQLite lets one connection write at a time, so bulk writers
+ * should still reserve their ids up front with reserve, before their
+ * transaction writes.
+ *
+ * Ids that were reserved but not used are skipped, so ids are unique but not
+ * consecutive.
+ */
+public class IdAllocator implements IdSource {
+
+	public static final IdAllocator PROJECTS = new IdAllocator("projects", "projects");
+	public static final IdAllocator ACTIVITIES = new IdAllocator("activities", "activities");
+
+	private static int blockSize = 50;
+
+	private final String sequence;
+	private final String table;
+
+	// current block of ids, replaced when it runs out or the database changes
+	private volatile Block block;
+
+	/**
+	 * A range of reserved ids, [next, end), from one database.
+	 */
+	private static class Block {
+		final String database;
+		final AtomicLong next;
+		final long end;
+
+		Block(String database, long start, long end) {
+			this.database = database;
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+
+	private IdAllocator(String sequence, String table) {
+		this.sequence = sequence;
+		this.table = table;
+	}
+
+	/**
+	 * Setter for blockSize
+	 *
+	 * @param size
+	 *            number of ids reserved from the database at once, at least 1
+	 */
+	public static void setBlockSize(int size) {
+		blockSize = Math.max(1, size);
+	}
+
+	/**
+	 * Returns a new id, reserving a block from the current database when the
+	 * current block runs out.
+	 *
+	 * @return an id no other entity of the table has or will get
+	 * @throws IllegalStateException
+	 *             if a block cannot be reserved
+	 */
+	@Override
+	public int nextId() {
+		while (true) {
+			Block current = block;
+			if (current != null && current.database.equals(DataResource.dataBase)) {
+				long id = current.next.getAndIncrement();
+				if (id < current.end)
+					return (int) id;
+			}
+
+			synchronized (this) {
+				if (block == current) {
+					String database = DataResource.dataBase;
+					int start = reserve(database, blockSize);
+					block = new Block(database, start, (long) start + blockSize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reserves a range of consecutive ids straight from the current database,
+	 * for bulk creation.
+	 *
+	 * @param count
+	 *            number of ids to reserve
+	 * @return the first id of the range; the range is [first, first + count)
+	 * @throws IllegalStateException
+	 *             if the range cannot be reserved
+	 */
+	public int reserve(int count) {
+		return reserve(DataResource.dataBase, count);
+	}
+
+	private int reserve(String database, int count) {
+		Connection borrowed = null;
+		Connection connection = null;
+		try {
+			borrowed = ConnectionManager.getConnection(database);
+			connection = borrowed;
+			// joining the caller's transaction would undo the reservation on rollback, not the ids handed out
+			if (!borrowed.getAutoCommit())
+				connection = ConnectionManager.openConnection(database);
+			DataResource.beginTransaction(connection);
+
+			// move the sequence past the ids already used, then past the reserved range
+			PreparedStatement ps = ConnectionManager.prepareStatement(connection, "UPDATE id_sequences SET next_id = "
+					+ "max(next_id, (SELECT coalesce(max(id), 0) + 1 FROM " + table + ")) + ? WHERE name = ?");
+			ps.setInt(1, count);
+			ps.setString(2, sequence);
+			if (ps.executeUpdate() == 0) {
+				ps = ConnectionManager.prepareStatement(connection, "INSERT INTO id_sequences(name, next_id) "
+						+ "SELECT ?, coalesce(max(id), 0) + 1 + ? FROM " + table);
+				ps.setString(1, sequence);
+				ps.setInt(2, count);
+				ps.executeUpdate();
+			}
+
+			ps = ConnectionManager.prepareStatement(connection, "SELECT next_id FROM id_sequences WHERE name = ?");
+			ps.setString(1, sequence);
+			ResultSet result = ps.executeQuery();
+			result.next();
+			long end = result.getLong(1);
+			result.close();
+
+			DataResource.commitTransaction(connection);
+			return (int) (end - count);
+
+		} catch (SQLException exception) {
+			if (connection != null)
+				DataResource.rollbackTransaction(connection);
+			throw new IllegalStateException("Could not reserve " + sequence + " ids: " + exception.getMessage(),
+					exception);
+		} finally {
+			if (connection != null && connection != borrowed)
+				DataResource.closeConnection(connection);
+			if (borrowed != null)
+				DataResource.closeConnection(borrowed);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package saver_loader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jgraph.graph.DefaultEdge;
+
+import resources.Activities;
+import resources.IdCounter;
+import resources.IdSource;
+import resources.Projects;
+import resources.UserType;
+import resources.Users;
+
+/**
+ * The InMemoryRepository class stores projects and activities in memory, with
+ * the same rows and associations as the tables of the database. It is used in
+ * tests and benchmarks, so the scheduling and interface code can be measured
+ * without disk access, and can back a server holding its data in memory.
+ *
+ * Saved projects and activities are copied, and every load returns new
+ * objects, so changes made in the application are only seen by the
+ * repository once they are saved, as with the database. Writes are applied
+ * immediately, under a write lock, while any number of threads can load at
+ * the same time.
+ *
+ * Users are not saved through the repository interfaces; the users that can
+ * log in or be assigned to activities are added with addUser.
+ *
+ * New Projects and Activities get their ids from counters of the repository,
+ * which move past the ids of the saved ones, so the database is never used.
+ */
+public class InMemoryRepository implements ProjectRepository, ActivityRepository {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final HashMap<Integer, Users> users = new HashMap<Integer, Users>();
+	// projects in the order they were created, as the database's rowid order
+	private final LinkedHashMap<Integer, Projects> projects = new LinkedHashMap<Integer, Projects>();
+	private final HashMap<Integer, LinkedHashSet<Integer>> projectUsers = new HashMap<Integer, LinkedHashSet<Integer>>();
+	private final HashMap<Integer, LinkedHashSet<Integer>> projectActivities = new HashMap<Integer, LinkedHashSet<Integer>>();
+	// activities without their members, which are kept by id in activityMembers
+	private final HashMap<Integer, Activities> activities = new HashMap<Integer, Activities>();
+	private final HashMap<Integer, Integer> activityProject = new HashMap<Integer, Integer>();
+	private final HashMap<Integer, LinkedHashSet<Integer>> activityMembers = new HashMap<Integer, LinkedHashSet<Integer>>();
+	// dependencies by dependent activity, and by origin activity
+	private final HashMap<Integer, LinkedHashSet<Integer>> predecessors = new HashMap<Integer, LinkedHashSet<Integer>>();
+	private final HashMap<Integer, LinkedHashSet<Integer>> successors = new HashMap<Integer, LinkedHashSet<Integer>>();
+	private final IdCounter projectIds = new IdCounter();
+	private final IdCounter activityIds = new IdCounter();
+
+	/**
+	 * Adds a user to the repository, or replaces the user with the same id.
+	 *
+	 * @param user
+	 *            the user to add
+	 */
+	public void addUser(Users user) {
+		lock.writeLock().lock();
+		try {
+			users.put(user.getID(), user);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Users> loadMembers() {
+		lock.readLock().lock();
+		try {
+			List<Users> members = new ArrayList<Users>();
+			for (Users user : users.values()) {
+				if (user.getType() == UserType.MEMBER)
+					members.add(user);
+			}
+			return members;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Projects> loadProjectHeaders(Users user) {
+		lock.readLock().lock();
+		try {
+			List<Projects> headers = new ArrayList<Projects>();
+			for (Projects project : projects.values()) {
+				if (isVisible(project, user)) {
+					Projects header = DataResource.copyProject(project);
+					header.getUserList().clear();
+					header.setLoaded(false);
+					headers.add(header);
+				}
+			}
+			return headers;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void loadProjectDetails(Projects project, Users user) {
+		lock.readLock().lock();
+		try {
+			for (int userID : get(projectUsers, project.getId())) {
+				if (users.containsKey(userID))
+					project.getUserList().add(users.get(userID));
+			}
+
+			HashMap<Integer, Activities> loaded = new HashMap<Integer, Activities>();
+			for (int activityID : get(projectActivities, project.getId())) {
+				if (user.getType() != UserType.MANAGER && !get(activityMembers, activityID).contains(user.getID()))
+					continue;
+
+				Activities activity = DataResource.copyActivity(activities.get(activityID));
+				for (int memberID : get(activityMembers, activityID)) {
+					if (users.containsKey(memberID))
+						activity.getMemberList().add(users.get(memberID));
+				}
+				project.addActivity(activity);
+				loaded.put(activityID, activity);
+			}
+
+			for (Activities activity : loaded.values()) {
+				for (int predecessorID : get(predecessors, activity.getId())) {
+					if (loaded.containsKey(predecessorID))
+						project.addArrow(loaded.get(predecessorID), activity);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		project.markClean();
+		project.setLoaded(true);
+	}
+
+	@Override
+	public void saveProject(Projects project) {
+		Projects copy = DataResource.copyProject(project);
+		Users currentUser = DataResource.currentUser;
+
+		projectIds.skip(copy.getId());
+		lock.writeLock().lock();
+		try {
+			projects.put(copy.getId(), copy);
+			if (currentUser != null)
+				add(projectUsers, copy.getId(), currentUser.getID());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeProject(Projects project) {
+		lock.writeLock().lock();
+		try {
+			for (int activityID : new ArrayList<Integer>(get(projectActivities, project.getId())))
+				removeActivity(activityID);
+			projectActivities.remove(project.getId());
+			projectUsers.remove(project.getId());
+			projects.remove(project.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void saveActivity(Projects project, Activities activity) {
+		Activities copy = DataResource.copyActivity(activity);
+		List<Integer> predecessorIDs = new ArrayList<Integer>();
+		for (DefaultEdge e : project.getIncomingArrowsOfActivity(activity))
+			predecessorIDs.add(project.getActivityBefore(e).getId());
+
+		activityIds.skip(copy.getId());
+		lock.writeLock().lock();
+		try {
+			// members are added to the ones already assigned, as with the database
+			for (Users member : copy.getMemberList())
+				add(activityMembers, copy.getId(), member.getID());
+			copy.getMemberList().clear();
+
+			activities.put(copy.getId(), copy);
+			activityProject.put(copy.getId(), project.getId());
+			add(projectActivities, project.getId(), copy.getId());
+
+			for (int predecessorID : predecessorIDs) {
+				add(predecessors, copy.getId(), predecessorID);
+				add(successors, predecessorID, copy.getId());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void deleteActivity(Activities activity) {
+		lock.writeLock().lock();
+		try {
+			removeActivity(activity.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void deleteEdge(int activityBefore, int activityAfter) {
+		lock.writeLock().lock();
+		try {
+			get(predecessors, activityAfter).remove(activityBefore);
+			get(successors, activityBefore).remove(activityAfter);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void resetActivityMembers(int activityId) {
+		lock.writeLock().lock();
+		try {
+			activityMembers.remove(activityId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public IdSource getProjectIds() {
+		return projectIds;
+	}
+
+	@Override
+	public IdSource getActivityIds() {
+		return activityIds;
+	}
+
+	// checks whether a user manages the project or is assigned to one of its activities
+	private boolean isVisible(Projects project, Users user) {
+		if (user.getType() == UserType.MANAGER)
+			return project.getManagerID() == user.getID();
+
+		for (int activityID : get(projectActivities, project.getId())) {
+			if (get(activityMembers, activityID).contains(user.getID()))
+				return true;
+		}
+		return false;
+	}
+
+	// removes an activity with its dependencies and members, the write lock must be held
+	private void removeActivity(int activityID) {
+		for (int predecessorID : get(predecessors, activityID))
+			get(successors, predecessorID).remove(activityID);
+		for (int successorID : get(successors, activityID))
+			get(predecessors, successorID).remove(activityID);
+		predecessors.remove(activityID);
+		successors.remove(activityID);
+
+		Integer projectID = activityProject.remove(activityID);
+		if (projectID != null)
+			get(projectActivities, projectID).remove(activityID);
+		activityMembers.remove(activityID);
+		activities.remove(activityID);
+	}
+
+	private static LinkedHashSet<Integer> get(HashMap<Integer, LinkedHashSet<Integer>> map, int key) {
+		LinkedHashSet<Integer> values = map.get(key);
+		return values == null ? new LinkedHashSet<Integer>() : values;
+	}
+
+	private static void add(HashMap<Integer, LinkedHashSet<Integer>> map, int key, int value) {
+		LinkedHashSet<Integer> values = map.get(key);
+		if (values == null) {
+			values = new LinkedHashSet<Integer>();
+			map.put(key, values);
+		}
+		values.add(value);
+	}
+}
@@ -0,0 +1,350 @@
+package saver_loader;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The IndexedList class is an ArrayList that keeps hash indexes of its
+ * elements up to date. Subclasses define the indexes by implementing index,
+ * unindex and clearIndex, which are called every time an element is added to
+ * or removed from the list, so lookups by key never need to scan the list.
+ *
+ * Elements are kept in their list order, and when several elements share a
+ * key the first one in the list is the one indexed. The iterators and sub
+ * lists of an IndexedList change it through the same methods, and the bulk
+ * operations of ArrayList that rearrange the elements in place rebuild the
+ * indexes, so no change to the list bypasses them.
+ *
+ * @param <E>
+ *            type of the elements
+ */
+public abstract class IndexedList<E> extends ArrayList<E> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Adds the given element to the indexes.
+	 *
+	 * @param element
+	 *            element added to the list
+	 */
+	protected abstract void index(E element);
+
+	/**
+	 * Removes the given element from the indexes. The element is no longer in
+	 * the list when this method is called.
+	 *
+	 * @param element
+	 *            element removed from the list
+	 */
+	protected abstract void unindex(E element);
+
+	/**
+	 * Empties the indexes.
+	 */
+	protected abstract void clearIndex();
+
+	/**
+	 * Rebuilds the indexes from the elements of the list.
+	 */
+	protected void reindex() {
+		clearIndex();
+		for (E element : this)
+			index(element);
+	}
+
+	@Override
+	public boolean add(E element) {
+		super.add(element);
+		index(element);
+		return true;
+	}
+
+	@Override
+	public void add(int position, E element) {
+		super.add(position, element);
+		reindex();
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> elements) {
+		int size = size();
+		boolean changed = super.addAll(elements);
+		for (int i = size; i < size(); i++)
+			index(get(i));
+		return changed;
+	}
+
+	@Override
+	public boolean addAll(int position, Collection<? extends E> elements) {
+		boolean changed = super.addAll(position, elements);
+		reindex();
+		return changed;
+	}
+
+	@Override
+	public E set(int position, E element) {
+		E previous = super.set(position, element);
+		unindex(previous);
+		index(element);
+		return previous;
+	}
+
+	@Override
+	public E remove(int position) {
+		E removed = super.remove(position);
+		unindex(removed);
+		return removed;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object element) {
+		int position = indexOf(element);
+		if (position < 0)
+			return false;
+		super.remove(position);
+		unindex((E) element);
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> elements) {
+		boolean changed = super.removeAll(elements);
+		reindex();
+		return changed;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> elements) {
+		boolean changed = super.retainAll(elements);
+		reindex();
+		return changed;
+	}
+
+	@Override
+	protected void removeRange(int from, int to) {
+		super.removeRange(from, to);
+		reindex();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		clearIndex();
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super E> filter) {
+		boolean changed = super.removeIf(filter);
+		if (changed)
+			reindex();
+		return changed;
+	}
+
+	@Override
+	public void replaceAll(UnaryOperator<E> operator) {
+		super.replaceAll(operator);
+		reindex();
+	}
+
+	@Override
+	public void sort(Comparator<? super E> comparator) {
+		super.sort(comparator);
+		reindex();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return new IndexedIterator(0);
+	}
+
+	@Override
+	public ListIterator<E> listIterator() {
+		return new IndexedIterator(0);
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int position) {
+		if (position < 0 || position > size())
+			throw new IndexOutOfBoundsException("Index: " + position);
+		return new IndexedIterator(position);
+	}
+
+	@Override
+	public List<E> subList(int from, int to) {
+		if (from < 0 || to > size() || from > to)
+			throw new IndexOutOfBoundsException("From: " + from + ", to: " + to);
+		return new IndexedSubList(from, to);
+	}
+
+	/**
+	 * The IndexedIterator class iterates over the list and changes it with
+	 * the list's own add, set and remove methods.
+	 */
+	private class IndexedIterator implements ListIterator<E> {
+
+		private int cursor;
+		// position of the element last returned, -1 once it was removed or an element added
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		IndexedIterator(int cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size();
+		}
+
+		@Override
+		public E next() {
+			checkForComodification();
+			if (cursor >= size())
+				throw new NoSuchElementException();
+			last = cursor++;
+			return get(last);
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return cursor > 0;
+		}
+
+		@Override
+		public E previous() {
+			checkForComodification();
+			if (cursor <= 0)
+				throw new NoSuchElementException();
+			last = --cursor;
+			return get(last);
+		}
+
+		@Override
+		public int nextIndex() {
+			return cursor;
+		}
+
+		@Override
+		public int previousIndex() {
+			return cursor - 1;
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			checkForComodification();
+			IndexedList.this.remove(last);
+			cursor = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+		@Override
+		public void set(E element) {
+			if (last < 0)
+				throw new IllegalStateException();
+			checkForComodification();
+			IndexedList.this.set(last, element);
+			expectedModCount = modCount;
+		}
+
+		@Override
+		public void add(E element) {
+			checkForComodification();
+			IndexedList.this.add(cursor++, element);
+			last = -1;
+			expectedModCount = modCount;
+		}
+
+		private void checkForComodification() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * The IndexedSubList class is a view of a range of the list, changed
+	 * with the list's own add, set, remove and removeRange methods.
+	 */
+	private class IndexedSubList extends AbstractList<E> implements RandomAccess {
+
+		private final int offset;
+		private int size;
+		private int expectedModCount = IndexedList.this.modCount;
+
+		IndexedSubList(int from, int to) {
+			this.offset = from;
+			this.size = to - from;
+		}
+
+		@Override
+		public E get(int position) {
+			checkPosition(position, size - 1);
+			return IndexedList.this.get(offset + position);
+		}
+
+		@Override
+		public int size() {
+			checkForComodification();
+			return size;
+		}
+
+		@Override
+		public E set(int position, E element) {
+			checkPosition(position, size - 1);
+			return IndexedList.this.set(offset + position, element);
+		}
+
+		@Override
+		public void add(int position, E element) {
+			checkPosition(position, size);
+			IndexedList.this.add(offset + position, element);
+			changed(1);
+		}
+
+		@Override
+		public E remove(int position) {
+			checkPosition(position, size - 1);
+			E removed = IndexedList.this.remove(offset + position);
+			changed(-1);
+			return removed;
+		}
+
+		@Override
+		protected void removeRange(int from, int to) {
+			checkForComodification();
+			IndexedList.this.removeRange(offset + from, offset + to);
+			changed(from - to);
+		}
+
+		private void changed(int delta) {
+			size += delta;
+			expectedModCount = IndexedList.this.modCount;
+			modCount++;
+		}
+
+		private void checkPosition(int position, int highest) {
+			checkForComodification();
+			if (position < 0 || position > highest)
+				throw new IndexOutOfBoundsException("Index: " + position + ", size: " + size);
+		}
+
+		private void checkForComodification() {
+			if (IndexedList.this.modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+}
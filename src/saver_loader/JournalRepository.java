@@ -0,0 +1,98 @@
+package saver_loader;
+
+import java.util.List;
+
+import resources.Activities;
+import resources.Projects;
+import resources.Users;
+
+/**
+ * The JournalRepository class stores projects and activities in the SQLite
+ * database of a ChangeJournal, through the journal. Each write is appended to
+ * the journal and returns once it is on disk, or once its failure has been
+ * reported to the PersistenceListener, and is applied to the tables by the
+ * journal's compactor. Reads first apply the records still waiting, so
+ * they always see the writes made before them.
+ */
+public class JournalRepository extends SqliteRepository {
+
+	private final ChangeJournal journal;
+
+	/**
+	 * Creates a repository writing through the given journal. The journal must
+	 * belong to DataResource.dataBase, which the reads use.
+	 *
+	 * @param journal
+	 *            the open journal of the database
+	 */
+	public JournalRepository(ChangeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Getter for journal
+	 *
+	 * @return the journal the writes are appended to
+	 */
+	public ChangeJournal getJournal() {
+		return journal;
+	}
+
+	@Override
+	public List<Users> loadMembers() {
+		journal.compact();
+		return super.loadMembers();
+	}
+
+	@Override
+	public List<Projects> loadProjectHeaders(Users user) {
+		journal.compact();
+		return super.loadProjectHeaders(user);
+	}
+
+	@Override
+	public void loadProjectDetails(Projects project, Users user) {
+		journal.compact();
+		super.loadProjectDetails(project, user);
+	}
+
+	@Override
+	public void saveProject(Projects project) {
+		journal.sync(journal.saveProject(project));
+	}
+
+	@Override
+	public void removeProject(Projects project) {
+		journal.sync(journal.removeProject(project));
+	}
+
+	@Override
+	public void saveActivity(Projects project, Activities activity) {
+		journal.sync(journal.saveActivity(project, activity));
+	}
+
+	@Override
+	public void deleteActivity(Activities activity) {
+		journal.sync(journal.deleteActivity(activity));
+	}
+
+	@Override
+	public void deleteEdge(int activityBefore, int activityAfter) {
+		journal.sync(journal.deleteEdge(activityBefore, activityAfter));
+	}
+
+	@Override
+	public void resetActivityMembers(int activityId) {
+		journal.sync(journal.resetActivityMembers(activityId));
+	}
+
+	@Override
+	public boolean hasPendingWrites() {
+		return super.hasPendingWrites() || journal.getPendingCount() > 0;
+	}
+
+	@Override
+	public boolean hasUnsavedWrites() {
+		return super.hasUnsavedWrites() || journal.getPendingCount() > 0 || journal.getFailureCount() > 0;
+	}
+}
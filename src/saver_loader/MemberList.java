@@ -0,0 +1,57 @@
+package saver_loader;
+
+import java.util.HashMap;
+
+import resources.Users;
+
+/**
+ * The MemberList class is the list of users that can be assigned to
+ * activities, indexed by username so the members chosen in the activity forms
+ * are found without scanning the list.
+ */
+public class MemberList extends IndexedList<Users> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final HashMap<String, Users> byUsername = new HashMap<String, Users>();
+
+	/**
+	 * Method used to retrieve a member by username.
+	 *
+	 * @param username
+	 *            username of the member
+	 * @return the first member of the list with the given username, or null
+	 */
+	public Users getByUsername(String username) {
+		Users user = byUsername.get(username);
+		if (user != null && user.getName().equals(username))
+			return user;
+		return null;
+	}
+
+	@Override
+	protected void index(Users user) {
+		if (user.getName() != null && !byUsername.containsKey(user.getName()))
+			byUsername.put(user.getName(), user);
+	}
+
+	@Override
+	protected void unindex(Users user) {
+		String username = user.getName();
+		if (username == null || byUsername.get(username) != user)
+			return;
+
+		byUsername.remove(username);
+		for (Users listed : this) {
+			if (username.equals(listed.getName())) {
+				byUsername.put(username, listed);
+				break;
+			}
+		}
+	}
+
+	@Override
+	protected void clearIndex() {
+		byUsername.clear();
+	}
+}
@@ -0,0 +1,22 @@
+package saver_loader;
+
+/**
+ * The PersistenceListener interface is implemented by the classes that want
+ * to be told when a write queued on the PersistenceQueue, or a record of a
+ * ChangeJournal, could not be saved to the database.
+ */
+public interface PersistenceListener {
+
+	/**
+	 * Called when a queued write or a journal record failed and was rolled
+	 * back. The call is made on the writer thread or on the journal's
+	 * threads, implementations that update Swing components must
+	 * hand the work over to the event dispatch thread.
+	 *
+	 * @param description
+	 *            what was being saved, e.g. "save activity A"
+	 * @param exception
+	 *            the cause of the failure
+	 */
+	void persistenceFailed(String description, Exception exception);
+}
@@ -0,0 +1,542 @@
+package saver_loader;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.jgraph.graph.DefaultEdge;
+
+import resources.Activities;
+import resources.Projects;
+
+/**
+ * The PersistenceQueue class takes the database writes of the controllers off
+ * the Swing event thread. Writes are queued and performed later by a single
+ * writer thread, on its own connection.
+ *
+ * Each write is keyed by the entity it saves. Queuing a write for an entity
+ * that already has a write waiting replaces the waiting one, so an Activity
+ * edited several times in a row is only saved once, with its latest values.
+ * A delete replaces a waiting save of the same entity. The values to save are
+ * copied when the write is queued, so the writer never reads objects that
+ * the event thread is modifying.
+ *
+ * Every time the writer wakes up it takes all waiting writes and performs them
+ * in a single transaction. If that transaction fails it is rolled back and the
+ * writes are retried one transaction each, so a single bad write does not
+ * lose the others. Writes that still fail are reported to the
+ * PersistenceListener.
+ *
+ * The queue is bounded: queuing a write for a new entity blocks while
+ * capacity writes are already waiting.
+ *
+ * Until start is called, writes are performed immediately on the calling
+ * thread, which is what the tests and the command line tools rely on. The
+ * application calls start once on launch and shutdown on exit, which flushes
+ * the waiting writes.
+ */
+public class PersistenceQueue {
+
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private static final Object lock = new Object();
+
+	// writes waiting for the writer thread, by entity key, oldest first
+	private static final LinkedHashMap<String, Write> pending = new LinkedHashMap<String, Write>();
+
+	private static int capacity = DEFAULT_CAPACITY;
+	private static int inFlight = 0;
+	private static Thread writer;
+	private static boolean running = false;
+	private static PersistenceListener listener;
+	private static int failures = 0;
+
+	/**
+	 * A write to the database, performed on the writer's connection inside the
+	 * writer's transaction.
+	 */
+	private static abstract class Write {
+		final String key;
+		final String description;
+
+		Write(String key, String description) {
+			this.key = key;
+			this.description = description;
+		}
+
+		abstract void execute(Connection connection) throws SQLException;
+
+		/**
+		 * Called under the queue's lock when the write is queued or performed
+		 * immediately, with the waiting write it replaces, if any.
+		 */
+		void prepare(Write replaced) {
+		}
+
+		/**
+		 * Called once the transaction the write was part of is committed.
+		 */
+		void committed() {
+		}
+	}
+
+	/**
+	 * A save of a project or activity row. The saved object is copied when the
+	 * save is queued, and the copy is written with the version after the
+	 * version of the object, over the row still having that version. The
+	 * version of the object is only incremented once the row is committed, so
+	 * after a save fails, stale or not, the next save of the object is checked
+	 * against the same version and fails too rather than overwriting the row.
+	 */
+	private static abstract class VersionedWrite extends Write {
+
+		// version the copy is written with
+		int written;
+
+		VersionedWrite(String key, String description) {
+			super(key, description);
+		}
+
+		@Override
+		void prepare(Write replaced) {
+			copy();
+		}
+
+		@Override
+		void execute(Connection connection) throws SQLException {
+			synchronized (lock) {
+				written = getVersion() + 1;
+			}
+			write(connection, written);
+		}
+
+		@Override
+		void committed() {
+			synchronized (lock) {
+				if (getVersion() < written)
+					setVersion(written);
+			}
+		}
+
+		abstract int getVersion();
+
+		abstract void setVersion(int version);
+
+		abstract void copy();
+
+		/**
+		 * Writes the copy with the given version.
+		 */
+		abstract void write(Connection connection, int version) throws SQLException;
+	}
+
+	/**
+	 * Starts the writer thread. Writes queued from now on are performed in the
+	 * background. Calling start when the writer is already running has no
+	 * effect.
+	 */
+	public static void start() {
+		synchronized (lock) {
+			if (running)
+				return;
+
+			running = true;
+			writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			}, "persistence-writer");
+			writer.start();
+		}
+	}
+
+	/**
+	 * Performs every waiting write and stops the writer thread. Writes queued
+	 * afterwards are performed immediately on the calling thread.
+	 */
+	public static void shutdown() {
+		Thread stopping;
+		synchronized (lock) {
+			if (!running)
+				return;
+
+			running = false;
+			stopping = writer;
+			lock.notifyAll();
+		}
+
+		try {
+			stopping.join();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (lock) {
+			writer = null;
+		}
+	}
+
+	/**
+	 * Blocks until every write queued so far has been performed.
+	 */
+	public static void flush() {
+		synchronized (lock) {
+			while (running && (!pending.isEmpty() || inFlight > 0)) {
+				try {
+					lock.wait();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Setter for listener
+	 *
+	 * @param persistenceListener
+	 *            the listener told about failed writes, or null to print them
+	 */
+	public static void setListener(PersistenceListener persistenceListener) {
+		synchronized (lock) {
+			listener = persistenceListener;
+		}
+	}
+
+	/**
+	 * Getter for listener
+	 *
+	 * @return the listener told about failed writes, or null if they are
+	 *         printed
+	 */
+	public static PersistenceListener getListener() {
+		synchronized (lock) {
+			return listener;
+		}
+	}
+
+	/**
+	 * Setter for capacity
+	 *
+	 * @param size
+	 *            number of distinct writes that may wait, at least 1
+	 */
+	public static void setCapacity(int size) {
+		synchronized (lock) {
+			capacity = Math.max(1, size);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of writes waiting for the writer thread.
+	 *
+	 * @return number of waiting writes
+	 */
+	public static int getPendingCount() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Method used to find out whether writes are waiting for the writer
+	 * thread or being performed by it.
+	 *
+	 * @return true if a write is waiting or in flight
+	 */
+	public static boolean isBusy() {
+		synchronized (lock) {
+			return !pending.isEmpty() || inFlight > 0;
+		}
+	}
+
+	/**
+	 * Getter for failures
+	 *
+	 * @return number of writes that could not be saved since the application
+	 *         started
+	 */
+	public static int getFailureCount() {
+		synchronized (lock) {
+			return failures;
+		}
+	}
+
+	/**
+	 * Queues the save of an Activity, its project link, members and incoming
+	 * dependencies.
+	 *
+	 * @param project
+	 *            the project the activity belongs to
+	 * @param activity
+	 *            the activity to save
+	 */
+	public static void saveActivity(Projects project, final Activities activity) {
+		final int projectID = project.getId();
+		final List<Integer> predecessorIDs = new ArrayList<Integer>();
+		for (DefaultEdge e : project.getIncomingArrowsOfActivity(activity))
+			predecessorIDs.add(project.getActivityBefore(e).getId());
+
+		submit(new VersionedWrite("activity:" + activity.getId(), "save activity " + activity.getLabel()) {
+			Activities copy;
+
+			@Override
+			int getVersion() {
+				return activity.getVersion();
+			}
+
+			@Override
+			void setVersion(int version) {
+				activity.setVersion(version);
+			}
+
+			@Override
+			void copy() {
+				copy = DataResource.copyActivity(activity);
+			}
+
+			@Override
+			void write(Connection connection, int version) throws SQLException {
+				copy.setVersion(version);
+				DataResource.writeActivity(connection, projectID, copy, predecessorIDs);
+			}
+		});
+	}
+
+	/**
+	 * Queues the save of a project's fields and its link to the current user.
+	 *
+	 * @param project
+	 *            the project to save
+	 */
+	public static void saveProject(final Projects project) {
+		final int userID = DataResource.currentUser.getID();
+
+		submit(new VersionedWrite("project:" + project.getId(), "save project " + project.getProjectName()) {
+			Projects copy;
+
+			@Override
+			int getVersion() {
+				return project.getVersion();
+			}
+
+			@Override
+			void setVersion(int version) {
+				project.setVersion(version);
+			}
+
+			@Override
+			void copy() {
+				copy = DataResource.copyProject(project);
+			}
+
+			@Override
+			void write(Connection connection, int version) throws SQLException {
+				copy.setVersion(version);
+				DataResource.writeProject(connection, copy, userID);
+			}
+		});
+	}
+
+	/**
+	 * Queues the deletion of an Activity and its associated tuples. A waiting
+	 * save of the activity is dropped.
+	 *
+	 * @param activity
+	 *            the activity to delete
+	 */
+	public static void deleteActivity(Activities activity) {
+		final int activityID = activity.getId();
+
+		submit(new Write("activity:" + activityID, "delete activity " + activity.getLabel()) {
+			@Override
+			void execute(Connection connection) throws SQLException {
+				DataResource.writeActivityDeletion(connection, activityID);
+			}
+		});
+	}
+
+	/**
+	 * Queues the removal of a project, its activities and associations. A
+	 * waiting save of the project is dropped. The project is not removed from
+	 * the projectList.
+	 *
+	 * @param project
+	 *            the project to delete
+	 */
+	public static void removeProject(Projects project) {
+		final int projectID = project.getId();
+
+		submit(new Write("project:" + projectID, "delete project " + project.getProjectName()) {
+			@Override
+			void execute(Connection connection) throws SQLException {
+				DataResource.writeProjectRemoval(connection, projectID);
+			}
+		});
+	}
+
+	/**
+	 * Queues the deletion of the dependency between 2 Activities.
+	 *
+	 * @param activityBefore
+	 *            Activity ID for the origin Activity
+	 * @param activityAfter
+	 *            Activity ID for the destination Activity
+	 */
+	public static void deleteEdge(final int activityBefore, final int activityAfter) {
+		submit(new Write("edge:" + activityBefore + ":" + activityAfter, "delete dependency " + activityBefore + " -> "
+				+ activityAfter) {
+			@Override
+			void execute(Connection connection) throws SQLException {
+				DataResource.writeEdgeDeletion(connection, activityBefore, activityAfter);
+			}
+		});
+	}
+
+	/**
+	 * Queues the deletion of every association between an Activity and its
+	 * members.
+	 *
+	 * @param activityId
+	 *            Activity ID for the Activity who's members are to be removed
+	 */
+	public static void resetActivityMembers(final int activityId) {
+		submit(new Write("members:" + activityId, "reset members of activity " + activityId) {
+			@Override
+			void execute(Connection connection) throws SQLException {
+				DataResource.writeMemberReset(connection, activityId);
+			}
+		});
+	}
+
+	/*****************************helper functions of the queue and the writer thread***************/
+
+	/**
+	 * Queues a write, replacing and moving to the back any waiting write with
+	 * the same key. Blocks while the queue is full. When the writer is not
+	 * running the write is performed immediately.
+	 */
+	private static void submit(Write write) {
+		synchronized (lock) {
+			if (running) {
+				while (running && pending.size() >= capacity && !pending.containsKey(write.key)) {
+					try {
+						lock.wait();
+					} catch (InterruptedException exception) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+
+				if (running) {
+					write.prepare(pending.remove(write.key));
+					pending.put(write.key, write);
+					lock.notifyAll();
+					return;
+				}
+			}
+			write.prepare(null);
+		}
+
+		List<Write> single = new ArrayList<Write>();
+		single.add(write);
+		perform(single);
+	}
+
+	/**
+	 * Body of the writer thread: waits for writes and performs everything
+	 * waiting as one group, until shutdown is called and the queue is empty.
+	 */
+	private static void drain() {
+		while (true) {
+			List<Write> group;
+			synchronized (lock) {
+				while (running && pending.isEmpty()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException exception) {
+						// only shutdown stops the writer
+					}
+				}
+				if (pending.isEmpty())
+					return;
+
+				group = new ArrayList<Write>(pending.values());
+				pending.clear();
+				inFlight = group.size();
+				lock.notifyAll();
+			}
+
+			perform(group);
+
+			synchronized (lock) {
+				inFlight = 0;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Performs a group of writes in one transaction. If the group fails, each
+	 * write is retried in its own transaction and the failing ones are
+	 * reported.
+	 */
+	private static void perform(List<Write> group) {
+		Connection connection = DataResource.createConnectionToDB(DataResource.dataBase);
+
+		try {
+			execute(connection, group);
+		} catch (Exception groupException) {
+			if (group.size() == 1) {
+				report(group.get(0), groupException);
+			} else {
+				for (Write write : group) {
+					List<Write> single = new ArrayList<Write>();
+					single.add(write);
+					try {
+						execute(connection, single);
+					} catch (Exception exception) {
+						report(write, exception);
+					}
+				}
+			}
+		}
+
+		DataResource.closeConnection(connection);
+	}
+
+	private static void execute(Connection connection, List<Write> writes) throws Exception {
+		if (connection == null)
+			throw new SQLException("No connection to " + DataResource.dataBase);
+
+		try {
+			DataResource.beginTransaction(connection);
+			for (Write write : writes)
+				write.execute(connection);
+			DataResource.commitTransaction(connection);
+			for (Write write : writes)
+				write.committed();
+		} catch (Exception exception) {
+			DataResource.rollbackTransaction(connection);
+			throw exception;
+		}
+	}
+
+	private static void report(Write write, Exception exception) {
+		PersistenceListener current;
+		synchronized (lock) {
+			current = listener;
+			failures++;
+		}
+
+		if (current != null)
+			current.persistenceFailed(write.description, exception);
+		else
+			System.out.println("Could not " + write.description + ": " + exception.getMessage());
+	}
+}
@@ -0,0 +1,118 @@
+package saver_loader;
+
+import java.util.HashMap;
+
+import resources.Projects;
+
+/**
+ * The ProjectList class is the list of loaded projects, indexed by project id
+ * and by project name so the project selected in the interface is found
+ * without scanning the list.
+ *
+ * A listed project must be renamed with rename rather than with
+ * Projects.setProjectName, so the name index follows the new name.
+ */
+public class ProjectList extends IndexedList<Projects> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final HashMap<Integer, Projects> byId = new HashMap<Integer, Projects>();
+	private final HashMap<String, Projects> byName = new HashMap<String, Projects>();
+
+	/**
+	 * Method used to retrieve a listed project by its id.
+	 *
+	 * @param projectId
+	 *            id of the project
+	 * @return the first project of the list with the given id, or null
+	 */
+	public Projects getById(int projectId) {
+		Projects project = byId.get(projectId);
+		if (project != null && project.getId() == projectId)
+			return project;
+		return null;
+	}
+
+	/**
+	 * Method used to retrieve a listed project by its name.
+	 *
+	 * @param name
+	 *            name of the project
+	 * @return the first project of the list with the given name, or null
+	 */
+	public Projects getByName(String name) {
+		Projects project = byName.get(name);
+		if (project != null && project.getProjectName().equals(name))
+			return project;
+		return null;
+	}
+
+	/**
+	 * Method used to rename a project, keeping the name index up to date if
+	 * the project is listed.
+	 *
+	 * @param project
+	 *            the project to rename
+	 * @param name
+	 *            the new name of the project
+	 */
+	public void rename(Projects project, String name) {
+		String previous = project.getProjectName();
+		project.setProjectName(name);
+
+		if (previous != null && byName.get(previous) == project) {
+			byName.remove(previous);
+			indexNextNamed(previous);
+		}
+		if (name == null)
+			return;
+
+		// the first listed project with the name stays the indexed one
+		Projects current = byName.get(name);
+		int position = indexOf(project);
+		if (position >= 0 && (current == null || position < indexOf(current)))
+			byName.put(name, project);
+	}
+
+	@Override
+	protected void index(Projects project) {
+		if (!byId.containsKey(project.getId()))
+			byId.put(project.getId(), project);
+		if (project.getProjectName() != null && !byName.containsKey(project.getProjectName()))
+			byName.put(project.getProjectName(), project);
+	}
+
+	@Override
+	protected void unindex(Projects project) {
+		if (byId.get(project.getId()) == project) {
+			byId.remove(project.getId());
+			for (Projects listed : this) {
+				if (listed.getId() == project.getId()) {
+					byId.put(listed.getId(), listed);
+					break;
+				}
+			}
+		}
+		String name = project.getProjectName();
+		if (name != null && byName.get(name) == project) {
+			byName.remove(name);
+			indexNextNamed(name);
+		}
+	}
+
+	@Override
+	protected void clearIndex() {
+		byId.clear();
+		byName.clear();
+	}
+
+	// indexes the first listed project with the given name, if any
+	private void indexNextNamed(String name) {
+		for (Projects listed : this) {
+			if (name.equals(listed.getProjectName())) {
+				byName.put(name, listed);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package saver_loader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import resources.Projects;
+import resources.Users;
+
+/**
+ * The ProjectRefresh class is one poll of the database for the changes other
+ * clients saved to it. A refresh is started by DataResource.startRefresh on
+ * the Swing event thread, which records the projects in memory, read with
+ * read on a background thread, and applied to the projectList by
+ * DataResource.finishRefresh back on the event thread. Reading the refresh
+ * never touches the projectList, so the event thread is only held for the
+ * short start and finish.
+ */
+public class ProjectRefresh {
+
+	// recorded when the refresh is started
+	final Users user;
+	final long since;
+	// state of each project of the projectList, by id, see DataResource.fingerprint
+	final HashMap<Integer, long[][]> fingerprints;
+
+	// change counter the changes were read at, -1 until they have been read
+	long revision = -1;
+	// projects that became visible, as headers
+	final List<Projects> added = new ArrayList<Projects>();
+	// projects changed by another client, with their details if they were loaded
+	final List<Projects> reloaded = new ArrayList<Projects>();
+	// ids of the projects removed or no longer visible
+	final HashSet<Integer> removed = new HashSet<Integer>();
+
+	ProjectRefresh(Users user, long since, HashMap<Integer, long[][]> fingerprints) {
+		this.user = user;
+		this.since = since;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Reads the changes saved to the database since the last refresh, on the
+	 * calling thread. Meant to be called off the Swing event thread.
+	 */
+	public void read() {
+		DataResource.readRefresh(this);
+	}
+}
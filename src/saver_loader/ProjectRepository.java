@@ -0,0 +1,72 @@
+package saver_loader;
+
+import java.util.List;
+
+import resources.IdSource;
+import resources.Projects;
+import resources.Users;
+
+/**
+ * The ProjectRepository interface is implemented by the stores that projects
+ * are loaded from and saved to. The application uses the repository set on
+ * DataResource, which is the SQLite database by default.
+ *
+ * Implementations must be safe to call from any thread.
+ */
+public interface ProjectRepository {
+
+	/**
+	 * Loads the users that can be assigned to activities.
+	 *
+	 * @return the users of type MEMBER
+	 */
+	List<Users> loadMembers();
+
+	/**
+	 * Loads the fields of the projects visible to the given user: the projects
+	 * a MANAGER manages, or the projects a MEMBER has activities in. The
+	 * projects are returned unloaded, in the order they were created.
+	 *
+	 * @param user
+	 *            the user the projects are loaded for
+	 * @return the projects, without their users, activities or dependencies
+	 */
+	List<Projects> loadProjectHeaders(Users user);
+
+	/**
+	 * Fills a project returned by loadProjectHeaders with its users,
+	 * activities, dependencies and member assignments, then marks it loaded
+	 * and clean. A MEMBER only gets the activities assigned to them.
+	 *
+	 * @param project
+	 *            the project to complete
+	 * @param user
+	 *            the user the project is loaded for
+	 */
+	void loadProjectDetails(Projects project, Users user);
+
+	/**
+	 * Saves the fields of a project and its link to the current user.
+	 *
+	 * @param project
+	 *            the project to save
+	 */
+	void saveProject(Projects project);
+
+	/**
+	 * Removes a project with its activities, their dependencies and all
+	 * associations.
+	 *
+	 * @param project
+	 *            the project to remove
+	 */
+	void removeProject(Projects project);
+
+	/**
+	 * Returns the source of the ids of new Projects, which are unique within
+	 * the store.
+	 *
+	 * @return the id source for Projects
+	 */
+	IdSource getProjectIds();
+}
@@ -0,0 +1,458 @@
+package saver_loader;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jgraph.graph.DefaultEdge;
+
+import resources.Activities;
+import resources.Projects;
+
+/**
+ * The ScheduleExporter class writes projects with their computed schedules to
+ * CSV or JSON. For each activity it writes the critical path fields (earliest
+ * and latest start and finish, float), the PERT fields (expected duration,
+ * standard deviations, expected date and z value) and the earned value of
+ * the activity, and for each project its earned value indices.
+ *
+ * Projects are exported from the database a page at a time, or from a list
+ * such as DataResource.projectList. The schedules of several projects are
+ * computed in parallel, but only a bounded window of projects is held at
+ * once and the projects are written in the order they were read. The
+ * projects of a list are copied on the calling thread first, so the worker
+ * threads never touch objects the application may be editing. A project
+ * whose schedule cannot be computed fails the export.
+ *
+ * CSV output has one row per activity, the project columns repeated on each
+ * row; a project without activities has a single row with empty activity
+ * columns. JSON output is an array of projects, each with its activities.
+ *
+ * Usage: ScheduleExporter [-db url] [-json] output
+ */
+public class ScheduleExporter {
+
+	/**
+	 * The formats an export can be written in.
+	 */
+	public enum Format {
+		CSV, JSON
+	}
+
+	// projects read from the database per query
+	static int pageSize = 50;
+	// threads computing schedules; twice as many projects are held at once
+	static int threads = Runtime.getRuntime().availableProcessors();
+
+	private static final String[] PROJECT_COLUMNS = { "project_id", "project_name", "planned_value",
+			"budget_at_completion", "earned_value", "actual_cost", "percent_complete", "cost_variance",
+			"schedule_variance", "cost_performance_index", "schedule_performance_index", "estimate_at_completion",
+			"estimate_to_completion" };
+
+	private static final String[] ACTIVITY_COLUMNS = { "activity_id", "label", "progress", "budget", "duration",
+			"earliest_start", "earliest_finish", "latest_start", "latest_finish", "float", "critical",
+			"expected_duration", "standard_deviation", "expected_date", "event_standard_deviation", "target_date",
+			"z_value", "activity_earned_value" };
+
+	public static void main(String[] args) throws Exception {
+		Format format = Format.CSV;
+		String output = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-db") && i + 1 < args.length)
+				DataResource.setDatabase(args[++i]);
+			else if (args[i].equals("-json"))
+				format = Format.JSON;
+			else
+				output = args[i];
+		}
+		if (output == null) {
+			System.out.println("Usage: ScheduleExporter [-db url] [-json] output");
+			return;
+		}
+
+		long start = System.nanoTime();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"), 1 << 16);
+		int projects;
+		try {
+			projects = exportDatabase(writer, format);
+		} finally {
+			writer.close();
+		}
+		System.out.println(String.format("Exported %d projects in %.1f ms", projects,
+				(System.nanoTime() - start) / 1000000.0));
+		ConnectionManager.closeAll();
+	}
+
+	/**
+	 * Method used to export every project of the current database, read a
+	 * page at a time.
+	 *
+	 * @param writer
+	 *            where the export is written; it is flushed but not closed
+	 * @param format
+	 *            format of the export
+	 * @return number of projects exported
+	 * @throws IOException
+	 *             if the export cannot be written or the database read
+	 */
+	public static int exportDatabase(Writer writer, Format format) throws IOException {
+		try {
+			return export(new ProjectPages(), writer, format);
+		} catch (IllegalStateException exception) {
+			throw new IOException(exception.getMessage(), exception.getCause());
+		}
+	}
+
+	/**
+	 * Method used to export the given projects, such as
+	 * DataResource.projectList. The details of projects not loaded yet are
+	 * loaded first. The schedules are computed on copies of the projects, so
+	 * the projects themselves are left as they are. Must be called on the
+	 * thread that edits the projects.
+	 *
+	 * @param projects
+	 *            the projects to export
+	 * @param writer
+	 *            where the export is written; it is flushed but not closed
+	 * @param format
+	 *            format of the export
+	 * @return number of projects exported
+	 * @throws IOException
+	 *             if the export cannot be written or a schedule cannot be
+	 *             computed
+	 */
+	public static int exportProjects(final Iterable<Projects> projects, Writer writer, Format format)
+			throws IOException {
+		Iterator<Projects> loading = new Iterator<Projects>() {
+			private final Iterator<Projects> iterator = projects.iterator();
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Projects next() {
+				Projects project = iterator.next();
+				DataResource.loadProjectDetails(project);
+				return copy(project);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return export(loading, writer, format);
+	}
+
+	/**
+	 * Computes the schedules of the projects on the worker threads and
+	 * writes them in order, each as soon as it and the projects before it
+	 * are done.
+	 */
+	private static int export(Iterator<Projects> projects, Writer writer, Format format) throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "schedule-export");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		ArrayDeque<Future<Projects>> window = new ArrayDeque<Future<Projects>>();
+		int windowSize = Math.max(1, threads) * 2;
+		int exported = 0;
+
+		try {
+			begin(writer, format);
+			while (projects.hasNext()) {
+				final Projects project = projects.next();
+				window.add(workers.submit(new Callable<Projects>() {
+					@Override
+					public Projects call() {
+						try {
+							project.calculateTimes();
+						} catch (RuntimeException exception) {
+							throw new IllegalStateException("Could not schedule project " + project.getId() + ": "
+									+ exception, exception);
+						}
+						return project;
+					}
+				}));
+				if (window.size() >= windowSize)
+					write(writer, format, take(window.poll()), exported++);
+			}
+			while (!window.isEmpty())
+				write(writer, format, take(window.poll()), exported++);
+			end(writer, format);
+			writer.flush();
+		} finally {
+			workers.shutdownNow();
+		}
+		return exported;
+	}
+
+	private static Projects take(Future<Projects> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export interrupted", exception);
+		} catch (ExecutionException exception) {
+			throw new IOException(exception.getCause().getMessage(), exception.getCause());
+		}
+	}
+
+	// the fields, Activities and dependencies of a project, whose schedule is computed on the copy
+	private static Projects copy(Projects project) {
+		Projects copy = new Projects(project.getProjectName(), project.getUserList(), project.getDate(),
+				project.getId(), project.getManagerID(), project.getDescription(), project.getBudget());
+		HashMap<Activities, Activities> copies = new HashMap<Activities, Activities>();
+		for (Activities activity : project.getActivityList()) {
+			Activities activityCopy = new Activities(activity.getDescription(), activity.getStartDate(),
+					activity.getEndDate(), activity.getLabel(), activity.getId(), activity.getProgress(),
+					activity.getBudget(), activity.getMostLikelyTime(), activity.getOptimisticTime(),
+					activity.getPessimisticTime(), activity.getTargetDate());
+			copy.addActivity(activityCopy);
+			copies.put(activity, activityCopy);
+		}
+		for (DefaultEdge edge : project.getArrowSet())
+			copy.addArrow(copies.get(project.getActivityBefore(edge)), copies.get(project.getActivityAfter(edge)));
+		return copy;
+	}
+
+	/**
+	 * The ProjectPages class iterates over the projects of the database,
+	 * reading the next page when the current one is used up.
+	 */
+	private static class ProjectPages implements Iterator<Projects> {
+
+		private List<Projects> page;
+		private int index;
+		private int lastId = Integer.MIN_VALUE;
+		private boolean done;
+
+		@Override
+		public boolean hasNext() {
+			if (page != null && index < page.size())
+				return true;
+			if (done)
+				return false;
+
+			try {
+				page = DataResource.readProjectPage(lastId, pageSize);
+			} catch (Exception exception) {
+				throw new IllegalStateException("Could not read projects: " + exception.getMessage(), exception);
+			}
+			index = 0;
+			done = page.size() < pageSize;
+			if (!page.isEmpty())
+				lastId = page.get(page.size() - 1).getId();
+			return !page.isEmpty();
+		}
+
+		@Override
+		public Projects next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Projects project = page.get(index);
+			// the page does not keep the projects already handed out
+			page.set(index++, null);
+			return project;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/************************************ writers ************************************/
+
+	private static void begin(Writer writer, Format format) throws IOException {
+		if (format == Format.JSON) {
+			writer.write('[');
+			return;
+		}
+
+		for (int i = 0; i < PROJECT_COLUMNS.length; i++) {
+			writer.write(PROJECT_COLUMNS[i]);
+			writer.write(',');
+		}
+		for (int i = 0; i < ACTIVITY_COLUMNS.length; i++) {
+			writer.write(ACTIVITY_COLUMNS[i]);
+			writer.write(i + 1 < ACTIVITY_COLUMNS.length ? "," : "\r\n");
+		}
+	}
+
+	private static void end(Writer writer, Format format) throws IOException {
+		if (format == Format.JSON)
+			writer.write("]\n");
+	}
+
+	private static void write(Writer writer, Format format, Projects project, int index) throws IOException {
+		Object[] projectValues = projectValues(project);
+
+		if (format == Format.CSV) {
+			if (project.getActivityList().isEmpty())
+				writeCsvRow(writer, projectValues, new Object[ACTIVITY_COLUMNS.length]);
+			for (Activities activity : project.getActivityList())
+				writeCsvRow(writer, projectValues, activityValues(activity));
+			return;
+		}
+
+		if (index > 0)
+			writer.write(',');
+		writer.write("\n{");
+		writeJsonFields(writer, PROJECT_COLUMNS, projectValues);
+		writer.write(",\"activities\":[");
+		boolean first = true;
+		for (Activities activity : project.getActivityList()) {
+			writer.write(first ? "\n{" : ",\n{");
+			writeJsonFields(writer, ACTIVITY_COLUMNS, activityValues(activity));
+			writer.write('}');
+			first = false;
+		}
+		writer.write("]}");
+	}
+
+	private static Object[] projectValues(Projects project) {
+		return new Object[] { project.getId(), project.getProjectName(), project.getBudget(),
+				project.getBudgetAtCompletion(), evm(project, 0), evm(project, 1), evm(project, 2), evm(project, 3),
+				evm(project, 4), evm(project, 5), evm(project, 6), evm(project, 7), evm(project, 8) };
+	}
+
+	// the earned value getters throw on negative inputs, exported as missing values
+	private static Double evm(Projects project, int index) {
+		try {
+			switch (index) {
+			case 0:
+				return project.getEarnedValue();
+			case 1:
+				return project.getActualCost();
+			case 2:
+				return project.getPercentComplete();
+			case 3:
+				return project.getCostVariance();
+			case 4:
+				return project.getScheduleVariance();
+			case 5:
+				return project.getCostPerformanceIndex();
+			case 6:
+				return project.getSchedulePerformanceIndex();
+			case 7:
+				return project.getEstimateAtCompletion();
+			default:
+				return project.getEstimateToCompletion();
+			}
+		} catch (IllegalArgumentException exception) {
+			return null;
+		}
+	}
+
+	private static Object[] activityValues(Activities activity) {
+		return new Object[] { activity.getId(), activity.getLabel(),
+				activity.getProgress() == null ? null : activity.getProgress().name(),
+				activity.getBudget(), activity.getDuration(), activity.getEarliestStart(),
+				activity.getEarliestFinish(), activity.getLatestStart(), activity.getLatestFinish(),
+				activity.getActivityFloat(), activity.getActivityFloat() == 0, activity.getExpectedDuration(),
+				activity.getStandardDerivation(), activity.getExpectedDate(), activity.getStandardDeviationEvent(),
+				activity.getTargetDate(), activity.getZValue(), activity.getEarnedValue() };
+	}
+
+	private static void writeCsvRow(Writer writer, Object[] projectValues, Object[] activityValues)
+			throws IOException {
+		for (Object value : projectValues) {
+			writeCsvValue(writer, value);
+			writer.write(',');
+		}
+		for (int i = 0; i < activityValues.length; i++) {
+			writeCsvValue(writer, activityValues[i]);
+			writer.write(i + 1 < activityValues.length ? "," : "\r\n");
+		}
+	}
+
+	private static void writeCsvValue(Writer writer, Object value) throws IOException {
+		if (value == null || !isFinite(value))
+			return;
+		if (!(value instanceof String)) {
+			writer.write(value.toString());
+			return;
+		}
+
+		String text = (String) value;
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			writer.write(text);
+			return;
+		}
+		writer.write('"');
+		writer.write(text.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	private static void writeJsonFields(Writer writer, String[] names, Object[] values) throws IOException {
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				writer.write(',');
+			writer.write('"');
+			writer.write(names[i]);
+			writer.write("\":");
+			Object value = values[i];
+			if (value == null || !isFinite(value))
+				writer.write("null");
+			else if (value instanceof String)
+				writeJsonString(writer, (String) value);
+			else
+				writer.write(value.toString());
+		}
+	}
+
+	private static void writeJsonString(Writer writer, String text) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					writer.write(String.format("\\u%04x", (int) c));
+				else
+					writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	// NaN and infinite values, such as a z value without deviation, have no CSV or JSON form
+	private static boolean isFinite(Object value) {
+		return !(value instanceof Double) || !(((Double) value).isNaN() || ((Double) value).isInfinite());
+	}
+}
@@ -0,0 +1,434 @@
+package saver_loader;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import resources.DateCodec;
+
+/**
+ * The SchemaMigrator class brings the schema of a database up to date with
+ * the code. The schema is changed by numbered migrations, applied in order,
+ * each in its own transaction. The migrations applied to a database are
+ * recorded in its schema_version table, so each one runs once per database.
+ * Migrations are also written to be idempotent, so a database whose schema
+ * was changed by hand is migrated safely.
+ *
+ * Migrations are run by the ConnectionManager the first time it opens a
+ * database. New migrations are appended to MIGRATIONS with the next version
+ * number; applied migrations must never be changed.
+ *
+ * The class also reports the query plans SQLite chooses for the access paths
+ * used by DataResource, so a missing index shows up as a full table scan.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * A numbered change to the schema.
+	 */
+	static abstract class Migration {
+		final int version;
+		final String description;
+
+		Migration(int version, String description) {
+			this.version = version;
+			this.description = description;
+		}
+
+		abstract void apply(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * A migration made of SQL statements executed in order.
+	 */
+	static class SqlMigration extends Migration {
+		final String[] statements;
+
+		SqlMigration(int version, String description, String... statements) {
+			super(version, description);
+			this.statements = statements;
+		}
+
+		@Override
+		void apply(Connection connection) throws SQLException {
+			Statement stmt = connection.createStatement();
+			try {
+				for (String sql : statements)
+					stmt.executeUpdate(sql);
+			} finally {
+				stmt.close();
+			}
+		}
+	}
+
+	// tables whose changes invalidate a WorkspaceSnapshot
+	static final String[] COUNTED_TABLES = { "users", "projects", "user_project_relationships", "activities",
+			"activity_project_relationships", "activity_edge_relationship", "activity_user_project_relationships" };
+
+	// every migration, in version order
+	static final Migration[] MIGRATIONS = {
+			new SqlMigration(1, "index activity members by user",
+					"CREATE INDEX IF NOT EXISTS idx_aupr_user ON activity_user_project_relationships (user_id, project_id, activity_id)"),
+			new SqlMigration(2, "index activity members by activity",
+					"CREATE INDEX IF NOT EXISTS idx_aupr_activity ON activity_user_project_relationships (activity_id, user_id)"),
+			new SqlMigration(3, "index dependencies by dependent activity",
+					"CREATE INDEX IF NOT EXISTS idx_edge_to ON activity_edge_relationship (to_activity_id, from_activity_id)"),
+			new SqlMigration(4, "index projects by manager",
+					"CREATE INDEX IF NOT EXISTS idx_projects_manager ON projects (manager_id)"),
+			new SqlMigration(5, "index project activities by activity",
+					"CREATE INDEX IF NOT EXISTS idx_apr_activity ON activity_project_relationships (activity_id, project_id)"),
+			new SqlMigration(6, "index users by username",
+					"CREATE INDEX IF NOT EXISTS idx_users_username ON users (username)"),
+			new EpochDateMigration(7, "store activity dates as epoch days"),
+			new SqlMigration(8, "add id sequences",
+					"CREATE TABLE IF NOT EXISTS id_sequences (name TEXT PRIMARY KEY, next_id INTEGER NOT NULL)",
+					"INSERT OR IGNORE INTO id_sequences(name, next_id) SELECT 'projects', coalesce(max(id), 0) + 1 FROM projects",
+					"INSERT OR IGNORE INTO id_sequences(name, next_id) SELECT 'activities', coalesce(max(id), 0) + 1 FROM activities"),
+			new SqlMigration(9, "count changes to the workspace tables", changeCounterStatements()),
+			new SqlMigration(10, "record the sequence applied from the change journal",
+					"CREATE TABLE IF NOT EXISTS journal_state (id INTEGER PRIMARY KEY, applied_seq INTEGER NOT NULL)",
+					"INSERT OR IGNORE INTO journal_state(id, applied_seq) VALUES (0, 0)"),
+			new RowVersionMigration(11, "add row versions and project revisions"),
+			new UserRevisionMigration(12, "add user revisions") };
+
+	/**
+	 * Builds the statements creating the change_counter table and the
+	 * triggers that increment it on every insert, update and delete of the
+	 * counted tables. A table rebuilt by a later migration must have its
+	 * triggers created again.
+	 */
+	private static String[] changeCounterStatements() {
+		List<String> statements = new ArrayList<String>();
+		statements.add("CREATE TABLE IF NOT EXISTS change_counter (id INTEGER PRIMARY KEY, value INTEGER NOT NULL)");
+		statements.add("INSERT OR IGNORE INTO change_counter(id, value) VALUES (0, 1)");
+		for (String table : COUNTED_TABLES) {
+			for (String operation : new String[] { "INSERT", "UPDATE", "DELETE" }) {
+				statements.add("CREATE TRIGGER IF NOT EXISTS count_" + table + "_" + operation.toLowerCase()
+						+ " AFTER " + operation + " ON " + table
+						+ " BEGIN UPDATE change_counter SET value = value + 1 WHERE id = 0; END");
+			}
+		}
+		return statements.toArray(new String[statements.size()]);
+	}
+
+	/**
+	 * Rebuilds the activities table with INTEGER date columns and converts the
+	 * dd-MM-yyyy dates to epoch days. The columns must be rebuilt because the
+	 * TEXT affinity of the old columns would store the epoch days as text.
+	 * Dates that cannot be parsed are copied unchanged.
+	 */
+	static class EpochDateMigration extends Migration {
+
+		EpochDateMigration(int version, String description) {
+			super(version, description);
+		}
+
+		@Override
+		void apply(Connection connection) throws SQLException {
+			Statement stmt = connection.createStatement();
+			try {
+				stmt.executeUpdate("CREATE TABLE activities_epoch (id INT (5), label VARCHAR (128), description VARCHAR (256), "
+						+ "startdate INTEGER, endate INTEGER, progress STRING (20) DEFAULT pending, budget INTEGER (5) DEFAULT (0), "
+						+ "most_likely INT (5) DEFAULT (0), optimistic INT (5) DEFAULT (0), pessimistic INT (5) DEFAULT (0), "
+						+ "target_date INT (5) DEFAULT (0), PRIMARY KEY (id))");
+				stmt.executeUpdate("INSERT INTO activities_epoch(id, label, description, startdate, endate, progress, budget, "
+						+ "most_likely, optimistic, pessimistic, target_date) SELECT id, label, description, startdate, endate, "
+						+ "progress, budget, most_likely, optimistic, pessimistic, target_date FROM activities");
+
+				PreparedStatement update = connection.prepareStatement("UPDATE activities_epoch SET startdate = ?, endate = ? WHERE id = ?");
+				ResultSet result = stmt.executeQuery("SELECT id, startdate, endate FROM activities_epoch "
+						+ "WHERE typeof(startdate) = 'text' OR typeof(endate) = 'text'");
+				while (result.next()) {
+					update.setObject(1, toEpochDay(result.getObject(2)));
+					update.setObject(2, toEpochDay(result.getObject(3)));
+					update.setInt(3, result.getInt(1));
+					update.addBatch();
+				}
+				result.close();
+				update.executeBatch();
+				update.close();
+
+				stmt.executeUpdate("DROP TABLE activities");
+				stmt.executeUpdate("ALTER TABLE activities_epoch RENAME TO activities");
+			} finally {
+				stmt.close();
+			}
+		}
+
+		private static Object toEpochDay(Object value) {
+			if (!(value instanceof String))
+				return value;
+			try {
+				return DateCodec.DAY_MONTH_YEAR.parseEpochDay((String) value);
+			} catch (ParseException exception) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Adds the version column of projects and activities, which every save
+	 * increments, and the revision column of projects, which records the value
+	 * of the change counter after the last change to the project, its users,
+	 * Activities, dependencies or member assignments. The revision of the
+	 * project row itself is written by the save; triggers write it for the
+	 * other tables. Columns already added by hand are kept.
+	 */
+	static class RowVersionMigration extends Migration {
+
+		// tables changed under a project, with the expression selecting the projects of a row
+		private static final String[][] STAMPED_TABLES = {
+				{ "activities", "INSERT", "id IN (SELECT project_id FROM activity_project_relationships WHERE activity_id = NEW.id)" },
+				{ "activities", "UPDATE", "id IN (SELECT project_id FROM activity_project_relationships WHERE activity_id = NEW.id)" },
+				{ "activity_project_relationships", "INSERT", "id = NEW.project_id" },
+				{ "activity_project_relationships", "DELETE", "id = OLD.project_id" },
+				{ "user_project_relationships", "INSERT", "id = NEW.project_id" },
+				{ "user_project_relationships", "DELETE", "id = OLD.project_id" },
+				{ "activity_user_project_relationships", "INSERT", "id = NEW.project_id" },
+				{ "activity_user_project_relationships", "DELETE", "id = OLD.project_id" },
+				{ "activity_edge_relationship", "INSERT",
+						"id IN (SELECT project_id FROM activity_project_relationships WHERE activity_id = NEW.to_activity_id)" },
+				{ "activity_edge_relationship", "DELETE",
+						"id IN (SELECT project_id FROM activity_project_relationships WHERE activity_id = OLD.to_activity_id)" } };
+
+		RowVersionMigration(int version, String description) {
+			super(version, description);
+		}
+
+		@Override
+		void apply(Connection connection) throws SQLException {
+			Statement stmt = connection.createStatement();
+			try {
+				addColumn(stmt, "projects", "version");
+				addColumn(stmt, "activities", "version");
+				addColumn(stmt, "projects", "revision");
+				stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_projects_revision ON projects (revision)");
+
+				for (String[] stamped : STAMPED_TABLES) {
+					stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS stamp_" + stamped[0] + "_" + stamped[1].toLowerCase()
+							+ " AFTER " + stamped[1] + " ON " + stamped[0] + " BEGIN UPDATE projects SET revision = "
+							+ "(SELECT value FROM change_counter WHERE id = 0) + 1 WHERE " + stamped[2] + "; END");
+				}
+			} finally {
+				stmt.close();
+			}
+		}
+
+		private static void addColumn(Statement stmt, String table, String column) throws SQLException {
+			ResultSet result = stmt.executeQuery("PRAGMA table_info(" + table + ")");
+			try {
+				while (result.next()) {
+					if (result.getString("name").equalsIgnoreCase(column))
+						return;
+				}
+			} finally {
+				result.close();
+			}
+			stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " INTEGER NOT NULL DEFAULT 0");
+		}
+	}
+
+	/**
+	 * Adds the revision column of users, which records the value of the
+	 * change counter after the last insert or update of the user, so the
+	 * UserCache only reads the users changed since its last refresh.
+	 */
+	static class UserRevisionMigration extends Migration {
+
+		UserRevisionMigration(int version, String description) {
+			super(version, description);
+		}
+
+		@Override
+		void apply(Connection connection) throws SQLException {
+			Statement stmt = connection.createStatement();
+			try {
+				RowVersionMigration.addColumn(stmt, "users", "revision");
+				stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_users_revision ON users (revision)");
+				stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS stamp_users_insert AFTER INSERT ON users BEGIN "
+						+ "UPDATE users SET revision = (SELECT value FROM change_counter WHERE id = 0) + 1 WHERE id = NEW.id; END");
+				// only the user's fields, so stamping the revision does not fire it again
+				stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS stamp_users_update AFTER UPDATE OF id, username, first_name, "
+						+ "last_name, password, user_type ON users BEGIN "
+						+ "UPDATE users SET revision = (SELECT value FROM change_counter WHERE id = 0) + 1 WHERE id = NEW.id; END");
+			} finally {
+				stmt.close();
+			}
+		}
+	}
+
+	// access paths used by DataResource and the login, by name
+	static final String[][] ACCESS_PATHS = {
+			{ "manager projects", DataResource.MANAGER_PROJECT_SCOPE },
+			{ "manager activities", DataResource.MANAGER_ACTIVITY_SCOPE },
+			{ "member projects", DataResource.MEMBER_PROJECT_SCOPE },
+			{ "member activities", DataResource.MEMBER_ACTIVITY_SCOPE },
+			{ "activity members", DataResource.RESET_ACTIVITY_MEMBERS_SQL },
+			{ "activity project", "DELETE FROM activity_project_relationships WHERE activity_id = ?" },
+			{ "activity dependencies", DataResource.DELETE_ACTIVITY_EDGES_SQL },
+			{ "project dependencies", DataResource.DELETE_PROJECT_EDGES_SQL },
+			{ "project members", DataResource.DELETE_PROJECT_MEMBERS_SQL },
+			{ "project activities", DataResource.DELETE_PROJECT_ACTIVITIES_SQL },
+			{ "changed projects", DataResource.CHANGED_PROJECTS_SQL },
+			{ "changed users", UserCache.CHANGED_USERS_SQL },
+			{ "dependencies from activity", "SELECT to_activity_id FROM activity_edge_relationship WHERE from_activity_id = ?" },
+			{ "dependencies into activity", "SELECT from_activity_id FROM activity_edge_relationship WHERE to_activity_id = ?" },
+			{ "login", "SELECT * FROM users WHERE username = ? AND password = ?" } };
+
+	/**
+	 * Applies the migrations the database has not seen yet, in version order.
+	 * Each migration and its schema_version row are committed together; if a
+	 * migration fails it is rolled back and the later ones are not applied.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @return the schema version of the database after migrating
+	 * @throws SQLException
+	 *             if a migration fails
+	 */
+	public static int migrate(Connection connection) throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, "
+					+ "description TEXT, applied_at TEXT DEFAULT CURRENT_TIMESTAMP)");
+		} finally {
+			stmt.close();
+		}
+
+		int current = getVersion(connection);
+		for (Migration migration : MIGRATIONS) {
+			if (migration.version <= current)
+				continue;
+
+			try {
+				DataResource.beginTransaction(connection);
+				migration.apply(connection);
+
+				PreparedStatement ps = connection.prepareStatement("INSERT INTO schema_version(version, description) VALUES (?, ?)");
+				try {
+					ps.setInt(1, migration.version);
+					ps.setString(2, migration.description);
+					ps.executeUpdate();
+				} finally {
+					ps.close();
+				}
+
+				DataResource.commitTransaction(connection);
+				current = migration.version;
+			} catch (SQLException exception) {
+				DataResource.rollbackTransaction(connection);
+				throw new SQLException("Migration " + migration.version + " (" + migration.description + ") failed: "
+						+ exception.getMessage(), exception);
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the version of the last migration applied to the database.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @return the schema version, 0 if no migration has been applied
+	 * @throws SQLException
+	 *             if the schema_version table cannot be read
+	 */
+	public static int getVersion(Connection connection) throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet result = stmt.executeQuery("SELECT max(version) FROM schema_version");
+			return result.next() ? result.getInt(1) : 0;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Returns the query plan SQLite chooses for each access path used by
+	 * DataResource, one line per plan step, prefixed with the name of the
+	 * access path. Steps that read a whole table are marked FULL SCAN.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @return the lines of the report
+	 * @throws SQLException
+	 *             if a plan cannot be computed
+	 */
+	public static List<String> explainAccessPaths(Connection connection) throws SQLException {
+		List<String> report = new ArrayList<String>();
+		for (String[] path : ACCESS_PATHS) {
+			for (String step : explain(connection, path[1])) {
+				report.add(path[0] + ": " + step + (isFullScan(step) ? "  <-- FULL SCAN" : ""));
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Returns the names of the access paths whose query plan reads a whole
+	 * table.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @return names of the access paths doing a full table scan
+	 * @throws SQLException
+	 *             if a plan cannot be computed
+	 */
+	public static List<String> findFullScans(Connection connection) throws SQLException {
+		List<String> scans = new ArrayList<String>();
+		for (String[] path : ACCESS_PATHS) {
+			for (String step : explain(connection, path[1])) {
+				if (isFullScan(step) && !scans.contains(path[0]))
+					scans.add(path[0]);
+			}
+		}
+		return scans;
+	}
+
+	private static List<String> explain(Connection connection, String sql) throws SQLException {
+		List<String> steps = new ArrayList<String>();
+		PreparedStatement ps = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+		try {
+			int parameters = sql.length() - sql.replace("?", "").length();
+			for (int i = 1; i <= parameters; i++)
+				ps.setInt(i, 0);
+
+			ResultSet result = ps.executeQuery();
+			while (result.next())
+				steps.add(result.getString("detail"));
+		} finally {
+			ps.close();
+		}
+		return steps;
+	}
+
+	private static boolean isFullScan(String step) {
+		return step.startsWith("SCAN TABLE") && !step.contains(" USING ");
+	}
+
+	/**
+	 * Migrates the database given in parameters, or the default database,
+	 * and prints the query plans of the access paths.
+	 *
+	 * @param args
+	 *            optional JDBC URL of the database
+	 */
+	public static void main(String[] args) {
+		String database = args.length > 0 ? args[0] : DataResource.dataBase;
+		try {
+			Connection connection = ConnectionManager.getConnection(database);
+			System.out.println("Schema version " + getVersion(connection));
+			for (String line : explainAccessPaths(connection))
+				System.out.println(line);
+			DataResource.closeConnection(connection);
+		} catch (SQLException exception) {
+			System.out.println(exception.getMessage());
+		}
+		ConnectionManager.closeAll();
+	}
+}
@@ -0,0 +1,94 @@
+package saver_loader;
+
+import java.util.List;
+
+import resources.Activities;
+import resources.IdSource;
+import resources.Projects;
+import resources.Users;
+
+/**
+ * The SqliteRepository class stores projects and activities in the SQLite
+ * database of DataResource.dataBase. Projects are read with the set-based
+ * loaders of DataResource, on the calling thread's connection. Writes are
+ * handed to the PersistenceQueue, so they run on its writer thread once the
+ * queue is started and on the calling thread before that.
+ */
+public class SqliteRepository implements ProjectRepository, ActivityRepository {
+
+	@Override
+	public List<Users> loadMembers() {
+		return DataResource.readMembers();
+	}
+
+	@Override
+	public List<Projects> loadProjectHeaders(Users user) {
+		return DataResource.readProjectHeaders(user);
+	}
+
+	@Override
+	public void loadProjectDetails(Projects project, Users user) {
+		DataResource.readProjectDetails(project, user);
+	}
+
+	@Override
+	public void saveProject(Projects project) {
+		PersistenceQueue.saveProject(project);
+	}
+
+	@Override
+	public void removeProject(Projects project) {
+		PersistenceQueue.removeProject(project);
+	}
+
+	@Override
+	public void saveActivity(Projects project, Activities activity) {
+		PersistenceQueue.saveActivity(project, activity);
+	}
+
+	@Override
+	public void deleteActivity(Activities activity) {
+		PersistenceQueue.deleteActivity(activity);
+	}
+
+	@Override
+	public void deleteEdge(int activityBefore, int activityAfter) {
+		PersistenceQueue.deleteEdge(activityBefore, activityAfter);
+	}
+
+	@Override
+	public void resetActivityMembers(int activityId) {
+		PersistenceQueue.resetActivityMembers(activityId);
+	}
+
+	/**
+	 * Method used to find out whether writes made through the repository are
+	 * still on their way to the tables of the database.
+	 *
+	 * @return true if a write is waiting or being written
+	 */
+	public boolean hasPendingWrites() {
+		return PersistenceQueue.isBusy();
+	}
+
+	/**
+	 * Method used to find out whether writes made through the repository may
+	 * be missing from the tables: because they are still waiting to be
+	 * written, or because writing them failed.
+	 *
+	 * @return true if a write is waiting or has failed
+	 */
+	public boolean hasUnsavedWrites() {
+		return PersistenceQueue.getPendingCount() > 0 || PersistenceQueue.getFailureCount() > 0;
+	}
+
+	@Override
+	public IdSource getProjectIds() {
+		return IdAllocator.PROJECTS;
+	}
+
+	@Override
+	public IdSource getActivityIds() {
+		return IdAllocator.ACTIVITIES;
+	}
+}
@@ -0,0 +1,64 @@
+package saver_loader;
+
+import java.sql.SQLException;
+
+/**
+ * The StaleDataException is thrown when a project or activity is saved over a
+ * row that another client changed since it was loaded. The row is left as the
+ * other client saved it; the project must be loaded again before it can be
+ * saved.
+ */
+public class StaleDataException extends SQLException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String table;
+	private final int id;
+
+	/**
+	 * Creates the exception for a row of a table.
+	 *
+	 * @param table
+	 *            the table of the row, projects or activities
+	 * @param id
+	 *            id of the row
+	 */
+	public StaleDataException(String table, int id) {
+		super("Row " + id + " of " + table + " was changed by another user");
+		this.table = table;
+		this.id = id;
+	}
+
+	/**
+	 * Creates the exception for several rows of a table saved together.
+	 *
+	 * @param table
+	 *            the table of the rows, projects or activities
+	 * @param message
+	 *            description of the rows
+	 */
+	StaleDataException(String table, String message) {
+		super(message);
+		this.table = table;
+		this.id = -1;
+	}
+
+	/**
+	 * Getter for table
+	 *
+	 * @return the table of the row that could not be saved
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Getter for id
+	 *
+	 * @return id of the row that could not be saved, or -1 if several rows
+	 *         could not be saved
+	 */
+	public int getId() {
+		return id;
+	}
+}
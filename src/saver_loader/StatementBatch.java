@@ -0,0 +1,85 @@
+package saver_loader;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The StatementBatch class wraps a PreparedStatement used with JDBC batching.
+ * Rows are bound on the statement returned by getStatement and queued with
+ * add. The queued rows are sent to the database every time batchSize rows
+ * have been queued, and once more when flush is called.
+ */
+class StatementBatch {
+
+	private final PreparedStatement statement;
+	private final int batchSize;
+	private int pending;
+	private int unchanged;
+
+	/**
+	 * Creates a batch over the given statement.
+	 *
+	 * @param statement
+	 *            the statement rows are bound on
+	 * @param batchSize
+	 *            number of rows queued before they are executed
+	 */
+	StatementBatch(PreparedStatement statement, int batchSize) {
+		this.statement = statement;
+		this.batchSize = Math.max(1, batchSize);
+		this.pending = 0;
+		this.unchanged = 0;
+	}
+
+	/**
+	 * Getter for statement
+	 *
+	 * @return the statement on which the next row must be bound
+	 */
+	PreparedStatement getStatement() {
+		return statement;
+	}
+
+	/**
+	 * Queues the row currently bound on the statement, executing the batch
+	 * if it is full.
+	 *
+	 * @throws SQLException
+	 *             if the batch fails
+	 */
+	void add() throws SQLException {
+		statement.addBatch();
+		if (++pending >= batchSize)
+			flush();
+	}
+
+	/**
+	 * Executes the rows still queued in the batch.
+	 *
+	 * @return the update counts of the executed rows
+	 * @throws SQLException
+	 *             if the batch fails
+	 */
+	int[] flush() throws SQLException {
+		if (pending == 0)
+			return new int[0];
+
+		pending = 0;
+		int[] counts = statement.executeBatch();
+		for (int count : counts) {
+			if (count == 0)
+				unchanged++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of executed rows that did not change the database,
+	 * such as conditional inserts whose condition was false.
+	 *
+	 * @return number of rows that changed nothing
+	 */
+	int getUnchangedCount() {
+		return unchanged;
+	}
+}
@@ -0,0 +1,173 @@
+package saver_loader;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+
+import resources.Activities;
+import resources.Projects;
+import resources.TaskProgress;
+import resources.Users;
+
+/**
+ * The StorageBenchmark class measures load and save latency under each
+ * StorageProfile. It generates a large database with the schema of the
+ * application database, then for every profile times a full load of the
+ * manager's projects, a full save with saveToDB and a series of single
+ * activity saves.
+ *
+ * Usage: StorageBenchmark [projects] [activities per project] [single saves]
+ */
+public class StorageBenchmark {
+
+	private static final int MANAGER_ID = 1;
+	private static final int MEMBERS = 20;
+
+	public static void main(String[] args) throws Exception {
+		int projects = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int activities = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int saves = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		File file = File.createTempFile("storage-benchmark", ".db");
+		file.deleteOnExit();
+		String database = "jdbc:sqlite:" + file.getAbsolutePath();
+
+		copySchema(DataResource.dataBase, database);
+		DataResource.setDatabase(database);
+
+		ConnectionManager.setStorageProfile(StorageProfile.BULK_IMPORT);
+		long start = System.nanoTime();
+		generate(database, projects, activities);
+		System.out.println("Generated " + projects + " projects of " + activities + " activities in "
+				+ millis(start) + " ms");
+
+		System.out.println(String.format("%-12s %10s %10s %14s", "profile", "load ms", "save ms", "single save ms"));
+		for (StorageProfile profile : StorageProfile.values()) {
+			ConnectionManager.closeAll();
+			ConnectionManager.setStorageProfile(profile);
+
+			start = System.nanoTime();
+			load();
+			double load = millis(start);
+
+			start = System.nanoTime();
+			DataResource.saveToDB();
+			double save = millis(start);
+
+			Projects project = DataResource.projectList.get(0);
+			DataResource.selectedProject = project;
+			start = System.nanoTime();
+			for (int i = 0; i < saves; i++) {
+				Activities activity = project.getActivityList().get(i % project.getActivityList().size());
+				activity.setBudget(activity.getBudget() + 1);
+				DataResource.saveActivity(activity);
+			}
+			double single = millis(start) / saves;
+
+			System.out.println(String.format("%-12s %10.1f %10.1f %14.3f", profile.name(), load, save, single));
+		}
+
+		ConnectionManager.closeAll();
+		new File(file.getAbsolutePath() + "-wal").delete();
+		new File(file.getAbsolutePath() + "-shm").delete();
+	}
+
+	/**
+	 * Creates the tables of the source database in the target database.
+	 */
+	private static void copySchema(String source, String target) throws SQLException {
+		Connection from = DriverManager.getConnection(source);
+		Connection to = DriverManager.getConnection(target);
+		try {
+			Statement read = from.createStatement();
+			Statement write = to.createStatement();
+			ResultSet result = read.executeQuery("SELECT sql FROM sqlite_master WHERE type = 'table' "
+					+ "AND name NOT LIKE 'sqlite_%' AND name <> 'schema_version'");
+			while (result.next())
+				write.executeUpdate(result.getString(1));
+			read.close();
+			write.close();
+		} finally {
+			from.close();
+			to.close();
+		}
+	}
+
+	/**
+	 * Fills the database with a manager, members and projects whose
+	 * activities form a chain with extra dependencies, saved with saveToDB.
+	 */
+	private static void generate(String database, int projects, int activities) throws SQLException {
+		Connection connection = ConnectionManager.getConnection(database);
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection,
+				"INSERT INTO users(id, first_name, last_name, username, password, user_type) VALUES (?, ?, ?, ?, ?, ?)");
+		ArrayList<Users> members = new ArrayList<Users>();
+		for (int id = MANAGER_ID; id <= MEMBERS + 1; id++) {
+			String type = id == MANAGER_ID ? "MANAGER" : "MEMBER";
+			ps.setInt(1, id);
+			ps.setString(2, "First" + id);
+			ps.setString(3, "Last" + id);
+			ps.setString(4, "user" + id);
+			ps.setString(5, "pass" + id);
+			ps.setString(6, type);
+			ps.executeUpdate();
+			if (id != MANAGER_ID)
+				members.add(new Users("user" + id, "First" + id, "Last" + id, "pass" + id, id, type));
+		}
+		DataResource.closeConnection(connection);
+
+		Users manager = new Users("user" + MANAGER_ID, "First", "Last", "pass", MANAGER_ID, "MANAGER");
+		DataResource.currentUser = manager;
+		DataResource.projectList.clear();
+
+		Date startDate = new Date();
+		Date endDate = new Date(startDate.getTime() + 86400000L);
+		int activityID = 0;
+		for (int p = 1; p <= projects; p++) {
+			ArrayList<Users> users = new ArrayList<Users>();
+			users.add(manager);
+			Projects project = new Projects("Project " + p, users, "01/01/16", p, MANAGER_ID, "Generated project", 1000);
+
+			Activities previous = null;
+			Activities beforePrevious = null;
+			for (int a = 0; a < activities; a++) {
+				Activities activity = new Activities("Generated activity", startDate, endDate, "A" + a, ++activityID,
+						TaskProgress.pending, 10, 5, 3, 8, 5);
+				ArrayList<Users> assigned = new ArrayList<Users>();
+				assigned.add(members.get(activityID % members.size()));
+				activity.setMemberList(assigned);
+				project.addActivity(activity);
+
+				if (previous != null)
+					project.addArrow(previous, activity);
+				if (beforePrevious != null && a % 3 == 0)
+					project.addArrow(beforePrevious, activity);
+				beforePrevious = previous;
+				previous = activity;
+			}
+			DataResource.projectList.add(project);
+		}
+
+		DataResource.saveToDB();
+		DataResource.projectList.clear();
+	}
+
+	/**
+	 * Loads every project of the manager into an empty projectList.
+	 */
+	private static void load() {
+		DataResource.projectList.clear();
+		DataResource.projectMembers.clear();
+		DataResource.loadManagerDataFromDB();
+	}
+
+	private static double millis(long start) {
+		return (System.nanoTime() - start) / 1000000.0;
+	}
+}
@@ -0,0 +1,132 @@
+package saver_loader;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The StorageProfile enum lists the SQLite settings the ConnectionManager
+ * applies to every connection it opens. Each profile trades durability for
+ * speed differently:
+ *
+ * DURABLE waits for every commit to reach the disk, so no committed change is
+ * lost on a power failure.
+ *
+ * BALANCED, the default, only syncs the write-ahead log at checkpoints. A
+ * power failure may lose the last commits but never corrupts the database.
+ *
+ * BULK_IMPORT never syncs, uses large caches and keeps temporary tables and
+ * sorts in memory, for imports and benchmarks that can be restarted from
+ * scratch if the machine fails. The other profiles leave temporary storage
+ * to SQLite's default, so a large sort or temporary index spills to a file
+ * instead of growing the process.
+ *
+ * All profiles use write-ahead logging, so readers on one connection do not
+ * block the writer on another. The journal mode is stored in the database
+ * file, so it stays in effect for every later connection.
+ */
+public enum StorageProfile {
+
+	DURABLE("FULL", 2000, 0, 5000, "DEFAULT"),
+	BALANCED("NORMAL", 8000, 64L * 1024 * 1024, 5000, "DEFAULT"),
+	BULK_IMPORT("OFF", 64000, 256L * 1024 * 1024, 30000, "MEMORY");
+
+	private final String synchronous;
+	private final int cacheSizeKiB;
+	private final long mmapSize;
+	private final int busyTimeout;
+	private final String tempStore;
+
+	StorageProfile(String synchronous, int cacheSizeKiB, long mmapSize, int busyTimeout, String tempStore) {
+		this.synchronous = synchronous;
+		this.cacheSizeKiB = cacheSizeKiB;
+		this.mmapSize = mmapSize;
+		this.busyTimeout = busyTimeout;
+		this.tempStore = tempStore;
+	}
+
+	/**
+	 * Applies the profile's settings to a connection. Must be called outside
+	 * of a transaction.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @throws SQLException
+	 *             if a setting is rejected
+	 */
+	public void apply(Connection connection) throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute("PRAGMA busy_timeout = " + busyTimeout);
+			stmt.execute("PRAGMA journal_mode = WAL");
+			stmt.execute("PRAGMA synchronous = " + synchronous);
+			// a negative cache size is a size in KiB instead of pages
+			stmt.execute("PRAGMA cache_size = -" + cacheSizeKiB);
+			stmt.execute("PRAGMA mmap_size = " + mmapSize);
+			stmt.execute("PRAGMA temp_store = " + tempStore);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Getter for synchronous
+	 *
+	 * @return the SQLite synchronous level of the profile
+	 */
+	public String getSynchronous() {
+		return synchronous;
+	}
+
+	/**
+	 * Getter for cacheSizeKiB
+	 *
+	 * @return the page cache size of each connection, in KiB
+	 */
+	public int getCacheSizeKiB() {
+		return cacheSizeKiB;
+	}
+
+	/**
+	 * Getter for mmapSize
+	 *
+	 * @return the number of bytes of the database file accessed through
+	 *         memory mapping
+	 */
+	public long getMmapSize() {
+		return mmapSize;
+	}
+
+	/**
+	 * Getter for busyTimeout
+	 *
+	 * @return milliseconds a connection waits for a lock before failing
+	 */
+	public int getBusyTimeout() {
+		return busyTimeout;
+	}
+
+	/**
+	 * Getter for tempStore
+	 *
+	 * @return where SQLite keeps temporary tables and indexes: DEFAULT, FILE
+	 *         or MEMORY
+	 */
+	public String getTempStore() {
+		return tempStore;
+	}
+
+	/**
+	 * Returns the profile with the given name. Names are case insensitive and
+	 * may use a dash instead of an underscore, e.g. "bulk-import".
+	 *
+	 * @param name
+	 *            name of the profile
+	 * @return the profile
+	 * @throws IllegalArgumentException
+	 *             if no profile has that name
+	 */
+	public static StorageProfile fromName(String name) {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,209 @@
+package saver_loader;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import resources.UserType;
+import resources.Users;
+
+/**
+ * The UserCache class keeps one Users object per user of the current
+ * database, keyed by id and by username. The userList of every Project, the
+ * memberList of every Activity and DataResource.projectMembers all refer to
+ * these objects, so a user is read from the database and held in memory
+ * once however many projects it belongs to.
+ *
+ * The cache is filled by the first refresh and then refreshed incrementally:
+ * only the users whose revision moved past the change counter seen at the
+ * last refresh are read again, and their cached objects are updated in
+ * place. Deleted users are found by comparing the number of users.
+ */
+public class UserCache {
+
+	static final String CHANGED_USERS_SQL = "SELECT * FROM users WHERE revision > ?";
+
+	private static final HashMap<Integer, Users> byId = new HashMap<Integer, Users>();
+	private static final HashMap<String, Users> byUsername = new HashMap<String, Users>();
+	// database the cached users belong to
+	private static String database;
+	// change counter when the cache was last refreshed, -1 before the first refresh
+	private static long revision = -1;
+
+	/**
+	 * Method used to retrieve a cached user by id.
+	 *
+	 * @param id
+	 *            id of the user
+	 * @return the user, or null if it is not cached
+	 */
+	public static synchronized Users get(int id) {
+		return byId.get(id);
+	}
+
+	/**
+	 * Method used to retrieve a cached user by username.
+	 *
+	 * @param username
+	 *            username of the user
+	 * @return the user, or null if it is not cached
+	 */
+	public static synchronized Users getByUsername(String username) {
+		return byUsername.get(username);
+	}
+
+	/**
+	 * Returns the users that can be assigned to activities, those of type
+	 * MEMBER, in id order.
+	 *
+	 * @return the cached members
+	 */
+	public static synchronized List<Users> getMembers() {
+		TreeMap<Integer, Users> members = new TreeMap<Integer, Users>();
+		for (Users user : byId.values()) {
+			if (user.getType() == UserType.MEMBER)
+				members.put(user.getID(), user);
+		}
+		return new ArrayList<Users>(members.values());
+	}
+
+	/**
+	 * Getter for the number of cached users
+	 *
+	 * @return number of users in the cache
+	 */
+	public static synchronized int size() {
+		return byId.size();
+	}
+
+	/**
+	 * Empties the cache; the next refresh reads every user again.
+	 */
+	public static synchronized void clear() {
+		byId.clear();
+		byUsername.clear();
+		database = null;
+		revision = -1;
+	}
+
+	/**
+	 * Method used to bring the cache up to date with the current database.
+	 */
+	public static void refresh() {
+		Connection connection = DataResource.createConnectionToDB(DataResource.dataBase);
+		try {
+			refresh(connection);
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+		}
+		DataResource.closeConnection(connection);
+	}
+
+	/**
+	 * Method used to bring the cache up to date with the database of the
+	 * given connection, which must be DataResource.dataBase. Nothing is read
+	 * but the change counter if no table changed since the last refresh.
+	 *
+	 * @param connection
+	 *            an active connection to the database
+	 * @throws SQLException
+	 *             if the users cannot be read
+	 */
+	static synchronized void refresh(Connection connection) throws SQLException {
+		useCurrentDatabase();
+
+		long counter = readLong(connection, "SELECT value FROM change_counter WHERE id = 0");
+		if (counter == revision)
+			return;
+
+		PreparedStatement ps = ConnectionManager.prepareStatement(connection, CHANGED_USERS_SQL);
+		ps.setLong(1, revision);
+		ResultSet result = ps.executeQuery();
+		while (result.next())
+			update(DataResource.readUser(result));
+		result.close();
+
+		if (readLong(connection, "SELECT count(*) FROM users") != byId.size())
+			removeDeleted(connection);
+
+		revision = counter;
+	}
+
+	/**
+	 * Returns the cached user with the id of the given user, adding the
+	 * given user to the cache if there is none, for users read from
+	 * somewhere other than the users table.
+	 *
+	 * @param user
+	 *            the user
+	 * @return the cached object for the user
+	 */
+	static synchronized Users intern(Users user) {
+		useCurrentDatabase();
+		Users cached = byId.get(user.getID());
+		if (cached != null)
+			return cached;
+		byId.put(user.getID(), user);
+		if (user.getName() != null)
+			byUsername.put(user.getName(), user);
+		return user;
+	}
+
+	// the cache is emptied when DataResource switches to another database
+	private static void useCurrentDatabase() {
+		if (!DataResource.dataBase.equals(database)) {
+			clear();
+			database = DataResource.dataBase;
+		}
+	}
+
+	// copies a user read from the database into its cached object, so the references to it stay valid
+	private static void update(Users read) {
+		Users cached = byId.get(read.getID());
+		if (cached == null) {
+			intern(read);
+			return;
+		}
+
+		if (cached.getName() != null && byUsername.get(cached.getName()) == cached)
+			byUsername.remove(cached.getName());
+		cached.setName(read.getName());
+		cached.setFirstName(read.getFirstName());
+		cached.setLastName(read.getLastName());
+		cached.setPassword(read.getPassword());
+		cached.setType(read.getType());
+		if (cached.getName() != null)
+			byUsername.put(cached.getName(), cached);
+	}
+
+	private static void removeDeleted(Connection connection) throws SQLException {
+		HashSet<Integer> ids = new HashSet<Integer>();
+		ResultSet result = ConnectionManager.prepareStatement(connection, "SELECT id FROM users").executeQuery();
+		while (result.next())
+			ids.add(result.getInt(1));
+		result.close();
+
+		for (Users user : new ArrayList<Users>(byId.values())) {
+			if (ids.contains(user.getID()))
+				continue;
+			byId.remove(user.getID());
+			if (user.getName() != null && byUsername.get(user.getName()) == user)
+				byUsername.remove(user.getName());
+		}
+	}
+
+	private static long readLong(Connection connection, String sql) throws SQLException {
+		ResultSet result = ConnectionManager.prepareStatement(connection, sql).executeQuery();
+		try {
+			return result.next() ? result.getLong(1) : 0;
+		} finally {
+			result.close();
+		}
+	}
+}
@@ -0,0 +1,426 @@
+package saver_loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.jgraph.graph.DefaultEdge;
+
+import resources.Activities;
+import resources.DateCodec;
+import resources.Projects;
+import resources.TaskProgress;
+import resources.Users;
+
+/**
+ * The WorkspaceSnapshot class saves the loaded workspace of a user to a binary
+ * file next to the database, so the next login can restore it without
+ * querying and rebuilding every row.
+ *
+ * A snapshot holds the members, the projects of the projectList and, for the
+ * projects whose details were loaded, their users, Activities, dependencies,
+ * member assignments and the CPM and PERT values last computed for each
+ * Activity. Projects that were never selected are saved as headers and are
+ * still loaded from the database when selected.
+ *
+ * Every snapshot records the value of the database's change counter, which
+ * triggers increment on each change to the workspace tables. A snapshot is
+ * only restored while the counter still has that value, so a database changed
+ * by another client, or by this one after the snapshot was written, is always
+ * loaded from its tables.
+ *
+ * The file is written to a temporary file then moved over the previous one,
+ * and read through a memory-mapped buffer. Users are saved without their
+ * password.
+ */
+public class WorkspaceSnapshot {
+
+	// "PMWS", at the start and the end of every snapshot
+	private static final int MAGIC = 0x504d5753;
+	private static final int FORMAT_VERSION = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final TaskProgress[] PROGRESS = TaskProgress.values();
+
+	/**
+	 * Returns the snapshot file of a user of a database: the database file
+	 * name followed by the user id.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @param user
+	 *            the user the snapshot belongs to
+	 * @return the snapshot file, or null if the database is not a file
+	 */
+	public static File getFile(String database, Users user) {
+		String prefix = "jdbc:sqlite:";
+		if (!database.startsWith(prefix) || database.contains(":memory:") || database.length() == prefix.length())
+			return null;
+		return new File(database.substring(prefix.length()) + ".user-" + user.getID() + ".snapshot");
+	}
+
+	/**
+	 * Reads the change counter of a database.
+	 *
+	 * @param database
+	 *            JDBC URL of the database
+	 * @return the current value of the counter
+	 * @throws SQLException
+	 *             if the counter cannot be read
+	 */
+	public static long readChangeCounter(String database) throws SQLException {
+		Connection connection = ConnectionManager.getConnection(database);
+		try {
+			PreparedStatement ps = ConnectionManager.prepareStatement(connection,
+					"SELECT value FROM change_counter WHERE id = 0");
+			ResultSet result = ps.executeQuery();
+			try {
+				if (!result.next())
+					throw new SQLException("The database has no change counter");
+				return result.getLong(1);
+			} finally {
+				result.close();
+			}
+		} finally {
+			DataResource.closeConnection(connection);
+		}
+	}
+
+	/**
+	 * Method used to write the workspace of the current user to its snapshot
+	 * file. Nothing is written if changes may not have reached the database:
+	 * while writes are still queued or journaled, or after one of them failed.
+	 * Must be called once the PersistenceQueue has been shut down or flushed,
+	 * and the journal, if any, closed.
+	 *
+	 * @return true if the snapshot was written
+	 */
+	public static boolean save() {
+		Users user = DataResource.currentUser;
+		if (user == null || !(DataResource.projectRepository instanceof SqliteRepository)
+				|| ((SqliteRepository) DataResource.projectRepository).hasUnsavedWrites())
+			return false;
+
+		File file = getFile(DataResource.dataBase, user);
+		if (file == null)
+			return false;
+
+		File temporary = new File(file.getPath() + ".tmp");
+		try {
+			long counter = readChangeCounter(DataResource.dataBase);
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				write(out, user, counter, DataResource.projectMembers, DataResource.projectList);
+			} finally {
+				out.close();
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+
+		} catch (Exception exception) {
+			temporary.delete();
+			System.out.println(exception.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Method used to restore the workspace of the current user from its
+	 * snapshot file into projectMembers and the projectList. Nothing is
+	 * restored if there is no snapshot, if it belongs to a different format or
+	 * if the database changed since it was written.
+	 *
+	 * @return true if the workspace was restored, false if it must be loaded
+	 *         from the database
+	 */
+	public static boolean load() {
+		Users user = DataResource.currentUser;
+		File file = user == null ? null : getFile(DataResource.dataBase, user);
+		if (file == null || !file.isFile())
+			return false;
+
+		try {
+			long counter = readChangeCounter(DataResource.dataBase);
+
+			MappedByteBuffer buffer;
+			RandomAccessFile input = new RandomAccessFile(file, "r");
+			try {
+				buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+			} finally {
+				input.close();
+			}
+
+			List<Users> members = new ArrayList<Users>();
+			List<Projects> projects = new ArrayList<Projects>();
+			if (!read(buffer, user, counter, members, projects))
+				return false;
+
+			DataResource.setMembers(members);
+			DataResource.projectList.addAll(projects);
+			return true;
+
+		} catch (Exception exception) {
+			System.out.println(exception.getMessage());
+			return false;
+		}
+	}
+
+	private static void write(DataOutputStream out, Users user, long counter, List<Users> members,
+			List<Projects> projects) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(user.getID());
+		out.writeLong(counter);
+
+		// every user referenced by the workspace, written once
+		LinkedHashMap<Integer, Users> users = new LinkedHashMap<Integer, Users>();
+		for (Users member : members)
+			users.put(member.getID(), member);
+		for (Projects project : projects) {
+			if (!project.isLoaded())
+				continue;
+			for (Users projectUser : project.getUserList())
+				users.put(projectUser.getID(), projectUser);
+			for (Activities activity : project.getActivityList()) {
+				for (Users member : activity.getMemberList())
+					users.put(member.getID(), member);
+			}
+		}
+
+		out.writeInt(users.size());
+		for (Users written : users.values()) {
+			out.writeInt(written.getID());
+			writeString(out, written.getName());
+			writeString(out, written.getFirstName());
+			writeString(out, written.getLastName());
+			writeString(out, written.getType().name());
+		}
+
+		out.writeInt(members.size());
+		for (Users member : members)
+			out.writeInt(member.getID());
+
+		out.writeInt(projects.size());
+		for (Projects project : projects)
+			writeProject(out, project);
+
+		out.writeInt(MAGIC);
+	}
+
+	private static void writeProject(DataOutputStream out, Projects project) throws IOException {
+		out.writeInt(project.getId());
+		writeString(out, project.getProjectName());
+		writeString(out, project.getDate());
+		writeString(out, project.getDescription());
+		out.writeDouble(project.getBudget());
+		out.writeInt(project.getManagerID());
+		out.writeInt(project.getVersion());
+		out.writeBoolean(project.isLoaded());
+		if (!project.isLoaded())
+			return;
+
+		out.writeInt(project.getUserList().size());
+		for (Users projectUser : project.getUserList())
+			out.writeInt(projectUser.getID());
+
+		// activities are referred to by their position in the list
+		HashMap<Activities, Integer> positions = new HashMap<Activities, Integer>();
+		out.writeInt(project.getActivityList().size());
+		for (Activities activity : project.getActivityList()) {
+			positions.put(activity, positions.size());
+			writeActivity(out, activity);
+		}
+
+		out.writeInt(project.getArrowSet().size());
+		for (DefaultEdge e : project.getArrowSet()) {
+			out.writeInt(positions.get(project.getActivityBefore(e)));
+			out.writeInt(positions.get(project.getActivityAfter(e)));
+		}
+	}
+
+	private static void writeActivity(DataOutputStream out, Activities activity) throws IOException {
+		out.writeInt(activity.getId());
+		writeString(out, activity.getLabel());
+		writeString(out, activity.getDescription());
+		out.writeInt(DateCodec.toEpochDay(activity.getStartDate()));
+		out.writeInt(DateCodec.toEpochDay(activity.getEndDate()));
+		out.writeByte(activity.getProgress().ordinal());
+		out.writeInt(activity.getBudget());
+		out.writeInt(activity.getMostLikelyTime());
+		out.writeInt(activity.getOptimisticTime());
+		out.writeInt(activity.getPessimisticTime());
+		out.writeInt(activity.getTargetDate());
+		out.writeInt(activity.getVersion());
+
+		// values computed by calculateTimes
+		out.writeDouble(activity.getEarliestStart());
+		out.writeDouble(activity.getEarliestFinish());
+		out.writeDouble(activity.getLatestStart());
+		out.writeDouble(activity.getLatestFinish());
+		out.writeDouble(activity.getActivityFloat());
+		out.writeDouble(activity.getMaxDuration());
+		out.writeDouble(activity.getExpectedDate());
+		out.writeDouble(activity.getExpectedStartDate());
+		out.writeDouble(activity.getExpectedFinishDate());
+		out.writeDouble(activity.getStandardDeviationEvent());
+		out.writeDouble(activity.getXpos());
+		out.writeDouble(activity.getYpos());
+		out.writeInt(activity.getDepth());
+		out.writeBoolean(activity.isCriticalPathGraph());
+
+		out.writeInt(activity.getMemberList().size());
+		for (Users member : activity.getMemberList())
+			out.writeInt(member.getID());
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static boolean read(ByteBuffer in, Users user, long counter, List<Users> members, List<Projects> projects) {
+		try {
+			if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION || in.getInt() != user.getID()
+					|| in.getLong() != counter)
+				return false;
+
+			HashMap<Integer, Users> users = new HashMap<Integer, Users>();
+			int userCount = in.getInt();
+			for (int i = 0; i < userCount; i++) {
+				int id = in.getInt();
+				String username = readString(in);
+				String firstName = readString(in);
+				String lastName = readString(in);
+				// the cached user is shared if the users were read before
+				users.put(id, UserCache.intern(new Users(username, firstName, lastName, null, id, readString(in))));
+			}
+
+			int memberCount = in.getInt();
+			for (int i = 0; i < memberCount; i++)
+				members.add(users.get(in.getInt()));
+
+			int projectCount = in.getInt();
+			for (int i = 0; i < projectCount; i++)
+				projects.add(readProject(in, users));
+
+			return in.getInt() == MAGIC && !in.hasRemaining();
+
+		} catch (BufferUnderflowException exception) {
+			return false;
+		} catch (IllegalArgumentException exception) {
+			return false;
+		} catch (IndexOutOfBoundsException exception) {
+			return false;
+		}
+	}
+
+	private static Projects readProject(ByteBuffer in, HashMap<Integer, Users> users) {
+		int id = in.getInt();
+		String name = readString(in);
+		String date = readString(in);
+		String description = readString(in);
+		double budget = in.getDouble();
+		int managerID = in.getInt();
+		Projects project = new Projects(name, new ArrayList<Users>(), date, id, managerID, description, budget);
+		project.setVersion(in.getInt());
+
+		if (in.get() == 0) {
+			project.setLoaded(false);
+			return project;
+		}
+
+		int userCount = in.getInt();
+		for (int i = 0; i < userCount; i++)
+			project.getUserList().add(users.get(in.getInt()));
+
+		int activityCount = in.getInt();
+		Activities[] activities = new Activities[activityCount];
+		for (int i = 0; i < activityCount; i++) {
+			activities[i] = readActivity(in, users);
+			project.addActivity(activities[i]);
+		}
+
+		int edgeCount = in.getInt();
+		for (int i = 0; i < edgeCount; i++) {
+			Activities before = activities[in.getInt()];
+			project.addArrow(before, activities[in.getInt()]);
+		}
+
+		project.markClean();
+		project.setLoaded(true);
+		return project;
+	}
+
+	private static Activities readActivity(ByteBuffer in, HashMap<Integer, Users> users) {
+		int id = in.getInt();
+		String label = readString(in);
+		String description = readString(in);
+		int start = in.getInt();
+		int end = in.getInt();
+		TaskProgress progress = PROGRESS[in.get()];
+		int budget = in.getInt();
+		int mostLikely = in.getInt();
+		int optimistic = in.getInt();
+		int pessimistic = in.getInt();
+		int targetDate = in.getInt();
+		Activities activity = new Activities(description, DateCodec.fromEpochDay(start), DateCodec.fromEpochDay(end),
+				label, id, progress, budget, mostLikely, optimistic, pessimistic, targetDate);
+		activity.setVersion(in.getInt());
+
+		activity.setEarliestStart(in.getDouble());
+		activity.setEarliestFinish(in.getDouble());
+		activity.setLatestStart(in.getDouble());
+		activity.setLatestFinish(in.getDouble());
+		activity.setActivityFloat(in.getDouble());
+		activity.setMaxDuration(in.getDouble());
+		activity.setExpectedDate(in.getDouble());
+		activity.setExpectedStartDate(in.getDouble());
+		activity.setExpectedFinishDate(in.getDouble());
+		activity.setStandardDeviationEvent(in.getDouble());
+		activity.setXpos(in.getDouble());
+		activity.setYpos(in.getDouble());
+		activity.setDepth(in.getInt());
+		activity.setCriticalPathGraph(in.get() != 0);
+
+		ArrayList<Users> memberList = new ArrayList<Users>();
+		int memberCount = in.getInt();
+		for (int i = 0; i < memberCount; i++)
+			memberList.add(users.get(in.getInt()));
+		activity.setMemberList(memberList);
+		activity.markClean();
+		return activity;
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}